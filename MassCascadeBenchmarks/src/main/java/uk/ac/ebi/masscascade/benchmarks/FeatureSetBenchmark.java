@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.benchmarks;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.masscascade.alignment.featurebins.FeatureBin;
+import uk.ac.ebi.masscascade.alignment.featurebins.FeatureBinGenerator;
+import uk.ac.ebi.masscascade.distance.CosineSimilarityDistance;
+import uk.ac.ebi.masscascade.identification.IsotopeFinder;
+import uk.ac.ebi.masscascade.interfaces.container.Container;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the tasks working on feature sets. Feature binning runs on two synthetic runs with different seeds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FeatureSetBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class FeatureSetState {
+
+        public FeatureSetContainer featureSetContainer;
+        public Multimap<Integer, Container> featureSetContainers;
+
+        @Setup(Level.Trial)
+        public void setUp(RunState runState) {
+
+            featureSetContainer = buildFeatureSets(runState.run);
+
+            SyntheticRun secondRun =
+                    new SyntheticRun(runState.seed + 1, runState.scans, runState.points, runState.msnPerCycle);
+            featureSetContainers = HashMultimap.create();
+            featureSetContainers.put(1, featureSetContainer);
+            featureSetContainers.put(1, buildFeatureSets(secondRun));
+        }
+
+        private static FeatureSetContainer buildFeatureSets(SyntheticRun run) {
+
+            ParameterMap params = new ParameterMap();
+            params.put(Parameter.BINS, 10);
+            params.put(Parameter.CORRELATION_THRESHOLD, 0.95);
+            params.put(Parameter.FEATURE_CONTAINER,
+                    RunState.buildFeatures(run.fill(RunState.newScanContainer("synthetic"))));
+
+            return new CosineSimilarityDistance(params).call();
+        }
+    }
+
+    @Benchmark
+    public FeatureSetContainer isotopeFinder(FeatureSetState state) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.MZ_WINDOW_PPM, 10d);
+        params.put(Parameter.FEATURE_SET_CONTAINER, state.featureSetContainer);
+
+        return new IsotopeFinder(params).call();
+    }
+
+    @Benchmark
+    public List<FeatureBin> featureBinGenerator(FeatureSetState state) {
+        return FeatureBinGenerator.createBins(state.featureSetContainers, 10, 5, 0);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.masscascade.deconvolution.BiehmanDeconvolution;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.smoothing.SavitzkyGolaySmoothing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the tasks working on features.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FeatureTaskBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class FeatureState {
+
+        public FeatureContainer featureContainer;
+
+        @Setup(Level.Trial)
+        public void setUp(RunState runState) {
+            featureContainer = RunState.buildFeatures(runState.scanContainer);
+        }
+    }
+
+    @Benchmark
+    public FeatureContainer savitzkyGolaySmoothing(FeatureState state) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.POLYNOMIAL_ORDER, 3);
+        params.put(Parameter.SCAN_WINDOW, 5);
+        params.put(Parameter.FEATURE_CONTAINER, state.featureContainer);
+
+        return new SavitzkyGolaySmoothing(params).call();
+    }
+
+    @Benchmark
+    public FeatureContainer biehmanDeconvolution(RunState runState, FeatureState state) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.CENTER, true);
+        params.put(Parameter.NOISE_FACTOR, 2);
+        params.put(Parameter.SCAN_CONTAINER, runState.scanContainer);
+        params.put(Parameter.FEATURE_CONTAINER, state.featureContainer);
+
+        return new BiehmanDeconvolution(params).call();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ebi.masscascade.core.container.file.FileManager;
+import uk.ac.ebi.masscascade.core.scan.ScanImpl;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.parameters.Constants;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the serialization of scans by the file manager.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileManagerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class FileState {
+
+        public Scan[] scans;
+        public FileManager readManager;
+        public long[] pointers;
+
+        @Setup(Level.Trial)
+        public void setUp(RunState runState) {
+
+            scans = new Scan[runState.run.size()];
+            for (int i = 0; i < scans.length; i++) scans[i] = runState.run.getScan(i);
+
+            readManager = new FileManager(System.getProperty(Constants.JAVA_TMP));
+            readManager.openFile();
+            pointers = new long[scans.length];
+            for (int i = 0; i < scans.length; i++) pointers[i] = readManager.write(scans[i]);
+            readManager.closeFile();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            readManager.removeFile();
+        }
+    }
+
+    /**
+     * Target file of the write benchmark. The file manager is built once per iteration, so its temporary file and
+     * shutdown hook are not part of the measurement, and every invocation appends the scans to the open file.
+     */
+    @State(Scope.Thread)
+    public static class WriteState {
+
+        public FileManager writeManager;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+
+            writeManager = new FileManager(System.getProperty(Constants.JAVA_TMP));
+            writeManager.openFile();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+
+            writeManager.closeFile();
+            writeManager.removeFile();
+        }
+    }
+
+    @Benchmark
+    public long write(FileState state, WriteState writeState) {
+
+        long pointer = 0;
+        for (Scan scan : state.scans) pointer = writeState.writeManager.write(scan);
+        return pointer;
+    }
+
+    @Benchmark
+    public void read(FileState state, Blackhole blackhole) {
+        for (long pointer : state.pointers) blackhole.consume(state.readManager.read(pointer, ScanImpl.class));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
+import uk.ac.ebi.masscascade.featurebuilder.SequentialFeatureBuilder;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Benchmark state holding a synthetic run as in-memory scan container and as indexed mzML file. The run is
+ * configured via the JMH parameters <code>seed</code>, <code>scans</code>, <code>points</code> and
+ * <code>msnPerCycle</code>, e.g. <code>-p scans=2000 -p msnPerCycle=0,3</code>.
+ */
+@State(Scope.Benchmark)
+public class RunState {
+
+    @Param({"42"})
+    public long seed;
+
+    @Param({"1000"})
+    public int scans;
+
+    @Param({"2000"})
+    public int points;
+
+    @Param({"0", "3"})
+    public int msnPerCycle;
+
+    public SyntheticRun run;
+    public ScanContainer scanContainer;
+    public File mzmlFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        run = new SyntheticRun(seed, scans, points, msnPerCycle);
+        scanContainer = run.fill(newScanContainer("synthetic"));
+
+        mzmlFile = File.createTempFile("synthetic", ".mzML");
+        run.writeMzml(mzmlFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mzmlFile.delete();
+    }
+
+    /**
+     * Returns a new empty in-memory scan container.
+     *
+     * @param id the container identifier
+     * @return the scan container
+     */
+    public static ScanContainer newScanContainer(String id) {
+        return MemoryContainerBuilder.getInstance().newInstance(ScanContainer.class, id);
+    }
+
+    /**
+     * Builds the features of the given scan container with the benchmark defaults.
+     *
+     * @param scanContainer the scan container
+     * @return the feature container
+     */
+    public static FeatureContainer buildFeatures(ScanContainer scanContainer) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.MZ_WINDOW_PPM, 10d);
+        params.put(Parameter.MIN_FEATURE_INTENSITY, 1000d);
+        params.put(Parameter.MIN_FEATURE_WIDTH, 6);
+        params.put(Parameter.SCAN_CONTAINER, scanContainer);
+
+        return new SequentialFeatureBuilder(params).call();
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.benchmarks;
+
+import uk.ac.ebi.masscascade.core.scan.ScanImpl;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.TextUtils;
+import uk.ac.ebi.masscascade.utilities.buffer.Base64;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic LC-MS runs.
+ * <p/>
+ * A run consists of compounds with a Gaussian elution profile and a short isotope envelope on top of uniformly
+ * distributed noise signals. Every MS1 scan is followed by a configurable number of MS2 scans of the compounds eluting
+ * at the time. All values are derived from the seed and the scan index, so the same configuration always produces the
+ * same scans, independent of the order in which they are requested.
+ */
+public class SyntheticRun {
+
+    private static final double MIN_MZ = 100;
+    private static final double MAX_MZ = 1000;
+    private static final double SCAN_TIME = 0.5;
+    private static final double NEUTRON = 1.00335;
+    private static final double MIN_NOISE = 50;
+    private static final double MAX_NOISE = 500;
+
+    private final long seed;
+    private final int nScans;
+    private final int pointsPerScan;
+    private final int msnPerCycle;
+
+    // compound properties
+    private final double[] mzs;
+    private final double[] apexes;
+    private final double[] widths;
+    private final double[] heights;
+
+    /**
+     * Constructs a synthetic run with one compound per ten data points.
+     *
+     * @param seed          the random seed
+     * @param nScans        the total number of scans
+     * @param pointsPerScan the number of data points per MS1 scan
+     * @param msnPerCycle   the number of MS2 scans following every MS1 scan
+     */
+    public SyntheticRun(long seed, int nScans, int pointsPerScan, int msnPerCycle) {
+        this(seed, nScans, pointsPerScan, msnPerCycle, Math.max(1, pointsPerScan / 10));
+    }
+
+    /**
+     * Constructs a synthetic run.
+     *
+     * @param seed          the random seed
+     * @param nScans        the total number of scans
+     * @param pointsPerScan the number of data points per MS1 scan
+     * @param msnPerCycle   the number of MS2 scans following every MS1 scan
+     * @param nCompounds    the number of compounds
+     */
+    public SyntheticRun(long seed, int nScans, int pointsPerScan, int msnPerCycle, int nCompounds) {
+
+        this.seed = seed;
+        this.nScans = nScans;
+        this.pointsPerScan = pointsPerScan;
+        this.msnPerCycle = msnPerCycle;
+
+        double runTime = getRetentionTime(nScans - 1);
+
+        Random random = new Random(seed);
+        mzs = new double[nCompounds];
+        apexes = new double[nCompounds];
+        widths = new double[nCompounds];
+        heights = new double[nCompounds];
+        for (int i = 0; i < nCompounds; i++) {
+            mzs[i] = MIN_MZ + random.nextDouble() * (MAX_MZ - MIN_MZ - 3 * NEUTRON);
+            apexes[i] = random.nextDouble() * runTime;
+            widths[i] = 2 + random.nextDouble() * 4;
+            heights[i] = Math.pow(10, 4 + random.nextDouble() * 2);
+        }
+    }
+
+    /**
+     * Returns the total number of scans.
+     *
+     * @return the number of scans
+     */
+    public int size() {
+        return nScans;
+    }
+
+    /**
+     * Returns the scan with the given index.
+     *
+     * @param index the scan index
+     * @return the scan
+     */
+    public Scan getScan(int index) {
+
+        Random random = new Random(seed * 31 + index);
+
+        int cycle = msnPerCycle + 1;
+        int ms1Index = index - index % cycle;
+        double rt = getRetentionTime(index);
+
+        if (index == ms1Index) {
+            XYArray data = createMs1Data(random, rt);
+            return new ScanImpl(index, Constants.MSN.MS1, Constants.ION_MODE.POSITIVE, data, rt, -1, 0, 0);
+        }
+
+        int compound = getMostIntense(getRetentionTime(ms1Index), index % cycle - 1);
+        XYArray data = createMs2Data(random, mzs[compound]);
+        return new ScanImpl(index, Constants.MSN.MS2, Constants.ION_MODE.POSITIVE, data, rt, ms1Index, 1,
+                mzs[compound]);
+    }
+
+    /**
+     * Adds all scans to the given container and finalises it.
+     *
+     * @param scanContainer the target container
+     * @return the filled container
+     */
+    public ScanContainer fill(ScanContainer scanContainer) {
+
+        for (int i = 0; i < nScans; i++) scanContainer.addScan(getScan(i));
+        scanContainer.finaliseFile(null);
+        return scanContainer;
+    }
+
+    /**
+     * Writes the run as indexed mzML file with uncompressed 64-bit binary data arrays.
+     *
+     * @param file the target file
+     * @throws MassCascadeException if the file cannot be written
+     */
+    public void writeMzml(File file) throws MassCascadeException {
+
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+            long[] offsets = new long[nScans];
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+            sb.append("<indexedmzML xmlns=\"http://psi.hupo.org/ms/mzml\">\n");
+            sb.append("<mzML xmlns=\"http://psi.hupo.org/ms/mzml\" id=\"synthetic\" version=\"1.1.0\">\n");
+            sb.append("<cvList count=\"2\">\n");
+            sb.append("<cv id=\"MS\" fullName=\"Proteomics Standards Initiative Mass Spectrometry Ontology\" ");
+            sb.append("URI=\"http://psidev.cvs.sourceforge.net/*checkout*/psidev/psi/psi-ms/mzML/controlledVocabulary/psi-ms.obo\"/>\n");
+            sb.append("<cv id=\"UO\" fullName=\"Unit Ontology\" ");
+            sb.append("URI=\"http://obo.cvs.sourceforge.net/*checkout*/obo/obo/ontology/phenotype/unit.obo\"/>\n");
+            sb.append("</cvList>\n");
+            sb.append("<run id=\"synthetic\">\n");
+            sb.append("<spectrumList count=\"").append(nScans).append("\">\n");
+
+            long offset = write(writer, sb);
+            for (int i = 0; i < nScans; i++) {
+                offsets[i] = offset;
+                offset += write(writer, appendSpectrum(new StringBuilder(), getScan(i)));
+            }
+
+            sb.append("</spectrumList>\n");
+            sb.append("</run>\n");
+            sb.append("</mzML>\n");
+            offset += write(writer, sb);
+
+            long indexListOffset = offset;
+            sb.append("<indexList count=\"1\">\n");
+            sb.append("<index name=\"spectrum\">\n");
+            for (int i = 0; i < nScans; i++) {
+                sb.append("<offset idRef=\"scan=").append(i).append("\">").append(offsets[i]).append("</offset>\n");
+            }
+            sb.append("</index>\n");
+            sb.append("</indexList>\n");
+            sb.append("<indexListOffset>").append(indexListOffset).append("</indexListOffset>\n");
+            sb.append("</indexedmzML>\n");
+            write(writer, sb);
+        } catch (IOException exception) {
+            throw new MassCascadeException("Synthetic run could not be written: " + exception.getMessage(), exception);
+        } finally {
+            TextUtils.close(writer);
+        }
+    }
+
+    private double getRetentionTime(int index) {
+        return index * SCAN_TIME / (msnPerCycle + 1);
+    }
+
+    private XYArray createMs1Data(Random random, double rt) {
+
+        double[] xs = new double[pointsPerScan];
+        double[] ys = new double[pointsPerScan];
+        int n = 0;
+
+        for (int i = 0; i < mzs.length && n < pointsPerScan; i++) {
+
+            double distance = (rt - apexes[i]) / widths[i];
+            if (Math.abs(distance) > 4) continue;
+
+            double intensity = heights[i] * Math.exp(-0.5 * distance * distance);
+            for (int isotope = 0; isotope < 3 && n < pointsPerScan; isotope++) {
+                double jitter = 1 + (random.nextDouble() - 0.5) * 4 / Constants.PPM;
+                xs[n] = (mzs[i] + isotope * NEUTRON) * jitter;
+                ys[n] = intensity * Math.pow(0.4, isotope) * (0.95 + random.nextDouble() * 0.1);
+                n++;
+            }
+        }
+
+        while (n < pointsPerScan) {
+            xs[n] = MIN_MZ + random.nextDouble() * (MAX_MZ - MIN_MZ);
+            ys[n] = MIN_NOISE + random.nextDouble() * (MAX_NOISE - MIN_NOISE);
+            n++;
+        }
+
+        return sort(xs, ys);
+    }
+
+    private XYArray createMs2Data(Random random, double precursorMz) {
+
+        int size = Math.max(1, pointsPerScan / 10);
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        for (int i = 0; i < size; i++) {
+            xs[i] = 50 + random.nextDouble() * (precursorMz - 50);
+            ys[i] = Math.pow(10, 2 + random.nextDouble() * 3);
+        }
+
+        return sort(xs, ys);
+    }
+
+    /**
+     * Returns the n-th most intense compound at the given retention time.
+     */
+    private int getMostIntense(double rt, int n) {
+
+        Integer[] order = new Integer[mzs.length];
+        final double[] intensities = new double[mzs.length];
+        for (int i = 0; i < mzs.length; i++) {
+            order[i] = i;
+            double distance = (rt - apexes[i]) / widths[i];
+            intensities[i] = heights[i] * Math.exp(-0.5 * distance * distance);
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(intensities[i2], intensities[i1]);
+            }
+        });
+
+        return order[n % order.length];
+    }
+
+    private static XYArray sort(double[] xs, double[] ys) {
+
+        Integer[] order = new Integer[xs.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        final double[] mzs = xs;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(mzs[i1], mzs[i2]);
+            }
+        });
+
+        double[] sortedXs = new double[xs.length];
+        double[] sortedYs = new double[ys.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedXs[i] = xs[order[i]];
+            sortedYs[i] = ys[order[i]];
+        }
+
+        return new XYArray(sortedXs, sortedYs);
+    }
+
+    private static StringBuilder appendSpectrum(StringBuilder sb, Scan scan) {
+
+        XYArray data = scan.getDataArray();
+        boolean isMs1 = scan.getMsn() == Constants.MSN.MS1;
+
+        sb.append("<spectrum index=\"").append(scan.getIndex()).append("\" id=\"scan=").append(scan.getIndex());
+        sb.append("\" defaultArrayLength=\"").append(data.size()).append("\">\n");
+        appendCvParam(sb, "MS:1000511", "ms level", String.valueOf(scan.getMsn().getLvl()));
+        appendCvParam(sb, "MS:1000130", "positive scan", "");
+        appendCvParam(sb, "MS:1000127", "centroid spectrum", "");
+        if (!scan.getBasePeak().isEmpty()) {
+            appendCvParam(sb, "MS:1000504", "base peak m/z", String.valueOf(scan.getBasePeak().get(0).x));
+            appendCvParam(sb, "MS:1000505", "base peak intensity", String.valueOf(scan.getBasePeak().get(0).y));
+        }
+        appendCvParam(sb, "MS:1000285", "total ion current", String.valueOf(scan.getTotalIonCurrent()));
+
+        sb.append("<scanList count=\"1\">\n<scan>\n");
+        sb.append("<cvParam cvRef=\"MS\" accession=\"MS:1000016\" name=\"scan start time\" value=\"");
+        sb.append(scan.getRetentionTime());
+        sb.append("\" unitCvRef=\"UO\" unitAccession=\"UO:0000010\" unitName=\"second\"/>\n");
+        sb.append("</scan>\n</scanList>\n");
+
+        if (!isMs1) {
+            sb.append("<precursorList count=\"1\">\n<precursor spectrumRef=\"scan=").append(scan.getParentScan());
+            sb.append("\">\n<selectedIonList count=\"1\">\n<selectedIon>\n");
+            appendCvParam(sb, "MS:1000744", "selected ion m/z", String.valueOf(scan.getParentMz()));
+            appendCvParam(sb, "MS:1000041", "charge state", String.valueOf(scan.getParentCharge()));
+            sb.append("</selectedIon>\n</selectedIonList>\n");
+            sb.append("<activation>\n");
+            appendCvParam(sb, "MS:1000133", "collision-induced dissociation", "");
+            sb.append("</activation>\n</precursor>\n</precursorList>\n");
+        }
+
+        sb.append("<binaryDataArrayList count=\"2\">\n");
+        appendBinaryArray(sb, data.getXs(), data.size(), "MS:1000514", "m/z array");
+        appendBinaryArray(sb, data.getYs(), data.size(), "MS:1000515", "intensity array");
+        sb.append("</binaryDataArrayList>\n");
+        sb.append("</spectrum>\n");
+
+        return sb;
+    }
+
+    private static void appendBinaryArray(StringBuilder sb, double[] values, int size, String accession,
+            String name) {
+
+        ByteBuffer buffer = ByteBuffer.allocate(size * 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < size; i++) buffer.putDouble(values[i]);
+        String text = Base64.encodeToString(buffer.array(), false);
+
+        sb.append("<binaryDataArray encodedLength=\"").append(text.length()).append("\">\n");
+        appendCvParam(sb, "MS:1000523", "64-bit float", "");
+        appendCvParam(sb, "MS:1000576", "no compression", "");
+        appendCvParam(sb, accession, name, "");
+        sb.append("<binary>").append(text).append("</binary>\n");
+        sb.append("</binaryDataArray>\n");
+    }
+
+    private static void appendCvParam(StringBuilder sb, String accession, String name, String value) {
+
+        sb.append("<cvParam cvRef=\"MS\" accession=\"").append(accession).append("\" name=\"").append(name);
+        sb.append("\" value=\"").append(value).append("\"/>\n");
+    }
+
+    /**
+     * Writes and clears the builder and returns the number of bytes written. The document is plain ASCII.
+     */
+    private static long write(Writer writer, StringBuilder sb) throws IOException {
+
+        int length = sb.length();
+        writer.write(sb.toString());
+        sb.setLength(0);
+        return length;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.alignment;
+
+import uk.ac.ebi.masscascade.core.scan.ScanImpl;
+import uk.ac.ebi.masscascade.core.scan.ScanLevel;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.interfaces.CallableTask;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Class implementing sample alignment against a reference using dynamic time warping within a Sakoe-Chiba band.<br />
+ * <i>Sakoe and Chiba, Dynamic programming algorithm optimization for spoken word recognition. (1978) IEEE Transactions
+ * on Acoustics, Speech and Signal Processing, 43-49</i>
+ * <p/>
+ * The base peak chromatograms of the sample and the reference are warped within a band around the diagonal, so memory
+ * is linear in the number of scans times the band width. The MS1 scans of both containers are then merged in a single
+ * forward pass: every reference scan receives the merged data of all sample scans matched to it.
+ * <ul>
+ * <li>Parameter <code> SCAN_WINDOW </code>- The band radius in scans.</li>
+ * <li>Parameter <code> REFERENCE_SCAN_CONTAINER </code>- The input scan reference container.</li>
+ * <li>Parameter <code> SCAN_CONTAINER </code>- The input scan container.</li>
+ * </ul>
+ */
+public class DtwAlignment extends CallableTask {
+
+    private static final byte DIAG = 0;
+    private static final byte SAMPLE = 1;
+    private static final byte REFERENCE = 2;
+
+    private ScanContainer scanContainer;
+    private ScanContainer refScanContainer;
+    private int bandRadius;
+
+    /**
+     * Constructs an alignment task.
+     *
+     * @param params the parameter map
+     * @throws uk.ac.ebi.masscascade.exception.MassCascadeException if the task fails
+     */
+    public DtwAlignment(ParameterMap params) throws MassCascadeException {
+
+        super(DtwAlignment.class);
+        setParameters(params);
+    }
+
+    /**
+     * Sets the parameters attribute for the alignment task.
+     *
+     * @param params the new parameter values
+     * @throws uk.ac.ebi.masscascade.exception.MassCascadeException
+     *
+     */
+    @Override
+    public void setParameters(ParameterMap params) throws MassCascadeException {
+
+        bandRadius = params.get(Parameter.SCAN_WINDOW, Integer.class);
+        refScanContainer = params.get(Parameter.REFERENCE_SCAN_CONTAINER, ScanContainer.class);
+        scanContainer = params.get(Parameter.SCAN_CONTAINER, ScanContainer.class);
+    }
+
+    /**
+     * Aligns two samples along the time domain using banded dynamic time warping.
+     *
+     * @return the aligned sample
+     */
+    @Override
+    public ScanContainer call() {
+
+        XYList sampleBpc = scanContainer.getBasePeakChromatogram().getData();
+        XYList refBpc = refScanContainer.getBasePeakChromatogram().getData();
+
+        String id = scanContainer.getId() + IDENTIFIER;
+        ScanContainer alignedScanContainer =
+                scanContainer.getBuilder().newInstance(ScanContainer.class, id, scanContainer);
+
+        if (!sampleBpc.isEmpty() && !refBpc.isEmpty()) {
+            int[][] ranges = warp(sampleBpc.getYs(), sampleBpc.size(), refBpc.getYs(), refBpc.size());
+            merge(sampleBpc.getXs(), refBpc.getXs(), ranges[0], ranges[1], alignedScanContainer);
+        }
+
+        for (ScanLevel level : scanContainer.getScanLevels()) {
+            if (level.getMsn() == Constants.MSN.MS1) continue;
+            for (Scan scan : scanContainer.iterator(level.getMsn()))
+                alignedScanContainer.addScan(scan);
+        }
+
+        alignedScanContainer.finaliseFile(scanContainer.getScanInfo().getDate());
+        return alignedScanContainer;
+    }
+
+    /**
+     * Warps the sample onto the reference. Returns, for every reference position, the first and last matched sample
+     * position.
+     */
+    private int[][] warp(double[] sample, int n, double[] ref, int m) {
+
+        // the band follows the diagonal and must be wide enough to connect consecutive rows
+        double slope = (n > 1) ? (m - 1) / (double) (n - 1) : m - 1;
+        int radius = Math.max(bandRadius, (int) Math.ceil(slope) + 1);
+        int width = 2 * radius + 1;
+
+        int[] bandStart = new int[n];
+        for (int i = 0; i < n; i++) bandStart[i] = Math.max(0, (int) Math.round(i * slope) - radius);
+
+        double[] prevCost = new double[width];
+        double[] cost = new double[width];
+        byte[][] moves = new byte[n][width];
+
+        for (int i = 0; i < n; i++) {
+
+            int start = bandStart[i];
+            int end = Math.min(m - 1, start + width - 1);
+            int prevStart = (i > 0) ? bandStart[i - 1] : 0;
+            int prevEnd = (i > 0) ? Math.min(m - 1, prevStart + width - 1) : -1;
+
+            for (int j = start; j <= end; j++) {
+
+                int k = j - start;
+                double distance = Math.abs(sample[i] - ref[j]);
+
+                if (i == 0 && j == 0) {
+                    cost[k] = distance;
+                    moves[i][k] = DIAG;
+                    continue;
+                }
+
+                double best = Double.POSITIVE_INFINITY;
+                byte move = DIAG;
+
+                if (i > 0 && j > 0 && j - 1 >= prevStart && j - 1 <= prevEnd) {
+                    best = prevCost[j - 1 - prevStart];
+                }
+                if (i > 0 && j >= prevStart && j <= prevEnd && prevCost[j - prevStart] < best) {
+                    best = prevCost[j - prevStart];
+                    move = SAMPLE;
+                }
+                if (j > start && cost[k - 1] < best) {
+                    best = cost[k - 1];
+                    move = REFERENCE;
+                }
+
+                cost[k] = best + distance;
+                moves[i][k] = move;
+            }
+
+            double[] tmp = prevCost;
+            prevCost = cost;
+            cost = tmp;
+            Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        }
+
+        int[] firstMatch = new int[m];
+        int[] lastMatch = new int[m];
+        Arrays.fill(firstMatch, -1);
+
+        int i = n - 1;
+        int j = m - 1;
+        while (i >= 0 && j >= 0) {
+
+            if (j - bandStart[i] < 0 || j - bandStart[i] >= width)
+                throw new MassCascadeException("Warping path left the band.");
+
+            if (firstMatch[j] == -1) lastMatch[j] = i;
+            firstMatch[j] = i;
+
+            if (i == 0 && j == 0) break;
+            byte move = moves[i][j - bandStart[i]];
+            if (move == DIAG) {
+                i--;
+                j--;
+            } else if (move == SAMPLE) {
+                i--;
+            } else {
+                j--;
+            }
+        }
+
+        return new int[][]{firstMatch, lastMatch};
+    }
+
+    /**
+     * Merges the sample scans matched to every reference scan in a single forward pass over both containers. Scans
+     * without a base peak are not part of the chromatograms and are skipped by their retention time.
+     */
+    private void merge(double[] sampleRts, double[] refRts, int[] firstMatch, int[] lastMatch,
+            ScanContainer alignedScanContainer) {
+
+        Iterator<Scan> refIterator = refScanContainer.iterator();
+        Iterator<Scan> sampleIterator = scanContainer.iterator();
+
+        // matched sample scans starting at chromatogram position windowStart
+        Deque<Scan> window = new ArrayDeque<>();
+        int windowStart = 0;
+
+        int j = 0;
+        while (j < refRts.length && refIterator.hasNext()) {
+
+            Scan refScan = refIterator.next();
+            if (refScan.getRetentionTime() != refRts[j]) continue;
+
+            while (windowStart < firstMatch[j] && !window.isEmpty()) {
+                window.pollFirst();
+                windowStart++;
+            }
+            while (windowStart + window.size() <= lastMatch[j] && sampleIterator.hasNext()) {
+                Scan scan = sampleIterator.next();
+                int pos = windowStart + window.size();
+                if (scan.getRetentionTime() != sampleRts[pos]) continue;
+                if (pos < firstMatch[j]) windowStart++;
+                else window.addLast(scan);
+            }
+
+            Scan tarScan = null;
+            XYArray mergedData = null;
+            int pos = windowStart;
+            for (Scan scan : window) {
+                if (pos++ > lastMatch[j]) break;
+                tarScan = scan;
+                mergedData = (mergedData == null) ? scan.getDataArray() : mergeSorted(mergedData,
+                        scan.getDataArray());
+            }
+            j++;
+
+            if (mergedData == null || mergedData.isEmpty()) continue;
+
+            alignedScanContainer.addScan(new ScanImpl(tarScan.getIndex(), tarScan.getMsn(), tarScan.getIonMode(),
+                    mergedData, refScan.getRetentionTime(), tarScan.getParentScan(), tarScan.getParentCharge(),
+                    tarScan.getParentMz()));
+        }
+    }
+
+    /**
+     * Merges two m/z sorted data arrays.
+     */
+    private static XYArray mergeSorted(XYArray data1, XYArray data2) {
+
+        int n1 = data1.size();
+        int n2 = data2.size();
+        double[] xs1 = data1.getXs();
+        double[] ys1 = data1.getYs();
+        double[] xs2 = data2.getXs();
+        double[] ys2 = data2.getYs();
+
+        double[] xs = new double[n1 + n2];
+        double[] ys = new double[n1 + n2];
+        int a = 0;
+        int b = 0;
+        int n = 0;
+        while (a < n1 || b < n2) {
+            if (b == n2 || (a < n1 && xs1[a] <= xs2[b])) {
+                xs[n] = xs1[a];
+                ys[n++] = ys1[a++];
+            } else {
+                xs[n] = xs2[b];
+                ys[n++] = ys2[b++];
+            }
+        }
+
+        return new XYArray(xs, ys);
+    }
+}
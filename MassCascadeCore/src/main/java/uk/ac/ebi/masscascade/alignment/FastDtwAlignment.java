@@ -34,9 +34,8 @@ import uk.ac.ebi.masscascade.interfaces.Scan;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
-import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -49,6 +48,8 @@ import java.util.List;
  * <li>Parameter <code> REFERENCE FILE </code>- The input scan reference container.</li>
  * <li>Parameter <code> RAW FILE </code>- The input scan container.</li>
  * </ul>
+ *
+ * @deprecated replaced by the banded {@link DtwAlignment}
  */
 @Deprecated
 public class FastDtwAlignment extends CallableTask {
@@ -112,14 +113,13 @@ public class FastDtwAlignment extends CallableTask {
             if (tarPosList.size() == 0) continue;
 
             tarScan = scanContainer.getScanByIndex(tarPosList.get(0));
-            XYList mergedData = tarScan.getData();
+            XYArray mergedData = tarScan.getDataArray();
             for (int j = 1; j < tarPosList.size(); j++) {
                 tarScan = scanContainer.getScanByIndex(tarPosList.get(j));
-                mergedData.addAll(tarScan.getData());
+                mergedData = XYArray.merge(mergedData, tarScan.getDataArray());
             }
 
             if (mergedData.isEmpty()) continue;
-            Collections.sort(mergedData);
 
             corScan = buildAlignedScan(tarScan, refScan, mergedData);
             alignedScanContainer.addScan(corScan);
@@ -142,7 +142,7 @@ public class FastDtwAlignment extends CallableTask {
      * @param refScan the reference scan
      * @return the aligned scan
      */
-    private Scan buildAlignedScan(Scan tarScan, Scan refScan, XYList mergedData) {
+    private Scan buildAlignedScan(Scan tarScan, Scan refScan, XYArray mergedData) {
 
         Scan corScan = new ScanImpl(tarScan.getIndex(), tarScan.getMsn(), tarScan.getIonMode(), mergedData,
                 refScan.getRetentionTime(), tarScan.getParentScan(), tarScan.getParentCharge(), tarScan.getParentMz());
@@ -23,44 +23,47 @@
 package uk.ac.ebi.masscascade.alignment;
 
 import org.apache.commons.math3.util.FastMath;
-import org.apache.log4j.Level;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Feature;
 import uk.ac.ebi.masscascade.interfaces.Range;
 import uk.ac.ebi.masscascade.interfaces.container.Container;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
-import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
-import uk.ac.ebi.masscascade.utilities.TextUtils;
 import uk.ac.ebi.masscascade.utilities.math.LinearEquation;
 import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
- * Class for feature alignment using Obiwarp. The class executes the Obiwarp binary with the given parameters and
- * converts its output back into a list of aligned features. Input is provided in "lmata" format, which is generated on
- * the fly from the feature container. The reference file, the converted reference feature container, is provided via
- * the parameter map. The <link> ObiwarpHelper </link> class can be used to create the file and generate the mz bins.
+ * Class for feature alignment using Obiwarp. The feature container is binned into a time by m/z intensity matrix,
+ * which is aligned to the reference matrix by the {@link ObiwarpAligner}, and the aligned times are mapped back onto
+ * the features. The reference is either a feature container, binned with the same parameters, or a file in "lmata"
+ * format as generated by the <link> ObiwarpHelper </link>. Reference matrices are prepared once and shared by all
+ * tasks using the same reference until {@link #clearAligners()} is called. Reference files are identified by their
+ * absolute path, reference containers by identity and binning.
  * <p/>
  * <ul>
- * <li>Parameter <code> REFERENCE_FILE </code>- The lmata reference file.</li>
+ * <li>Parameter <code> REFERENCE_FEATURE_CONTAINER </code>- The reference feature container.</li>
+ * <li>Parameter <code> REFERENCE_FILE </code>- The lmata reference file if no reference container is given.</li>
  * <li>Parameter <code> FEATURE_CONTAINER </code>- The input feature container.</li>
  * <li>Parameter <code> GAP_INIT </code>- The gap penalty for initiating a gap.</li>
  * <li>Parameter <code> GAP_EXTEND </code>- The gap penaly for extending a gap.</li>
  * <li>Parameter <code> RESPONSE </code>- The responsiveness of warping [0 - 100].</li>
- * <li>Parameter <code> EXECUTABLE </code>- The path to the Obiwarp executable.</li>
  * <li>Parameter <code> BIN_WIDTH_MZ </code>- The width of a m/z bin in amu.</li>
  * <li>Parameter <code> MZ_RANGE </code>- The global m/z range in amu (ll-ul).</li>
  * <li>Parameter <code> BIN_WIDTH_RT </code>- The width of a time bin in seconds.</li>
@@ -69,7 +72,10 @@ import java.util.Map;
  */
 public class Obiwarp extends CallableTask {
 
-    private File referenceFile;
+    // prepared reference matrices per reference path or reference container and binning
+    private static final ConcurrentMap<List<Object>, Future<ObiwarpAligner>> ALIGNERS = new ConcurrentHashMap<>();
+
+    private Object reference;
     private FeatureContainer featureContainer;
 
     private ObiwarpHelper obiwarpHelper;
@@ -77,7 +83,7 @@ public class Obiwarp extends CallableTask {
     private double gapInit;
     private double gapExt;
     private double response;
-    private String executable;
+    private String binning;
 
     private Map<Integer, Double[]> idToTimeDiff;
 
@@ -104,13 +110,15 @@ public class Obiwarp extends CallableTask {
     @Override
     public void setParameters(ParameterMap params) {
 
-        referenceFile = params.get(Parameter.REFERENCE_FILE, File.class);
+        reference = params.containsKey(Parameter.REFERENCE_FEATURE_CONTAINER) ?
+                params.get(Parameter.REFERENCE_FEATURE_CONTAINER, FeatureContainer.class) :
+                params.get(Parameter.REFERENCE_FILE, File.class);
+        if (reference == null) throw new MassCascadeException("No Obiwarp reference given.");
         featureContainer = params.get(Parameter.FEATURE_CONTAINER, FeatureContainer.class);
 
         gapInit = params.get(Parameter.GAP_INIT, Double.class);
         gapExt = params.get(Parameter.GAP_EXTEND, Double.class);
         response = params.get(Parameter.RESPONSE, Double.class);
-        executable = params.get(Parameter.EXECUTABLE, String.class);
 
         double mzBinSize = params.get(Parameter.BIN_WIDTH_MZ, Double.class);
         Range mzRange = params.get(Parameter.MZ_RANGE, ExtendableRange.class);
@@ -118,6 +126,8 @@ public class Obiwarp extends CallableTask {
         Range timeRange = params.get(Parameter.TIME_RANGE, ExtendableRange.class);
 
         obiwarpHelper = new ObiwarpHelper(mzBinSize, mzRange, timeBinSize, timeRange);
+        binning = mzBinSize + "," + mzRange.getLowerBounds() + "," + mzRange.getUpperBounds() + "," + timeBinSize +
+                "," + timeRange.getLowerBounds() + "," + timeRange.getUpperBounds();
         idToTimeDiff = new HashMap<>();
     }
 
@@ -134,8 +144,8 @@ public class Obiwarp extends CallableTask {
         FeatureContainer outFeatureContainer = featureContainer.getBuilder().newInstance(FeatureContainer.class, id,
                 featureContainer.getIonMode(), featureContainer.getWorkingDirectory());
 
-        File profFile = obiwarpHelper.buildLmataFile(featureContainer);
-        double[] alignedTimes = align(profFile);
+        double[] alignedTimes = getAligner().align(obiwarpHelper.buildMatrix(featureContainer), response, gapInit,
+                gapExt);
 
         for (Feature feature : featureContainer) {
 
@@ -161,52 +171,56 @@ public class Obiwarp extends CallableTask {
     }
 
     /**
-     * Executes the Obiwarp binary using the parameters defined by the parameter map.
+     * Returns the aligner for the reference. The reference matrix is built on first use and cached. Concurrent tasks
+     * with the same reference wait for the first task to build the matrix, tasks with other references are not
+     * blocked.
      *
-     * @param file the Obiwarp binary
-     * @return the old to aligned times data map
+     * @return the aligner
      */
-    private double[] align(File file) {
+    private ObiwarpAligner getAligner() {
 
-        BufferedInputStream bufStream = null;
-        double[] alignedTimes = new double[obiwarpHelper.getNTimeBins()];
+        // lmata files carry their own time bins
+        final List<Object> key = (reference instanceof File) ?
+                Arrays.<Object>asList(((File) reference).getAbsolutePath()) : Arrays.asList(reference, binning);
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(executable);
-            commands.add("-r");
-            commands.add(response + "");
-            commands.add("-g");
-            commands.add(gapInit + "," + gapExt);
-            commands.add(referenceFile.getAbsolutePath());
-            commands.add(file.getAbsolutePath());
-            ProcessBuilder pb = new ProcessBuilder(commands);
-            Process process = pb.start();
-
-            InputStream inputStream = process.getInputStream();
-            bufStream = new BufferedInputStream(inputStream);
-
-            TextUtils tx = new TextUtils();
-            Float number;
-            int index = 0;
-            while ((number = tx.readNumberFromStream(bufStream)) != null) {
-                alignedTimes[index++] = number;
-            }
+        Future<ObiwarpAligner> future = ALIGNERS.get(key);
+        if (future == null) {
+            FutureTask<ObiwarpAligner> task = new FutureTask<>(new Callable<ObiwarpAligner>() {
 
-            try {
-                process.waitFor();
-                process.destroy();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                @Override
+                public ObiwarpAligner call() {
+
+                    if (reference instanceof File) return ObiwarpAligner.fromLmataFile((File) reference);
+
+                    float[][] matrix = obiwarpHelper.buildMatrix((FeatureContainer) reference);
+                    return new ObiwarpAligner(matrix, obiwarpHelper.getTimes());
+                }
+            });
+            future = ALIGNERS.putIfAbsent(key, task);
+            if (future == null) {
+                future = task;
+                task.run();
             }
-        } catch (IOException exception) {
-            LOGGER.log(Level.ERROR, "Obiwarp process error: " + exception.getMessage());
-        } finally {
-            TextUtils.close(bufStream);
-            file.delete();
         }
 
-        return alignedTimes;
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new MassCascadeException("Interrupted while preparing the Obiwarp reference.");
+        } catch (ExecutionException exception) {
+            // failed references are prepared again by the next task
+            ALIGNERS.remove(key, future);
+            throw new MassCascadeException("Obiwarp reference could not be prepared: " +
+                    exception.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Releases all prepared reference matrices. Should be called once all alignments of a run are done.
+     */
+    public static void clearAligners() {
+        ALIGNERS.clear();
     }
 
     /**
@@ -219,8 +233,8 @@ public class Obiwarp extends CallableTask {
     private double getInterpolatedTimeValue(double time, double[] alignedTimes) {
 
         double accTimeBin = obiwarpHelper.getAccurateTimeBin(time);
-        double floorTimeBin = FastMath.floor(accTimeBin);
-        double ceilTimeBin = FastMath.ceil(accTimeBin);
+        double floorTimeBin = FastMath.max(0, FastMath.min(alignedTimes.length - 1, FastMath.floor(accTimeBin)));
+        double ceilTimeBin = FastMath.max(0, FastMath.min(alignedTimes.length - 1, FastMath.ceil(accTimeBin)));
 
         LinearEquation lq = new LinearEquation(new XYPoint(floorTimeBin, alignedTimes[(int) floorTimeBin]),
                 new XYPoint(ceilTimeBin, alignedTimes[(int) ceilTimeBin]));
@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.alignment;
+
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.utilities.TextUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StreamTokenizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * In-memory implementation of the ordered bijective interpolated warping (Obiwarp).
+ * <i>Prince and Marcotte, Chromatographic alignment of ESI-LC-MS proteomics data sets by ordered bijective
+ * interpolated warping. (2006) Analytical Chemistry, 6140-6152</i>
+ * <p/>
+ * The aligner holds the binned reference matrix, time bins by m/z bins, with every time bin centered and normalised,
+ * so the Pearson correlation of a reference and a sample time bin reduces to a sparse dot product. The best scoring
+ * path through the correlation matrix is found by dynamic programming with affine gap penalties. The highest scoring
+ * diagonal steps of the path, selected according to the responsiveness, serve as anchors between which the sample
+ * times are interpolated linearly. An aligner is immutable after construction and can be shared between threads.
+ */
+public class ObiwarpAligner {
+
+    private static final float FACTOR_DIAG = 2f;
+    private static final float FACTOR_GAP = 1f;
+
+    private static final byte DIAG = 0;
+    private static final byte GAP_REF = 1;
+    private static final byte GAP_SAMPLE = 2;
+
+    private final float[][] reference;
+    private final double[] referenceTimes;
+    private final int nColumns;
+
+    /**
+     * Constructs an aligner for the given reference matrix.
+     *
+     * @param matrix the reference matrix, time bins by m/z bins
+     * @param times  the times of the reference time bins
+     */
+    public ObiwarpAligner(float[][] matrix, double[] times) {
+
+        if (matrix.length == 0 || matrix.length != times.length)
+            throw new MassCascadeException("Reference matrix and time bins do not match.");
+
+        nColumns = matrix[0].length;
+        referenceTimes = times.clone();
+        reference = new float[matrix.length][];
+        for (int i = 0; i < matrix.length; i++) reference[i] = standardise(matrix[i]);
+    }
+
+    /**
+     * Reads a reference matrix from a file in lmata format.
+     *
+     * @param lmataFile the lmata file
+     * @return the aligner for the reference
+     * @throws MassCascadeException if the file cannot be read
+     */
+    public static ObiwarpAligner fromLmataFile(File lmataFile) throws MassCascadeException {
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(lmataFile));
+            StreamTokenizer tokenizer = new StreamTokenizer(reader);
+            tokenizer.resetSyntax();
+            tokenizer.wordChars('!', '~');
+            tokenizer.whitespaceChars(0, ' ');
+
+            int nTimeBins = (int) nextNumber(tokenizer);
+            double[] times = new double[nTimeBins];
+            for (int i = 0; i < nTimeBins; i++) times[i] = nextNumber(tokenizer);
+
+            int nMzBins = (int) nextNumber(tokenizer);
+            for (int i = 0; i < nMzBins; i++) nextNumber(tokenizer);
+
+            float[][] matrix = new float[nTimeBins][nMzBins];
+            for (int i = 0; i < nTimeBins; i++) {
+                for (int j = 0; j < nMzBins; j++) matrix[i][j] = (float) nextNumber(tokenizer);
+            }
+
+            return new ObiwarpAligner(matrix, times);
+        } catch (IOException | NumberFormatException exception) {
+            throw new MassCascadeException("Lmata file could not be read: " + exception.getMessage(), exception);
+        } finally {
+            TextUtils.close(reader);
+        }
+    }
+
+    /**
+     * Returns the number of m/z bins of the reference.
+     *
+     * @return the number of m/z bins
+     */
+    public int getNColumns() {
+        return nColumns;
+    }
+
+    /**
+     * Aligns a sample matrix to the reference.
+     *
+     * @param sample   the sample matrix, time bins by m/z bins
+     * @param response the responsiveness of the warping [0 - 100]; 0 gives a linear warp between the start and end
+     *                 points, 100 uses all anchors of the path
+     * @param gapInit  the penalty for initiating a gap
+     * @param gapExt   the penalty for extending a gap
+     * @return the aligned reference time of every sample time bin
+     */
+    public double[] align(float[][] sample, double response, double gapInit, double gapExt) {
+
+        int nSample = sample.length;
+        if (nSample == 0) return new double[0];
+
+        // sparse sample rows scaled by the inverse norm of the centered row
+        int[][] indices = new int[nSample][];
+        float[][] values = new float[nSample][];
+        for (int j = 0; j < nSample; j++) {
+            if (sample[j].length != nColumns)
+                throw new MassCascadeException("Sample and reference m/z bins do not match.");
+            sparsify(sample[j], j, indices, values);
+        }
+
+        float[][] scores = scoreMatrix(indices, values);
+        int[][] path = findPath(scores, (float) gapInit, (float) gapExt);
+        int[][] anchors = selectAnchors(path, scores, response);
+
+        return interpolate(anchors, nSample);
+    }
+
+    /**
+     * Computes the correlation of every reference and sample time bin.
+     */
+    private float[][] scoreMatrix(int[][] indices, float[][] values) {
+
+        float[][] scores = new float[reference.length][indices.length];
+        for (int i = 0; i < reference.length; i++) {
+            float[] refRow = reference[i];
+            float[] scoreRow = scores[i];
+            for (int j = 0; j < indices.length; j++) {
+                int[] index = indices[j];
+                float[] value = values[j];
+                float dot = 0;
+                for (int k = 0; k < index.length; k++) dot += refRow[index[k]] * value[k];
+                scoreRow[j] = dot;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Finds the best scoring global path using affine gap penalties. Returns the path as list of reference index,
+     * sample index and move type from start to end.
+     */
+    private int[][] findPath(float[][] scores, float gapInit, float gapExt) {
+
+        int n = reference.length;
+        int m = scores[0].length;
+
+        float[] diag = new float[m];
+        float[] gapRef = new float[m];
+        float[] gapSample = new float[m];
+        float[] prevDiag = new float[m];
+        float[] prevGapRef = new float[m];
+        float[] prevGapSample = new float[m];
+
+        // predecessor move of every cell and move
+        byte[][] tbDiag = new byte[n][m];
+        byte[][] tbGapRef = new byte[n][m];
+        byte[][] tbGapSample = new byte[n][m];
+
+        float negInf = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            float[] scoreRow = scores[i];
+            for (int j = 0; j < m; j++) {
+
+                float score = scoreRow[j];
+
+                if (i == 0 && j == 0) {
+                    diag[j] = FACTOR_DIAG * score;
+                    gapRef[j] = negInf;
+                    gapSample[j] = negInf;
+                    continue;
+                }
+
+                // diagonal step from (i - 1, j - 1)
+                if (i > 0 && j > 0) {
+                    byte move = best(prevDiag[j - 1], prevGapRef[j - 1], prevGapSample[j - 1]);
+                    diag[j] = FACTOR_DIAG * score + value(move, prevDiag[j - 1], prevGapRef[j - 1],
+                            prevGapSample[j - 1]);
+                    tbDiag[i][j] = move;
+                } else {
+                    diag[j] = negInf;
+                }
+
+                // gap step from (i - 1, j): the sample time bin matches several reference time bins
+                if (i > 0) {
+                    float fromDiag = prevDiag[j] - gapInit;
+                    float fromGapRef = prevGapRef[j] - gapExt;
+                    float fromGapSample = prevGapSample[j] - gapInit;
+                    byte move = best(fromDiag, fromGapRef, fromGapSample);
+                    gapRef[j] = FACTOR_GAP * score + value(move, fromDiag, fromGapRef, fromGapSample);
+                    tbGapRef[i][j] = move;
+                } else {
+                    gapRef[j] = negInf;
+                }
+
+                // gap step from (i, j - 1): the reference time bin matches several sample time bins
+                if (j > 0) {
+                    float fromDiag = diag[j - 1] - gapInit;
+                    float fromGapRef = gapRef[j - 1] - gapInit;
+                    float fromGapSample = gapSample[j - 1] - gapExt;
+                    byte move = best(fromDiag, fromGapRef, fromGapSample);
+                    gapSample[j] = FACTOR_GAP * score + value(move, fromDiag, fromGapRef, fromGapSample);
+                    tbGapSample[i][j] = move;
+                } else {
+                    gapSample[j] = negInf;
+                }
+            }
+
+            float[] tmp = prevDiag;
+            prevDiag = diag;
+            diag = tmp;
+            tmp = prevGapRef;
+            prevGapRef = gapRef;
+            gapRef = tmp;
+            tmp = prevGapSample;
+            prevGapSample = gapSample;
+            gapSample = tmp;
+        }
+
+        List<int[]> path = new ArrayList<>(n + m);
+        int i = n - 1;
+        int j = m - 1;
+        byte move = best(prevDiag[j], prevGapRef[j], prevGapSample[j]);
+        while (true) {
+            path.add(new int[]{i, j, move});
+            if (i == 0 && j == 0) break;
+            if (move == DIAG) {
+                move = tbDiag[i][j];
+                i--;
+                j--;
+            } else if (move == GAP_REF) {
+                move = tbGapRef[i][j];
+                i--;
+            } else {
+                move = tbGapSample[i][j];
+                j--;
+            }
+        }
+
+        Collections.reverse(path);
+        return path.toArray(new int[path.size()][]);
+    }
+
+    /**
+     * Selects the highest scoring diagonal steps of the path as anchors. The start and end of the path are always
+     * anchors. The anchors are returned in path order.
+     */
+    private int[][] selectAnchors(int[][] path, final float[][] scores, double response) {
+
+        List<int[]> diagonals = new ArrayList<>();
+        for (int k = 1; k < path.length - 1; k++) {
+            if (path[k][2] == DIAG) diagonals.add(path[k]);
+        }
+
+        Collections.sort(diagonals, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] step1, int[] step2) {
+                return Float.compare(scores[step2[0]][step2[1]], scores[step1[0]][step1[1]]);
+            }
+        });
+
+        int nAnchors = (int) Math.ceil(diagonals.size() * Math.max(0, Math.min(100, response)) / 100d);
+        List<int[]> anchors = new ArrayList<>(diagonals.subList(0, nAnchors));
+        anchors.add(path[0]);
+        anchors.add(path[path.length - 1]);
+
+        Collections.sort(anchors, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] step1, int[] step2) {
+                return (step1[1] != step2[1]) ? Integer.compare(step1[1], step2[1]) : Integer.compare(step1[0],
+                        step2[0]);
+            }
+        });
+
+        return anchors.toArray(new int[anchors.size()][]);
+    }
+
+    /**
+     * Interpolates the reference time of every sample time bin between the anchors.
+     */
+    private double[] interpolate(int[][] anchors, int nSample) {
+
+        double[] alignedTimes = new double[nSample];
+
+        int a = 0;
+        for (int j = 0; j < nSample; j++) {
+
+            while (a < anchors.length - 2 && anchors[a + 1][1] <= j) a++;
+            int[] lower = anchors[a];
+            int[] upper = anchors[Math.min(a + 1, anchors.length - 1)];
+
+            double refIndex;
+            if (upper[1] == lower[1]) refIndex = lower[0];
+            else refIndex = lower[0] + (upper[0] - lower[0]) * (double) (j - lower[1]) / (upper[1] - lower[1]);
+
+            alignedTimes[j] = getReferenceTime(refIndex);
+        }
+
+        return alignedTimes;
+    }
+
+    private double getReferenceTime(double refIndex) {
+
+        int floor = (int) Math.max(0, Math.min(referenceTimes.length - 1, Math.floor(refIndex)));
+        int ceil = Math.min(referenceTimes.length - 1, floor + 1);
+        double fraction = refIndex - floor;
+        return referenceTimes[floor] + (referenceTimes[ceil] - referenceTimes[floor]) * fraction;
+    }
+
+    private static byte best(float diag, float gapRef, float gapSample) {
+
+        if (diag >= gapRef && diag >= gapSample) return DIAG;
+        return (gapRef >= gapSample) ? GAP_REF : GAP_SAMPLE;
+    }
+
+    private static float value(byte move, float diag, float gapRef, float gapSample) {
+        return (move == DIAG) ? diag : (move == GAP_REF) ? gapRef : gapSample;
+    }
+
+    /**
+     * Centers a row and scales it to unit norm. Rows without variance are set to zero.
+     */
+    private static float[] standardise(float[] row) {
+
+        double mean = 0;
+        for (float value : row) mean += value;
+        mean /= row.length;
+
+        double norm = 0;
+        for (float value : row) norm += (value - mean) * (value - mean);
+        norm = Math.sqrt(norm);
+
+        float[] standardised = new float[row.length];
+        if (norm == 0) return standardised;
+        for (int k = 0; k < row.length; k++) standardised[k] = (float) ((row[k] - mean) / norm);
+        return standardised;
+    }
+
+    /**
+     * Stores the non-zero values of a sample row scaled by the inverse norm of the centered row. Since the centered
+     * reference rows sum up to zero, the sample mean does not contribute to the correlation.
+     */
+    private static void sparsify(float[] row, int j, int[][] indices, float[][] values) {
+
+        int nonZero = 0;
+        double mean = 0;
+        for (float value : row) {
+            mean += value;
+            if (value != 0) nonZero++;
+        }
+        mean /= row.length;
+
+        double norm = 0;
+        for (float value : row) norm += (value - mean) * (value - mean);
+        norm = Math.sqrt(norm);
+
+        indices[j] = new int[(norm == 0) ? 0 : nonZero];
+        values[j] = new float[indices[j].length];
+        if (norm == 0) return;
+
+        int n = 0;
+        for (int k = 0; k < row.length; k++) {
+            if (row[k] == 0) continue;
+            indices[j][n] = k;
+            values[j][n] = (float) (row[k] / norm);
+            n++;
+        }
+    }
+
+    private static double nextNumber(StreamTokenizer tokenizer) throws IOException {
+
+        if (tokenizer.nextToken() != StreamTokenizer.TT_WORD) throw new IOException("Unexpected end of file.");
+        return Double.parseDouble(tokenizer.sval);
+    }
+}
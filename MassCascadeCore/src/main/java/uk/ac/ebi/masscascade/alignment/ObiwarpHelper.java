@@ -39,7 +39,7 @@ import java.io.IOException;
 
 /**
  * Helper class for the Obiwarp task. The class provides methods to generate mz and time bins from the list of features
- * to be aligned and converts <link> FeatureContainer </link> into lmata files.
+ * to be aligned and converts <link> FeatureContainer </link> into binned intensity matrices or lmata files.
  */
 public class ObiwarpHelper {
 
@@ -65,28 +65,43 @@ public class ObiwarpHelper {
     }
 
     /**
-     * Builds a lmata file from the feature container.
+     * Builds the binned intensity matrix, time bins by m/z bins, of the feature container.
      *
      * @param container the feature container
-     * @return the lmata file
+     * @return the intensity matrix
      */
-    public File buildLmataFile(FeatureContainer container) {
+    public float[][] buildMatrix(FeatureContainer container) {
 
-        int nMzBins = (int) FastMath.ceil((mzRange.getUpperBounds() - mzRange.getLowerBounds()) / mzBinSize);
-
-        double zMax = 0;
-        double[][] lmataArray = new double[nTimeBins][nMzBins];
+        float[][] matrix = new float[nTimeBins][getNMzBins()];
         for (Feature feature : container) {
-            int mzBin = (int) FastMath.floor((feature.getMz() - mzRange.getLowerBounds()) / mzBinSize);
+            int mzBin = getMzBin(feature.getMz());
             for (XYZPoint dp : feature.getData()) {
-                int timeBin = (int) FastMath.floor((dp.x - timeRange.getLowerBounds()) / timeBinSize);
+                int timeBin = getTimeBin(dp.x);
                 if (timeBin < 0) timeBin = 0;
                 if (timeBin >= nTimeBins) timeBin = nTimeBins - 1;
-                lmataArray[timeBin][mzBin] += dp.z;
-                if (lmataArray[timeBin][mzBin] > zMax) zMax = lmataArray[timeBin][mzBin];
+                matrix[timeBin][mzBin] += dp.z;
             }
         }
 
+        return matrix;
+    }
+
+    /**
+     * Builds a lmata file from the feature container.
+     *
+     * @param container the feature container
+     * @return the lmata file
+     */
+    public File buildLmataFile(FeatureContainer container) {
+
+        int nMzBins = getNMzBins();
+
+        float[][] lmataArray = buildMatrix(container);
+        double zMax = 0;
+        for (float[] row : lmataArray) {
+            for (float intensity : row) if (intensity > zMax) zMax = intensity;
+        }
+
         String path;
         if (container.getWorkingDirectory().isEmpty()) path = System.getProperty("java.io.tmpdir");
         else path = container.getWorkingDirectory();
@@ -139,4 +154,16 @@ public class ObiwarpHelper {
     public int getNTimeBins() {
         return nTimeBins;
     }
+
+    public int getNMzBins() {
+        return (int) FastMath.ceil((mzRange.getUpperBounds() - mzRange.getLowerBounds()) / mzBinSize);
+    }
+
+    public double[] getTimes() {
+
+        double[] times = new double[nTimeBins];
+        for (int binIndex = 0; binIndex < nTimeBins; binIndex++)
+            times[binIndex] = timeRange.getLowerBounds() + (binIndex * timeBinSize);
+        return times;
+    }
 }
@@ -22,29 +22,23 @@
 
 package uk.ac.ebi.masscascade.background;
 
-import com.google.common.collect.TreeMultimap;
 import uk.ac.ebi.masscascade.core.scan.ScanLevel;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
-import uk.ac.ebi.masscascade.interfaces.Range;
 import uk.ac.ebi.masscascade.interfaces.Scan;
-import uk.ac.ebi.masscascade.interfaces.Trace;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
-import uk.ac.ebi.masscascade.utilities.DataUtils;
 import uk.ac.ebi.masscascade.utilities.ScanUtils;
-import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
-import uk.ac.ebi.masscascade.utilities.range.SimpleRange;
-import uk.ac.ebi.masscascade.utilities.range.ToleranceRange;
-import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.TraceIndex;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZTrace;
 
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class implementing background reduction using a blank control template.<br />
@@ -70,10 +64,7 @@ public class BackgroundSubtraction extends CallableTask {
     private ScanContainer scanContainer;
     private ScanContainer bgScanContainer;
 
-    private TreeMultimap<Range, Trace> reference;
-
-    private final TreeSet<Trace> traces = new TreeSet<>();
-    private final TreeSet<Trace> tracesExtended = new TreeSet<>();
+    private ReferenceTraceIndex reference;
 
     /**
      * Constructs a background subtraction task.
@@ -103,7 +94,7 @@ public class BackgroundSubtraction extends CallableTask {
         intensityScale = params.get(Parameter.SCALE_FACTOR, Double.class);
         scanContainer = params.get(Parameter.SCAN_CONTAINER, ScanContainer.class);
         bgScanContainer = params.get(Parameter.REFERENCE_SCAN_CONTAINER, ScanContainer.class);
-        buildReferenceMap();
+        buildReferenceIndex();
     }
 
     /**
@@ -115,7 +106,7 @@ public class BackgroundSubtraction extends CallableTask {
     @Override
     public ScanContainer call() {
 
-        if (reference == null) buildReferenceMap();
+        if (reference == null) buildReferenceIndex();
 
         // prepares the new scan container
         String id = scanContainer.getId() + IDENTIFIER;
@@ -132,190 +123,150 @@ public class BackgroundSubtraction extends CallableTask {
     }
 
     /**
-     * Subtracts the background from the scan container using the <code> Parameter.REFERENCE_SCAN_MAP </code>.
+     * Subtracts the background from the scan container using the reference trace index.
      *
      * @param outScanContainer the output scan container
      */
     private void subtractBackground(final ScanContainer outScanContainer) {
 
         for (Scan scan : scanContainer) {
-            double rt = scan.getRetentionTime();
-
-            Range timeRange = new ExtendableRange(rt - timeWindow, rt + timeWindow);
-
-            TreeSet<Trace> referenceSlice = new TreeSet<Trace>();
-            for (Range range : reference.keySet()) {
-                if (isOverlap(timeRange, range)) {
-                    for (Trace trace : reference.get(range)) {
-                        double avg = trace.getAvg();
-                        Trace avgTrace = new XYZTrace(avg, ((XYZTrace) trace).getData(), avg);
-                        if (referenceSlice.contains(avgTrace)) {
-                            avg += 0.00000001;
-                            avgTrace = new XYZTrace(avg, ((XYZTrace) trace).getData(), avg);
-                        }
-                        referenceSlice.add(avgTrace);
-                    }
-                }
-            }
 
-            XYList processedData = new XYList();
+            double rt = scan.getRetentionTime();
+            double lower = rt - timeWindow;
+            double upper = rt + timeWindow;
 
-            for (XYPoint dp : scan.getData()) {
+            XYArray data = scan.getDataArray();
+            double[] xs = data.getXs();
+            double[] ys = data.getYs();
+            int size = data.size();
 
-                if (referenceSlice.isEmpty()) {
-                    processedData.add(dp);
-                    continue;
-                }
+            if (reference.select(rt) == 0) {
+                outScanContainer.addScan(scan);
+                continue;
+            }
 
-                Trace trace = new XYZTrace(dp, rt);
-                Trace floorValue = referenceSlice.floor(trace);
-                Trace ceilingValue = referenceSlice.higher(trace);
+            double[] processedXs = new double[size];
+            double[] processedYs = new double[size];
+            int n = 0;
 
-                if (floorValue == null && ceilingValue == null) {
-                    processedData.add(dp);
-                    continue;
-                }
+            for (int i = 0; i < size; i++) {
 
-                double deltaFloor = (floorValue != null) ? (trace.getAnchor() - floorValue.getAvg()) : Double.MAX_VALUE;
-                double deltaCeiling =
-                        (ceilingValue != null) ? (ceilingValue.getAvg() - trace.getAnchor()) : Double.MAX_VALUE;
+                double mz = xs[i];
+                double intensity = ys[i];
 
-                XYZTrace refTrace = (XYZTrace) ((deltaFloor <= deltaCeiling) ? floorValue : ceilingValue);
+                int refTrace = reference.closest(mz);
+                double avg = reference.getAvg(refTrace);
 
-                if (!(new ToleranceRange(dp.x, ppm).contains(refTrace.getAvg()))) {
-                    processedData.add(dp);
+                // the closest reference trace must be within the tolerance range of the signal
+                double tolerance = mz * ppm / Constants.PPM;
+                if (avg < mz - tolerance || avg >= mz + tolerance) {
+                    processedXs[n] = mz;
+                    processedYs[n++] = intensity;
                     continue;
                 }
 
-                double maxIntensity = 0;
-                for (XYZPoint refDp : refTrace) {
-                    if (timeRange.contains(refDp.x) && refDp.z > maxIntensity) maxIntensity = refDp.z;
+                double scaledIntensity = intensity - reference.getMaxIntensity(refTrace, lower, upper) * intensityScale;
+                if (scaledIntensity > 0) {
+                    processedXs[n] = mz;
+                    processedYs[n++] = scaledIntensity;
                 }
-
-                double scaledIntensity = dp.y - (maxIntensity * intensityScale);
-                if (scaledIntensity > 0) processedData.add(new XYPoint(dp.x, scaledIntensity));
             }
 
-            Scan processedScan = ScanUtils.getModifiedScan(scan, processedData);
+            Scan processedScan = ScanUtils.getModifiedScan(scan, new XYArray(processedXs, processedYs, n));
             outScanContainer.addScan(processedScan);
         }
     }
 
     /**
-     * Tests if two ranges overlap.
-     *
-     * @param range1 the first range
-     * @param range2 the second range
-     * @return if the two ranges overlap
+     * Builds the reference trace index to be used for background subtraction.
      */
-    private boolean isOverlap(Range range1, Range range2) {
-        return (range1.getLowerBounds() <= range2.getUpperBounds() && range1.getUpperBounds() >= range2
-                .getLowerBounds());
-    }
+    private void buildReferenceIndex() {
 
-    /**
-     * Builds the reference map to be used for background subtraction.
-     */
-    private void buildReferenceMap() {
-
-        reference = TreeMultimap.create();
+        TraceIndex<XYZTrace> traces = new TraceIndex<>();
+        List<XYZTrace> referenceTraces = new ArrayList<>();
 
         for (Scan scan : bgScanContainer) {
 
             if (traces.isEmpty()) {
-                for (XYPoint dataPoint : scan.getData())
-                    traces.add(new XYZTrace(dataPoint, scan.getRetentionTime()));
-                continue;
+                XYArray data = scan.getDataArray();
+                for (int i = 0; i < data.size(); i++)
+                    traces.add(new XYZTrace(data.getPoint(i), scan.getRetentionTime()), 0);
+            } else {
+                searchExistingTraces(traces, scan);
             }
 
-            searchExistingTraces(scan);
-            updateTraceMaps();
+            traces.commit();
+            for (int i = 0; i < traces.closedSize(); i++) referenceTraces.add(traces.getClosed(i));
         }
 
-        for (Trace trace : traces) reference.put(getTimeRange((XYZTrace) trace), trace);
+        traces.closeAll();
+        for (int i = 0; i < traces.closedSize(); i++) referenceTraces.add(traces.getClosed(i));
+
+        reference = new ReferenceTraceIndex(referenceTraces, timeWindow);
     }
 
     /**
      * Takes the scan data and searches the existing traces for bins for every data point in the scan.
      *
-     * @param scan the scan to be binned
+     * @param traces the open traces
+     * @param scan   the scan to be binned
      */
-    private void searchExistingTraces(Scan scan) {
+    private void searchExistingTraces(TraceIndex<XYZTrace> traces, Scan scan) {
 
-        XYList dataPoints = scan.getData();
+        XYArray data = scan.getDataArray();
+        double[] xs = data.getXs();
+        int size = data.size();
+        double rt = scan.getRetentionTime();
 
-        for (int signalPos = 0; signalPos < dataPoints.size(); signalPos++) {
+        for (int signalPos = 0; signalPos < size; signalPos++) {
 
-            XYPoint signal = dataPoints.get(signalPos);
-            double nextSignal =
-                    (signalPos == dataPoints.size() - 1) ? Double.MAX_VALUE : dataPoints.get(signalPos + 1).x;
+            double mz = xs[signalPos];
+            double nextSignal = (signalPos == size - 1) ? Double.MAX_VALUE : xs[signalPos + 1];
 
-            XYZTrace signalTrace = new XYZTrace(signal, scan.getRetentionTime());
-            XYZTrace closestTrace = (XYZTrace) DataUtils.getClosestValue(signalTrace, traces);
+            int closest = traces.closest(mz);
 
             // (1) signal m/z not in the map >> map empty || null
-            if (closestTrace == null) addTrace(signalTrace);
+            if (closest == -1) addTrace(traces, data.getPoint(signalPos), rt);
                 // (2) signal m/z is in the map >> exact match
-            else if (traces.contains(signalTrace)) {
-                if (!tracesExtended.contains(signalTrace)) appendTrace(signalTrace, closestTrace);
+            else if (traces.containsAnchor(mz)) {
+                if (!traces.isExtended(traces.floor())) appendTrace(traces, closest, data.getPoint(signalPos), rt);
                 // (3) signal m/z is in the map >> closest key
-            } else if (Math.abs(closestTrace.getAvg() - signal.x) <= Math.abs(closestTrace.getAvg() - nextSignal)) {
-                // check if the signal m/z is within the tolerance range and was not already extended
-                if (new ToleranceRange(closestTrace.getAvg(), ppm).contains(signal.x) && !tracesExtended.contains(
-                        closestTrace)) appendTrace(signalTrace, closestTrace);
-                else addTrace(signalTrace);
-                // (4) signal m/z is outside the tolerance range of the closest key in the map
-            } else addTrace(signalTrace);
-        }
-    }
-
-    /**
-     * After every iteration, i.e., scan, the trace map are updated to eliminate non-extended profiles.
-     */
-    private void updateTraceMaps() {
-
-        Iterator<Trace> iterator = traces.iterator();
-        Trace trace;
-        while (iterator.hasNext()) {
-            trace = iterator.next();
-            if (!tracesExtended.contains(trace)) {
-                reference.put(getTimeRange((XYZTrace) trace), trace);
-                iterator.remove();
+            } else {
+                double avg = traces.getAvg(closest);
+                if (Math.abs(avg - mz) <= Math.abs(avg - nextSignal)) {
+                    // check if the signal m/z is within the tolerance range and was not already extended
+                    double tolerance = avg * ppm / Constants.PPM;
+                    if (mz >= avg - tolerance && mz < avg + tolerance && !traces.isExtended(closest))
+                        appendTrace(traces, closest, data.getPoint(signalPos), rt);
+                    else addTrace(traces, data.getPoint(signalPos), rt);
+                    // (4) signal m/z is outside the tolerance range of the closest key in the map
+                } else addTrace(traces, data.getPoint(signalPos), rt);
             }
         }
-
-        traces.addAll(tracesExtended);
-        tracesExtended.clear();
     }
 
     /**
-     * Adds a trace to the trace map.
+     * Adds a trace to the trace index.
      *
-     * @param trace the trace
+     * @param traces the open traces
+     * @param signal the signal starting the trace
+     * @param rt     the retention time of the signal
      */
-    private void addTrace(XYZTrace trace) {
-        tracesExtended.add(trace);
+    private void addTrace(TraceIndex<XYZTrace> traces, XYPoint signal, double rt) {
+        traces.add(new XYZTrace(signal, rt), 0);
     }
 
     /**
-     * Appends a trace to an existing trace.
+     * Appends a signal to an existing trace.
      *
-     * @param signalTrace  the new trace
-     * @param closestTrace the trace to be appended to
+     * @param traces the open traces
+     * @param pos    the position of the trace to be appended to
+     * @param signal the signal
+     * @param rt     the retention time of the signal
      */
-    private void appendTrace(XYZTrace signalTrace, XYZTrace closestTrace) {
-
-        closestTrace.add(signalTrace.get(0));
-        tracesExtended.add(closestTrace);
-    }
+    private void appendTrace(TraceIndex<XYZTrace> traces, int pos, XYPoint signal, double rt) {
 
-    /**
-     * Returns a time range for a trace based on the trace's retention time.
-     *
-     * @param trace the trace
-     * @return the time range
-     */
-    private Range getTimeRange(XYZTrace trace) {
-        return new SimpleRange(trace.get(0).x, trace.get(trace.size() - 1).x);
+        traces.get(pos).add(new XYZPoint(rt, signal.x, signal.y));
+        traces.extend(pos);
     }
 }
@@ -22,9 +22,11 @@
 package uk.ac.ebi.masscascade.background;
 
 import org.apache.commons.math3.util.FastMath;
+import uk.ac.ebi.masscascade.core.feature.FeaturePipeline;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureStreamTask;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
@@ -32,6 +34,8 @@ import uk.ac.ebi.masscascade.utilities.xyz.XYZList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Baseline subtraction according to the vHGW Top-Hat algorithm (morphological filter).
@@ -43,7 +47,7 @@ import java.util.Arrays;
  * <li>Parameter <code> FEATURE_CONTAINER </code>- The input feature container.</li>
  * </ul>
  */
-public class BaselineSubtraction extends CallableTask {
+public class BaselineSubtraction extends CallableTask implements FeatureStreamTask {
 
     private int halfWindowWidth;
     private FeatureContainer featureContainer;
@@ -87,16 +91,18 @@ public class BaselineSubtraction extends CallableTask {
     public FeatureContainer call() {
 
         String id = featureContainer.getId() + IDENTIFIER;
-        FeatureContainer outFeatureContainer = featureContainer.getBuilder().newInstance(FeatureContainer.class, id,
-                featureContainer.getIonMode(), featureContainer.getWorkingDirectory());
-
-        for (Feature feature : featureContainer) {
-            Feature bcFeature = applyTopHat(feature);
-            outFeatureContainer.addFeature(bcFeature);
-        }
+        return new FeaturePipeline(Collections.singletonList(this)).run(featureContainer, id);
+    }
 
-        outFeatureContainer.finaliseFile();
-        return outFeatureContainer;
+    /**
+     * Subtracts the baseline from a single feature.
+     *
+     * @param feature           the next feature
+     * @param processedFeatures the result list
+     */
+    @Override
+    public void process(Feature feature, List<Feature> processedFeatures) {
+        processedFeatures.add(applyTopHat(feature));
     }
 
     /**
@@ -22,15 +22,20 @@
 
 package uk.ac.ebi.masscascade.background;
 
+import uk.ac.ebi.masscascade.core.feature.FeaturePipeline;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureStreamTask;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.properties.Score;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZList;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Class for feature selection using the CODA algorithm.
  * <p/>
@@ -43,7 +48,7 @@ import uk.ac.ebi.masscascade.utilities.xyz.XYZList;
  * </ul>
  */
 @Deprecated
-public class CodaFilter extends CallableTask {
+public class CodaFilter extends CallableTask implements FeatureStreamTask {
 
     private double mcqThreshold;
     private int windowSize;
@@ -87,19 +92,23 @@ public class CodaFilter extends CallableTask {
     public FeatureContainer call() {
 
         String id = featureContainer.getId() + IDENTIFIER;
-        FeatureContainer outFeatureContainer = featureContainer.getBuilder().newInstance(FeatureContainer.class, id,
-                featureContainer.getIonMode(), featureContainer.getWorkingDirectory());
-
-        for (Feature feature : featureContainer) {
-            double mcq = getMCQ(feature.getData());
-            if (mcq >= mcqThreshold) {
-                feature.setProperty(new Score("mcq", mcq));
-                outFeatureContainer.addFeature(feature);
-            }
-        }
+        return new FeaturePipeline(Collections.singletonList(this)).run(featureContainer, id);
+    }
 
-        outFeatureContainer.finaliseFile();
-        return outFeatureContainer;
+    /**
+     * Scores a single feature and keeps it if it is above the threshold.
+     *
+     * @param feature           the next feature
+     * @param processedFeatures the result list
+     */
+    @Override
+    public void process(Feature feature, List<Feature> processedFeatures) {
+
+        double mcq = getMCQ(feature.getData());
+        if (mcq >= mcqThreshold) {
+            feature.setProperty(new Score("mcq", mcq));
+            processedFeatures.add(feature);
+        }
     }
 
     /**
@@ -22,15 +22,20 @@
 
 package uk.ac.ebi.masscascade.background;
 
+import uk.ac.ebi.masscascade.core.feature.FeaturePipeline;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureStreamTask;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.properties.Score;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZList;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Class for feature selection using the Durbin-Watson criterion.
  * <p/>
@@ -41,7 +46,7 @@ import uk.ac.ebi.masscascade.utilities.xyz.XYZList;
  * <li>Parameter <code> FEATURE_CONTAINER </code>- The input feature container.</li>
  * </ul>
  */
-public class DurbinWatsonFilter extends CallableTask {
+public class DurbinWatsonFilter extends CallableTask implements FeatureStreamTask {
 
     private double dwThreshold;
     private FeatureContainer featureContainer;
@@ -83,19 +88,23 @@ public class DurbinWatsonFilter extends CallableTask {
     public FeatureContainer call() {
 
         String id = featureContainer.getId() + IDENTIFIER;
-        FeatureContainer outFeatureContainer = featureContainer.getBuilder().newInstance(FeatureContainer.class, id,
-                featureContainer.getIonMode(), featureContainer.getWorkingDirectory());
-
-        for (Feature feature : featureContainer) {
-            double dw = getDurbinWatson(feature.getData());
-            if (dw <= dwThreshold) {
-                feature.setProperty(new Score("dw", dw));
-                outFeatureContainer.addFeature(feature);
-            }
-        }
+        return new FeaturePipeline(Collections.singletonList(this)).run(featureContainer, id);
+    }
 
-        outFeatureContainer.finaliseFile();
-        return outFeatureContainer;
+    /**
+     * Scores a single feature and keeps it if it is below the threshold.
+     *
+     * @param feature           the next feature
+     * @param processedFeatures the result list
+     */
+    @Override
+    public void process(Feature feature, List<Feature> processedFeatures) {
+
+        double dw = getDurbinWatson(feature.getData());
+        if (dw <= dwThreshold) {
+            feature.setProperty(new Score("dw", dw));
+            processedFeatures.add(feature);
+        }
     }
 
     /**
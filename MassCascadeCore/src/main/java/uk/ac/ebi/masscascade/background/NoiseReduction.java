@@ -22,42 +22,41 @@
 
 package uk.ac.ebi.masscascade.background;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.TreeMultimap;
-import uk.ac.ebi.masscascade.core.scan.ScanLevel;
 import uk.ac.ebi.masscascade.core.scan.ScanImpl;
+import uk.ac.ebi.masscascade.core.scan.ScanPipeline;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
-import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.interfaces.Scan;
-import uk.ac.ebi.masscascade.interfaces.Trace;
+import uk.ac.ebi.masscascade.interfaces.ScanStreamTask;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
-import uk.ac.ebi.masscascade.utilities.DataUtils;
-import uk.ac.ebi.masscascade.utilities.xyz.XYTrace;
-import uk.ac.ebi.masscascade.utilities.range.ToleranceRange;
+import uk.ac.ebi.masscascade.utilities.xyz.TraceIndex;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+import uk.ac.ebi.masscascade.utilities.xyz.XYTrace;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.List;
 
 /**
  * Class for reducing random noise.
  * <p/>
  * For every m/z in every scan, the algorithm checks m/z values in subsequent scans for similar values within the
  * tolerance window. Only values that are part of a m/z trace exceeding the minimum trace width are kept.
+ * <p/>
+ * Scans are streamed: a scan is released as soon as all traces it takes part in have either reached the minimum
+ * trace width or have been closed, i.e. with a delay of the minimum trace width.
  * <ul>
  * <li>Parameter <code> MIN_FEATURE_WIDTH </code>- The scan window in scans.</li>
  * <li>Parameter <code> MZ_WINDOW_PPM </code>- The mass window in ppm.</li>
  * <li>Parameter <code> SCAN_CONTAINER </code>- The input scan container.</li>
  * </ul>
  */
-public class NoiseReduction extends CallableTask {
+public class NoiseReduction extends CallableTask implements ScanStreamTask {
 
     // task variables
     private int minTraceWidth;
@@ -65,9 +64,13 @@ public class NoiseReduction extends CallableTask {
 
     private ScanContainer scanContainer;
 
-    // m/z trace -> scan index
-    private final TreeMap<Trace, Integer> traces = new TreeMap<>();
-    private final TreeMap<Trace, Integer> tracesExtended = new TreeMap<>();
+    // open m/z traces tagged with the position of their first scan
+    private final TraceIndex<XYTrace> traces = new TraceIndex<>();
+
+    // scans that are not yet released, starting at position firstPendingPos
+    private final List<PendingScan> pendingScans = new ArrayList<>();
+    private int firstPendingPos;
+    private int scanPos;
 
     /**
      * Constructs a noise reduction task.
@@ -80,6 +83,9 @@ public class NoiseReduction extends CallableTask {
 
         super(NoiseReduction.class);
 
+        firstPendingPos = 0;
+        scanPos = -1;
+
         setParameters(params);
     }
 
@@ -108,134 +114,136 @@ public class NoiseReduction extends CallableTask {
     public ScanContainer call() {
 
         String id = scanContainer.getId() + IDENTIFIER;
-        ScanContainer outScanContainer =
-                scanContainer.getBuilder().newInstance(ScanContainer.class, id, scanContainer);
+        return new ScanPipeline(Collections.singletonList(this)).run(scanContainer, id);
+    }
 
-        Multimap<Integer, XYTrace> completedTraces = TreeMultimap.create();
+    /**
+     * Matches the signals of the next scan against the open traces and releases all scans that are complete.
+     *
+     * @param scan           the next scan
+     * @param processedScans the result list
+     */
+    @Override
+    public void process(Scan scan, List<Scan> processedScans) {
 
-        for (ScanLevel level : scanContainer.getScanLevels()) {
+        scanPos++;
+        pendingScans.add(new PendingScan(scan));
 
-            if (level.getMsn() == Constants.MSN.MS1) {
-                buildTraceMap(completedTraces);
-                buildContainer(completedTraces, outScanContainer);
-            } else for (Scan scan : scanContainer.iterator(level.getMsn())) outScanContainer.addScan(scan);
+        XYArray data = scan.getDataArray();
+        if (traces.isEmpty()) {
+            for (int i = 0; i < data.size(); i++) addTrace(data, i);
+        } else {
+            searchExistingTraces(data);
         }
+        traces.commit();
 
-        outScanContainer.finaliseFile(scanContainer.getScanInfo().getDate());
-        return outScanContainer;
+        release(scanPos - minTraceWidth + 1, processedScans);
     }
 
-    private void buildTraceMap(Multimap<Integer, XYTrace> completedTraces) {
-
-        for (Scan scan : scanContainer) {
-
-            if (traces.isEmpty()) {
-                for (XYPoint dataPoint : scan.getData())
-                    traces.put(new XYTrace(dataPoint), scan.getIndex());
-                continue;
-            }
+    /**
+     * Releases all remaining scans and resets the task.
+     *
+     * @param processedScans the result list
+     */
+    @Override
+    public void flush(List<Scan> processedScans) {
 
-            searchExistingTraces(scan);
-            updateTraceMaps(completedTraces);
-        }
+        release(scanPos, processedScans);
+        traces.closeAll();
 
-        for (Map.Entry<Trace, Integer> entry : traces.entrySet())
-            if (entry.getKey().size() >= minTraceWidth) completedTraces.put(entry.getValue(), (XYTrace) entry.getKey());
+        firstPendingPos = 0;
+        scanPos = -1;
     }
 
-    private void searchExistingTraces(Scan scan) {
+    private void searchExistingTraces(XYArray data) {
 
-        XYList dataPoints = scan.getData();
+        double[] xs = data.getXs();
+        int size = data.size();
 
-        for (int signalPos = 0; signalPos < dataPoints.size(); signalPos++) {
+        for (int signalPos = 0; signalPos < size; signalPos++) {
 
-            XYPoint signal = dataPoints.get(signalPos);
-            double nextSignal =
-                    (signalPos == dataPoints.size() - 1) ? Double.MAX_VALUE : dataPoints.get(signalPos + 1).x;
+            double mz = xs[signalPos];
+            double nextSignal = (signalPos == size - 1) ? Double.MAX_VALUE : xs[signalPos + 1];
 
-            XYTrace signalTrace = new XYTrace(signal);
-            XYTrace closestTrace = (XYTrace) DataUtils.getClosestKey(signalTrace, traces);
+            int closest = traces.closest(mz);
 
             // (1) signal m/z not in the map >> map empty || null
-            if (closestTrace == null) addTrace(signalTrace, scan.getIndex());
+            if (closest == -1) addTrace(data, signalPos);
                 // (2) signal m/z is in the map >> exact match
-            else if (traces.containsKey(signalTrace)) {
-                if (!tracesExtended.containsKey(signalTrace)) appendTrace(signalTrace, closestTrace);
+            else if (traces.containsAnchor(mz)) {
+                if (!traces.isExtended(traces.floor())) appendTrace(data, signalPos, closest);
                 // (3) signal m/z is in the map >> closest key
-            } else if (Math.abs(closestTrace.getAvg() - signal.x) <= Math.abs(closestTrace.getAvg() - nextSignal)) {
-                // check if the signal m/z is within the tolerance range and was not already extended
-                if (new ToleranceRange(closestTrace.getAvg(), ppm).contains(signal.x) && !tracesExtended.containsKey(
-                        closestTrace)) appendTrace(signalTrace, closestTrace);
-                else addTrace(signalTrace, scan.getIndex());
-                // (4) signal m/z is outside the tolerance range of the closest key in the map
-            } else addTrace(signalTrace, scan.getIndex());
+            } else {
+                double avg = traces.getAvg(closest);
+                if (Math.abs(avg - mz) <= Math.abs(avg - nextSignal)) {
+                    // check if the signal m/z is within the tolerance range and was not already extended
+                    double tolerance = avg * ppm / Constants.PPM;
+                    if (mz >= avg - tolerance && mz < avg + tolerance && !traces.isExtended(closest))
+                        appendTrace(data, signalPos, closest);
+                    else addTrace(data, signalPos);
+                    // (4) signal m/z is outside the tolerance range of the closest key in the map
+                } else addTrace(data, signalPos);
+            }
         }
     }
 
-    private void updateTraceMaps(Multimap<Integer, XYTrace> completedTraces) {
+    private void addTrace(XYArray data, int signalPos) {
 
-        Iterator<Map.Entry<Trace, Integer>> iterator = traces.entrySet().iterator();
-        Map.Entry<Trace, Integer> entry;
-        while (iterator.hasNext()) {
-            entry = iterator.next();
-            if (!tracesExtended.containsKey(entry.getKey())) {
-                if (entry.getKey().size() >= minTraceWidth)
-                    completedTraces.put(entry.getValue(), (XYTrace) entry.getKey());
-                iterator.remove();
-            }
-        }
-
-        traces.putAll(tracesExtended);
-        tracesExtended.clear();
+        XYPoint signal = data.getPoint(signalPos);
+        traces.add(new XYTrace(signal), scanPos);
+        if (minTraceWidth <= 1) keep(signal, scanPos);
     }
 
-    private void buildContainer(Multimap<Integer, XYTrace> completedTraces, ScanContainer outScanContainer) {
+    private void appendTrace(XYArray data, int signalPos, int pos) {
 
-        Map<XYTrace, Integer> activeTraces = new HashMap<XYTrace, Integer>();
+        XYPoint signal = data.getPoint(signalPos);
+        XYTrace trace = traces.get(pos);
+        trace.add(signal);
+        traces.extend(pos);
 
-        int i;
-        XYTrace trace;
-        XYList processedData;
-        Iterator<Map.Entry<XYTrace, Integer>> iterator;
-        for (Scan scan : scanContainer) {
+        // the i-th point of a trace belongs to the i-th scan after the trace's first scan
+        int firstPos = traces.getTag(pos);
+        if (trace.size() == minTraceWidth) {
+            for (int i = 0; i < trace.size(); i++) keep(trace.get(i), firstPos + i);
+        } else if (trace.size() > minTraceWidth) {
+            keep(signal, firstPos + trace.size() - 1);
+        }
+    }
 
-            processedData = new XYList();
+    private void keep(XYPoint signal, int pos) {
+        pendingScans.get(pos - firstPendingPos).data.add(signal);
+    }
 
-            iterator = activeTraces.entrySet().iterator();
-            while (iterator.hasNext()) {
-                trace = iterator.next().getKey();
-                i = activeTraces.get(trace);
-                processedData.add(trace.get(i));
-                i++;
-                if (i < trace.size()) activeTraces.put(trace, i);
-                else iterator.remove();
-            }
+    private void release(int lastPos, List<Scan> processedScans) {
 
-            if (completedTraces.containsKey(scan.getIndex())) {
-                for (XYTrace completedTrace : completedTraces.get(scan.getIndex())) {
-                    processedData.add(completedTrace.get(0));
-                    if (completedTrace.size() > 1) activeTraces.put(completedTrace, 1);
-                }
-            }
+        int n = 0;
+        while (n < pendingScans.size() && firstPendingPos + n <= lastPos) {
 
-            if (processedData.size() == 0) continue;
-            Collections.sort(processedData);
+            PendingScan pendingScan = pendingScans.get(n++);
+            if (pendingScan.data.isEmpty()) continue;
 
-            Scan processedScan = new ScanImpl(scan.getIndex(), scan.getMsn(), scan.getIonMode(), processedData,
-                    scan.getRetentionTime(), scan.getParentScan(), scan.getParentCharge(), scan.getParentMz());
-            outScanContainer.addScan(processedScan);
-            processedScan = null;
+            Scan scan = pendingScan.scan;
+            Collections.sort(pendingScan.data);
+            processedScans.add(new ScanImpl(scan.getIndex(), scan.getMsn(), scan.getIonMode(), pendingScan.data,
+                    scan.getRetentionTime(), scan.getParentScan(), scan.getParentCharge(), scan.getParentMz()));
         }
-        activeTraces = null;
-    }
 
-    private void addTrace(XYTrace trace, int scanId) {
-        tracesExtended.put(trace, scanId);
+        pendingScans.subList(0, n).clear();
+        firstPendingPos += n;
     }
 
-    private void appendTrace(XYTrace signalTrace, XYTrace closestTrace) {
+    /**
+     * A scan waiting for its trace decisions together with the data points kept so far.
+     */
+    private static class PendingScan {
+
+        private final Scan scan;
+        private final XYList data;
 
-        closestTrace.add(signalTrace.get(0));
-        tracesExtended.put(closestTrace, traces.get(closestTrace));
+        private PendingScan(Scan scan) {
+
+            this.scan = scan;
+            data = new XYList();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.background;
+
+import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
+import uk.ac.ebi.masscascade.utilities.xyz.XYZTrace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Retention time and m/z index over the traces of a reference run.
+ * <p/>
+ * The retention time axis is divided into bins; every bin lists the traces that may overlap the time window of a scan
+ * within the bin, in m/z order. A query for a scan therefore only touches the traces near the scan's retention time.
+ * The intensities of all trace points are held in a sparse table, so the maximum intensity of a trace within a time
+ * window is looked up in constant time. Instances are not thread-safe.
+ */
+public class ReferenceTraceIndex {
+
+    private static final int MAX_BINS = 1 << 16;
+
+    private final double timeWindow;
+
+    // traces in m/z order
+    private final double[] avgs;
+    private final double[] starts;
+    private final double[] ends;
+    private final int[] offsets;
+
+    // concatenated trace points and the range maximum table of their intensities
+    private final double[] rts;
+    private final double[][] maxTable;
+
+    // trace ids per retention time bin
+    private final double rtMin;
+    private final double binWidth;
+    private final int nBins;
+    private final int[][] bins;
+
+    // traces selected by the last query in m/z order
+    private int[] selection;
+    private double[] selectionAvgs;
+    private int selectionSize;
+
+    /**
+     * Constructs the index for the given reference traces.
+     *
+     * @param traces     the reference traces with data points in retention time order
+     * @param timeWindow the time window around the retention time of a scan in seconds
+     */
+    public ReferenceTraceIndex(List<XYZTrace> traces, double timeWindow) {
+
+        this.timeWindow = timeWindow;
+
+        List<XYZTrace> sortedTraces = new ArrayList<>(traces);
+        Collections.sort(sortedTraces, new Comparator<XYZTrace>() {
+            @Override
+            public int compare(XYZTrace trace1, XYZTrace trace2) {
+                return Double.compare(trace1.getAvg(), trace2.getAvg());
+            }
+        });
+
+        int nTraces = sortedTraces.size();
+        avgs = new double[nTraces];
+        starts = new double[nTraces];
+        ends = new double[nTraces];
+        offsets = new int[nTraces + 1];
+
+        int nPoints = 0;
+        for (XYZTrace trace : sortedTraces) nPoints += trace.size();
+
+        rts = new double[nPoints];
+        double[] intensities = new double[nPoints];
+
+        double minStart = Double.MAX_VALUE;
+        double maxEnd = -Double.MAX_VALUE;
+        int n = 0;
+        for (int i = 0; i < nTraces; i++) {
+
+            XYZTrace trace = sortedTraces.get(i);
+            avgs[i] = trace.getAvg();
+            starts[i] = trace.get(0).x;
+            ends[i] = trace.get(trace.size() - 1).x;
+            offsets[i] = n;
+            for (XYZPoint dp : trace) {
+                rts[n] = dp.x;
+                intensities[n] = dp.z;
+                n++;
+            }
+
+            minStart = Math.min(minStart, starts[i]);
+            maxEnd = Math.max(maxEnd, ends[i]);
+        }
+        offsets[nTraces] = n;
+
+        maxTable = buildMaxTable(intensities);
+
+        rtMin = (nTraces == 0) ? 0 : minStart;
+        double span = (nTraces == 0) ? 0 : maxEnd - minStart;
+        double width = Math.max(timeWindow, span / MAX_BINS);
+        binWidth = (width > 0) ? width : 1;
+        nBins = (int) (span / binWidth) + 1;
+        bins = buildBins();
+
+        selection = new int[16];
+        selectionAvgs = new double[16];
+    }
+
+    /**
+     * Returns the number of indexed traces.
+     *
+     * @return the number of traces
+     */
+    public int size() {
+        return avgs.length;
+    }
+
+    /**
+     * Selects all traces overlapping the time window around the given retention time.
+     *
+     * @param rt the retention time of the scan
+     * @return the number of selected traces
+     */
+    public int select(double rt) {
+
+        double lower = rt - timeWindow;
+        double upper = rt + timeWindow;
+
+        selectionSize = 0;
+        if (avgs.length == 0) return 0;
+
+        int[] candidates = bins[getBin(rt)];
+        if (selection.length < candidates.length) {
+            selection = new int[candidates.length];
+            selectionAvgs = new double[candidates.length];
+        }
+
+        for (int id : candidates) {
+            if (lower <= ends[id] && upper >= starts[id]) {
+                selection[selectionSize] = id;
+                selectionAvgs[selectionSize] = avgs[id];
+                selectionSize++;
+            }
+        }
+
+        return selectionSize;
+    }
+
+    /**
+     * Returns the id of the selected trace whose m/z average is closest to the given m/z. Ties are resolved in favour
+     * of the lower trace.
+     *
+     * @param mz the query m/z
+     * @return the trace id or -1 if no trace is selected
+     */
+    public int closest(double mz) {
+
+        if (selectionSize == 0) return -1;
+
+        // first trace with an average greater than the m/z
+        int low = 0;
+        int high = selectionSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (selectionAvgs[mid] <= mz) low = mid + 1;
+            else high = mid;
+        }
+
+        if (low == 0) return selection[0];
+        if (low == selectionSize) return selection[low - 1];
+
+        return (mz - selectionAvgs[low - 1] <= selectionAvgs[low] - mz) ? selection[low - 1] : selection[low];
+    }
+
+    /**
+     * Returns the m/z average of a trace.
+     *
+     * @param id the trace id
+     * @return the m/z average
+     */
+    public double getAvg(int id) {
+        return avgs[id];
+    }
+
+    /**
+     * Returns the maximum intensity of a trace within the half-open time range [lower, upper).
+     *
+     * @param id    the trace id
+     * @param lower the lower time bound
+     * @param upper the upper time bound
+     * @return the maximum intensity or 0 if the trace has no data points within the range
+     */
+    public double getMaxIntensity(int id, double lower, double upper) {
+
+        int from = lowerBound(offsets[id], offsets[id + 1], lower);
+        int to = lowerBound(from, offsets[id + 1], upper);
+
+        double max = 0;
+        while (from < to) {
+            int level = Math.min(31 - Integer.numberOfLeadingZeros(to - from), maxTable.length - 1);
+            int length = 1 << level;
+            if (to - from <= 2 * length) {
+                // two overlapping blocks cover the range
+                return Math.max(max, Math.max(maxTable[level][from], maxTable[level][to - length]));
+            }
+            max = Math.max(max, maxTable[level][from]);
+            from += length;
+        }
+
+        return max;
+    }
+
+    /**
+     * Builds the sparse table of range maxima. The number of levels is bounded by the largest number of points of a
+     * trace within a time window, so every query is answered by two table entries.
+     */
+    private double[][] buildMaxTable(double[] intensities) {
+
+        int windowPoints = 1;
+        for (int i = 0; i < avgs.length; i++) {
+            int end = offsets[i];
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                while (end < offsets[i + 1] && rts[end] <= rts[j] + 2 * timeWindow) end++;
+                windowPoints = Math.max(windowPoints, end - j);
+            }
+        }
+
+        int nLevels = 32 - Integer.numberOfLeadingZeros(windowPoints);
+        double[][] table = new double[nLevels][];
+        table[0] = intensities;
+        for (int level = 1; level < nLevels; level++) {
+
+            int half = 1 << (level - 1);
+            double[] previous = table[level - 1];
+            double[] current = Arrays.copyOf(previous, previous.length);
+            for (int i = 0; i < avgs.length; i++) {
+                for (int j = offsets[i]; j + 2 * half <= offsets[i + 1]; j++) {
+                    current[j] = Math.max(previous[j], previous[j + half]);
+                }
+            }
+            table[level] = current;
+        }
+
+        return table;
+    }
+
+    /**
+     * Assigns every trace to the bins whose scans may select it. Traces are added in id, i.e. m/z order.
+     */
+    private int[][] buildBins() {
+
+        if (avgs.length == 0) return new int[0][];
+
+        int[] counts = new int[nBins];
+        for (int i = 0; i < avgs.length; i++) {
+            for (int bin = getBin(starts[i] - timeWindow); bin <= getBin(ends[i] + timeWindow); bin++) counts[bin]++;
+        }
+
+        int[][] traceBins = new int[nBins][];
+        for (int bin = 0; bin < nBins; bin++) traceBins[bin] = new int[counts[bin]];
+
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < avgs.length; i++) {
+            for (int bin = getBin(starts[i] - timeWindow); bin <= getBin(ends[i] + timeWindow); bin++)
+                traceBins[bin][counts[bin]++] = i;
+        }
+
+        return traceBins;
+    }
+
+    /**
+     * Returns the bin of a retention time. Times outside the indexed range fall into the outermost bins.
+     */
+    private int getBin(double rt) {
+
+        int bin = (int) Math.floor((rt - rtMin) / binWidth);
+        return Math.max(0, Math.min(nBins - 1, bin));
+    }
+
+    /**
+     * Returns the index of the first retention time within [from, to) that is not smaller than the given time.
+     */
+    private int lowerBound(int from, int to, double rt) {
+
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rts[mid] < rt) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
@@ -25,6 +25,7 @@ package uk.ac.ebi.masscascade.binning;
 import uk.ac.ebi.masscascade.interfaces.Range;
 import uk.ac.ebi.masscascade.interfaces.Scan;
 import uk.ac.ebi.masscascade.utilities.ScanUtils;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
@@ -77,9 +78,10 @@ public class MzBinning implements Callable<Scan> {
         double[] binXValues = new double[(int) Math.ceil(mzRange.getUpperBounds() / xWidth)];
         Double[] binYValues = new Double[binXValues.length];
 
-        for (int valueIndex = 0; valueIndex < scan.getData().size(); valueIndex++) {
+        XYArray scanData = scan.getDataArray();
+        for (int valueIndex = 0; valueIndex < scanData.size(); valueIndex++) {
 
-            XYPoint xyPoint = scan.getData().get(valueIndex);
+            XYPoint xyPoint = scanData.getPoint(valueIndex);
 
             int binIndex = (int) ((xyPoint.x - mzRange.getLowerBounds()) / xWidth);
             if (binIndex == binYValues.length) binIndex--;
@@ -32,9 +32,9 @@ import uk.ac.ebi.masscascade.interfaces.Scan;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 
-import java.util.Collections;
 import java.util.Iterator;
 
 /**
@@ -135,7 +135,7 @@ public class RtBinning extends CallableTask {
      */
     private Scan getScanCopy(Scan scan) {
 
-        tmpScan = new ScanImpl(scanIndex, scan.getMsn(), scan.getIonMode(), scan.getData(), scan.getMzRange(),
+        tmpScan = new ScanImpl(scanIndex, scan.getMsn(), scan.getIonMode(), scan.getDataArray(), scan.getMzRange(),
                 scan.getBasePeak(), scan.getRetentionTime(), scan.getTotalIonCurrent(), scan.getParentScan(),
                 scan.getParentCharge(), scan.getParentMz());
         scanIndex++;
@@ -156,12 +156,9 @@ public class RtBinning extends CallableTask {
             basePeak = cScan.getBasePeak();
         }
 
-        XYList tData = new XYList();
-        tData.addAll(cScan.getData());
-        tData.addAll(pScan.getData());
-        Collections.sort(tData);
+        XYArray tData = XYArray.merge(cScan.getDataArray(), pScan.getDataArray());
 
-        Range mzRange = new ExtendableRange(tData.get(0).x, tData.get(tData.size() - 1).x);
+        Range mzRange = new ExtendableRange(tData.getX(0), tData.getX(tData.size() - 1));
         double totalIonCurrent = cScan.getTotalIonCurrent() + pScan.getTotalIonCurrent();
 
         Scan tmpScan = new ScanImpl(scanIndex, pScan.getMsn(), pScan.getIonMode(), tData, mzRange, basePeak,
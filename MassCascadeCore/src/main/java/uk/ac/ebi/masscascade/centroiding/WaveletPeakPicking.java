@@ -31,6 +31,7 @@ import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
@@ -103,7 +104,7 @@ public class WaveletPeakPicking extends CallableTask {
 
         for (ScanLevel level : scanContainer.getScanLevels()) {
 
-            List<XYPoint> dataDataPoints;
+            XYArray dataDataPoints;
             XYList processedData;
             List<XYPoint> waveletDataPoints;
 
@@ -111,7 +112,7 @@ public class WaveletPeakPicking extends CallableTask {
 
                 for (Scan scan : scanContainer) {
 
-                    dataDataPoints = scan.getData();
+                    dataDataPoints = scan.getDataArray();
                     processedData = new XYList();
 
                     int length = dataDataPoints.size();
@@ -148,12 +149,12 @@ public class WaveletPeakPicking extends CallableTask {
                             int ind = (int) (NPOINTS / 2) - (((int) d * (i - dx) / scaleLevel) * (-1));
                             if (ind < 0) ind = 0;
                             if (ind >= NPOINTS) ind = (int) NPOINTS - 1;
-                            intensity += dataDataPoints.get(i).y * W[ind];
+                            intensity += dataDataPoints.getY(i) * W[ind];
                         }
                         intensity /= sqrtScaleLevel;
                         // Eliminate the negative part of the wavelet map
                         if (intensity < 0) intensity = 0;
-                        waveletDataPoints.add(new XYPoint(dataDataPoints.get(dx).x, intensity));
+                        waveletDataPoints.add(new XYPoint(dataDataPoints.getX(dx), intensity));
                     }
 
                     int peakMaxInd = 0;
@@ -176,7 +177,7 @@ public class WaveletPeakPicking extends CallableTask {
                             if (waveletDataPoints.get(ind).y > waveletDataPoints.get(peakMaxInd).y) {
                                 peakMaxInd = ind;
                             }
-                            scanDataPoints.add(dataDataPoints.get(ind));
+                            scanDataPoints.add(dataDataPoints.getPoint(ind));
                             ind++;
                         }
 
@@ -184,11 +185,11 @@ public class WaveletPeakPicking extends CallableTask {
                             break;
                         }
 
-                        scanDataPoints.add(dataDataPoints.get(ind));
+                        scanDataPoints.add(dataDataPoints.getPoint(ind));
 
-                        if (dataDataPoints.get(peakMaxInd).y > noiseLevel) {
+                        if (dataDataPoints.getY(peakMaxInd) > noiseLevel) {
                             XYPoint peakDataDataPoint =
-                                    new XYPoint(dataDataPoints.get(peakMaxInd).x, calcAproxIntensity(scanDataPoints));
+                                    new XYPoint(dataDataPoints.getX(peakMaxInd), calcAproxIntensity(scanDataPoints));
 
                             processedData.add(peakDataDataPoint);
                         }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Ordered parallel map over a sequence of inputs.
+ * <p/>
+ * The inputs are read and the outputs are collected by the calling thread only, while {@link #map(Object)} runs on a
+ * fork join pool. At most a fixed number of inputs per worker are in flight, and the results are passed to {@link
+ * #collect(Object)} in input order, so the output does not depend on the number of workers. The mapper uses the
+ * calling pool if it runs inside a fork join pool, otherwise a pool with one worker per processor. A parallelism hint
+ * caps the size of that pool and scales the number of inputs in flight to the workers granted to the mapper.
+ * Implementations of {@link #map(Object)} must be thread-safe.
+ *
+ * @param <I> the input type
+ * @param <O> the output type
+ */
+public abstract class OrderedMapper<I, O> {
+
+    // inputs in flight per worker
+    private static final int WINDOW_FACTOR = 4;
+
+    private final int parallelism;
+
+    /**
+     * Constructs a mapper that uses all workers of the pool.
+     */
+    protected OrderedMapper() {
+        this(0);
+    }
+
+    /**
+     * Constructs a mapper that uses at most the given number of workers.
+     *
+     * @param parallelism the maximum number of workers, or 0 for all workers of the pool
+     */
+    protected OrderedMapper(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Processes a single input. Runs on a worker of the pool.
+     *
+     * @param input the input
+     * @return the output
+     */
+    protected abstract O map(I input);
+
+    /**
+     * Consumes a single output. Runs on the calling thread in input order.
+     *
+     * @param output the output
+     */
+    protected abstract void collect(O output);
+
+    /**
+     * Maps all inputs and collects the outputs in input order.
+     *
+     * @param inputs the inputs
+     */
+    public void run(Iterable<I> inputs) {
+
+        boolean sharedPool = ForkJoinTask.inForkJoinPool();
+        ForkJoinPool pool = sharedPool ? ForkJoinTask.getPool() :
+                (parallelism > 0) ? new ForkJoinPool(parallelism) : new ForkJoinPool();
+
+        try {
+            int workers = (parallelism > 0) ? Math.min(parallelism, pool.getParallelism()) : pool.getParallelism();
+            int window = WINDOW_FACTOR * workers;
+            Deque<ForkJoinTask<O>> inFlight = new ArrayDeque<>(window);
+
+            for (I input : inputs) {
+
+                if (inFlight.size() == window) collect(inFlight.pollFirst().join());
+
+                MapTask task = new MapTask(input);
+                if (sharedPool) task.fork();
+                else pool.execute(task);
+                inFlight.addLast(task);
+            }
+
+            while (!inFlight.isEmpty()) collect(inFlight.pollFirst().join());
+        } finally {
+            if (!sharedPool) pool.shutdown();
+        }
+    }
+
+    private class MapTask extends RecursiveTask<O> {
+
+        private final I input;
+
+        private MapTask(I input) {
+            this.input = input;
+        }
+
+        @Override
+        protected O compute() {
+            return map(input);
+        }
+    }
+}
@@ -26,15 +26,22 @@ import uk.ac.ebi.masscascade.core.ContainerFactory;
 import uk.ac.ebi.masscascade.core.container.file.feature.FileFeatureContainer;
 import uk.ac.ebi.masscascade.core.container.file.scan.FileScanContainer;
 import uk.ac.ebi.masscascade.core.container.file.featureset.FileFeatureSetContainer;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 import uk.ac.ebi.masscascade.interfaces.container.*;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
 
+import java.io.File;
+
 /**
  * A factory class to provide implementation independent <code> FileContainer </code>.
+ * <p/>
+ * The containers store their data through a {@link FileManager} unless memory-mapped files are enabled via {@link
+ * #setMapped(boolean)}, in which case a {@link MappedFileManager} is used.
  */
 public class FileContainerBuilder implements ContainerBuilder {
 
     private static ContainerBuilder instance = null;
+    private static volatile boolean mapped = false;
     private final ContainerFactory factory = new ContainerFactory(10);
 
     private FileContainerBuilder() {
@@ -53,6 +60,44 @@ public class FileContainerBuilder implements ContainerBuilder {
         return (instance == null) ? instance = new FileContainerBuilder() : instance;
     }
 
+    /**
+     * Sets whether new file containers use memory-mapped data files. Defaults to false.
+     *
+     * @param mapped if memory-mapped data files should be used
+     */
+    public static void setMapped(boolean mapped) {
+        FileContainerBuilder.mapped = mapped;
+    }
+
+    /**
+     * Returns whether new file containers use memory-mapped data files.
+     *
+     * @return if memory-mapped data files are used
+     */
+    public static boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Constructs a run manager with a new temporary data file in the given working directory.
+     *
+     * @param workingDirectory the working directory
+     * @return the run manager
+     */
+    public static RunManager newRunManager(String workingDirectory) {
+        return mapped ? new MappedFileManager(workingDirectory) : new FileManager(workingDirectory);
+    }
+
+    /**
+     * Constructs a run manager with an existing data file.
+     *
+     * @param dataFile the data file
+     * @return the run manager
+     */
+    public static RunManager newRunManager(File dataFile) {
+        return mapped ? new MappedFileManager(dataFile) : new FileManager(dataFile);
+    }
+
     /**
      * @inheritDoc
      */
@@ -49,18 +49,24 @@ import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
 import uk.ac.ebi.masscascade.utilities.range.MovingRange;
 import uk.ac.ebi.masscascade.utilities.range.SimpleRange;
 import uk.ac.ebi.masscascade.utilities.range.ToleranceRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
 import uk.ac.ebi.masscascade.utilities.xyz.YMinPoint;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -70,17 +76,43 @@ import java.util.List;
 
 /**
  * Class managing all random access file operations.
+ * <p/>
+ * Objects are appended through a random access file. Reads are served lock-free from a single, lazily opened file
+ * channel using positional reads, with one Kryo instance per reader thread, so that the file-based containers can be
+ * read from several threads concurrently. Collections of objects are read in file order, and neighbouring records are
+ * fetched with a single read. If an {@link ObjectCache} is set, repeated reads decode the cached records instead of
+ * accessing the file. The cache deliberately holds serialized records, not objects: callers modify the objects they
+ * read, so every read still runs a Kryo decode and a hit only saves the file access.
  */
 public class FileManager implements RunManager, Serializable {
 
     private static final Logger LOGGER = Logger.getLogger(FileManager.class);
     private static final long serialVersionUID = -5655253365433590239L;
 
+    // minimum number of bytes fetched per read of a batch
+    private static final int BATCH_SIZE = 1024 * 256;
+
+    /**
+     * Per-thread deserialization state: Kryo instances are not thread-safe.
+     */
+    private static final ThreadLocal<ReadContext> READ_CONTEXT = new ThreadLocal<ReadContext>() {
+
+        @Override
+        protected ReadContext initialValue() {
+            return new ReadContext(buildAndRegisterKryo());
+        }
+    };
+
     private File dataFile;
     private boolean tmp;
     private RandomAccessFile randomAccessFile;
     private Kryo kryo;
 
+    private transient volatile FileChannel readChannel;
+
+    // optional cache of serialized records shared by all file managers
+    private static volatile ObjectCache cache;
+
     /**
      * Constructs a scan file manager.
      *
@@ -98,6 +130,7 @@ public class FileManager implements RunManager, Serializable {
                     if (tmp) {
                         try {
                             if (randomAccessFile != null) randomAccessFile.close();
+                            closeReadChannel();
                             boolean deleted = dataFile.delete();
                             LOGGER.log(Level.WARN, "Deleted tmp file: " + dataFile.getName() + " -> " + deleted);
                         } catch (IOException e) {
@@ -110,7 +143,7 @@ public class FileManager implements RunManager, Serializable {
             LOGGER.log(Level.ERROR, "Tmp file could could not be opened: " + exception.getMessage());
         }
 
-        buildAndRegisterKryo();
+        kryo = buildAndRegisterKryo();
     }
 
     /**
@@ -122,15 +155,35 @@ public class FileManager implements RunManager, Serializable {
 
         this.dataFile = dataFile;
 
-        buildAndRegisterKryo();
+        kryo = buildAndRegisterKryo();
     }
 
     /**
-     * Register all relevant objects with the Kryo serialization instance.
+     * Sets the cache of serialized records shared by all file managers. Cached records are still decoded on every read.
+     *
+     * @param objectCache the cache or null to disable caching
      */
-    private void buildAndRegisterKryo() {
+    public static void setCache(ObjectCache objectCache) {
+        cache = objectCache;
+    }
 
-        kryo = new Kryo();
+    /**
+     * Returns the cache of serialized records shared by all file managers.
+     *
+     * @return the cache or null if caching is disabled
+     */
+    public static ObjectCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Builds a Kryo serialization instance and registers all relevant objects.
+     *
+     * @return the Kryo instance
+     */
+    static Kryo buildAndRegisterKryo() {
+
+        Kryo kryo = new Kryo();
 
         kryo.register(ScanImpl.class);
         kryo.register(FeatureImpl.class);
@@ -143,6 +196,7 @@ public class FileManager implements RunManager, Serializable {
         kryo.register(MovingRange.class);
         kryo.register(XYList.class);
         kryo.register(XYPoint.class);
+        kryo.register(XYArray.class);
         kryo.register(XYZList.class);
         kryo.register(XYZPoint.class);
         kryo.register(YMinPoint.class);
@@ -161,6 +215,7 @@ public class FileManager implements RunManager, Serializable {
         kryo.register(Score.class);
         kryo.register(Identity.class);
         kryo.register(boolean[].class);
+        kryo.register(double[].class);
         kryo.register(Double[].class);
         kryo.register(HashMap.class);
         kryo.register(ArrayList.class);
@@ -170,6 +225,8 @@ public class FileManager implements RunManager, Serializable {
         kryo.register(LinkedHashSet.class);
         kryo.register(MsnManager.class);
         kryo.register(SimpleRange.class);
+
+        return kryo;
     }
 
     /**
@@ -232,50 +289,237 @@ public class FileManager implements RunManager, Serializable {
     }
 
     /**
-     * Deserializes an object.
+     * Deserializes an object. The method does not lock: the object is read with positional reads from the shared
+     * file channel and decoded with the calling thread's Kryo instance.
      *
      * @param start the object pointer
      * @return the object
      */
     @Override
-    public synchronized <T> T read(long start, Class<T> objectClass) {
+    public <T> T read(long start, Class<T> objectClass) {
 
         if (start == -1) return null;
 
+        ObjectCache objectCache = cache;
+        ReadContext context = READ_CONTEXT.get();
+
         Object object = null;
         try {
-            openFile();
-            randomAccessFile.seek(start);
-            int length = randomAccessFile.readInt();
-
-            byte[] data = new byte[length];
-            randomAccessFile.readFully(data);
-            Input input = new Input(data);
-            object = kryo.readObject(input, objectClass);
-            input.close();
+            byte[] data = (objectCache == null) ? null : objectCache.get(this, start);
+            if (data != null) {
+                context.input.setBuffer(data, 0, data.length);
+            } else {
+                data = readRecord(start, context);
+                if (objectCache != null) objectCache.put(this, start, data, 0, context.length);
+                context.input.setBuffer(data, 0, context.length);
+            }
+            object = context.kryo.readObject(context.input, objectClass);
         } catch (IOException exception) {
             LOGGER.log(Level.ERROR, "File Manager on read: " + exception.getMessage());
-        } finally {
-            closeFile();
         }
 
         return objectClass.cast(object);
     }
 
     /**
-     * Deserializes a list of scans.
+     * Reads the length-prefixed record at the given pointer into the thread's read buffer.
+     *
+     * @param start   the object pointer
+     * @param context the thread's read context
+     * @return the read buffer holding the record
+     * @throws IOException if the record cannot be read
+     */
+    private byte[] readRecord(long start, ReadContext context) throws IOException {
+
+        try {
+            return readRecord(getReadChannel(), start, context);
+        } catch (ClosedChannelException exception) {
+            // an interrupted reader closes the shared channel: reopen it and retry once with the interrupt cleared,
+            // otherwise the retry would close the reopened channel of all other readers again
+            boolean interrupted = Thread.interrupted();
+            try {
+                resetReadChannel();
+                return readRecord(getReadChannel(), start, context);
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private byte[] readRecord(FileChannel channel, long start, ReadContext context) throws IOException {
+
+        ByteBuffer header = context.header;
+        header.clear();
+        readFully(channel, header, start);
+        header.flip();
+        int length = header.getInt();
+
+        byte[] data = context.ensureCapacity(length);
+        readFully(channel, ByteBuffer.wrap(data, 0, length), start + 4);
+
+        return data;
+    }
+
+    /**
+     * Fills the remaining bytes of the buffer from the channel starting at the given file position.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new EOFException("Unexpected end of file at " + position);
+            position += n;
+        }
+    }
+
+    /**
+     * Returns the shared read-only file channel, opening it on first use.
+     *
+     * @return the file channel
+     * @throws IOException if the file cannot be opened
+     */
+    private FileChannel getReadChannel() throws IOException {
+
+        FileChannel channel = readChannel;
+        if (channel == null) {
+            synchronized (this) {
+                if (readChannel == null) readChannel = new RandomAccessFile(dataFile, "r").getChannel();
+                channel = readChannel;
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Drops the shared read-only file channel if it has been closed, so that the next read reopens it.
+     */
+    private synchronized void resetReadChannel() {
+        if (readChannel != null && !readChannel.isOpen()) readChannel = null;
+    }
+
+    /**
+     * Closes the shared read-only file channel if open.
+     */
+    private synchronized void closeReadChannel() {
+
+        if (readChannel == null) return;
+        try {
+            readChannel.close();
+        } catch (IOException exception) {
+            LOGGER.log(Level.ERROR, "File Manager on close: " + exception.getMessage());
+        }
+        readChannel = null;
+    }
+
+    /**
+     * Deserializes a list of objects. The pointers are visited in ascending order and records lying close to each other
+     * are fetched with a single positional read, so that scattered lookups become sequential reads. Objects are
+     * returned in the order of the pointers; repeated pointers yield the same object.
      *
-     * @param startPositions scan pointers
-     * @return the list of scans
+     * @param startPositions object pointers
+     * @return the list of objects
      */
     @Override
     public List<Object> read(Collection<Long> startPositions, Class objectClass) {
 
-        List<Object> objectList = new ArrayList<Object>();
-        for (long start : startPositions) objectList.add(this.read(start, objectClass));
+        long[] starts = new long[startPositions.size()];
+        int n = 0;
+        for (long start : startPositions) starts[n++] = start;
+
+        long[] sortedStarts = starts.clone();
+        Arrays.sort(sortedStarts);
+
+        Object[] objects = new Object[n];
+        try {
+            try {
+                readBatch(getReadChannel(), sortedStarts, objects, objectClass);
+            } catch (ClosedChannelException exception) {
+                boolean interrupted = Thread.interrupted();
+                try {
+                    resetReadChannel();
+                    readBatch(getReadChannel(), sortedStarts, objects, objectClass);
+                } finally {
+                    if (interrupted) Thread.currentThread().interrupt();
+                }
+            }
+        } catch (IOException exception) {
+            LOGGER.log(Level.ERROR, "File Manager on read: " + exception.getMessage());
+        }
+
+        List<Object> objectList = new ArrayList<>(n);
+        for (long start : starts) objectList.add(objects[Arrays.binarySearch(sortedStarts, start)]);
         return objectList;
     }
 
+    /**
+     * Decodes the records at the sorted pointers into the object array at the same positions.
+     */
+    private void readBatch(FileChannel channel, long[] sortedStarts, Object[] objects, Class objectClass)
+            throws IOException {
+
+        ObjectCache objectCache = cache;
+        ReadContext context = READ_CONTEXT.get();
+        byte[] block = context.ensureCapacity(BATCH_SIZE);
+        long blockStart = 0;
+        int blockLength = 0;
+
+        for (int i = 0; i < sortedStarts.length; i++) {
+
+            long start = sortedStarts[i];
+            if (start == -1) continue;
+            if (i > 0 && start == sortedStarts[i - 1]) {
+                objects[i] = objects[i - 1];
+                continue;
+            }
+
+            byte[] cached = (objectCache == null) ? null : objectCache.get(this, start);
+            if (cached != null) {
+                context.input.setBuffer(cached, 0, cached.length);
+                objects[i] = context.kryo.readObject(context.input, objectClass);
+                continue;
+            }
+
+            if (start < blockStart || start + 4 > blockStart + blockLength) {
+                blockStart = start;
+                blockLength = readBlock(channel, block, block.length, start);
+            }
+
+            int offset = (int) (start - blockStart);
+            int length = ((block[offset] & 0xFF) << 24) | ((block[offset + 1] & 0xFF) << 16) |
+                    ((block[offset + 2] & 0xFF) << 8) | (block[offset + 3] & 0xFF);
+
+            if (offset + 4 + length > blockLength) {
+                block = context.ensureCapacity(Math.max(BATCH_SIZE, 4 + length));
+                blockStart = start;
+                blockLength = readBlock(channel, block, block.length, start);
+                offset = 0;
+                if (4 + length > blockLength) throw new EOFException("Unexpected end of file at " + start);
+            }
+
+            context.input.setBuffer(block);
+            context.input.setPosition(offset + 4);
+            context.input.setLimit(offset + 4 + length);
+            objects[i] = context.kryo.readObject(context.input, objectClass);
+            if (objectCache != null) objectCache.put(this, start, block, offset + 4, length);
+        }
+    }
+
+    /**
+     * Reads up to the given number of bytes from the channel starting at the given file position.
+     *
+     * @return the number of bytes read
+     */
+    private static int readBlock(FileChannel channel, byte[] block, int size, long position) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(block, 0, size);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) break;
+        }
+        if (buffer.position() < 4) throw new EOFException("Unexpected end of file at " + position);
+        return buffer.position();
+    }
+
     /**
      * Returns the file name.
      *
@@ -325,6 +569,10 @@ public class FileManager implements RunManager, Serializable {
      */
     @Override
     public boolean removeFile() {
+
+        ObjectCache objectCache = cache;
+        if (objectCache != null) objectCache.remove(this);
+        closeReadChannel();
         return dataFile.delete();
     }
 
@@ -337,4 +585,31 @@ public class FileManager implements RunManager, Serializable {
     public void setTmp(boolean tmp) {
         this.tmp = tmp;
     }
+
+    /**
+     * Thread-confined Kryo instance and reusable buffers for deserialization.
+     */
+    private static class ReadContext {
+
+        private final Kryo kryo;
+        private final Input input;
+        private final ByteBuffer header;
+        private byte[] buffer;
+        private int length;
+
+        private ReadContext(Kryo kryo) {
+
+            this.kryo = kryo;
+            this.input = new Input();
+            this.header = ByteBuffer.allocate(4);
+            this.buffer = new byte[1024 * 64];
+        }
+
+        private byte[] ensureCapacity(int length) {
+
+            if (buffer.length < length) buffer = new byte[Math.max(length, buffer.length * 2)];
+            this.length = length;
+            return buffer;
+        }
+    }
 }
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.core.container.file;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Class managing an append-only, memory-mapped data file.
+ * <p/>
+ * Objects are serialized into memory-mapped segments. A record never spans two segments: if it does not fit into
+ * the remainder of the current segment, a new segment is mapped (sized to the record if it exceeds the segment size).
+ * The first segment is {@link #INITIAL_SEGMENT_SIZE} bytes and every following segment doubles in size up to the
+ * segment size, so small containers do not grow their data file in steps of the full segment size.
+ * <p/>
+ * Records use the same layout as the {@link FileManager} (a four byte length followed by the Kryo bytes) and pointers
+ * are absolute file offsets, hence files written by this class can be read by a {@link FileManager} and vice versa.
+ * File containers use this class if {@link FileContainerBuilder#setMapped(boolean)} is enabled.
+ * <p/>
+ * Reads decode directly from the mapped region without copying the record into an intermediate byte array. The
+ * {@link ObjectCache} of the {@link FileManager} is used if set.
+ */
+public class MappedFileManager implements RunManager, Serializable {
+
+    private static final Logger LOGGER = Logger.getLogger(MappedFileManager.class);
+    private static final long serialVersionUID = 2147010376263810520L;
+
+    /**
+     * Default segment size of 64 MB.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024 * 64;
+
+    /**
+     * Size of the first segment of 1 MB.
+     */
+    public static final int INITIAL_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<Kryo> READ_KRYO = new ThreadLocal<Kryo>() {
+
+        @Override
+        protected Kryo initialValue() {
+            return FileManager.buildAndRegisterKryo();
+        }
+    };
+
+    private final File dataFile;
+    private final int segmentSize;
+    private boolean tmp;
+
+    private transient FileChannel channel;
+    private transient Kryo kryo;
+    private transient Output output;
+
+    // segment start offset -> read-only view of the mapped segment
+    private transient ConcurrentSkipListMap<Long, ByteBuffer> segments;
+    private transient MappedByteBuffer writeSegment;
+    private transient long writeSegmentStart;
+
+    /**
+     * Constructs a mapped file manager with a new temporary data file and the default segment size.
+     *
+     * @param workingDirectory the working directory
+     */
+    public MappedFileManager(String workingDirectory) {
+        this(workingDirectory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs a mapped file manager with a new temporary data file.
+     *
+     * @param workingDirectory the working directory
+     * @param segmentSize      the maximum size of the memory-mapped segments in bytes
+     */
+    public MappedFileManager(String workingDirectory, int segmentSize) {
+
+        if (segmentSize <= 4) throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+
+        this.segmentSize = segmentSize;
+        this.segments = new ConcurrentSkipListMap<>();
+
+        tmp = true;
+        try {
+            dataFile = File.createTempFile("masscascade_", ".tmp", new File(workingDirectory));
+        } catch (IOException exception) {
+            throw new MassCascadeException("Tmp file could could not be opened: " + exception.getMessage());
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+
+            public void run() {
+                if (tmp) {
+                    closeChannel();
+                    boolean deleted = dataFile.delete();
+                    LOGGER.log(Level.WARN, "Deleted tmp file: " + dataFile.getName() + " -> " + deleted);
+                }
+            }
+        });
+    }
+
+    /**
+     * Constructs a mapped file manager with an existing data file. The file is mapped in segments of the default
+     * size.
+     *
+     * @param dataFile the data file
+     */
+    public MappedFileManager(File dataFile) {
+        this(dataFile, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs a mapped file manager with an existing data file.
+     *
+     * @param dataFile    the data file
+     * @param segmentSize the maximum size of the memory-mapped segments in bytes
+     */
+    public MappedFileManager(File dataFile, int segmentSize) {
+
+        if (segmentSize <= 4) throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+
+        this.dataFile = dataFile;
+        this.segmentSize = segmentSize;
+        this.segments = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Opens the data file for serialization/deserialization. Existing data is mapped read-only.
+     */
+    @Override
+    public synchronized void openFile() {
+
+        if (channel != null) return;
+
+        try {
+            channel = new RandomAccessFile(dataFile, "rw").getChannel();
+            if (segments.isEmpty()) {
+                long size = channel.size();
+                for (long start = 0; start < size; start += segmentSize) {
+                    long length = Math.min(segmentSize, size - start);
+                    segments.put(start, channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+                }
+            }
+        } catch (IOException exception) {
+            throw new MassCascadeException("Mapped File Manager on open: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Flushes the mapped segment that is being written and closes the file channel. Mapped segments stay valid for
+     * reading.
+     */
+    @Override
+    public synchronized void closeFile() {
+
+        if (writeSegment != null) writeSegment.force();
+        closeChannel();
+    }
+
+    private synchronized void closeChannel() {
+
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException exception) {
+            throw new MassCascadeException("Mapped File Manager on close: " + exception.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * Serializes the object given and appends it to the current segment.
+     *
+     * @param object the object for serialization
+     * @return the pointer
+     */
+    @Override
+    public synchronized long write(Object object) {
+
+        long start = -1L;
+        try {
+            if (kryo == null) {
+                kryo = FileManager.buildAndRegisterKryo();
+                output = new Output(1024 * 64, -1);
+            }
+
+            output.clear();
+            kryo.writeObject(output, object);
+
+            int length = output.position();
+            if (writeSegment == null || writeSegment.remaining() < length + 4) mapWriteSegment(length + 4);
+
+            start = writeSegmentStart + writeSegment.position();
+            writeSegment.putInt(length);
+            writeSegment.put(output.getBuffer(), 0, length);
+        } catch (Exception exception) {
+            LOGGER.log(Level.ERROR, "Mapped File Manager on write: " + exception.getMessage());
+        }
+        return start;
+    }
+
+    /**
+     * Maps a new segment at the end of the last segment that is large enough to hold the given number of bytes. The
+     * segment is twice the size of the previous write segment, bounded by the segment size.
+     *
+     * @param minSize the minimum segment size
+     * @throws IOException if the segment cannot be mapped
+     */
+    private void mapWriteSegment(int minSize) throws IOException {
+
+        if (channel == null) openFile();
+
+        long start;
+        if (writeSegment != null) {
+            start = writeSegmentStart + writeSegment.capacity();
+        } else if (!segments.isEmpty()) {
+            Map.Entry<Long, ByteBuffer> last = segments.lastEntry();
+            start = last.getKey() + last.getValue().capacity();
+        } else {
+            start = 0;
+        }
+
+        long size = Math.min((writeSegment == null) ? INITIAL_SEGMENT_SIZE : 2L * writeSegment.capacity(), segmentSize);
+        writeSegment = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(size, minSize));
+        writeSegmentStart = start;
+        segments.put(start, writeSegment.asReadOnlyBuffer());
+    }
+
+    /**
+     * Deserializes an object straight from the mapped segment. Records that span two segments, which can only occur
+     * in files written by a {@link FileManager}, are read through the file channel instead. This includes records
+     * whose length prefix already crosses the segment boundary.
+     *
+     * @param start the object pointer
+     * @return the object
+     */
+    @Override
+    public <T> T read(long start, Class<T> objectClass) {
+
+        if (start == -1) return null;
+
+        if (segments.isEmpty()) openFile();
+
+        ObjectCache objectCache = FileManager.getCache();
+        if (objectCache != null) {
+            byte[] cached = objectCache.get(this, start);
+            if (cached != null) return READ_KRYO.get().readObject(new Input(cached), objectClass);
+        }
+
+        Object object = null;
+        try {
+            Map.Entry<Long, ByteBuffer> segment = segments.floorEntry(start);
+            if (segment == null) throw new EOFException("No segment mapped at " + start);
+
+            ByteBuffer buffer = segment.getValue().duplicate();
+            int offset = (int) (start - segment.getKey());
+            int length = (offset + 4 <= buffer.capacity()) ? buffer.getInt(offset) : readSpanning(start, 4).getInt();
+
+            if (offset + 4 + length <= buffer.capacity()) {
+                buffer.position(offset + 4);
+                buffer.limit(offset + 4 + length);
+            } else {
+                buffer = readSpanning(start + 4, length);
+            }
+            ByteBuffer record = buffer.slice();
+            if (objectCache != null) {
+                byte[] data = new byte[length];
+                record.duplicate().get(data);
+                objectCache.put(this, start, data, 0, length);
+            }
+            object = READ_KRYO.get().readObject(new ByteBufferInput(record), objectClass);
+        } catch (IOException exception) {
+            LOGGER.log(Level.ERROR, "Mapped File Manager on read: " + exception.getMessage());
+        }
+
+        return objectClass.cast(object);
+    }
+
+    private ByteBuffer readSpanning(long position, int length) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+        try {
+            FileChannel readChannel = file.getChannel();
+            while (buffer.hasRemaining()) {
+                int n = readChannel.read(buffer, position);
+                if (n < 0) throw new EOFException("Unexpected end of file at " + position);
+                position += n;
+            }
+        } finally {
+            file.close();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Deserializes a list of objects.
+     *
+     * @param startPositions object pointers
+     * @return the list of objects
+     */
+    @Override
+    public List<Object> read(Collection<Long> startPositions, Class objectClass) {
+
+        List<Object> objectList = new ArrayList<Object>();
+        for (long start : startPositions) objectList.add(this.read(start, objectClass));
+        return objectList;
+    }
+
+    /**
+     * Returns the file name.
+     *
+     * @return the file name
+     */
+    @Override
+    public String getFileName() {
+        return dataFile.getName();
+    }
+
+    /**
+     * Returns the absolute file name.
+     *
+     * @return the absolute file name
+     */
+    @Override
+    public String getAbsoluteFileName() {
+        return dataFile.getAbsolutePath();
+    }
+
+    /**
+     * Returns the path of the working directory.
+     *
+     * @return the working directory
+     */
+    @Override
+    public String getWorkingDirectory() {
+
+        String absPath = dataFile.getAbsolutePath();
+        return absPath.substring(0, absPath.lastIndexOf(File.separator));
+    }
+
+    /**
+     * Returns the actual data file.
+     *
+     * @return the data file
+     */
+    @Override
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    /**
+     * Releases all mapped segments and deletes the file.
+     *
+     * @return if successful
+     */
+    @Override
+    public synchronized boolean removeFile() {
+
+        ObjectCache objectCache = FileManager.getCache();
+        if (objectCache != null) objectCache.remove(this);
+        closeChannel();
+        segments.clear();
+        writeSegment = null;
+        return dataFile.delete();
+    }
+
+    /**
+     * Re-initialises the segment table after deserialization. Segments are mapped again on first access.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+        in.defaultReadObject();
+        segments = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Sets whether the current data file is temporary and should be deleted when the JVM exists.
+     *
+     * @param tmp the file state
+     */
+    @Override
+    public void setTmp(boolean tmp) {
+        this.tmp = tmp;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.core.container.file;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used cache of serialized records with a byte budget.
+ * <p/>
+ * Records are keyed by their run manager and file pointer and weighted by their length. The cache holds copies of the
+ * serialized bytes rather than deserialized objects, so every read decodes a fresh object and callers may modify what
+ * they read without affecting later reads. A hit saves the file access, not the decoding. The cache is split into
+ * segments with a lock and a share of the budget each, selected by the hash of the key, so that concurrent readers
+ * rarely contend; every segment evicts its least recently used records once its share is exceeded. Instances are
+ * thread-safe.
+ */
+public class ObjectCache {
+
+    private static final int SEGMENTS = 16;
+
+    // heap bytes per record beyond the serialized bytes
+    private static final int OVERHEAD = 64;
+
+    private final long capacity;
+    private final Segment[] segments;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity the byte budget
+     */
+    public ObjectCache(long capacity) {
+
+        this.capacity = capacity;
+
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(capacity / SEGMENTS);
+
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    /**
+     * Returns the cached record and counts the lookup as hit or miss. The returned bytes must not be modified.
+     *
+     * @param owner   the run manager
+     * @param pointer the file pointer
+     * @return the serialized record or null if not cached
+     */
+    public byte[] get(Object owner, long pointer) {
+
+        Key key = new Key(owner, pointer);
+        byte[] data = getSegment(key).get(key);
+        if (data == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return data;
+    }
+
+    /**
+     * Adds a copy of a serialized record and evicts the least recently used records of its segment if the segment's
+     * share of the budget is exceeded. Records heavier than the share are not cached.
+     *
+     * @param owner   the run manager
+     * @param pointer the file pointer
+     * @param data    the buffer holding the record
+     * @param offset  the offset of the record in the buffer
+     * @param length  the length of the record in bytes
+     */
+    public void put(Object owner, long pointer, byte[] data, int offset, int length) {
+
+        Key key = new Key(owner, pointer);
+        Segment segment = getSegment(key);
+        if (OVERHEAD + length > segment.capacity) return;
+
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        segment.put(key, copy);
+    }
+
+    /**
+     * Removes all records of the given run manager.
+     *
+     * @param owner the run manager
+     */
+    public void remove(Object owner) {
+        for (Segment segment : segments) segment.remove(owner);
+    }
+
+    /**
+     * Removes all records and resets the counters.
+     */
+    public void clear() {
+
+        for (Segment segment : segments) segment.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Returns the byte budget.
+     *
+     * @return the byte budget
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the heap size of all cached records.
+     *
+     * @return the cached bytes
+     */
+    public long getWeight() {
+
+        long weight = 0;
+        for (Segment segment : segments) weight += segment.getWeight();
+        return weight;
+    }
+
+    /**
+     * Returns the number of cached records.
+     *
+     * @return the number of records
+     */
+    public int size() {
+
+        int size = 0;
+        for (Segment segment : segments) size += segment.size();
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that required a file access.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private Segment getSegment(Key key) {
+
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Access-ordered part of the cache guarded by its own lock.
+     */
+    private static class Segment {
+
+        private final long capacity;
+        private final LinkedHashMap<Key, byte[]> entries;
+        private long weight;
+
+        private Segment(long capacity) {
+
+            this.capacity = capacity;
+            entries = new LinkedHashMap<>(64, 0.75f, true);
+        }
+
+        private synchronized byte[] get(Key key) {
+            return entries.get(key);
+        }
+
+        private synchronized void put(Key key, byte[] data) {
+
+            byte[] previous = entries.put(key, data);
+            if (previous != null) weight -= OVERHEAD + previous.length;
+            weight += OVERHEAD + data.length;
+
+            Iterator<byte[]> iterator = entries.values().iterator();
+            while (weight > capacity && iterator.hasNext()) {
+                weight -= OVERHEAD + iterator.next().length;
+                iterator.remove();
+            }
+        }
+
+        private synchronized void remove(Object owner) {
+
+            Iterator<Map.Entry<Key, byte[]>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, byte[]> entry = iterator.next();
+                if (entry.getKey().owner == owner) {
+                    weight -= OVERHEAD + entry.getValue().length;
+                    iterator.remove();
+                }
+            }
+        }
+
+        private synchronized void clear() {
+
+            entries.clear();
+            weight = 0;
+        }
+
+        private synchronized long getWeight() {
+            return weight;
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private static class Key {
+
+        private final Object owner;
+        private final long pointer;
+
+        private Key(Object owner, long pointer) {
+
+            this.owner = owner;
+            this.pointer = pointer;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key key = (Key) obj;
+            return owner == key.owner && pointer == key.pointer;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(owner) + (int) (pointer ^ (pointer >>> 32));
+        }
+    }
+}
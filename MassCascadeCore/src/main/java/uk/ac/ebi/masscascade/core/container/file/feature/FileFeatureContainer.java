@@ -25,10 +25,11 @@ package uk.ac.ebi.masscascade.core.container.file.feature;
 import com.google.common.collect.TreeMultimap;
 import org.apache.log4j.Logger;
 import uk.ac.ebi.masscascade.core.container.file.FileContainer;
-import uk.ac.ebi.masscascade.core.container.file.FileManager;
+import uk.ac.ebi.masscascade.core.container.file.FileContainerBuilder;
 import uk.ac.ebi.masscascade.core.feature.FeatureIterator;
 import uk.ac.ebi.masscascade.core.feature.FeatureImpl;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
 import uk.ac.ebi.masscascade.parameters.Constants;
 
@@ -48,7 +49,7 @@ public class FileFeatureContainer extends FileContainer implements FeatureContai
     private final TreeMultimap<Double, Integer> featureTimes;
     private final LinkedHashMap<Integer, Long> featureNumber;
 
-    private final FileManager fileManager;
+    private final RunManager fileManager;
 
     /**
      * Constructs an empty feature file using the OS tmp directory as working directory.
@@ -68,6 +69,17 @@ public class FileFeatureContainer extends FileContainer implements FeatureContai
      * @param workingDirectory the working directory
      */
     public FileFeatureContainer(String id, Constants.ION_MODE ionMode, String workingDirectory) {
+        this(id, ionMode, FileContainerBuilder.newRunManager(workingDirectory));
+    }
+
+    /**
+     * Constructs an empty feature file backed by the given run manager.
+     *
+     * @param id         the file identifier
+     * @param ionMode    the ion mode
+     * @param runManager the run manager handling the data file
+     */
+    public FileFeatureContainer(String id, Constants.ION_MODE ionMode, RunManager runManager) {
 
         this.id = id;
         this.ionMode = ionMode;
@@ -75,7 +87,7 @@ public class FileFeatureContainer extends FileContainer implements FeatureContai
         featureTimes = TreeMultimap.create();
         featureNumber = new LinkedHashMap<Integer, Long>();
 
-        fileManager = new FileManager(workingDirectory);
+        fileManager = runManager;
         fileManager.openFile();
     }
 
@@ -97,7 +109,7 @@ public class FileFeatureContainer extends FileContainer implements FeatureContai
         this.featureTimes = featureTimes;
         this.featureNumber = featureNumber;
 
-        fileManager = new FileManager(new File(dataFile));
+        fileManager = FileContainerBuilder.newRunManager(new File(dataFile));
     }
 
     /**
@@ -182,7 +194,7 @@ public class FileFeatureContainer extends FileContainer implements FeatureContai
      * @return the file manager
      */
     @Override
-    public FileManager getFileManager() {
+    public RunManager getFileManager() {
         return fileManager;
     }
 
@@ -193,7 +205,7 @@ public class FileFeatureContainer extends FileContainer implements FeatureContai
      * @return the feature
      */
     @Override
-    public synchronized Feature getFeature(int i) {
+    public Feature getFeature(int i) {
 
         long fileIndex = -1;
         if (featureNumber.containsKey(i)) fileIndex = featureNumber.get(i);
@@ -203,13 +215,31 @@ public class FileFeatureContainer extends FileContainer implements FeatureContai
         return feature;
     }
 
+    /**
+     * Returns the features with the given identifiers in the given order. The features are read as one batch in file
+     * order.
+     *
+     * @param ids the feature identifiers
+     * @return the features
+     */
+    @Override
+    public List<Feature> getFeatures(int[] ids) {
+
+        List<Long> fileIndices = new ArrayList<>(ids.length);
+        for (int id : ids) fileIndices.add(featureNumber.containsKey(id) ? featureNumber.get(id) : -1L);
+
+        List<Feature> features = new ArrayList<>(ids.length);
+        for (Object feature : fileManager.read(fileIndices, FeatureImpl.class)) features.add((Feature) feature);
+        return features;
+    }
+
     /**
      * Returns the complete feature list.
      *
      * @return the feature list
      */
     @Override
-    public synchronized List<Feature> getFeatureList() {
+    public List<Feature> getFeatureList() {
 
         List<Feature> featureList = new ArrayList<>();
         for (Long l : featureNumber.values()) featureList.add(fileManager.read(l, FeatureImpl.class));
@@ -23,12 +23,13 @@
 package uk.ac.ebi.masscascade.core.container.file.featureset;
 
 import uk.ac.ebi.masscascade.core.container.file.FileContainer;
-import uk.ac.ebi.masscascade.core.container.file.FileManager;
+import uk.ac.ebi.masscascade.core.container.file.FileContainerBuilder;
 import uk.ac.ebi.masscascade.core.featureset.FeatureSetFeatureIterator;
 import uk.ac.ebi.masscascade.core.featureset.FeatureSetImpl;
 import uk.ac.ebi.masscascade.core.featureset.FeatureSetIterator;
 import uk.ac.ebi.masscascade.interfaces.Feature;
 import uk.ac.ebi.masscascade.interfaces.FeatureSet;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
@@ -50,7 +51,7 @@ public class FileFeatureSetContainer extends FileContainer implements FeatureSet
     private final Constants.ION_MODE ionMode;
     private final List<XYPoint> basePeaks;
     private final LinkedHashMap<Integer, Long> featureSetMap;
-    private final FileManager fileManager;
+    private final RunManager fileManager;
 
     /**
      * Constructs an empty feature set file.
@@ -70,13 +71,24 @@ public class FileFeatureSetContainer extends FileContainer implements FeatureSet
      * @param workingDirectory the working directory
      */
     public FileFeatureSetContainer(String id, Constants.ION_MODE ionMode, String workingDirectory) {
+        this(id, ionMode, FileContainerBuilder.newRunManager(workingDirectory));
+    }
+
+    /**
+     * Constructs an empty feature set file backed by the given run manager.
+     *
+     * @param id         the file identifier
+     * @param ionMode    the ion mode
+     * @param runManager the run manager handling the data file
+     */
+    public FileFeatureSetContainer(String id, Constants.ION_MODE ionMode, RunManager runManager) {
 
         this.id = id;
         this.ionMode = ionMode;
         featureSetMap = new LinkedHashMap<>();
         basePeaks = new ArrayList<>();
 
-        fileManager = new FileManager(workingDirectory);
+        fileManager = runManager;
         fileManager.openFile();
     }
 
@@ -95,7 +107,7 @@ public class FileFeatureSetContainer extends FileContainer implements FeatureSet
         featureSetMap = new LinkedHashMap<>();
         basePeaks = new ArrayList<>();
 
-        fileManager = new FileManager(new File(dataFile));
+        fileManager = FileContainerBuilder.newRunManager(new File(dataFile));
         fileManager.openFile();
 
         for (FeatureSet featureSet : featureSetSet)
@@ -120,7 +132,7 @@ public class FileFeatureSetContainer extends FileContainer implements FeatureSet
 
         this.featureSetMap = featureSetMap;
         this.basePeaks = basePeaks;
-        fileManager = new FileManager(new File(dataFile));
+        fileManager = FileContainerBuilder.newRunManager(new File(dataFile));
     }
 
     /**
@@ -172,7 +184,7 @@ public class FileFeatureSetContainer extends FileContainer implements FeatureSet
      * @return the feature set
      */
     @Override
-    public synchronized FeatureSet getFeatureSet(int featureSetId) {
+    public FeatureSet getFeatureSet(int featureSetId) {
 
         long featureSetIndex = -1;
         if (featureSetMap.containsKey(featureSetId)) featureSetIndex = featureSetMap.get(featureSetId);
@@ -182,6 +194,26 @@ public class FileFeatureSetContainer extends FileContainer implements FeatureSet
         return featureSet;
     }
 
+    /**
+     * Returns the featuresets with the given identifiers in the given order. The featuresets are read as one batch in
+     * file order.
+     *
+     * @param featureSetIds the featureset identifiers
+     * @return the featuresets
+     */
+    @Override
+    public List<FeatureSet> getFeatureSets(int[] featureSetIds) {
+
+        List<Long> featureSetIndices = new ArrayList<>(featureSetIds.length);
+        for (int featureSetId : featureSetIds)
+            featureSetIndices.add(featureSetMap.containsKey(featureSetId) ? featureSetMap.get(featureSetId) : -1L);
+
+        List<FeatureSet> featureSets = new ArrayList<>(featureSetIds.length);
+        for (Object featureSet : fileManager.read(featureSetIndices, FeatureSetImpl.class))
+            featureSets.add((FeatureSet) featureSet);
+        return featureSets;
+    }
+
     /**
      * Returns the size of the container.
      *
@@ -24,9 +24,10 @@ package uk.ac.ebi.masscascade.core.container.file.scan;
 
 import org.apache.log4j.Logger;
 import uk.ac.ebi.masscascade.core.container.file.FileContainer;
-import uk.ac.ebi.masscascade.core.container.file.FileManager;
+import uk.ac.ebi.masscascade.core.container.file.FileContainerBuilder;
 import uk.ac.ebi.masscascade.core.chromatogram.BasePeakChromatogram;
 import uk.ac.ebi.masscascade.core.chromatogram.TotalIonChromatogram;
+import uk.ac.ebi.masscascade.core.scan.ScanIndex;
 import uk.ac.ebi.masscascade.core.scan.ScanInfo;
 import uk.ac.ebi.masscascade.core.scan.ScanIterator;
 import uk.ac.ebi.masscascade.core.scan.ScanLevel;
@@ -35,6 +36,7 @@ import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.featurebuilder.FeatureMsnHelper;
 import uk.ac.ebi.masscascade.interfaces.Chromatogram;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.interfaces.Scan;
 import uk.ac.ebi.masscascade.parameters.Constants;
@@ -62,13 +64,14 @@ public class FileScanContainer extends FileContainer implements ScanContainer {
     private final List<ScanLevel> scanLevels;
 
     private final List<LinkedHashMap<Integer, Long>> scanNumbers;
+    private volatile ScanIndex scanIndex;
     private final LinkedHashMap<Constants.MSN, Long> ticNumbers;
     private Long basePeakNumber;
 
     private LinkedHashMap<Constants.MSN, XYList> ticData;
     private XYList basePeakData;
 
-    private final FileManager fileManager;
+    private final RunManager fileManager;
 
     /**
      * Constructs an empty mass spec scan file.
@@ -86,6 +89,16 @@ public class FileScanContainer extends FileContainer implements ScanContainer {
      * @param workingDirectory the working directory
      */
     public FileScanContainer(String id, String workingDirectory) {
+        this(id, FileContainerBuilder.newRunManager(workingDirectory));
+    }
+
+    /**
+     * Constructs an empty mass spec scan file backed by the given run manager.
+     *
+     * @param id         the file identifier
+     * @param runManager the run manager handling the data file
+     */
+    public FileScanContainer(String id, RunManager runManager) {
 
         this.id = id;
         scanInfo = new ScanInfo(id, "Unknown", null);
@@ -97,7 +110,8 @@ public class FileScanContainer extends FileContainer implements ScanContainer {
         basePeakNumber = -1L;
 
         scanNumbers = new ArrayList<>();
-        fileManager = new FileManager(workingDirectory);
+        scanIndex = new ScanIndex();
+        fileManager = runManager;
         fileManager.openFile();
     }
 
@@ -138,7 +152,7 @@ public class FileScanContainer extends FileContainer implements ScanContainer {
         this.basePeakNumber = basePeakNumber;
         this.scanNumbers = scanNumbers;
 
-        fileManager = new FileManager(new File(dataFile));
+        fileManager = FileContainerBuilder.newRunManager(new File(dataFile));
     }
 
     /**
@@ -151,6 +165,7 @@ public class FileScanContainer extends FileContainer implements ScanContainer {
 
         Constants.MSN scanMSn = scan.getMsn();
         long fileIndex = fileManager.write(scan);
+        scanIndex.add(scan, fileIndex);
 
         if (scanMSn.getLvl() <= scanNumbers.size()) {
             scanNumbers.get(scanMSn.getLvl() - 1).put(scan.getIndex(), fileIndex);
@@ -293,7 +308,7 @@ public class FileScanContainer extends FileContainer implements ScanContainer {
      * @return the total ion chromatogram
      */
     @Override
-    public synchronized Chromatogram getTicChromatogram(Constants.MSN msn) {
+    public Chromatogram getTicChromatogram(Constants.MSN msn) {
 
         if (!ticNumbers.containsKey(msn)) return null;
 
@@ -368,7 +383,7 @@ public class FileScanContainer extends FileContainer implements ScanContainer {
      * @return the scan
      */
     @Override
-    public synchronized Scan getScan(int i) {
+    public Scan getScan(int i) {
 
         long fileIndex = -1;
         for (Map<Integer, Long> map : scanNumbers) {
@@ -383,13 +398,65 @@ public class FileScanContainer extends FileContainer implements ScanContainer {
         return scan;
     }
 
+    /**
+     * Returns the scans with the given scan indices in the given order. The scans are read as one batch in file order.
+     *
+     * @param indices the scan indices
+     * @return the scans
+     */
+    @Override
+    public List<Scan> getScans(int[] indices) {
+
+        List<Long> fileIndices = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            long fileIndex = -1;
+            for (Map<Integer, Long> map : scanNumbers) {
+                if (map.containsKey(i)) {
+                    fileIndex = map.get(i);
+                    break;
+                }
+            }
+            fileIndices.add(fileIndex);
+        }
+
+        List<Scan> scans = new ArrayList<>(indices.length);
+        for (Object scan : fileManager.read(fileIndices, ScanImpl.class)) scans.add((Scan) scan);
+        return scans;
+    }
+
+    /**
+     * Returns the meta information index of all scans. For containers restored from a data file, the index is built
+     * from the scans on first access.
+     *
+     * @return the scan index
+     */
+    @Override
+    public ScanIndex getScanIndex() {
+
+        ScanIndex index = scanIndex;
+        if (index == null) {
+            synchronized (this) {
+                if (scanIndex == null) {
+                    ScanIndex restoredIndex = new ScanIndex();
+                    for (Map<Integer, Long> map : scanNumbers) {
+                        for (long fileIndex : map.values())
+                            restoredIndex.add(fileManager.read(fileIndex, ScanImpl.class), fileIndex);
+                    }
+                    scanIndex = restoredIndex;
+                }
+                index = scanIndex;
+            }
+        }
+        return index;
+    }
+
     /**
      * Returns a list of scans for the given MSn level.
      *
      * @param msn the MSn level
      * @return the list of scans
      */
-    public synchronized List<Scan> getScanList(Constants.MSN msn) {
+    public List<Scan> getScanList(Constants.MSN msn) {
 
         if (scanNumbers.size() < msn.getLvl()) return null;
 
@@ -428,7 +495,7 @@ public class FileScanContainer extends FileContainer implements ScanContainer {
      * @return the map
      */
     @Override
-    public synchronized FeatureMsnHelper getMsnHelper() {
+    public FeatureMsnHelper getMsnHelper() {
         return new FeatureMsnHelper(this);
     }
 
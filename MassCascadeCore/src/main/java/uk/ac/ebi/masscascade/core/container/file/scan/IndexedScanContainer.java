@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.core.container.file.scan;
+
+import uk.ac.ebi.masscascade.core.chromatogram.BasePeakChromatogram;
+import uk.ac.ebi.masscascade.core.chromatogram.TotalIonChromatogram;
+import uk.ac.ebi.masscascade.core.container.file.FileContainer;
+import uk.ac.ebi.masscascade.core.scan.ScanIndex;
+import uk.ac.ebi.masscascade.core.scan.ScanInfo;
+import uk.ac.ebi.masscascade.core.scan.ScanLevel;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.featurebuilder.FeatureMsnHelper;
+import uk.ac.ebi.masscascade.interfaces.Chromatogram;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.io.PsiMzmlIndex;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only scan container backed by an indexed mzML file.
+ * <p/>
+ * Only the scan meta information and the chromatograms are held in memory. Scans registered by the reader are decoded
+ * from the source file on demand, so no copy of the raw data is written to a temporary file. Scans cannot be added
+ * with {@link #addScan(Scan)}, modified scans must be written to a derived container, which is created in the given
+ * working directory.
+ */
+public class IndexedScanContainer extends FileContainer implements ScanContainer {
+
+    private final String id;
+    private final String workingDirectory;
+    private final PsiMzmlIndex index;
+
+    private ScanInfo scanInfo;
+    private final List<ScanLevel> scanLevels;
+
+    // scan index -> parent scan index per MSn level
+    private final List<LinkedHashMap<Integer, Integer>> scanNumbers;
+    private final ScanIndex scanIndex;
+
+    private LinkedHashMap<Constants.MSN, XYList> ticData;
+    private XYList basePeakData;
+
+    private final LinkedHashMap<Constants.MSN, Chromatogram> ticChromatograms;
+    private Chromatogram basePeakChromatogram;
+
+    /**
+     * Constructs an empty indexed scan container.
+     *
+     * @param id               the file identifier
+     * @param index            the mzML index
+     * @param workingDirectory the working directory for derived containers
+     */
+    public IndexedScanContainer(String id, PsiMzmlIndex index, String workingDirectory) {
+
+        this.id = id;
+        this.index = index;
+        this.workingDirectory = workingDirectory;
+
+        scanInfo = new ScanInfo(id, "Unknown", null);
+        scanLevels = new ArrayList<>();
+        scanNumbers = new ArrayList<>();
+        scanIndex = new ScanIndex();
+
+        ticData = new LinkedHashMap<>();
+        basePeakData = new XYList();
+        ticChromatograms = new LinkedHashMap<>();
+    }
+
+    /**
+     * Not supported: the container is backed by the source file. Scans of the source file are registered by the
+     * reader via {@link #registerScan(Scan)}.
+     *
+     * @param scan the scan to be added
+     * @throws MassCascadeException always
+     */
+    @Override
+    public void addScan(Scan scan) {
+        throw new MassCascadeException("Indexed scan container is read-only: " + id);
+    }
+
+    /**
+     * Registers the meta information of a scan decoded from the source file. The scan data itself is discarded and
+     * re-read from the index on demand.
+     *
+     * @param scan the scan to be registered
+     */
+    public void registerScan(Scan scan) {
+
+        Constants.MSN scanMSn = scan.getMsn();
+        scanIndex.add(scan, -1);
+
+        if (scanMSn.getLvl() <= scanNumbers.size()) {
+            scanNumbers.get(scanMSn.getLvl() - 1).put(scan.getIndex(), scan.getParentScan());
+
+            scanLevels.get(scanMSn.getLvl() - 1).getMzRange().extendRange(scan.getMzRange());
+            scanLevels.get(scanMSn.getLvl() - 1).getScanRange().extendRange(scan.getRetentionTime());
+        } else {
+            LinkedHashMap<Integer, Integer> scanLevelMap = new LinkedHashMap<>();
+            scanLevelMap.put(scan.getIndex(), scan.getParentScan());
+            scanNumbers.add(scanLevelMap);
+
+            ExtendableRange rtExtendableRange = new ExtendableRange(scan.getRetentionTime(), scan.getRetentionTime());
+            scanLevels.add(new ScanLevel.Builder(rtExtendableRange, scan.getMzRange(), scan.getIonMode()).msLevel(
+                    scanMSn).build());
+            ticData.put(scanMSn, new XYList());
+        }
+
+        if (scanMSn == Constants.MSN.MS1 && !scan.getBasePeak().isEmpty())
+            basePeakData.add(new XYPoint(scan.getRetentionTime(), scan.getBasePeak().get(0).y));
+        ticData.get(scanMSn).add(new XYPoint(scan.getRetentionTime(), scan.getTotalIonCurrent()));
+    }
+
+    /**
+     * Not supported: the container is backed by the source file.
+     *
+     * @param scans the list of scans to be added
+     * @throws MassCascadeException always
+     */
+    @Override
+    public void addScanList(List<Scan> scans) {
+        for (Scan scan : scans) this.addScan(scan);
+    }
+
+    /**
+     * Wraps up loose ends and builds the chromatograms.
+     *
+     * @param date the creation date
+     */
+    @Override
+    public void finaliseFile(String date) {
+
+        if (date != null) {
+            scanInfo.setDate(date);
+        }
+
+        basePeakChromatogram = new BasePeakChromatogram(id, Constants.MSN.MS1, basePeakData);
+        for (Map.Entry<Constants.MSN, XYList> entry : ticData.entrySet()) {
+            ticChromatograms.put(entry.getKey(), new TotalIonChromatogram(id, entry.getKey(), entry.getValue()));
+        }
+
+        ticData = null;
+        basePeakData = null;
+    }
+
+    /**
+     * Returns the file id.
+     *
+     * @return the file id
+     */
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the list of MSn information.
+     *
+     * @return the MSn information
+     */
+    @Override
+    public List<ScanLevel> getScanLevels() {
+        return scanLevels;
+    }
+
+    /**
+     * Returns the file meta info.
+     *
+     * @return the meta info
+     */
+    @Override
+    public ScanInfo getScanInfo() {
+        return scanInfo;
+    }
+
+    /**
+     * Returns the number of scans of a particular level.
+     *
+     * @param msn a MSN level
+     * @return the number of scans
+     */
+    @Override
+    public int size(Constants.MSN msn) {
+        return scanNumbers.get(msn.getLvl() - 1).size();
+    }
+
+    /**
+     * Returns the base feature chromatogram.
+     *
+     * @return the base feature chromatogram
+     */
+    @Override
+    public Chromatogram getBasePeakChromatogram() {
+        return basePeakChromatogram;
+    }
+
+    /**
+     * Returns the total ion chromatogram of level MSn.
+     *
+     * @param msn the MSn level
+     * @return the total ion chromatogram
+     */
+    @Override
+    public Chromatogram getTicChromatogram(Constants.MSN msn) {
+        return ticChromatograms.get(msn);
+    }
+
+    /**
+     * Returns the working directory for derived containers.
+     *
+     * @return the working directory
+     */
+    @Override
+    public String getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    /**
+     * Releases the source file. The source file itself is never deleted.
+     *
+     * @return if successful
+     */
+    @Override
+    public boolean removeAll() {
+
+        index.close();
+        return true;
+    }
+
+    /**
+     * Returns the source mzML file.
+     *
+     * @return the source file
+     */
+    @Override
+    public File getDataFile() {
+        return index.getFile();
+    }
+
+    /**
+     * Returns the size of the container
+     *
+     * @return the container's size
+     */
+    @Override
+    public int size() {
+        return scanNumbers.size();
+    }
+
+    /**
+     * Returns the scan with the given scan index. Registered scans are decoded from the source file.
+     *
+     * @param i the scan index
+     * @return the scan
+     */
+    @Override
+    public Scan getScan(int i) {
+
+        int pos = scanIndex.find(i);
+        return (pos == -1) ? null : index.readScan(i, scanIndex.getParentScan(pos), scanIndex.getIonMode(pos));
+    }
+
+    /**
+     * Returns the scans with the given scan indices in the given order. The scans are decoded from the source file in
+     * index order.
+     *
+     * @param indices the scan indices
+     * @return the scans
+     */
+    @Override
+    public List<Scan> getScans(int[] indices) {
+
+        int[] sortedIndices = indices.clone();
+        Arrays.sort(sortedIndices);
+
+        Scan[] scans = new Scan[sortedIndices.length];
+        for (int i = 0; i < sortedIndices.length; i++) {
+            scans[i] = (i > 0 && sortedIndices[i] == sortedIndices[i - 1]) ? scans[i - 1] : getScan(sortedIndices[i]);
+        }
+
+        List<Scan> scanList = new ArrayList<>(indices.length);
+        for (int i : indices) scanList.add(scans[Arrays.binarySearch(sortedIndices, i)]);
+        return scanList;
+    }
+
+    /**
+     * Returns the meta information index of all scans.
+     *
+     * @return the scan index
+     */
+    @Override
+    public ScanIndex getScanIndex() {
+        return scanIndex;
+    }
+
+    /**
+     * Returns the scan with the given array index.
+     *
+     * @param i the array index
+     * @return the scan at the index
+     */
+    @Override
+    public Scan getScanByIndex(int i) {
+
+        if (scanNumbers.isEmpty() || i < 0 || i >= scanNumbers.get(0).size()) return null;
+
+        int j = 0;
+        for (int scanIndex : scanNumbers.get(0).keySet()) {
+            if (i == j) return getScan(scanIndex);
+            j++;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the parent scan -> daughter scan -> parent mass association map.
+     *
+     * @return the map
+     */
+    @Override
+    public FeatureMsnHelper getMsnHelper() {
+        return new FeatureMsnHelper(this);
+    }
+
+    /**
+     * Returns an iterator over a set of elements of type Scan.
+     *
+     * @return an Iterator.
+     */
+    @Override
+    public Iterator<Scan> iterator() {
+        return iterator(Constants.MSN.MS1).iterator();
+    }
+
+    /**
+     * Returns an iterator over a set of elements of type Scan for a given MSn level.
+     *
+     * @return an Iterator.
+     */
+    @Override
+    public Iterable<Scan> iterator(final Constants.MSN msn) {
+        return new Iterable<Scan>() {
+
+            public Iterator<Scan> iterator() {
+
+                final Iterator<Integer> scanIndices =
+                        new ArrayList<>(scanNumbers.get(msn.getLvl() - 1).keySet()).iterator();
+
+                return new Iterator<Scan>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return scanIndices.hasNext();
+                    }
+
+                    @Override
+                    public Scan next() {
+                        return getScan(scanIndices.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        // do nothing
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns a feature iterator. Scan containers do not hold features, hence the iterator is empty.
+     *
+     * @return the feature iterator
+     */
+    @Override
+    public Iterable<Feature> featureIterator() {
+        return Collections.emptyList();
+    }
+}
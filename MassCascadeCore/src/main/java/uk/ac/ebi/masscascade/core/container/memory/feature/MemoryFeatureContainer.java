@@ -24,10 +24,10 @@ package uk.ac.ebi.masscascade.core.container.memory.feature;
 
 import com.google.common.collect.TreeMultimap;
 import org.apache.log4j.Logger;
-import uk.ac.ebi.masscascade.core.container.file.FileManager;
 import uk.ac.ebi.masscascade.core.container.memory.MemoryContainer;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
 import uk.ac.ebi.masscascade.parameters.Constants;
 
@@ -149,7 +149,7 @@ public class MemoryFeatureContainer extends MemoryContainer implements FeatureCo
      * @return the file manager
      */
     @Override
-    public FileManager getFileManager() {
+    public RunManager getFileManager() {
         throw new MassCascadeException("Memory containers are not file based.");
     }
 
@@ -164,6 +164,20 @@ public class MemoryFeatureContainer extends MemoryContainer implements FeatureCo
         return featuresMap.containsKey(i) ? featuresMap.get(i) : null;
     }
 
+    /**
+     * Returns the features with the given identifiers in the given order.
+     *
+     * @param ids the feature identifiers
+     * @return the features
+     */
+    @Override
+    public List<Feature> getFeatures(int[] ids) {
+
+        List<Feature> features = new ArrayList<>(ids.length);
+        for (int id : ids) features.add(getFeature(id));
+        return features;
+    }
+
     /**
      * Returns the complete feature list.
      *
@@ -120,6 +120,20 @@ public class MemoryFeatureSetContainer extends MemoryContainer implements Featur
         return (featureSetMap.containsKey(featureSetId)) ? featureSetMap.get(featureSetId) : null;
     }
 
+    /**
+     * Returns the featuresets with the given identifiers in the given order.
+     *
+     * @param featureSetIds the featureset identifiers
+     * @return the featuresets
+     */
+    @Override
+    public List<FeatureSet> getFeatureSets(int[] featureSetIds) {
+
+        List<FeatureSet> featureSets = new ArrayList<>(featureSetIds.length);
+        for (int featureSetId : featureSetIds) featureSets.add(getFeatureSet(featureSetId));
+        return featureSets;
+    }
+
     /**
      * Adds a featureset to the collection.
      *
@@ -26,6 +26,7 @@ import org.apache.log4j.Logger;
 import uk.ac.ebi.masscascade.core.container.memory.MemoryContainer;
 import uk.ac.ebi.masscascade.core.chromatogram.BasePeakChromatogram;
 import uk.ac.ebi.masscascade.core.chromatogram.TotalIonChromatogram;
+import uk.ac.ebi.masscascade.core.scan.ScanIndex;
 import uk.ac.ebi.masscascade.core.scan.ScanInfo;
 import uk.ac.ebi.masscascade.core.scan.ScanLevel;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
@@ -59,6 +60,7 @@ public class MemoryScanContainer extends MemoryContainer implements ScanContaine
     private final List<ScanLevel> scanLevels;
 
     private final List<LinkedHashMap<Integer, Scan>> scans;
+    private final ScanIndex scanIndex;
     private final LinkedHashMap<Constants.MSN, TotalIonChromatogram> tics;
     private BasePeakChromatogram basePeakChromatogram;
 
@@ -82,6 +84,7 @@ public class MemoryScanContainer extends MemoryContainer implements ScanContaine
         basePeakChromatogram = new BasePeakChromatogram();
 
         scans = new ArrayList<LinkedHashMap<Integer, Scan>>();
+        scanIndex = new ScanIndex();
     }
 
     /**
@@ -130,6 +133,11 @@ public class MemoryScanContainer extends MemoryContainer implements ScanContaine
         this.tics = tics;
         this.basePeakChromatogram = basePeakChromatogram;
         this.scans = scans;
+
+        scanIndex = new ScanIndex();
+        for (Map<Integer, Scan> levelScans : scans) {
+            for (Scan scan : levelScans.values()) scanIndex.add(scan, -1);
+        }
     }
 
     /**
@@ -141,6 +149,7 @@ public class MemoryScanContainer extends MemoryContainer implements ScanContaine
     public void addScan(Scan scan) {
 
         Constants.MSN scanMSn = scan.getMsn();
+        scanIndex.add(scan, -1);
 
         if (scanMSn.getLvl() <= scans.size()) {
             scans.get(scanMSn.getLvl() - 1).put(scan.getIndex(), scan);
@@ -320,6 +329,30 @@ public class MemoryScanContainer extends MemoryContainer implements ScanContaine
         return null;
     }
 
+    /**
+     * Returns the scans with the given scan indices in the given order.
+     *
+     * @param indices the scan indices
+     * @return the scans
+     */
+    @Override
+    public List<Scan> getScans(int[] indices) {
+
+        List<Scan> scanList = new ArrayList<>(indices.length);
+        for (int index : indices) scanList.add(getScan(index));
+        return scanList;
+    }
+
+    /**
+     * Returns the meta information index of all scans.
+     *
+     * @return the scan index
+     */
+    @Override
+    public ScanIndex getScanIndex() {
+        return scanIndex;
+    }
+
     /**
      * Returns the scan with the given array index.
      *
@@ -29,6 +29,7 @@ import uk.ac.ebi.masscascade.core.MsnManager;
 import uk.ac.ebi.masscascade.core.PropertyManager;
 import uk.ac.ebi.masscascade.core.PropertyType;
 import uk.ac.ebi.masscascade.core.chromatogram.MassChromatogram;
+import uk.ac.ebi.masscascade.core.scan.ScanIndex;
 import uk.ac.ebi.masscascade.interfaces.*;
 import uk.ac.ebi.masscascade.interfaces.Feature;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
@@ -514,7 +515,8 @@ public class FeatureImpl implements Feature {
     }
 
     /**
-     * Gets the daughter scan index list for this feature specific for the given time range.
+     * Gets the daughter scan index list for this feature specific for the given time range. The retention times are
+     * taken from the scan index of the container.
      *
      * @param container the scan data container
      * @param timeRange the time range
@@ -526,10 +528,13 @@ public class FeatureImpl implements Feature {
         Map<Constants.MSN, Set<Integer>> msnToScanIds = msnManager.getMsnToScanIds();
         if (msnToScanIds.isEmpty()) return msnToScanIds;
 
+        ScanIndex scanIndex = container.getScanIndex();
         Map<Constants.MSN, Set<Integer>> resultMap = new HashMap<>();
         Set<Integer> resultSet = new HashSet<>();
         for (Integer scanId : msnToScanIds.get(Constants.MSN.MS2)) {
-            double scanRt = container.getScan(scanId).getRetentionTime();
+            int pos = scanIndex.find(scanId);
+            if (pos == -1) continue;
+            double scanRt = scanIndex.getRetentionTime(pos);
             if (scanRt >= timeRange.getLowerBounds() - 2 && scanRt <= timeRange.getUpperBounds() + 2)
                 resultSet.add(scanId);
         }
@@ -22,8 +22,8 @@
 
 package uk.ac.ebi.masscascade.core.feature;
 
-import uk.ac.ebi.masscascade.core.container.file.FileManager;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 
 import java.util.Iterator;
 import java.util.List;
@@ -34,7 +34,7 @@ import java.util.List;
 public class FeatureIterator implements Iterator<Feature> {
 
     private final List<Long> profilePointers;
-    private final FileManager fileManager;
+    private final RunManager fileManager;
     private int currentPosition;
 
     /**
@@ -43,7 +43,7 @@ public class FeatureIterator implements Iterator<Feature> {
      * @param profilePointers the feature pointers for the data file
      * @param fileManager     the file manager handling the data file
      */
-    public FeatureIterator(List<Long> profilePointers, FileManager fileManager) {
+    public FeatureIterator(List<Long> profilePointers, RunManager fileManager) {
 
         this.profilePointers = profilePointers;
         this.fileManager = fileManager;
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.core.feature;
+
+import uk.ac.ebi.masscascade.core.OrderedMapper;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+
+import java.util.List;
+
+/**
+ * Ordered parallel flat map over the features of a feature container.
+ * <p/>
+ * Adapts {@link OrderedMapper} to feature containers. The resulting features are added to the output container in
+ * input order and numbered consecutively from one, so the output does not depend on the number of workers.
+ * Implementations of {@link #map(Feature)} must be thread-safe.
+ */
+public abstract class FeatureMapper {
+
+    private final int parallelism;
+
+    /**
+     * Constructs a mapper that uses all workers of the pool.
+     */
+    protected FeatureMapper() {
+        this(0);
+    }
+
+    /**
+     * Constructs a mapper that uses at most the given number of workers.
+     *
+     * @param parallelism the maximum number of workers, or 0 for all workers of the pool
+     */
+    protected FeatureMapper(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Processes a single feature.
+     *
+     * @param feature the input feature
+     * @return the resulting features, which are renumbered on merge
+     */
+    protected abstract List<Feature> map(Feature feature);
+
+    /**
+     * Maps all features of the input container into a new container.
+     *
+     * @param featureContainer the input feature container
+     * @param id               the identifier of the output feature container
+     * @return the output feature container
+     */
+    public FeatureContainer run(FeatureContainer featureContainer, String id) {
+
+        final FeatureContainer outFeatureContainer = featureContainer.getBuilder().newInstance(FeatureContainer.class,
+                id, featureContainer.getIonMode(), featureContainer.getWorkingDirectory());
+
+        new OrderedMapper<Feature, List<Feature>>(parallelism) {
+
+            private int featureId = 1;
+
+            @Override
+            protected List<Feature> map(Feature feature) {
+                return FeatureMapper.this.map(feature);
+            }
+
+            @Override
+            protected void collect(List<Feature> features) {
+
+                if (features == null || features.isEmpty()) return;
+
+                for (Feature feature : features) feature.setId(featureId++);
+                outFeatureContainer.addFeatureList(features);
+            }
+        }.run(featureContainer);
+
+        outFeatureContainer.finaliseFile();
+        return outFeatureContainer;
+    }
+}
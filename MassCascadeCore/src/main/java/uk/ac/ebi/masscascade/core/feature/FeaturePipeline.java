@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade.core.feature;
+
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureStreamTask;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a chain of {@link FeatureStreamTask} over a single pass of the features of a feature container. Every feature
+ * is pushed through all tasks before the next feature is read, and only the features leaving the last task are added
+ * to the output container.
+ */
+public class FeaturePipeline {
+
+    private final List<FeatureStreamTask> stages;
+    private final List<List<Feature>> buffers;
+
+    /**
+     * Constructs a feature pipeline.
+     *
+     * @param stages the chained tasks in order
+     */
+    public FeaturePipeline(List<? extends FeatureStreamTask> stages) {
+
+        this.stages = new ArrayList<>(stages);
+        buffers = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) buffers.add(new ArrayList<Feature>());
+    }
+
+    /**
+     * Runs the pipeline.
+     *
+     * @param featureContainer the input feature container
+     * @param id               the identifier of the output feature container
+     * @return the output feature container
+     */
+    public FeatureContainer run(FeatureContainer featureContainer, String id) {
+
+        FeatureContainer outFeatureContainer = featureContainer.getBuilder().newInstance(FeatureContainer.class, id,
+                featureContainer.getIonMode(), featureContainer.getWorkingDirectory());
+
+        for (Feature feature : featureContainer) push(0, feature, outFeatureContainer);
+
+        outFeatureContainer.finaliseFile();
+        return outFeatureContainer;
+    }
+
+    private void push(int stage, Feature feature, FeatureContainer outFeatureContainer) {
+
+        if (stage == stages.size()) {
+            outFeatureContainer.addFeature(feature);
+            return;
+        }
+
+        List<Feature> buffer = buffers.get(stage);
+        stages.get(stage).process(feature, buffer);
+        for (Feature processedFeature : buffer) push(stage + 1, processedFeature, outFeatureContainer);
+        buffer.clear();
+    }
+}
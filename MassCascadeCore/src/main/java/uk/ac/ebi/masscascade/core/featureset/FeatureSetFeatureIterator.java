@@ -22,8 +22,8 @@
 
 package uk.ac.ebi.masscascade.core.featureset;
 
-import uk.ac.ebi.masscascade.core.container.file.FileManager;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 
 import java.util.Iterator;
 import java.util.List;
@@ -34,7 +34,7 @@ import java.util.List;
 public class FeatureSetFeatureIterator implements Iterator<Feature> {
 
     private final List<Long> featureSetPointers;
-    private final FileManager fileManager;
+    private final RunManager fileManager;
     private Iterator<Feature> profileIterator;
     private int currentPosition;
     private FeatureSetImpl cachedFeatureSetImpl;
@@ -45,7 +45,7 @@ public class FeatureSetFeatureIterator implements Iterator<Feature> {
      * @param featureSetPointers the feature set pointers for the data file
      * @param fileManager        the file manager handling the data file
      */
-    public FeatureSetFeatureIterator(List<Long> featureSetPointers, FileManager fileManager) {
+    public FeatureSetFeatureIterator(List<Long> featureSetPointers, RunManager fileManager) {
 
         this.featureSetPointers = featureSetPointers;
         this.fileManager = fileManager;
@@ -22,7 +22,7 @@
 
 package uk.ac.ebi.masscascade.core.featureset;
 
-import uk.ac.ebi.masscascade.core.container.file.FileManager;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 
 import java.util.Iterator;
 import java.util.List;
@@ -33,7 +33,7 @@ import java.util.List;
 public class FeatureSetIterator implements Iterator<uk.ac.ebi.masscascade.interfaces.FeatureSet> {
 
     private final List<Long> featureSetPointers;
-    private final FileManager fileManager;
+    private final RunManager fileManager;
     private int currentPosition;
 
     /**
@@ -42,7 +42,7 @@ public class FeatureSetIterator implements Iterator<uk.ac.ebi.masscascade.interf
      * @param featureSetPointers the feature set pointers for the data file
      * @param fileManager      the file manager handling the data file
      */
-    public FeatureSetIterator(List<Long> featureSetPointers, FileManager fileManager) {
+    public FeatureSetIterator(List<Long> featureSetPointers, RunManager fileManager) {
 
         this.featureSetPointers = featureSetPointers;
         this.fileManager = fileManager;
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.core.featureset;
+
+import uk.ac.ebi.masscascade.core.OrderedMapper;
+import uk.ac.ebi.masscascade.interfaces.FeatureSet;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+
+/**
+ * Ordered parallel map over the feature sets of a feature set container.
+ * <p/>
+ * Adapts {@link OrderedMapper} to feature set containers. The results are added to the output container in input
+ * order, and dropped feature sets are skipped. Implementations of {@link #map(FeatureSet)} must be thread-safe.
+ */
+public abstract class FeatureSetMapper {
+
+    private final int parallelism;
+
+    /**
+     * Constructs a mapper that uses all workers of the pool.
+     */
+    protected FeatureSetMapper() {
+        this(0);
+    }
+
+    /**
+     * Constructs a mapper that uses at most the given number of workers.
+     *
+     * @param parallelism the maximum number of workers, or 0 for all workers of the pool
+     */
+    protected FeatureSetMapper(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Processes a single feature set.
+     *
+     * @param featureSet the input feature set
+     * @return the processed feature set or null if the feature set is dropped
+     */
+    protected abstract FeatureSet map(FeatureSet featureSet);
+
+    /**
+     * Maps all feature sets of the input container into a new container.
+     *
+     * @param featureSetContainer the input feature set container
+     * @param id                  the identifier of the output feature set container
+     * @return the output feature set container
+     */
+    public FeatureSetContainer run(FeatureSetContainer featureSetContainer, String id) {
+
+        final FeatureSetContainer outFeatureSetContainer = featureSetContainer.getBuilder().newInstance(
+                FeatureSetContainer.class, id, featureSetContainer.getIonMode(),
+                featureSetContainer.getWorkingDirectory());
+
+        new OrderedMapper<FeatureSet, FeatureSet>(parallelism) {
+
+            @Override
+            protected FeatureSet map(FeatureSet featureSet) {
+                return FeatureSetMapper.this.map(featureSet);
+            }
+
+            @Override
+            protected void collect(FeatureSet featureSet) {
+                if (featureSet != null) outFeatureSetContainer.addFeatureSet(featureSet);
+            }
+        }.run(featureSetContainer);
+
+        outFeatureSetContainer.finaliseFile();
+        return outFeatureSetContainer;
+    }
+}
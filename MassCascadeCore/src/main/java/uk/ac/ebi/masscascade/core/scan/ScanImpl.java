@@ -28,13 +28,12 @@ import uk.ac.ebi.masscascade.interfaces.Scan;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
 import uk.ac.ebi.masscascade.utilities.range.ToleranceRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
-import java.util.ListIterator;
-
 /**
- * Class representing a single mass spec scan.
+ * Class representing a single mass spec scan. The scan data is held in primitive arrays, see {@link XYArray}.
  */
 public class ScanImpl implements Scan, Comparable<Scan> {
 
@@ -47,7 +46,7 @@ public class ScanImpl implements Scan, Comparable<Scan> {
     private final Range mzRange;
     private final Constants.ION_MODE ionMode;
     private final XYList basePeak;
-    protected final XYList xyList;
+    protected final XYArray data;
 
     protected int parentScan;
     protected int parentCharge;
@@ -64,7 +63,7 @@ public class ScanImpl implements Scan, Comparable<Scan> {
         this.totalIonCurrent = -1;
         this.mzRange = null;
         this.ionMode = null;
-        this.xyList = null;
+        this.data = null;
         this.basePeak = null;
     }
 
@@ -86,6 +85,28 @@ public class ScanImpl implements Scan, Comparable<Scan> {
     public ScanImpl(int scanIndex, Constants.MSN msn, Constants.ION_MODE ionMode, XYList xyList, Range mzRange,
             XYList basePeak, double retentionTime, double totalIonCurrent, int parentScan, int parentCharge,
             double parentMz) {
+        this(scanIndex, msn, ionMode, new XYArray(xyList), mzRange, basePeak, retentionTime, totalIonCurrent,
+                parentScan, parentCharge, parentMz);
+    }
+
+    /**
+     * Constructs a fully configured scan.
+     *
+     * @param scanIndex       the scan index
+     * @param msn             the MSn level
+     * @param ionMode         the ion mode
+     * @param data            the scan data arrays
+     * @param mzRange         the range in the mass domain
+     * @param basePeak        the base feature
+     * @param retentionTime   the retention time
+     * @param totalIonCurrent the total ion current
+     * @param parentScan      the parent scan reference
+     * @param parentCharge    the parent scan charge
+     * @param parentMz        the parent signal mz
+     */
+    public ScanImpl(int scanIndex, Constants.MSN msn, Constants.ION_MODE ionMode, XYArray data, Range mzRange,
+            XYList basePeak, double retentionTime, double totalIonCurrent, int parentScan, int parentCharge,
+            double parentMz) {
 
         this.scanIndex = scanIndex;
         this.msn = msn;
@@ -96,7 +117,7 @@ public class ScanImpl implements Scan, Comparable<Scan> {
         this.totalIonCurrent = totalIonCurrent;
         this.mzRange = mzRange;
         this.ionMode = ionMode;
-        this.xyList = xyList;
+        this.data = data;
         this.basePeak = basePeak;
     }
 
@@ -114,6 +135,23 @@ public class ScanImpl implements Scan, Comparable<Scan> {
      */
     public ScanImpl(int scanIndex, Constants.MSN msn, Constants.ION_MODE ionMode, XYList xyList, double retentionTime,
             int parentScan, int parentCharge, double parentMz) {
+        this(scanIndex, msn, ionMode, new XYArray(xyList), retentionTime, parentScan, parentCharge, parentMz);
+    }
+
+    /**
+     * Constructs a minimal scan.
+     *
+     * @param scanIndex     the scan index
+     * @param msn           the MSn level
+     * @param ionMode       an ion mode
+     * @param data          the scan data arrays
+     * @param retentionTime the retention time
+     * @param parentScan    the parent scan reference
+     * @param parentCharge  the parent scan charge
+     * @param parentMz      the parent signal mz
+     */
+    public ScanImpl(int scanIndex, Constants.MSN msn, Constants.ION_MODE ionMode, XYArray data, double retentionTime,
+            int parentScan, int parentCharge, double parentMz) {
 
         this.scanIndex = scanIndex;
         this.msn = msn;
@@ -122,30 +160,32 @@ public class ScanImpl implements Scan, Comparable<Scan> {
         this.parentMz = parentMz;
         this.retentionTime = retentionTime;
         this.ionMode = ionMode;
-        this.xyList = xyList;
+        this.data = data;
         this.basePeak = new XYList();
 
-        if (xyList.isEmpty()) {
+        if (data.isEmpty()) {
 
             this.mzRange = new ExtendableRange(0);
             this.totalIonCurrent = 0;
         } else {
 
+            double[] ys = data.getYs();
+
             int baseIndex = 0;
             double baseIntensity = 0;
             double tmpTic = 0;
 
-            for (int i = 0; i < xyList.size(); i++) {
+            for (int i = 0; i < ys.length; i++) {
 
-                if (baseIntensity < xyList.get(i).y) {
+                if (baseIntensity < ys[i]) {
                     baseIndex = i;
-                    baseIntensity = xyList.get(i).y;
+                    baseIntensity = ys[i];
                 }
-                tmpTic += xyList.get(i).y;
+                tmpTic += ys[i];
             }
 
-            this.mzRange = new ExtendableRange(xyList.get(0).x, xyList.get(xyList.size() - 1).x);
-            this.basePeak.add(xyList.get(baseIndex));
+            this.mzRange = new ExtendableRange(data.getX(0), data.getX(data.size() - 1));
+            this.basePeak.add(data.getPoint(baseIndex));
             this.totalIonCurrent = tmpTic;
         }
     }
@@ -232,12 +272,22 @@ public class ScanImpl implements Scan, Comparable<Scan> {
     }
 
     /**
-     * Gets the xy data.
+     * Gets the xy data. The point list is created from the primitive scan data on every call: changes to the list do
+     * not affect the scan. Use {@link #getDataArray()} for read-only access without object allocation.
      *
      * @return the xy data
      */
     public final XYList getData() {
-        return xyList;
+        return data.toXYList();
+    }
+
+    /**
+     * Gets the xy data as primitive arrays.
+     *
+     * @return the xy data arrays
+     */
+    public final XYArray getDataArray() {
+        return data;
     }
 
     /**
@@ -254,11 +304,10 @@ public class ScanImpl implements Scan, Comparable<Scan> {
      *
      * @return the minimum intensity
      */
-    public synchronized double getMinIntensity() {
+    public double getMinIntensity() {
 
         double min = Double.MAX_VALUE;
-        for (XYPoint dataPoint : xyList) {
-            double d = dataPoint.y;
+        for (double d : data.getYs()) {
             if (d != 0) {
                 min = (min > d) ? d : min;
             }
@@ -275,58 +324,15 @@ public class ScanImpl implements Scan, Comparable<Scan> {
      */
     public XYPoint getNearestPoint(double mz, double ppm) {
 
-        int low = 0;
-        int high = xyList.size() - 1;
-        int mid;
-
-        XYPoint midPoint;
-        ListIterator<XYPoint> iter = xyList.listIterator();
-
-        while (low <= high) {
-            mid = (low + high) >>> 1;
-            midPoint = get(iter, mid);
-
-            if (midPoint.x < mz) low = mid + 1;
-            else if (midPoint.x > mz) high = mid - 1;
-            else return midPoint;
-        }
-
-        int ip = low;
-        if (low == xyList.size()) ip = low - 1;
-        else if (low == 0) ip = low;
-        else if (low == xyList.size() - 1) {
-            if (xyList.get(ip).x - mz > xyList.get(ip - 1).x - mz) ip--;
-        } else {
-            if (xyList.get(ip).x - mz > xyList.get(ip + 1).x - mz) ip++;
-            else if (xyList.get(ip).x - mz > xyList.get(ip - 1).x - mz) ip--;
-        }
+        int ip = data.getClosestIndex(mz);
+        if (ip == -1) return null;
 
         Range range = new ToleranceRange(mz, ppm);
-        if (range.contains(xyList.get(ip).x)) return xyList.get(ip);
+        if (range.contains(data.getX(ip))) return data.getPoint(ip);
 
         return null;
     }
 
-    /**
-     * Gets the ith element from the given list by repositioning the specified
-     * list listIterator.
-     */
-    private XYPoint get(ListIterator<XYPoint> i, int index) {
-
-        XYPoint xyp;
-        int pos = i.nextIndex();
-        if (pos <= index) {
-            do {
-                xyp = i.next();
-            } while (pos++ < index);
-        } else {
-            do {
-                xyp = i.previous();
-            } while (--pos > index);
-        }
-        return xyp;
-    }
-
     /**
      * Compares two scans based on retention time.
      *
@@ -364,11 +370,10 @@ public class ScanImpl implements Scan, Comparable<Scan> {
                 this.parentCharge == scan.getParentCharge() && this.parentMz == scan.getParentMz() &&
                 this.parentScan == scan.getParentScan()) {
 
-            int i = 0;
-            for (XYPoint dataPoint : this.xyList) {
-
-                if (dataPoint.x != scan.getData().get(i).x || dataPoint.y != scan.getData().get(i).y) return false;
-                i++;
+            XYArray scanData = scan.getDataArray();
+            if (data.size() != scanData.size()) return false;
+            for (int i = 0; i < data.size(); i++) {
+                if (data.getX(i) != scanData.getX(i) || data.getY(i) != scanData.getY(i)) return false;
             }
             return true;
         }
@@ -393,8 +398,8 @@ public class ScanImpl implements Scan, Comparable<Scan> {
         hash = hash * 17 + new Double(parentMz).hashCode();
         hash = hash * 17 + new Double(parentScan).hashCode();
 
-        for (XYPoint dataPoint : this.xyList) {
-            hash = hash + new Double(dataPoint.x).hashCode();
+        for (double x : data.getXs()) {
+            hash = hash + new Double(x).hashCode();
         }
 
         return hash;
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.core.scan;
+
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.parameters.Constants;
+
+import java.util.Arrays;
+
+/**
+ * Compact index of the scan meta information of a scan container.
+ * <p/>
+ * For every scan, the index holds the scan index, MSn level, ion mode, retention time, precursor m/z and charge, parent
+ * scan, total ion current and file pointer in primitive arrays, in the order the scans were added. Meta information
+ * queries are answered from the index without deserializing the spectra. The index is filled while the container is
+ * built and can be read from several threads afterwards.
+ */
+public class ScanIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final Constants.MSN[] LEVELS = Constants.MSN.values();
+    private static final Constants.ION_MODE[] ION_MODES = Constants.ION_MODE.values();
+
+    private int[] indices;
+    private byte[] levels;
+    private byte[] ionModes;
+    private double[] retentionTimes;
+    private double[] parentMzs;
+    private int[] parentCharges;
+    private int[] parentScans;
+    private double[] totalIonCurrents;
+    private long[] pointers;
+    private int size;
+
+    // positions sorted by scan index if the scans were not added in ascending order
+    private boolean ascending;
+    private volatile int[] order;
+
+    /**
+     * Constructs an empty scan index.
+     */
+    public ScanIndex() {
+
+        indices = new int[INITIAL_CAPACITY];
+        levels = new byte[INITIAL_CAPACITY];
+        ionModes = new byte[INITIAL_CAPACITY];
+        retentionTimes = new double[INITIAL_CAPACITY];
+        parentMzs = new double[INITIAL_CAPACITY];
+        parentCharges = new int[INITIAL_CAPACITY];
+        parentScans = new int[INITIAL_CAPACITY];
+        totalIonCurrents = new double[INITIAL_CAPACITY];
+        pointers = new long[INITIAL_CAPACITY];
+        ascending = true;
+    }
+
+    /**
+     * Adds the meta information of a scan.
+     *
+     * @param scan    the scan
+     * @param pointer the file pointer of the scan or -1 if the scan is not serialized
+     */
+    public void add(Scan scan, long pointer) {
+
+        if (size == indices.length) {
+            int capacity = size * 2;
+            indices = Arrays.copyOf(indices, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            ionModes = Arrays.copyOf(ionModes, capacity);
+            retentionTimes = Arrays.copyOf(retentionTimes, capacity);
+            parentMzs = Arrays.copyOf(parentMzs, capacity);
+            parentCharges = Arrays.copyOf(parentCharges, capacity);
+            parentScans = Arrays.copyOf(parentScans, capacity);
+            totalIonCurrents = Arrays.copyOf(totalIonCurrents, capacity);
+            pointers = Arrays.copyOf(pointers, capacity);
+        }
+
+        if (size > 0 && scan.getIndex() <= indices[size - 1]) ascending = false;
+
+        indices[size] = scan.getIndex();
+        levels[size] = (byte) scan.getMsn().ordinal();
+        ionModes[size] = (scan.getIonMode() == null) ? -1 : (byte) scan.getIonMode().ordinal();
+        retentionTimes[size] = scan.getRetentionTime();
+        parentMzs[size] = scan.getParentMz();
+        parentCharges[size] = scan.getParentCharge();
+        parentScans[size] = scan.getParentScan();
+        totalIonCurrents[size] = scan.getTotalIonCurrent();
+        pointers[size] = pointer;
+        size++;
+        order = null;
+    }
+
+    /**
+     * Returns the number of indexed scans.
+     *
+     * @return the number of scans
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the position of the scan with the given scan index.
+     *
+     * @param scanIndex the scan index
+     * @return the position or -1 if the scan is not indexed
+     */
+    public int find(int scanIndex) {
+
+        if (ascending) {
+            int pos = Arrays.binarySearch(indices, 0, size, scanIndex);
+            return (pos < 0) ? -1 : pos;
+        }
+
+        int[] sortedPositions = getOrder();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midIndex = indices[sortedPositions[mid]];
+            if (midIndex < scanIndex) low = mid + 1;
+            else if (midIndex > scanIndex) high = mid - 1;
+            else return sortedPositions[mid];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the scan index at the given position.
+     *
+     * @param pos the position
+     * @return the scan index
+     */
+    public int getIndex(int pos) {
+        return indices[pos];
+    }
+
+    /**
+     * Returns the MSn level at the given position.
+     *
+     * @param pos the position
+     * @return the MSn level
+     */
+    public Constants.MSN getMsn(int pos) {
+        return LEVELS[levels[pos]];
+    }
+
+    /**
+     * Returns the ion mode at the given position.
+     *
+     * @param pos the position
+     * @return the ion mode or null if the scan has none
+     */
+    public Constants.ION_MODE getIonMode(int pos) {
+        return (ionModes[pos] < 0) ? null : ION_MODES[ionModes[pos]];
+    }
+
+    /**
+     * Returns the retention time at the given position.
+     *
+     * @param pos the position
+     * @return the retention time
+     */
+    public double getRetentionTime(int pos) {
+        return retentionTimes[pos];
+    }
+
+    /**
+     * Returns the precursor m/z at the given position.
+     *
+     * @param pos the position
+     * @return the precursor m/z
+     */
+    public double getParentMz(int pos) {
+        return parentMzs[pos];
+    }
+
+    /**
+     * Returns the precursor charge at the given position.
+     *
+     * @param pos the position
+     * @return the precursor charge
+     */
+    public int getParentCharge(int pos) {
+        return parentCharges[pos];
+    }
+
+    /**
+     * Returns the parent scan index at the given position.
+     *
+     * @param pos the position
+     * @return the parent scan index
+     */
+    public int getParentScan(int pos) {
+        return parentScans[pos];
+    }
+
+    /**
+     * Returns the total ion current at the given position.
+     *
+     * @param pos the position
+     * @return the total ion current
+     */
+    public double getTotalIonCurrent(int pos) {
+        return totalIonCurrents[pos];
+    }
+
+    /**
+     * Returns the file pointer at the given position.
+     *
+     * @param pos the position
+     * @return the file pointer or -1 if the scan is not serialized
+     */
+    public long getPointer(int pos) {
+        return pointers[pos];
+    }
+
+    private int[] getOrder() {
+
+        int[] sortedPositions = order;
+        if (sortedPositions != null) return sortedPositions;
+
+        synchronized (this) {
+            if (order == null) {
+                // sort packed scan index and position pairs
+                long[] keys = new long[size];
+                for (int i = 0; i < size; i++) keys[i] = ((long) indices[i] << 32) | i;
+                Arrays.sort(keys);
+
+                sortedPositions = new int[size];
+                for (int i = 0; i < size; i++) sortedPositions[i] = (int) keys[i];
+                order = sortedPositions;
+            }
+            return order;
+        }
+    }
+}
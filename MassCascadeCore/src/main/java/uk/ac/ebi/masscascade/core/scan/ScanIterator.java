@@ -22,7 +22,7 @@
 
 package uk.ac.ebi.masscascade.core.scan;
 
-import uk.ac.ebi.masscascade.core.container.file.FileManager;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 import uk.ac.ebi.masscascade.interfaces.Scan;
 
 import java.util.Iterator;
@@ -31,7 +31,7 @@ import java.util.List;
 public class ScanIterator implements Iterator<Scan> {
 
     private final List<Long> scanPointers;
-    private final FileManager fileManager;
+    private final RunManager fileManager;
     private int currentPosition;
 
     /**
@@ -40,7 +40,7 @@ public class ScanIterator implements Iterator<Scan> {
      * @param scanPointers the scan pointers for the data file
      * @param fileManager  the file manager handling the data file
      */
-    public ScanIterator(List<Long> scanPointers, FileManager fileManager) {
+    public ScanIterator(List<Long> scanPointers, RunManager fileManager) {
 
         this.scanPointers = scanPointers;
         this.fileManager = fileManager;
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade.core.scan;
+
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.ScanStreamTask;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a chain of {@link ScanStreamTask} over a single pass of the MS1 scans of a scan container. Every scan is pushed
+ * through all tasks before the next scan is read, and only the scans leaving the last task are added to the output
+ * container. MSn scans are copied unchanged.
+ */
+public class ScanPipeline {
+
+    private final List<ScanStreamTask> stages;
+    private final List<List<Scan>> buffers;
+
+    /**
+     * Constructs a scan pipeline.
+     *
+     * @param stages the chained tasks in order
+     */
+    public ScanPipeline(List<? extends ScanStreamTask> stages) {
+
+        this.stages = new ArrayList<>(stages);
+        buffers = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) buffers.add(new ArrayList<Scan>());
+    }
+
+    /**
+     * Runs the pipeline.
+     *
+     * @param scanContainer the input scan container
+     * @param id            the identifier of the output scan container
+     * @return the output scan container
+     */
+    public ScanContainer run(ScanContainer scanContainer, String id) {
+
+        ScanContainer outScanContainer = scanContainer.getBuilder().newInstance(ScanContainer.class, id, scanContainer);
+
+        for (ScanLevel level : scanContainer.getScanLevels()) {
+
+            if (level.getMsn() == Constants.MSN.MS1) {
+                for (Scan scan : scanContainer) push(0, scan, outScanContainer);
+                flush(outScanContainer);
+            } else {
+                for (Scan scan : scanContainer.iterator(level.getMsn())) outScanContainer.addScan(scan);
+            }
+        }
+
+        outScanContainer.finaliseFile(scanContainer.getScanInfo().getDate());
+        return outScanContainer;
+    }
+
+    private void push(int stage, Scan scan, ScanContainer outScanContainer) {
+
+        if (stage == stages.size()) {
+            outScanContainer.addScan(scan);
+            return;
+        }
+
+        List<Scan> buffer = buffers.get(stage);
+        stages.get(stage).process(scan, buffer);
+        release(stage, buffer, outScanContainer);
+    }
+
+    private void flush(ScanContainer outScanContainer) {
+
+        for (int stage = 0; stage < stages.size(); stage++) {
+            List<Scan> buffer = buffers.get(stage);
+            stages.get(stage).flush(buffer);
+            release(stage, buffer, outScanContainer);
+        }
+    }
+
+    private void release(int stage, List<Scan> buffer, ScanContainer outScanContainer) {
+
+        for (Scan processedScan : buffer) push(stage + 1, processedScan, outScanContainer);
+        buffer.clear();
+    }
+}
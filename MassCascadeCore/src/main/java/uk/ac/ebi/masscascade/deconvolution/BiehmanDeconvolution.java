@@ -24,6 +24,7 @@ package uk.ac.ebi.masscascade.deconvolution;
 
 import org.apache.commons.math3.util.FastMath;
 import uk.ac.ebi.masscascade.core.feature.FeatureImpl;
+import uk.ac.ebi.masscascade.core.feature.FeatureMapper;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Feature;
@@ -43,6 +44,7 @@ import uk.ac.ebi.masscascade.utilities.math.Parabola;
 import uk.ac.ebi.masscascade.utilities.math.QuadraticEquation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeMap;
@@ -56,18 +58,18 @@ import java.util.TreeSet;
  * <li>Parameter <code> SCAN_CONTAINER </code>- The input scan container.</li>
  * <li>Parameter <code> FEATURE_CONTAINER </code>- The input feature container.</li>
  * </ul>
+ * <p/>
+ * Features are deconvoluted independently of each other on a fork join pool. The deconvoluted features are numbered in
+ * input order when they are merged into the output container.
  */
 public class BiehmanDeconvolution extends CallableTask {
 
     private static final int MIN_SIZE = 5;
 
     private boolean center;
-    private double noiseEstimate;
-
-    private int featureId;
-
     private int noiseFactor;
     private FeatureContainer featureContainer;
+    private int parallelism;
     private ScanContainer scanContainer;
     private NoiseEstimation noiseEstimation;
 
@@ -97,9 +99,9 @@ public class BiehmanDeconvolution extends CallableTask {
         noiseFactor = params.get(Parameter.NOISE_FACTOR, Integer.class);
         scanContainer = params.get(Parameter.SCAN_CONTAINER, ScanContainer.class);
         featureContainer = params.get(Parameter.FEATURE_CONTAINER, FeatureContainer.class);
+        parallelism = params.containsKey(Parameter.PARALLELISM) ? params.get(Parameter.PARALLELISM, Integer.class) : 0;
 
         noiseEstimation = new NoiseEstimation();
-        noiseEstimate = 0;
     }
 
     /**
@@ -110,25 +112,33 @@ public class BiehmanDeconvolution extends CallableTask {
     public FeatureContainer call() {
 
         String id = featureContainer.getId() + IDENTIFIER;
-        FeatureContainer outFeatureContainer = featureContainer.getBuilder().newInstance(FeatureContainer.class, id,
-                featureContainer.getIonMode(), featureContainer.getWorkingDirectory());
 
-        featureId = 1;
-
-        for (Feature feature : featureContainer) {
+        return new FeatureMapper(parallelism) {
+            @Override
+            protected List<Feature> map(Feature feature) {
+                return deconvolute(feature);
+            }
+        }.run(featureContainer, id);
+    }
 
-            if (feature.getMzData().size() < MIN_SIZE) continue;
-            if (isNoise(feature.getTrace(2).getData())) continue;
+    /**
+     * Deconvolutes a single feature. The trace and m/z data of the feature are extracted once.
+     *
+     * @param feature the input feature
+     * @return the deconvoluted features
+     */
+    private List<Feature> deconvolute(Feature feature) {
 
-            noiseEstimate = noiseEstimation.getNoiseEstimate(feature);
+        XYList mzData = feature.getMzData();
+        if (mzData.size() < MIN_SIZE) return Collections.emptyList();
+        if (isNoise(feature.getTrace(2).getData())) return Collections.emptyList();
 
-            List<Feature> features = new ArrayList<>();
-            perceiveAll(feature, 0, feature.getMzData().size() - 1, features, -1);
+        XYList xicData = feature.getTrace().getData();
+        double noiseEstimate = noiseEstimation.getNoiseEstimate(xicData);
 
-            outFeatureContainer.addFeatureList(features);
-        }
-        outFeatureContainer.finaliseFile();
-        return outFeatureContainer;
+        List<Feature> features = new ArrayList<>();
+        perceiveAll(feature, xicData, mzData, noiseEstimate, 0, mzData.size() - 1, features, -1);
+        return features;
     }
 
     /**
@@ -156,15 +166,17 @@ public class BiehmanDeconvolution extends CallableTask {
      * Perceives all putative peaks within the trace.
      *
      * @param feature          the feature
+     * @param xicData          the trace data of the feature
+     * @param mzData           the m/z data of the feature
+     * @param noiseEstimate    the noise estimate of the feature
      * @param oriLeftBoundary  the left bound
      * @param oriRightBoundary the right bound
      * @param features         the feature list containing perceived putative peaks
      */
-    private void perceiveAll(Feature feature, int oriLeftBoundary, int oriRightBoundary, List<Feature> features,
-                             int pBoundary) {
+    private void perceiveAll(Feature feature, XYList xicData, XYList mzData, double noiseEstimate,
+                             int oriLeftBoundary, int oriRightBoundary, List<Feature> features, int pBoundary) {
 
         // define deconvolution window
-        XYList xicData = feature.getTrace().getData();
         BiehmanWindow window =
                 new BiehmanWindow(xicData, oriLeftBoundary, oriRightBoundary, noiseEstimate * noiseFactor);
 
@@ -203,9 +215,8 @@ public class BiehmanDeconvolution extends CallableTask {
                 XYPoint dpR = xicData.get(window.getMaxDpIndex() + 1);
                 XYPoint apex = MathUtils.getParabolaVertex(dpL, maxDp, dpR);
 
-                Feature deconFeature =
-                        center ? buildCenteredFeature(feature, xicData, apex, window) : buildFeature(feature, xicData,
-                                window);
+                Feature deconFeature = center ? buildCenteredFeature(feature, xicData, mzData, apex, window) :
+                        buildFeature(feature, xicData, mzData, window);
                 deconFeature.setMsnScans(feature.getMsnScans(scanContainer, deconFeature.getRtRange()));
                 features.add(deconFeature);
             }
@@ -213,63 +224,65 @@ public class BiehmanDeconvolution extends CallableTask {
 
         // moving forward
         if (oriRightBoundary == xicData.size() - 1 && oriRightBoundary != rightBoundary && rightBoundary != pBoundary)
-            perceiveAll(feature, window.getRightMinDpIndex(), xicData.size() - 1, features, rightBoundary);
+            perceiveAll(feature, xicData, mzData, noiseEstimate, window.getRightMinDpIndex(), xicData.size() - 1,
+                    features, rightBoundary);
 
         // moving backward
         if (oriLeftBoundary == 0 && oriLeftBoundary != leftBoundary && leftBoundary != pBoundary)
-            perceiveAll(feature, 0, window.getLeftMinDpIndex(), features, leftBoundary);
+            perceiveAll(feature, xicData, mzData, noiseEstimate, 0, window.getLeftMinDpIndex(), features,
+                    leftBoundary);
     }
 
     /**
-     * Builds an extracted feature from the original feature.
+     * Builds an extracted feature from the original feature. The feature id is assigned on merge.
      *
      * @param feature the original feature
      * @param xicData the trace data of the feature
+     * @param mzData  the m/z data of the feature
      * @param window  the Biehman deconvolution window
      * @return the time-shifted feature
      */
-    private Feature buildFeature(Feature feature, XYList xicData, BiehmanWindow window) {
+    private Feature buildFeature(Feature feature, XYList xicData, XYList mzData, BiehmanWindow window) {
 
         int leftBoundary = window.getLeftBoundary();
         int rightBoundary = window.getRightBoundary();
 
         Feature deconFeature;
         if (xicData.get(leftBoundary).y != Constants.MIN_ABUNDANCE) {
-            double mz = feature.getMzData().get(leftBoundary - 1).x;
-            deconFeature = new FeatureImpl(featureId, new YMinPoint(mz), xicData.get(leftBoundary - 1).x,
-                    feature.getMzRange());
-            deconFeature.addFeaturePoint(feature.getMzData().get(leftBoundary).x, xicData.get(leftBoundary));
-        } else {
-            double mz = feature.getMzData().get(leftBoundary).x;
+            double mz = mzData.get(leftBoundary - 1).x;
             deconFeature =
-                    new FeatureImpl(featureId, new YMinPoint(mz), xicData.get(leftBoundary).x, feature.getMzRange());
+                    new FeatureImpl(0, new YMinPoint(mz), xicData.get(leftBoundary - 1).x, feature.getMzRange());
+            deconFeature.addFeaturePoint(mzData.get(leftBoundary).x, xicData.get(leftBoundary));
+        } else {
+            double mz = mzData.get(leftBoundary).x;
+            deconFeature = new FeatureImpl(0, new YMinPoint(mz), xicData.get(leftBoundary).x, feature.getMzRange());
         }
-        featureId++;
 
         for (int i = leftBoundary + 1; i <= rightBoundary; i++)
-            deconFeature.addFeaturePoint(feature.getMzData().get(i).x, xicData.get(i));
+            deconFeature.addFeaturePoint(mzData.get(i).x, xicData.get(i));
 
         if (xicData.get(rightBoundary).y != Constants.MIN_ABUNDANCE)
-            deconFeature.closeFeature(feature.getMzData().get(rightBoundary + 1), xicData.get(rightBoundary + 1).x);
+            deconFeature.closeFeature(mzData.get(rightBoundary + 1), xicData.get(rightBoundary + 1).x);
         else deconFeature.closeFeature();
 
         return deconFeature;
     }
 
     /**
-     * Builds an extracted, time-shifted feature from the original feature.
+     * Builds an extracted, time-shifted feature from the original feature. The feature id is assigned on merge.
      *
      * @param feature the original feature
      * @param xicData the trace data of the feature
+     * @param mzData  the m/z data of the feature
      * @param apex    the parabola apex
      * @param window  the Biehman deconvolution window
      * @return the time-shifted feature
      */
-    public Feature buildCenteredFeature(Feature feature, XYList xicData, XYPoint apex, BiehmanWindow window) {
+    public Feature buildCenteredFeature(Feature feature, XYList xicData, XYList mzData, XYPoint apex,
+                                        BiehmanWindow window) {
 
         TreeMap<XYPoint, Double> rtIntMz = new TreeMap<>();
 
-        XYList mzData = feature.getMzData();
         double rtShift = apex.x - window.getMaxDp().x;
 
         rtIntMz.put(apex, mzData.get(window.getMaxDpIndex()).x);
@@ -339,7 +352,7 @@ public class BiehmanDeconvolution extends CallableTask {
             }
         }
 
-        Feature centeredFeature = new FeatureImpl(featureId,
+        Feature centeredFeature = new FeatureImpl(0,
                 new XYZPoint(rtIntMz.firstKey().x, rtIntMz.firstEntry().getValue(), rtIntMz.firstKey().y),
                 feature.getMzRange());
 
@@ -350,7 +363,6 @@ public class BiehmanDeconvolution extends CallableTask {
             shiftedDp = it.next();
             centeredFeature.addFeaturePoint(new XYPoint(rtIntMz.get(shiftedDp), shiftedDp.y), shiftedDp.x);
         }
-        featureId++;
 
         centeredFeature.closeFeature();
 
@@ -35,7 +35,8 @@ import java.util.LinkedList;
 import java.util.List;
 
 /**
- * Class to estimate the noise of a given mass trace or peak feature.
+ * Class to estimate the noise of a given mass trace or peak feature. Instances are stateless and can be shared between
+ * threads.
  */
 public class NoiseEstimation {
 
@@ -43,8 +44,6 @@ public class NoiseEstimation {
     private static final int MIN_WINDOW_SIZE = 10;
     private static final int MIN_MEAN_CROSSINGS = 6;
 
-    private LinkedList<XYPoint> queue;
-
     /**
      * Constructs an object for noise estimation.
      */
@@ -59,22 +58,31 @@ public class NoiseEstimation {
      * @return the noise estimate
      */
     public double getNoiseEstimate(Feature massTrace) {
+        return getNoiseEstimate(massTrace.getTrace().getData());
+    }
+
+    /**
+     * Get a noise estimate for the trace data of a segment. Returns 0 if estimate not available.
+     *
+     * @param xicData the trace data of the mass trace segment
+     * @return the noise estimate
+     */
+    public double getNoiseEstimate(XYList xicData) {
 
         List<Double> nfs = new ArrayList<>();
-        XYList xicData = massTrace.getTrace().getData();
 
         if (xicData.size() < MIN_WINDOW_SIZE) {
             return simpleEstimate((XYList) xicData.clone());
         }
 
-        queue = new LinkedList<XYPoint>(xicData.subList(0, MIN_WINDOW_SIZE));
+        LinkedList<XYPoint> queue = new LinkedList<XYPoint>(xicData.subList(0, MIN_WINDOW_SIZE));
 
         for (int startPos = MIN_WINDOW_SIZE; startPos < xicData.size() - MIN_WINDOW_SIZE; startPos++) {
 
-            double crossings = getMeanCrossings();
+            double crossings = getMeanCrossings(queue);
 
             if (crossings >= MIN_MEAN_CROSSINGS) {
-                nfs.add(getNoiseFactor());
+                nfs.add(getNoiseFactor(queue));
                 break;
             }
 
@@ -95,13 +103,14 @@ public class NoiseEstimation {
     /**
      * Gets the number of crossings across the mean.
      *
+     * @param queue the data points of the current window
      * @return the number of crossings
      */
-    private double getMeanCrossings() {
+    private double getMeanCrossings(List<XYPoint> queue) {
 
         int crossings = 0;
         double pointDelta;
-        double lastPointDelta = queue.getFirst().y;
+        double lastPointDelta = queue.get(0).y;
 
         double mean = MathUtils.getMeanY(queue);
 
@@ -120,9 +129,10 @@ public class NoiseEstimation {
     /**
      * Gets the noise factor as median deviation from the mean divided by its square root.
      *
+     * @param queue the data points of the current window
      * @return the noise factor for the segment
      */
-    private double getNoiseFactor() {
+    private double getNoiseFactor(List<XYPoint> queue) {
 
         double mean = MathUtils.getMeanY(queue);
         double[] deviations = new double[queue.size()];
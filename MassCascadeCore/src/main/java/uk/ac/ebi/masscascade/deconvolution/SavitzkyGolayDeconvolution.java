@@ -24,6 +24,7 @@ package uk.ac.ebi.masscascade.deconvolution;
 
 import org.apache.commons.math3.util.FastMath;
 import uk.ac.ebi.masscascade.core.feature.FeatureImpl;
+import uk.ac.ebi.masscascade.core.feature.FeatureMapper;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Feature;
@@ -39,6 +40,7 @@ import uk.ac.ebi.masscascade.utilities.xyz.YMinPoint;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -53,6 +55,9 @@ import java.util.List;
  * <li>Parameter <code> SCAN_CONTAINER </code>- The input raw container.</li>
  * <li>Parameter <code> FEATURE_CONTAINER </code>- The input feature container.</li>
  * </ul>
+ * <p/>
+ * Features are deconvoluted independently of each other on a fork join pool. The deconvoluted features are numbered in
+ * input order when they are merged into the output container.
  */
 public class SavitzkyGolayDeconvolution extends CallableTask {
 
@@ -60,9 +65,9 @@ public class SavitzkyGolayDeconvolution extends CallableTask {
     private int width;
     private double intensity;
     private int sgFilterWidth;
-    private int featureIndex;
 
     private FeatureContainer featureContainer;
+    private int parallelism;
     private ScanContainer scanContainer;
 
     private static final double RAD_ANGLE_IV = -2.0 * FastMath.PI / 180.0;
@@ -95,8 +100,7 @@ public class SavitzkyGolayDeconvolution extends CallableTask {
         sgFilterWidth = params.get(Parameter.SG_LEVEL, Integer.class);
         scanContainer = params.get(Parameter.SCAN_CONTAINER, ScanContainer.class);
         featureContainer = params.get(Parameter.FEATURE_CONTAINER, FeatureContainer.class);
-
-        featureIndex = 1;
+        parallelism = params.containsKey(Parameter.PARALLELISM) ? params.get(Parameter.PARALLELISM, Integer.class) : 0;
     }
 
     /**
@@ -108,51 +112,56 @@ public class SavitzkyGolayDeconvolution extends CallableTask {
     public FeatureContainer call() {
 
         String id = featureContainer.getId() + IDENTIFIER;
-        FeatureContainer outFeatureContainer = featureContainer.getBuilder().newInstance(FeatureContainer.class, id,
-                featureContainer.getIonMode(), featureContainer.getWorkingDirectory());
 
-        XYList featureData;
-        for (Feature feature : featureContainer) {
+        return new FeatureMapper(parallelism) {
+            @Override
+            protected List<Feature> map(Feature feature) {
+                return deconvolute(feature);
+            }
+        }.run(featureContainer, id);
+    }
 
-            featureData = feature.getTrace(sgFilterWidth).getData();
+    /**
+     * Deconvolutes a single feature.
+     *
+     * @param feature the input feature
+     * @return the deconvoluted features
+     */
+    private List<Feature> deconvolute(Feature feature) {
 
-            // Calculate intensity statistics.
-            double minIntensity = 0.0;
-            double maxIntensity = 0.0;
-            double avgIntensity = 0.0;
-            for (final XYPoint dp : featureData) {
+        XYList featureData = feature.getTrace(sgFilterWidth).getData();
 
-                minIntensity = FastMath.min(dp.y, minIntensity);
-                maxIntensity = FastMath.max(dp.y, maxIntensity);
-                avgIntensity += dp.y;
-            }
+        // Calculate intensity statistics.
+        double maxIntensity = 0.0;
+        double avgIntensity = 0.0;
+        for (final XYPoint dp : featureData) {
 
-            avgIntensity /= (double) featureData.size();
-            final List<Feature> resolvedPeaks = new ArrayList<>(2);
+            maxIntensity = FastMath.max(dp.y, maxIntensity);
+            avgIntensity += dp.y;
+        }
 
-            // If the current chromatogram has characteristics of background or just noise return an empty array.
-            if (avgIntensity > maxIntensity / 2.0) continue;
+        avgIntensity /= (double) featureData.size();
 
-            // Calculate second derivatives of intensity values.
-            final double[] secondDerivative =
-                    SavitzkyGolayDerivative.calculateDerivative(featureData, false, sgFilterWidth);
+        // If the current chromatogram has characteristics of background or just noise return an empty array.
+        if (avgIntensity > maxIntensity / 2.0) return Collections.emptyList();
 
-            // Calculate noise threshold.
-            final double noiseThreshold = calcDerivativeThreshold(secondDerivative, intensityThreshold);
+        // Calculate second derivatives of intensity values.
+        final double[] secondDerivative = SavitzkyGolayDerivative.calculateDerivative(featureData, false, sgFilterWidth);
 
-            // Search for peaks.
-            final List<Feature> resolvedOriginalPeaks = peaksSearch(feature, secondDerivative, noiseThreshold);
+        // Calculate noise threshold.
+        final double noiseThreshold = calcDerivativeThreshold(secondDerivative, intensityThreshold);
 
-            // Apply final filter of detected peaks, according with setup parameters.
-            for (final Feature p : resolvedOriginalPeaks) {
+        // Search for peaks.
+        final List<Feature> resolvedOriginalPeaks = peaksSearch(feature, secondDerivative, noiseThreshold);
 
-                if (p.getData().size() >= width && p.getDifIntensity() - p.getMinIntensity() >= intensity)
-                    outFeatureContainer.addFeature(p);
-            }
-        }
+        // Apply final filter of detected peaks, according with setup parameters.
+        final List<Feature> resolvedPeaks = new ArrayList<>(resolvedOriginalPeaks.size());
+        for (final Feature p : resolvedOriginalPeaks) {
 
-        outFeatureContainer.finaliseFile();
-        return outFeatureContainer;
+            if (p.getData().size() >= width && p.getDifIntensity() - p.getMinIntensity() >= intensity)
+                resolvedPeaks.add(p);
+        }
+        return resolvedPeaks;
     }
 
     /**
@@ -167,6 +176,7 @@ public class SavitzkyGolayDeconvolution extends CallableTask {
                                       final double intensityThreshold) {
 
         List<Feature> featureList = new ArrayList<>();
+        XYZList data = feature.getData();
 
         // Flag to identify the current and next overlapped peak.
         boolean activeFirstPeak = false;
@@ -248,7 +258,6 @@ public class SavitzkyGolayDeconvolution extends CallableTask {
             // the chromatogram.
             if (corEnd - corStart > 0 && !activeFirstPeak) {
 
-                XYZList data = feature.getData();
                 if (corStart < 0) corStart = 0;
                 if (data.get(corStart).z > data.get(corStart + 1).z) while (isFoward(corStart, data)) corStart++;
                 else while (isBackward(corStart, data)) corStart--;
@@ -266,15 +275,13 @@ public class SavitzkyGolayDeconvolution extends CallableTask {
 
                 Feature deconFeature;
                 if (data.get(corStart).z == Constants.MIN_ABUNDANCE)
-                    deconFeature = new FeatureImpl(featureIndex, data.get(corStart), feature.getMzRange());
+                    deconFeature = new FeatureImpl(0, data.get(corStart), feature.getMzRange());
                 else {
-                    deconFeature =
-                            new FeatureImpl(featureIndex, new YMinPoint(data.get(corStart).y), data.get(corStart - 1).x,
-                                    feature.getMzRange());
+                    deconFeature = new FeatureImpl(0, new YMinPoint(data.get(corStart).y), data.get(corStart - 1).x,
+                            feature.getMzRange());
                     deconFeature.addFeaturePoint(data.get(corStart));
                 }
                 corStart++;
-                featureIndex++;
 
                 for (int current = corStart; current < corEnd; current++)
                     deconFeature.addFeaturePoint(data.get(current));
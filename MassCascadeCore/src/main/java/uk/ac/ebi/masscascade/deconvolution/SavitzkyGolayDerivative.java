@@ -22,6 +22,7 @@
 
 package uk.ac.ebi.masscascade.deconvolution;
 
+import uk.ac.ebi.masscascade.smoothing.SavitzkyGolayEngine;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 
 public final class SavitzkyGolayDerivative {
@@ -35,45 +36,21 @@ public final class SavitzkyGolayDerivative {
      * @return double[] derivative of values
      */
     public static double[] calculateDerivative(XYList data, boolean firstDerivative, int levelOfFilter) {
-
-        double[] derivative = new double[data.size()];
-        int M = 0;
-
-        for (int k = 0; k < derivative.length; k++) {
-
-            // Determine boundaries
-            if (k <= levelOfFilter) M = k;
-            if (k + M > derivative.length - 1) M = derivative.length - (k + 1);
-
-            // Perform derivative using Savitzky Golay coefficients
-            for (int i = -M; i <= M; i++) {
-                derivative[k] += data.get(k + i).y * getSGCoefficient(M, i, firstDerivative);
-            }
-            // if ((Math.abs(derivative[k])) > maxValueDerivative)
-            // maxValueDerivative = Math.abs(derivative[k]);
-
-        }
-
-        return derivative;
+        return calculateDerivative(data.getYs(), firstDerivative, levelOfFilter);
     }
 
     /**
-     * This method return the Savitzky-Golay 2nd smoothed derivative coefficient
-     * from an array
+     * This method returns the second smoothed derivative values of an array.
      *
-     * @param M
-     * @param signedC
-     * @return
+     * @param data            intensity values
+     * @param firstDerivative is first derivative
+     * @param levelOfFilter   level of filter (1 - 12)
+     * @return double[] derivative of values
      */
-    private static Double getSGCoefficient(int M, int signedC, boolean firstDerivate) {
+    public static double[] calculateDerivative(double[] data, boolean firstDerivative, int levelOfFilter) {
 
-        int C = Math.abs(signedC), sign = 1;
-        if (firstDerivate) {
-            if (signedC < 0) sign = -1;
-            return sign * SavitzkyGolayCoefficients.SGCoefficientsFirstDerivativeQuartic[M][C];
-        } else {
-            return SavitzkyGolayCoefficients.SGCoefficientsSecondDerivative[M][C];
-        }
+        double[] derivative = new double[data.length];
+        SavitzkyGolayEngine.derivative(data, data.length, firstDerivative, levelOfFilter, derivative);
+        return derivative;
     }
 }
-
@@ -62,6 +62,8 @@ public class BiehmanSimilarity extends CallableTask {
     private double scanDistance;
 
     private static final int N_MAX = 3;
+    // number of ungrouped features read per batch
+    private static final int BATCH_SIZE = 1024;
 
     /**
      * Constructs a Biemann similarity task.
@@ -210,9 +212,7 @@ public class BiehmanSimilarity extends CallableTask {
                 if (bins[i - 1] != null) tmpIds.addAll(bins[i - 1].getFeatureIds());
                 if (bins[i + 1] != null) tmpIds.addAll(bins[i + 1].getFeatureIds());
 
-                Feature feature;
-                for (int featureId : tmpIds) {
-                    feature = featureContainer.getFeature(featureId);
+                for (Feature feature : featureContainer.getFeatures(toArray(tmpIds))) {
                     features.add(feature);
                     featureSetData.add(feature.getMzIntDp());
                     specRange.extendRange(feature.getRetentionTime());
@@ -230,29 +230,39 @@ public class BiehmanSimilarity extends CallableTask {
             }
         }
 
-        Feature feature;
-        for (int featureId : allFeatureIds) {
+        List<Integer> remainingIds = new ArrayList<>(allFeatureIds);
+        for (int from = 0; from < remainingIds.size(); from += BATCH_SIZE) {
 
-            feature = featureContainer.getFeature(featureId);
-            Set<Feature> featureSet = new HashSet<Feature>();
-            featureSet.add(feature);
+            List<Integer> batchIds = remainingIds.subList(from, Math.min(from + BATCH_SIZE, remainingIds.size()));
+            for (Feature feature : featureContainer.getFeatures(toArray(batchIds))) {
 
-            double rt = feature.getRetentionTime();
-            Range specRange = new ExtendableRange(rt);
+                Set<Feature> featureSet = new HashSet<Feature>();
+                featureSet.add(feature);
 
-            XYList featureSetData = new XYList();
-            featureSetData.add(feature.getMzIntDp());
+                double rt = feature.getRetentionTime();
+                Range specRange = new ExtendableRange(rt);
 
-            FeatureSet pseudoFeatureSet = new FeatureSetImpl(index, featureSetData, specRange, rt, featureSet);
-            featureSetContainer.addFeatureSet(pseudoFeatureSet);
+                XYList featureSetData = new XYList();
+                featureSetData.add(feature.getMzIntDp());
+
+                FeatureSet pseudoFeatureSet = new FeatureSetImpl(index, featureSetData, specRange, rt, featureSet);
+                featureSetContainer.addFeatureSet(pseudoFeatureSet);
 
-            index++;
+                index++;
+            }
         }
 
         featureSetContainer.finaliseFile();
         return featureSetContainer;
     }
 
+    private static int[] toArray(List<Integer> ids) {
+
+        int[] idArray = new int[ids.size()];
+        for (int i = 0; i < idArray.length; i++) idArray[i] = ids.get(i);
+        return idArray;
+    }
+
     /**
      * Inner class representing a signal bin on the time axis.
      */
@@ -22,16 +22,16 @@
 
 package uk.ac.ebi.masscascade.distance;
 
-import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.util.FastMath;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
-import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
 /**
  * Calculates the cosine angle between two features.
+ * <p/>
+ * The intensities of both traces are binned in a single pass over the sorted data and the cosine is accumulated
+ * directly from the two bin vectors.
  */
 public class CosineSimilarity {
 
@@ -57,48 +57,69 @@ public class CosineSimilarity {
      */
     public double getDistance(XYList traceA, XYList traceB) {
 
+        if ((traceA == null) || (traceB == null)) return -1;
+        return getDistance(traceA.getXs(), traceA.getYs(), traceB.getXs(), traceB.getYs());
+    }
+
+    /**
+     * Calculates the cosine angle between the two features using the binned intensity values. The x values of both
+     * traces must be sorted in ascending order.
+     *
+     * @param xsA the x values of the first feature
+     * @param ysA the y values of the first feature
+     * @param xsB the x values of the second feature
+     * @param ysB the y values of the second feature
+     * @return the cosine similarity or -1 if undefined
+     */
+    public double getDistance(double[] xsA, double[] ysA, double[] xsB, double[] ysB) {
+
+        if (numBins <= 0 || xsA.length == 0 || xsB.length == 0) return -1;
+
+        double min = FastMath.min(xsA[0], xsB[0]);
+        double max = FastMath.max(xsA[xsA.length - 1], xsB[xsB.length - 1]);
+        double width = (max - min) / numBins;
+        if (!(width > 0)) return -1;
+
         double[] dataA = new double[numBins];
         double[] dataB = new double[numBins];
+        bin(xsA, ysA, min, width, dataA);
+        bin(xsB, ysB, min, width, dataB);
+
+        double dot = 0;
+        double sumA = 0;
+        double sumB = 0;
+        for (int i = 0; i < numBins; i++) {
+            dot += dataA[i] * dataB[i];
+            sumA += dataA[i] * dataA[i];
+            sumB += dataB[i] * dataB[i];
+        }
 
-        double distance = -1;
-
-        if ((traceA != null) && (traceB != null)) {
-
-            double min = FastMath.min(traceA.get(0).x, traceB.get(0).x);
-            double max = FastMath.max(traceA.getLast().x, traceB.getLast().x);
-            double width = (max - min) / numBins;
-
-            for (int i = 1; i <= numBins; i++) {
-                double lBound = min + (i - 1) * width;
-                double rBound = min + i * width;
-                double intensityA = 0.0;
-                for (XYPoint dp : traceA) {
-                    if (dp.x >= lBound) {
-                        if (dp.x < rBound) intensityA += dp.y;
-                        else break;
-                    }
-                }
-                double intensityB = 0.0;
-                for (XYPoint dp : traceB) {
-                    if (dp.x >= lBound) {
-                        if (dp.x < rBound) intensityB += dp.y;
-                        else break;
-                    }
-                }
-                dataA[i - 1] = intensityA;
-                dataB[i - 1] = intensityB;
-            }
-            RealVector vecA = new ArrayRealVector(dataA);
-            RealVector vecB = new ArrayRealVector(dataB);
-
-            try {
-                distance = vecA.cosine(vecB);
-            } catch (Exception e) {
-                distance = -1;
-            }
+        double normA = FastMath.sqrt(sumA);
+        double normB = FastMath.sqrt(sumB);
+        if (normA == 0 || normB == 0) {
+            LOGGER.log(Level.DEBUG, "Cosine undefined for zero intensity traces.");
+            return -1;
         }
 
-        return distance;
+        return dot / (normA * normB);
+    }
+
+    /**
+     * Adds the intensities to the bins <code>[min + i * width, min + (i + 1) * width[</code>. Values outside all bins
+     * are ignored.
+     */
+    private void bin(double[] xs, double[] ys, double min, double width, double[] data) {
+
+        for (int k = 0; k < xs.length; k++) {
+
+            double x = xs[k];
+            if (x < min) continue;
+
+            int i = (int) ((x - min) / width);
+            while (i > 0 && x < min + i * width) i--;
+            while (i < numBins && x >= min + (i + 1) * width) i++;
+            if (i < numBins) data[i] += ys[k];
+        }
     }
 
     /**
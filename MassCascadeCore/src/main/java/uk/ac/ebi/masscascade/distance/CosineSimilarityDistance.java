@@ -116,7 +116,8 @@ public class CosineSimilarityDistance extends CallableTask {
 
     /**
      * Performs a pairwise correlation of all profiles in the list and finds connected components above the threshold
-     * in the resulting matrix. Connected and unconnected components are parsed into separated pseudospectra.
+     * in the resulting matrix. Connected and unconnected components are parsed into separated pseudospectra. The
+     * traces are extracted once per feature.
      *
      * @param featureList the list of profiles
      */
@@ -124,19 +125,23 @@ public class CosineSimilarityDistance extends CallableTask {
     public void correlate(List<Feature> featureList) {
 
         double vectorDistance;
-        XYList rowData;
-        XYList colData;
+
+        int nFeatures = featureList.size();
+        double[][] xs = new double[nFeatures][];
+        double[][] ys = new double[nFeatures][];
+        for (int i = 0; i < nFeatures; i++) {
+            XYList data = featureList.get(i).getTrace().getData();
+            xs[i] = data.getXs();
+            ys[i] = data.getYs();
+        }
 
         UndirectedGraph graph = new SimpleGraph(DefaultEdge.class);
-        for (int row = 0; row < featureList.size(); row++) {
+        for (int row = 0; row < nFeatures; row++) {
             for (int column = 0; column < row; column++) {
 
-                rowData = featureList.get(row).getTrace().getData();
-                colData = featureList.get(column).getTrace().getData();
-
-                if (!isOverlapping(rowData, colData)) continue;
+                if (!isOverlapping(xs[row], xs[column])) continue;
 
-                vectorDistance = cosineSimilarity.getDistance(rowData, colData);
+                vectorDistance = cosineSimilarity.getDistance(xs[row], ys[row], xs[column], ys[column]);
                 if (vectorDistance >= threshold)
                     JGraphTSync.addEdgeWithVertices(graph, featureList.get(row), featureList.get(column));
             }
@@ -179,13 +184,13 @@ public class CosineSimilarityDistance extends CallableTask {
         }
     }
 
-    private boolean isOverlapping(XYList data1, XYList data2) {
+    private boolean isOverlapping(double[] xs1, double[] xs2) {
 
-        double min1 = data1.get(0).x;
-        double max1 = data1.get(data1.size() - 1).x;
+        double min1 = xs1[0];
+        double max1 = xs1[xs1.length - 1];
 
-        double min2 = data2.get(0).x;
-        double max2 = data2.get(data2.size() - 1).x;
+        double min2 = xs2[0];
+        double max2 = xs2[xs2.length - 1];
 
         return !(max1 < min2 || max2 < min1);
     }
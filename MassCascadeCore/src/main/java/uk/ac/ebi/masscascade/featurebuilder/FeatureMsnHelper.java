@@ -26,8 +26,7 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.commons.math3.util.FastMath;
-import uk.ac.ebi.masscascade.core.scan.ScanLevel;
-import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.core.scan.ScanIndex;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.parameters.Constants;
 
@@ -39,6 +38,8 @@ import java.util.Map;
  * <p/>
  * The MSn scans are sorted into a map based on the precursor ion m/z. The map is structured in the following way:
  * msnLevel : parentId : childId : mz, where msn(0) = MS2 (first MSn level)
+ * <p/>
+ * The map is built from the scan index of the container, so no spectra are deserialized.
  */
 public class FeatureMsnHelper {
 
@@ -68,34 +69,38 @@ public class FeatureMsnHelper {
      */
     private void init(ScanContainer container) {
 
-        int msn = 0;
         if (container.size() < 2) return;
 
-        Map<Integer, Map<Integer, Double>> singleMsnMap = Maps.newHashMap();
-        msnMap.add(singleMsnMap);
-
-        for (ScanLevel level : container.getScanLevels()) {
-            if (level.getMsn() == Constants.MSN.MS1) continue;
+        ScanIndex scanIndex = container.getScanIndex();
+        for (int pos = 0; pos < scanIndex.size(); pos++) {
 
-            Map<Integer, Map<Integer, Double>> currentMap = msnMap.get(msn);
+            int lvl = scanIndex.getMsn(pos).getLvl();
+            int parentScan = scanIndex.getParentScan(pos);
+            if (lvl == Constants.MSN.MS1.getLvl() || parentScan == -1) continue;
 
-            for (Scan scan : container.iterator(level.getMsn())) {
+            while (msnMap.size() < lvl - 1) msnMap.add(Maps.<Integer, Map<Integer, Double>>newHashMap());
+            Map<Integer, Map<Integer, Double>> currentMap = msnMap.get(lvl - 2);
 
-                if (scan.getParentScan() == -1) continue;
-
-                if (currentMap.containsKey(scan.getParentScan())) {
-                    currentMap.get(scan.getParentScan()).put(scan.getIndex(), scan.getParentMz());
-                } else {
-                    Map<Integer, Double> dIndexdMass = Maps.newHashMap();
-                    dIndexdMass.put(scan.getIndex(), scan.getParentMz());
-                    currentMap.put(scan.getParentScan(), dIndexdMass);
-                }
+            if (currentMap.containsKey(parentScan)) {
+                currentMap.get(parentScan).put(scanIndex.getIndex(pos), scanIndex.getParentMz(pos));
+            } else {
+                Map<Integer, Double> dIndexdMass = Maps.newHashMap();
+                dIndexdMass.put(scanIndex.getIndex(pos), scanIndex.getParentMz(pos));
+                currentMap.put(parentScan, dIndexdMass);
             }
-
-            msn++;
         }
     }
 
+    /**
+     * Returns if the scan with the given id is the parent of at least one MSn scan.
+     *
+     * @param parentId the id of the parent scan
+     * @return if the scan has MSn children
+     */
+    public boolean hasChildIds(int parentId) {
+        return !msnMap.isEmpty() && msnMap.get(0).containsKey(parentId);
+    }
+
     /**
      * Returns a map containing all ids of MSn scans that are derived from the precursor m/z. The map is structured as
      * follows: MSn level : list of MSn scan ids
@@ -32,20 +32,22 @@ import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
-import uk.ac.ebi.masscascade.utilities.DataUtils;
 import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
-import uk.ac.ebi.masscascade.utilities.range.ToleranceRange;
-import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.TraceIndex;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZTrace;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class implementing a feature building method where zero intensity values within the mass trace are treated as
@@ -54,19 +56,30 @@ import java.util.TreeSet;
  * The peaks have a defined minimum and maximum feature width in the time domain. The subsequent signals are connected
  * only if the signal masses are within the set mass window. Finally, the highest signal intensity of the putative
  * feature must be greater than the set minimum signal intensity.
+ * <p/>
+ * If more than one m/z band is requested, the m/z axis is partitioned into overlapping bands whose traces are built
+ * in parallel. Each band owns the traces anchored in its core region; traces anchored in the overlap are built by both
+ * neighbours but only kept by their owner. Features are numbered in the same order as in the sequential mode. The
+ * result is identical to the sequential mode as long as no trace drifts further than the band overlap of 20 mass
+ * windows from its anchor, hence the number of bands defaults to one and must be set explicitly.
  * <ul>
  * <li>Parameter <code> MZ_WINDOW_PPM </code>- The mass window in ppm.</li>
  * <li>Parameter <code> MIN_FEATURE_INTENSITY </code>- The minimum feature intensity.</li>
  * <li>Parameter <code> SCAN_CONTAINER </code>- The input scan container.</li>
  * <li>Parameter <code> MIN_FEATURE_WIDTH </code>- The minimum feature width in scans.</li>
+ * <li>Parameter <code> MZ_BANDS </code>- The optional number of parallel m/z bands, defaults to 1.</li>
  * </ul>
  */
 
 public class SequentialFeatureBuilder extends CallableTask {
 
+    // overlap between neighbouring bands in multiples of the mass window
+    private static final int BAND_OVERLAP = 20;
+
     private int minFeatureWidth;
     private double ppm;
     private double minIntensity;
+    private int nBands;
 
     private ScanContainer scanContainer;
     private FeatureContainer featureContainer;
@@ -76,9 +89,6 @@ public class SequentialFeatureBuilder extends CallableTask {
     private double lastRt;
     private double currRt;
 
-    private final TreeSet<Trace> traces = new TreeSet<>();
-    private final TreeSet<Trace> tracesExtended = new TreeSet<>();
-
     /**
      * Constructs a feature builder task.
      *
@@ -109,6 +119,8 @@ public class SequentialFeatureBuilder extends CallableTask {
         minIntensity = params.get(Parameter.MIN_FEATURE_INTENSITY, Double.class);
         scanContainer = params.get(Parameter.SCAN_CONTAINER, ScanContainer.class);
         minFeatureWidth = params.get(Parameter.MIN_FEATURE_WIDTH, Integer.class);
+        nBands = params.containsKey(Parameter.MZ_BANDS) ? FastMath.max(1, params.get(Parameter.MZ_BANDS,
+                Integer.class)) : 1;
     }
 
     /**
@@ -135,86 +147,115 @@ public class SequentialFeatureBuilder extends CallableTask {
 
         msnHelper = scanContainer.getMsnHelper();
 
-        for (Scan scan : scanContainer) {
+        TraceBand[] bands = createBands();
+        // bands are forked into the calling pool if the builder itself runs inside a fork join pool
+        boolean sharedPool = ForkJoinTask.inForkJoinPool();
+        ForkJoinPool pool = (bands.length <= 1) ? null : sharedPool ? ForkJoinTask.getPool() :
+                new ForkJoinPool(FastMath.min(bands.length, Runtime.getRuntime().availableProcessors()));
+
+        try {
+            for (Scan scan : scanContainer) {
 
-            currRt = scan.getRetentionTime();
-            if (lastRt == 0) lastRt = FastMath.max(0, currRt - 1);
+                currRt = scan.getRetentionTime();
+                if (lastRt == 0) lastRt = FastMath.max(0, currRt - 1);
 
-            if (traces.isEmpty()) {
-                for (XYPoint dataPoint : scan.getData()) {
-                    XYZTrace trace =
-                            new XYZTrace(dataPoint, currRt, msnHelper.getChildIds(scan.getIndex(), dataPoint.x));
-                    trace.push(new XYZPoint(lastRt, trace.get(0).y, Constants.MIN_ABUNDANCE));
-                    traces.add(trace);
+                boolean seed = true;
+                for (TraceBand band : bands) {
+                    if (!band.traces.isEmpty()) {
+                        seed = false;
+                        break;
+                    }
                 }
-                continue;
-            }
 
-            searchExistingTraces(scan);
-            updateTraceMaps();
+                processBands(pool, bands, scan, seed);
+                for (TraceBand band : bands) band.flush();
 
-            lastRt = currRt;
-        }
+                if (!seed) lastRt = currRt;
+            }
 
-        currRt += 1;
-        for (Trace trace : traces) addToContainer((XYZTrace) trace);
+            currRt += 1;
+            for (TraceBand band : bands) {
+                band.closeAll();
+                band.flush();
+            }
+        } finally {
+            if (pool != null && !sharedPool) pool.shutdown();
+        }
     }
 
-    private void searchExistingTraces(Scan scan) {
-
-        XYList dataPoints = scan.getData();
-
-        for (int signalPos = 0; signalPos < dataPoints.size(); signalPos++) {
-
-            XYPoint signal = dataPoints.get(signalPos);
-            double nextSignal =
-                    (signalPos == dataPoints.size() - 1) ? Double.MAX_VALUE : dataPoints.get(signalPos + 1).x;
+    /**
+     * Partitions the MS1 m/z range into equally sized bands. The outermost bands are open ended.
+     */
+    private TraceBand[] createBands() {
 
-            XYZTrace signalTrace = new XYZTrace(signal, currRt, msnHelper.getChildIds(scan.getIndex(), signal.x));
-            XYZTrace closestTrace = (XYZTrace) DataUtils.getClosestValue(signalTrace, traces);
+        TraceBand[] bands = new TraceBand[nBands];
+        if (nBands == 1) {
+            bands[0] = new TraceBand(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+            return bands;
+        }
 
-            // (1) signal m/z not in the map >> map empty || null
-            if (closestTrace == null) addTrace(signalTrace);
-                // (2) signal m/z is in the map >> exact match
-            else if (traces.contains(signalTrace)) {
-                if (!tracesExtended.contains(signalTrace)) appendTrace(signalTrace, closestTrace);
-                // (3) signal m/z is in the map >> closest key
-            } else if (FastMath.abs(closestTrace.getAvg() - signal.x) <= FastMath.abs(closestTrace.getAvg() - nextSignal)) {
-                // check if the signal m/z is within the tolerance range and was not already extended
-                if (new ToleranceRange(closestTrace.getAvg(), ppm).contains(signal.x) && !tracesExtended.contains(
-                        closestTrace)) appendTrace(signalTrace, closestTrace);
-                else addTrace(signalTrace);
-                // (4) signal m/z is outside the tolerance range of the closest key in the map
-            } else addTrace(signalTrace);
+        Range mzRange = scanContainer.getScanLevels().get(0).getMzRange();
+        double width = mzRange.getSize() / nBands;
+        for (int i = 0; i < nBands; i++) {
+            double lower = (i == 0) ? Double.NEGATIVE_INFINITY : mzRange.getLowerBounds() + i * width;
+            double upper = (i == nBands - 1) ? Double.POSITIVE_INFINITY : mzRange.getLowerBounds() + (i + 1) * width;
+            bands[i] = new TraceBand(lower, upper);
         }
+
+        return bands;
     }
 
-    private void updateTraceMaps() {
+    private void processBands(ForkJoinPool pool, TraceBand[] bands, Scan scan, final boolean seed) {
 
-        Iterator<Trace> iterator = traces.iterator();
-        Trace trace;
-        while (iterator.hasNext()) {
-            trace = iterator.next();
-            if (!tracesExtended.contains(trace)) {
-                addToContainer((XYZTrace) trace);
-                iterator.remove();
-            }
+        final XYArray data = scan.getDataArray();
+        final int scanIndex = scan.getIndex();
+
+        if (pool == null) {
+            bands[0].process(data, 0, data.size(), scanIndex, seed);
+            return;
         }
 
-        traces.addAll(tracesExtended);
-        tracesExtended.clear();
-    }
+        final List<RecursiveAction> actions = new ArrayList<>(bands.length);
+        for (final TraceBand band : bands) {
 
-    private void addTrace(XYZTrace trace) {
+            double margin = band.getMargin();
+            final int start = lowerBound(data, band.lower - margin);
+            final int end = lowerBound(data, band.upper + margin);
 
-        trace.push(new XYZPoint(lastRt, trace.get(0).y, Constants.MIN_ABUNDANCE));
-        tracesExtended.add(trace);
-    }
+            actions.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    band.process(data, start, end, scanIndex, seed);
+                }
+            });
+        }
 
-    private void appendTrace(XYZTrace signalTrace, XYZTrace closestTrace) {
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(actions);
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(actions);
+                }
+            });
+        }
+    }
 
-        closestTrace.add(signalTrace.get(0), signalTrace.getMsnMap());
-        tracesExtended.add(closestTrace);
+    /**
+     * Returns the index of the first m/z value that is not smaller than the given value.
+     */
+    private static int lowerBound(XYArray data, double mz) {
+
+        double[] xs = data.getXs();
+        int low = 0;
+        int high = data.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (xs[mid] < mz) low = mid + 1;
+            else high = mid;
+        }
+        return low;
     }
 
     private void addToContainer(XYZTrace trace) {
@@ -246,4 +287,107 @@ public class SequentialFeatureBuilder extends CallableTask {
             globalFeatureId++;
         }
     }
+
+    /**
+     * Open traces of one m/z band. Closed traces are buffered in m/z order until they are flushed into the feature
+     * container by the calling thread.
+     */
+    private class TraceBand {
+
+        private final double lower;
+        private final double upper;
+
+        private final TraceIndex<XYZTrace> traces = new TraceIndex<>();
+        private final List<XYZTrace> closedTraces = new ArrayList<>();
+
+        private TraceBand(double lower, double upper) {
+
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        private double getMargin() {
+
+            // the outermost bands still overlap their single neighbour
+            double bound = Double.isInfinite(upper) ? lower : upper;
+            if (Double.isInfinite(bound)) return 0;
+            return BAND_OVERLAP * bound * ppm / Constants.PPM;
+        }
+
+        private void process(XYArray data, int start, int end, int scanIndex, boolean seed) {
+
+            double[] xs = data.getXs();
+            double[] ys = data.getYs();
+            int size = data.size();
+            boolean isParent = msnHelper.hasChildIds(scanIndex);
+
+            for (int signalPos = start; signalPos < end; signalPos++) {
+
+                double mz = xs[signalPos];
+                double intensity = ys[signalPos];
+
+                if (seed) {
+                    addTrace(mz, intensity, scanIndex, isParent);
+                    continue;
+                }
+
+                double nextSignal = (signalPos == size - 1) ? Double.MAX_VALUE : xs[signalPos + 1];
+                int closest = traces.closest(mz);
+
+                // (1) signal m/z not in the map >> map empty || null
+                if (closest == -1) addTrace(mz, intensity, scanIndex, isParent);
+                    // (2) signal m/z is in the map >> exact match
+                else if (traces.containsAnchor(mz)) {
+                    if (!traces.isExtended(traces.floor())) appendTrace(closest, mz, intensity, scanIndex, isParent);
+                    // (3) signal m/z is in the map >> closest key
+                } else {
+                    double avg = traces.getAvg(closest);
+                    if (FastMath.abs(avg - mz) <= FastMath.abs(avg - nextSignal)) {
+                        // check if the signal m/z is within the tolerance range and was not already extended
+                        double tolerance = avg * ppm / Constants.PPM;
+                        if (mz >= avg - tolerance && mz < avg + tolerance && !traces.isExtended(closest))
+                            appendTrace(closest, mz, intensity, scanIndex, isParent);
+                        else addTrace(mz, intensity, scanIndex, isParent);
+                        // (4) signal m/z is outside the tolerance range of the closest key in the map
+                    } else addTrace(mz, intensity, scanIndex, isParent);
+                }
+            }
+
+            traces.commit();
+            for (int i = 0; i < traces.closedSize(); i++) close(traces.getClosed(i));
+        }
+
+        private void addTrace(double mz, double intensity, int scanIndex, boolean isParent) {
+
+            XYPoint signal = new XYPoint(mz, intensity);
+            XYZTrace trace = isParent ? new XYZTrace(signal, currRt, msnHelper.getChildIds(scanIndex, mz)) :
+                    new XYZTrace(signal, currRt);
+            trace.push(new XYZPoint(lastRt, mz, Constants.MIN_ABUNDANCE));
+            traces.add(trace, scanIndex);
+        }
+
+        private void appendTrace(int pos, double mz, double intensity, int scanIndex, boolean isParent) {
+
+            XYZPoint signal = new XYZPoint(currRt, mz, intensity);
+            if (isParent) traces.get(pos).add(signal, msnHelper.getChildIds(scanIndex, mz));
+            else traces.get(pos).add(signal);
+            traces.extend(pos);
+        }
+
+        private void closeAll() {
+
+            traces.closeAll();
+            for (int i = 0; i < traces.closedSize(); i++) close(traces.getClosed(i));
+        }
+
+        private void close(XYZTrace trace) {
+            if (trace.getAnchor() >= lower && trace.getAnchor() < upper) closedTraces.add(trace);
+        }
+
+        private void flush() {
+
+            for (XYZTrace trace : closedTraces) addToContainer(trace);
+            closedTraces.clear();
+        }
+    }
 }
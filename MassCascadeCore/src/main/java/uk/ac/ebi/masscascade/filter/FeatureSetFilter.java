@@ -24,6 +24,7 @@ package uk.ac.ebi.masscascade.filter;
 
 import uk.ac.ebi.masscascade.core.PropertyType;
 import uk.ac.ebi.masscascade.core.featureset.FeatureSetImpl;
+import uk.ac.ebi.masscascade.core.featureset.FeatureSetMapper;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Feature;
@@ -40,7 +41,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Class implementing a feature set filter.
+ * Class implementing a feature set filter. Feature sets are filtered in parallel.
  * <ul>
  * <li>Parameter <code> MZ_RANGE </code>- The mz range used for filtering in amu.</li>
  * <li>Parameter <code> TIME_RANGE </code>- The time range used for filtering in seconds.</li>
@@ -57,6 +58,7 @@ public class FeatureSetFilter extends CallableTask {
     private boolean keepIsotopes;
     private boolean keepMsn;
     private FeatureSetContainer featureSetContainer;
+    private int parallelism;
 
     /**
      * Constructs a feature set filter task.
@@ -85,6 +87,7 @@ public class FeatureSetFilter extends CallableTask {
         keepIsotopes = params.get(Parameter.KEEP_ISOTOPES, Boolean.class);
         keepMsn = (params.get(Parameter.MS_LEVEL, Constants.MSN.class) == Constants.MSN.MS2);
         featureSetContainer = params.get(Parameter.FEATURE_SET_CONTAINER, FeatureSetContainer.class);
+        parallelism = params.containsKey(Parameter.PARALLELISM) ? params.get(Parameter.PARALLELISM, Integer.class) : 0;
     }
 
     /**
@@ -97,45 +100,52 @@ public class FeatureSetFilter extends CallableTask {
     public FeatureSetContainer call() {
 
         String id = featureSetContainer.getId() + IDENTIFIER;
-        FeatureSetContainer outFeatureSetContainer = featureSetContainer.getBuilder().newInstance(FeatureSetContainer.class, id,
-                featureSetContainer.getIonMode(), featureSetContainer.getWorkingDirectory());
-
-        for (FeatureSet featureSet : featureSetContainer) {
-            if (timeRange.contains(featureSet.getRetentionTime())) {
-                Set<Feature> outFeatures = new HashSet<>();
-                Range rtRange = null;
-                XYList mzIntList = new XYList();
-                for (Feature feature : featureSet) {
-                    if (mzRange.contains(feature.getMz())) {
-                        if (feature.getDifIntensity() >= minIntensity || (keepIsotopes && feature.hasProperty(
-                                PropertyType.Isotope))) {
-                            if (keepMsn) {
-                                if (feature.hasMsnSpectra(Constants.MSN.MS2)) {
-                                    if (rtRange == null) rtRange = new ExtendableRange(feature.getRetentionTime());
-                                    else rtRange.extendRange(feature.getRetentionTime());
-                                    outFeatures.add(feature);
-                                    mzIntList.add(feature.getMzIntDp());
-                                }
-                            } else {
-                                if (rtRange == null) rtRange = new ExtendableRange(feature.getRetentionTime());
-                                else rtRange.extendRange(feature.getRetentionTime());
-                                outFeatures.add(feature);
-                                mzIntList.add(feature.getMzIntDp());
-                            }
+
+        return new FeatureSetMapper(parallelism) {
+            @Override
+            protected FeatureSet map(FeatureSet featureSet) {
+                return filter(featureSet);
+            }
+        }.run(featureSetContainer, id);
+    }
+
+    /**
+     * Filters the features of a single feature set.
+     *
+     * @param featureSet the input feature set
+     * @return the filtered feature set or null if no feature passed the filter
+     */
+    private FeatureSet filter(FeatureSet featureSet) {
+
+        if (!timeRange.contains(featureSet.getRetentionTime())) return null;
+
+        Set<Feature> outFeatures = new HashSet<>();
+        Range rtRange = null;
+        XYList mzIntList = new XYList();
+        for (Feature feature : featureSet) {
+            if (mzRange.contains(feature.getMz())) {
+                if (feature.getDifIntensity() >= minIntensity || (keepIsotopes && feature.hasProperty(
+                        PropertyType.Isotope))) {
+                    if (keepMsn) {
+                        if (feature.hasMsnSpectra(Constants.MSN.MS2)) {
+                            if (rtRange == null) rtRange = new ExtendableRange(feature.getRetentionTime());
+                            else rtRange.extendRange(feature.getRetentionTime());
+                            outFeatures.add(feature);
+                            mzIntList.add(feature.getMzIntDp());
                         }
+                    } else {
+                        if (rtRange == null) rtRange = new ExtendableRange(feature.getRetentionTime());
+                        else rtRange.extendRange(feature.getRetentionTime());
+                        outFeatures.add(feature);
+                        mzIntList.add(feature.getMzIntDp());
                     }
                 }
-
-                if (outFeatures.size() == 0) continue;
-
-                FeatureSet outFeatureSet =
-                        new FeatureSetImpl(featureSet.getIndex(), mzIntList, rtRange, featureSet.getRetentionTime(),
-                                outFeatures);
-                outFeatureSetContainer.addFeatureSet(outFeatureSet);
             }
         }
 
-        outFeatureSetContainer.finaliseFile();
-        return outFeatureSetContainer;
+        if (outFeatures.size() == 0) return null;
+
+        return new FeatureSetImpl(featureSet.getIndex(), mzIntList, rtRange, featureSet.getRetentionTime(),
+                outFeatures);
     }
 }
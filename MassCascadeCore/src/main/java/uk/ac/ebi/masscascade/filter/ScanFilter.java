@@ -22,20 +22,22 @@
 
 package uk.ac.ebi.masscascade.filter;
 
-import uk.ac.ebi.masscascade.core.scan.ScanLevel;
+import uk.ac.ebi.masscascade.core.scan.ScanPipeline;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Range;
 import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.ScanStreamTask;
 import uk.ac.ebi.masscascade.interfaces.container.Container;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
-import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.utilities.ScanUtils;
 import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
-import uk.ac.ebi.masscascade.utilities.xyz.XYList;
-import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Class to filter a collection of scans by the given mass and time range.
@@ -45,7 +47,7 @@ import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
  * <li>Parameter <code> SCAN_CONTAINER </code>- The input scan container.</li>
  * </ul>
  */
-public class ScanFilter extends CallableTask {
+public class ScanFilter extends CallableTask implements ScanStreamTask {
 
     private Range timeRange;
     private Range massRange;
@@ -90,31 +92,42 @@ public class ScanFilter extends CallableTask {
     public Container call() {
 
         String id = scanContainer.getId() + IDENTIFIER;
-        ScanContainer outScanContainer = scanContainer.getBuilder().newInstance(ScanContainer.class, id, scanContainer);
-
-        for (ScanLevel level : scanContainer.getScanLevels()) {
-
-            if (level.getMsn() == Constants.MSN.MS1) {
-
-                for (Scan scan : scanContainer) {
-                    XYList xyList = new XYList();
-                    if (timeRange.contains(scan.getRetentionTime())) {
-
-                        for (XYPoint xyPoint : scan.getData())
-                            if (massRange.contains(xyPoint.x)) xyList.add(xyPoint);
-
-                        Scan processedScan = ScanUtils.getModifiedScan(scan, xyList);
-                        outScanContainer.addScan(processedScan);
+        return new ScanPipeline(Collections.singletonList(this)).run(scanContainer, id);
+    }
 
-                        processedScan = null;
-                    }
-                }
-            } else {
-                for (Scan scan : scanContainer.iterator(level.getMsn())) outScanContainer.addScan(scan);
+    /**
+     * Filters a single scan by the time and mass range.
+     *
+     * @param scan           the next scan
+     * @param processedScans the result list
+     */
+    @Override
+    public void process(Scan scan, List<Scan> processedScans) {
+
+        if (!timeRange.contains(scan.getRetentionTime())) return;
+
+        XYArray data = scan.getDataArray();
+        double[] xs = new double[data.size()];
+        double[] ys = new double[data.size()];
+        int n = 0;
+        for (int i = 0; i < data.size(); i++) {
+            if (massRange.contains(data.getX(i))) {
+                xs[n] = data.getX(i);
+                ys[n] = data.getY(i);
+                n++;
             }
         }
 
-        outScanContainer.finaliseFile(scanContainer.getScanInfo().getDate());
-        return outScanContainer;
+        processedScans.add(ScanUtils.getModifiedScan(scan, new XYArray(xs, ys, n)));
+    }
+
+    /**
+     * The filter does not hold back any scans.
+     *
+     * @param processedScans the result list
+     */
+    @Override
+    public void flush(List<Scan> processedScans) {
+        // nothing to flush
     }
 }
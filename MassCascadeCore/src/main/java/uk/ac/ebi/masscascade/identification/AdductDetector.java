@@ -51,6 +51,8 @@ import java.util.List;
  * <p/>
  * One or many comment lines followed by lines containing the major isotopic mass and its label in comma-separated
  * format. The adduct masses are corrected according to the specified ion mode.
+ * <p/>
+ * Once the adduct list is set, the detector holds no per-search state and can be shared between threads.
  */
 public class AdductDetector {
 
@@ -67,7 +69,6 @@ public class AdductDetector {
     private static final String COMMENT = "#";
     private static final String SEPARATOR = ",";
 
-    private List<Feature> featureList;
     private List<AdductSingle> adductList;
 
     private final Constants.ION_MODE ionMode;
@@ -145,24 +146,24 @@ public class AdductDetector {
 
     public void findAdducts(List<Feature> featureList) {
 
-        this.featureList = featureList;
-
-        Collections.sort(this.featureList, new FeatureMassComparator());
-        double[][] peakMassDeltas = getPeakMassDeltas(this.featureList);
+        Collections.sort(featureList, new FeatureMassComparator());
+        double[][] peakMassDeltas = getPeakMassDeltas(featureList);
 
         for (AdductSingle adduct : adductList) {
             if (adduct.isCluster() || adduct.getMass() < -0.5 || adduct.getMass() >= 0.5)
-                findAdductMassInDeltaArray(adduct, peakMassDeltas);
+                findAdductMassInDeltaArray(featureList, adduct, peakMassDeltas);
         }
     }
 
     /**
      * Iterates over the mass difference matrix trying to find the adduct mass difference.
      *
+     * @param featureList    the m/z sorted feature list
      * @param adduct         a single adduct
      * @param peakMassDeltas the mass difference matrix
      */
-    private void findAdductMassInDeltaArray(AdductSingle adduct, double[][] peakMassDeltas) {
+    private void findAdductMassInDeltaArray(List<Feature> featureList, AdductSingle adduct,
+            double[][] peakMassDeltas) {
 
         double adductMass = adduct.getMass();
         Range adductMassRange = new ToleranceRange(FastMath.abs(adductMass), ppm);
@@ -181,8 +182,8 @@ public class AdductDetector {
                     if (adduct.isCluster()) {
                         double mz = correctMz(featureList.get(row).getMz(), adduct);
                         if (new ToleranceRange(mz, ppm).contains(featureList.get(col).getMz()))
-                            adductAndReferenceProperty = getProperties(adduct, row, col);
-                    } else adductAndReferenceProperty = getProperties(adduct, row, col);
+                            adductAndReferenceProperty = getProperties(featureList, adduct, row, col);
+                    } else adductAndReferenceProperty = getProperties(featureList, adduct, row, col);
 
                     if (adductAndReferenceProperty != null) {
                         featureList.get(col).setProperty(adductAndReferenceProperty[0]);
@@ -194,8 +195,8 @@ public class AdductDetector {
                     if (adduct.isCluster()) {
                         double mz = correctMz(featureList.get(row).getMz(), adduct);
                         if (new ToleranceRange(mz, ppm).contains(featureList.get(col).getMz()))
-                            adductAndReferenceProperty = getProperties(adduct, col, row);
-                    } else adductAndReferenceProperty = getProperties(adduct, col, row);
+                            adductAndReferenceProperty = getProperties(featureList, adduct, col, row);
+                    } else adductAndReferenceProperty = getProperties(featureList, adduct, col, row);
 
                     if (adductAndReferenceProperty != null) {
                         featureList.get(row).setProperty(adductAndReferenceProperty[0]);
@@ -227,7 +228,7 @@ public class AdductDetector {
         return mz;
     }
 
-    private Property[] getProperties(AdductSingle adduct, int parent, int child) {
+    private Property[] getProperties(List<Feature> featureList, AdductSingle adduct, int parent, int child) {
 
         Property[] props = new Property[2];
         int parentId = featureList.get(parent).getId();
@@ -23,6 +23,7 @@
 package uk.ac.ebi.masscascade.identification;
 
 import uk.ac.ebi.masscascade.core.featureset.FeatureSetImpl;
+import uk.ac.ebi.masscascade.core.featureset.FeatureSetMapper;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.FeatureSet;
@@ -35,6 +36,7 @@ import java.util.ArrayList;
 
 /**
  * Class implementing an adduct finder method. The initial adduct map is empty and needs to be populated first.
+ * Feature sets are processed in parallel.
  * <ul>
  * <li>Parameter <code> MZ_WINDOW_PPM </code>- The mass tolerance in ppm.</li>
  * <li>Parameter <code> ADDUCT_LIST </code>- The adducts to be searched for.</li>
@@ -45,6 +47,7 @@ public class AdductFinder extends CallableTask {
 
     private AdductDetector adductDetector;
     private FeatureSetContainer featureSetContainer;
+    private int parallelism;
 
     /**
      * Constructor for a adduct finder task.
@@ -69,6 +72,8 @@ public class AdductFinder extends CallableTask {
     public void setParameters(ParameterMap params) throws MassCascadeException {
 
         featureSetContainer = params.get(Parameter.FEATURE_SET_CONTAINER, FeatureSetContainer.class);
+
+        parallelism = params.containsKey(Parameter.PARALLELISM) ? params.get(Parameter.PARALLELISM, Integer.class) : 0;
         adductDetector = new AdductDetector(params.get(Parameter.MZ_WINDOW_PPM, Double.class),
                 featureSetContainer.getIonMode());
         adductDetector.setAdductList(params.get(Parameter.ADDUCT_LIST, (new ArrayList<>()).getClass()));
@@ -83,15 +88,14 @@ public class AdductFinder extends CallableTask {
     public FeatureSetContainer call() {
 
         String id = featureSetContainer.getId() + IDENTIFIER;
-        FeatureSetContainer outFeatureSetContainer = featureSetContainer.getBuilder().newInstance(FeatureSetContainer.class, id,
-                featureSetContainer.getIonMode(), featureSetContainer.getWorkingDirectory());
 
-        for (FeatureSet featureSet : featureSetContainer) {
-            adductDetector.findAdducts(((FeatureSetImpl) featureSet).getFeaturesList());
-            outFeatureSetContainer.addFeatureSet(featureSet);
-        }
+        return new FeatureSetMapper(parallelism) {
+            @Override
+            protected FeatureSet map(FeatureSet featureSet) {
 
-        outFeatureSetContainer.finaliseFile();
-        return outFeatureSetContainer;
+                adductDetector.findAdducts(((FeatureSetImpl) featureSet).getFeaturesList());
+                return featureSet;
+            }
+        }.run(featureSetContainer, id);
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.identification;
+
+import uk.ac.ebi.masscascade.parameters.Constants;
+
+import java.util.Arrays;
+
+/**
+ * Sparse isotope candidate pairs of an m/z sorted feature list.
+ * <p/>
+ * The candidates of a feature are all heavier features within the isotope spacing and the m/z tolerance of the
+ * heavier feature. Since the m/z values are sorted, both window bounds only move forward and the pairs are collected
+ * in a single two-pointer sweep. The pairs are held in compressed row form, so memory and time grow with the number of
+ * candidate pairs instead of the square of the number of features.
+ */
+public class IsotopeCandidates {
+
+    private final int[] offsets;
+    private int[] targets;
+
+    /**
+     * Collects the isotope candidate pairs of the given m/z values.
+     *
+     * @param mzs     the m/z values in ascending order
+     * @param n       the number of m/z values
+     * @param spacing the isotope spacing in m/z, i.e. the mass difference divided by the charge
+     * @param ppm     the m/z tolerance in ppm
+     */
+    public IsotopeCandidates(double[] mzs, int n, double spacing, double ppm) {
+
+        offsets = new int[n + 1];
+        targets = new int[Math.max(16, n)];
+
+        int size = 0;
+        int lower = 0;
+        int upper = 0;
+        for (int i = 0; i < n; i++) {
+
+            double target = mzs[i] + spacing;
+
+            // first feature with ll <= m/z, ll = target - tolerance(m/z)
+            lower = Math.max(lower, i + 1);
+            while (lower < n && mzs[lower] < target - mzs[lower] * ppm / Constants.PPM) lower++;
+            // first feature with m/z >= ul, ul = target + tolerance(m/z)
+            upper = Math.max(upper, lower);
+            while (upper < n && mzs[upper] < target + mzs[upper] * ppm / Constants.PPM) upper++;
+
+            if (size + upper - lower > targets.length)
+                targets = Arrays.copyOf(targets, Math.max(targets.length * 2, size + upper - lower));
+            for (int j = lower; j < upper; j++) targets[size++] = j;
+            offsets[i + 1] = size;
+        }
+    }
+
+    /**
+     * Returns the total number of candidate pairs.
+     *
+     * @return the number of pairs
+     */
+    public int size() {
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Returns the position of the first candidate of the given feature.
+     *
+     * @param i the feature position
+     * @return the start position, inclusive
+     */
+    public int getStart(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * Returns the position after the last candidate of the given feature.
+     *
+     * @param i the feature position
+     * @return the end position, exclusive
+     */
+    public int getEnd(int i) {
+        return offsets[i + 1];
+    }
+
+    /**
+     * Returns the feature position of the candidate at the given position.
+     *
+     * @param k the candidate position
+     * @return the feature position of the candidate
+     */
+    public int getTarget(int k) {
+        return targets[k];
+    }
+}
@@ -26,23 +26,23 @@ import org.apache.commons.math3.util.FastMath;
 import org.apache.log4j.Logger;
 import uk.ac.ebi.masscascade.interfaces.Feature;
 import uk.ac.ebi.masscascade.interfaces.FeatureSet;
-import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.properties.Isotope;
 import uk.ac.ebi.masscascade.utilities.comparator.FeatureMassComparator;
 import uk.ac.ebi.masscascade.utilities.math.LinearEquation;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Class implementing an isotope search method for a list of features. This class does not use external dependencies.
+ * <p/>
+ * The isotope candidates of every feature are collected from the m/z sorted feature list with {@link
+ * IsotopeCandidates}. Isotopic envelopes are chains of candidate pairs; the best envelope of every feature, i.e. the
+ * longest chain with the smallest total m/z deviation, is built from the heaviest feature downwards in a single pass.
+ * Instances hold no state and can be shared between threads.
  */
 public class IsotopeDetectorRec {
 
@@ -70,9 +70,7 @@ public class IsotopeDetectorRec {
     };
 
     // bin size used to infer the functions above
-    private double BIN_SIZE = 10d;
-    // default minimum isotope array size
-    private int NUM_ISOTOPES = 3;
+    private static final double BIN_SIZE = 10d;
 
     /**
      * Reference: "The isotopic Mass Defect", E. Thurman, et al.
@@ -103,167 +101,88 @@ public class IsotopeDetectorRec {
         List<Feature> features = new ArrayList<>(pseudoFeatureSet.getFeaturesMap().values());
         Collections.sort(features, new FeatureMassComparator());
 
-        Set<Integer> skipSet = new HashSet<>();
-
-        for (int c = 1; c <= charge; c++)
-            traverse(features, 0, c, skipSet);
-    }
-
-    /**
-     * Traverses over all features and builds isotopic envelopes.
-     *
-     * @param features the feature list
-     * @param p        the parent id
-     * @param c        the current charge
-     * @param skipSet  ids of already annotated features
-     */
-    private void traverse(List<Feature> features, int p, int c, Set<Integer> skipSet) {
-
-        if (p == features.size()) return;
-        else if (skipSet.contains(p)) { // skip feature is already annotated
-            traverse(features, ++p, c, skipSet);
-            return;
+        int n = features.size();
+        double[] mzs = new double[n];
+        double[] intensities = new double[n];
+        for (int i = 0; i < n; i++) {
+            mzs[i] = features.get(i).getMz();
+            intensities[i] = features.get(i).getIntensity();
         }
 
-        List<Integer[]> paths = new ArrayList<>();
-        // build isotopic envelope for this feature
-        build(features, paths, p, 0, 0, c);
-        resolve(features, paths, p, c, skipSet);
-        // move to next feature
-        traverse(features, ++p, c, skipSet);
-    }
+        // positions of already annotated features
+        boolean[] annotated = new boolean[n];
 
-    /**
-     * Builds all possible isotopic envelopes for a given feature
-     *
-     * @param features the feature list
-     * @param paths    all isotope envelopes described as paths with feature ids
-     * @param p        the parent id
-     * @param d        the distance to the parent
-     * @param pi       the daughter id
-     * @param c        the current charge
-     */
-    private void build(List<Feature> features, List<Integer[]> paths, int p, int d, int pi, int c) {
+        // best envelope of every feature: next feature, number of isotopes and total m/z deviation
+        int[] next = new int[n];
+        int[] length = new int[n];
+        double[] deviation = new double[n];
+
+        for (int c = 1; c <= charge; c++) {
 
-        for (int cp = p + 1; cp < features.size(); cp++) {
+            double spacing = ISOTOPE_DIFFERENCE / c;
+            IsotopeCandidates candidates = new IsotopeCandidates(mzs, n, spacing, ppm);
 
-            double nmz = features.get(cp).getMz();
-            double ndelta = nmz * ppm / Constants.PPM;
+            for (int p = n - 1; p >= 0; p--) {
 
-            double pmz = features.get(p).getMz();
-            double ul = pmz + ISOTOPE_DIFFERENCE / c + ndelta;
-            double ll = pmz + ISOTOPE_DIFFERENCE / c - ndelta;
+                next[p] = -1;
+                length[p] = 0;
+                deviation[p] = 0;
 
-            double r = features.get(cp).getIntensity() / features.get(p).getIntensity();
+                for (int k = candidates.getStart(p); k < candidates.getEnd(p); k++) {
 
-            if (nmz >= ul) {
-                break;
-            } else if (isPotentialIsotope(ll, ul, nmz, r, c)) {
+                    int cp = candidates.getTarget(k);
+                    if (!isPotentialIsotope(mzs[cp], intensities[cp] / intensities[p], c)) continue;
 
-                if (paths.size() == pi) paths.add(new Integer[NUM_ISOTOPES]);
+                    int cpLength = length[cp] + 1;
+                    double cpDeviation = deviation[cp] + FastMath.abs(mzs[cp] - mzs[p] - spacing);
+                    if (cpLength > length[p] || (cpLength == length[p] && cpDeviation < deviation[p])) {
+                        next[p] = cp;
+                        length[p] = cpLength;
+                        deviation[p] = cpDeviation;
+                    }
+                }
+            }
 
-                if (d == paths.get(pi).length) paths.set(pi, Arrays.copyOf(paths.get(pi), d * 2)); // grow isotope array
-                if (d != 0 && paths.get(pi)[0] == null)
-                    paths.set(pi, paths.get(pi - 1).clone()); // copy and add isotope array if path branches
-                paths.get(pi)[d] = cp;
-                build(features, paths, cp, ++d, pi++, c); // continue to build isotopic envelope
-                d--;
+            for (int p = 0; p < n; p++) {
+                if (!annotated[p] && next[p] != -1) annotate(features, next, p, annotated);
             }
         }
     }
 
     /**
-     * Return whether the two signals can be considered isotopes based on m/z difference and signal intensity.
+     * Return whether the child signal can be considered an isotope based on the signal intensity. The m/z difference
+     * is checked by the candidate search.
      *
-     * @param ll  the lower m/z limit
-     * @param ul  the upper m/z limit
      * @param nmz the child m/z
      * @param r   the child to parent intensity ratio
      * @param c   the current charge
      * @return whether the two signals are potential isotopes
      */
-    private boolean isPotentialIsotope(double ll, double ul, double nmz, double r, int c) {
+    private boolean isPotentialIsotope(double nmz, double r, int c) {
 
-        if (ll <= nmz && nmz < ul) {
-            double rT = isotopeToEquation.get(c).getY(nmz / BIN_SIZE);
-            return (r >= rT - (rT * isotopeToTolerance.get(c)) && r < rT + (rT * isotopeToTolerance.get(c)));
-        }
-
-        return false;
-    }
-
-    /**
-     * Finds the most likely isotopic envelope from an array of isotope paths.
-     *
-     * @param features the feature list
-     * @param paths    all isotope envelopes described as paths with feature ids
-     * @param p        the parent id
-     * @param c        the current charge
-     * @param skipSet  ids of already annotated features
-     */
-    private void resolve(List<Feature> features, List<Integer[]> paths, int p, int c, Set<Integer> skipSet) {
-
-        if (paths.size() == 0 || paths.get(0)[0] == null) {}
-        else if (paths.size() == 1) annotate(features, paths.get(0), p, skipSet); // only one isotopic envelope
-        else { // multiple isotopic envelopes
-            int max = 0;
-            // (1) find longest path
-            for (Integer[] path : paths) {
-                if (path.length >= max) max = path.length;
-            }
-            Iterator<Integer[]> iter = paths.iterator();
-            while (iter.hasNext()) {
-                Integer[] path = iter.next();
-                for (Integer i : path) {
-                    if (i == null) break;
-                    else if (path.length < max) iter.remove();
-                }
-            }
-            // if only one path left: annotate
-            if (paths.size() == 1) annotate(features, paths.get(0), p, skipSet);
-            else { // (2) select best path by total min m/z deviation
-                Integer[] bestPath = null;
-                double maxDevSum = Double.MAX_VALUE;
-                for (Integer[] path : paths) {
-                    double pmz = features.get(p).getMz();
-                    double devSum = 0;
-                    for (Integer i : path) {
-                        if (i == null) break;
-                        double nmz = features.get(i).getMz();
-                        devSum += FastMath.abs(nmz - pmz - ISOTOPE_DIFFERENCE);
-                        pmz = nmz;
-                    }
-                    if (devSum < maxDevSum) {
-                        maxDevSum = devSum;
-                        bestPath = path;
-                    }
-                }
-
-                annotate(features, bestPath, p, skipSet);
-            }
-        }
+        double rT = isotopeToEquation.get(c).getY(nmz / BIN_SIZE);
+        return (r >= rT - (rT * isotopeToTolerance.get(c)) && r < rT + (rT * isotopeToTolerance.get(c)));
     }
 
     /**
      * Annotates the features with isotope information from the envelope.
      *
-     * @param features the feature list
-     * @param path     the best isotopic envelope path
-     * @param p        the parent id
-     * @param skipSet  ids of already annotated features
+     * @param features  the feature list
+     * @param next      the next feature of every envelope
+     * @param p         the parent id
+     * @param annotated positions of already annotated features
      */
-    private void annotate(List<Feature> features, Integer[] path, int p, Set<Integer> skipSet) {
+    private void annotate(List<Feature> features, int[] next, int p, boolean[] annotated) {
 
         int pid = features.get(p).getId();
         int depth = 0;
         features.get(p).setProperty(new Isotope("M", depth++, pid, pid));
-        skipSet.add(p);
+        annotated[p] = true;
 
-        for (Integer pi : path) {
-            if (pi == null) break;
+        for (int pi = next[p]; pi != -1; pi = next[pi]) {
             features.get(p).setProperty(new Isotope("M+" + depth, depth, pid, features.get(pi).getId()));
             features.get(pi).setProperty(new Isotope("M+" + depth, depth++, pid, features.get(pi).getId()));
-            skipSet.add(pi);
+            annotated[pi] = true;
         }
     }
 }
@@ -22,6 +22,7 @@
 
 package uk.ac.ebi.masscascade.identification;
 
+import uk.ac.ebi.masscascade.core.featureset.FeatureSetMapper;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.FeatureSet;
@@ -30,7 +31,7 @@ import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 
 /**
- * Class implementing an isotope finder method.
+ * Class implementing an isotope finder method. Feature sets are processed in parallel.
  * <ul>
  * <li>Parameter <code> MZ_WINDOW_PPM </code>- The m/z tolerance in ppm.</li>
  * <li>Parameter <code> FEATURE_SET_CONTAINER </code>- The input feature set container.</li>
@@ -42,6 +43,7 @@ public class IsotopeFinder extends CallableTask {
 
     private double massTolerance;
     private FeatureSetContainer featureSetContainer;
+    private int parallelism;
 
     /**
      * Constructor for the isotope finder implementation.
@@ -81,6 +83,7 @@ public class IsotopeFinder extends CallableTask {
 
         massTolerance = params.get(Parameter.MZ_WINDOW_PPM, Double.class);
         featureSetContainer = params.get(Parameter.FEATURE_SET_CONTAINER, FeatureSetContainer.class);
+        parallelism = params.containsKey(Parameter.PARALLELISM) ? params.get(Parameter.PARALLELISM, Integer.class) : 0;
     }
 
     /**
@@ -93,19 +96,15 @@ public class IsotopeFinder extends CallableTask {
     public FeatureSetContainer call() {
 
         String id = featureSetContainer.getId() + IDENTIFIER;
-        FeatureSetContainer outFeatureSetContainer = featureSetContainer.getBuilder().newInstance(FeatureSetContainer.class, id,
-                featureSetContainer.getIonMode(), featureSetContainer.getWorkingDirectory());
+        final IsotopeDetectorRec isotopeDetector = new IsotopeDetectorRec(CHARGE, massTolerance);
 
-//        IsotopeDetector isotopeDetector = new IsotopeDetector(CHARGE, massTolerance);
-        IsotopeDetectorRec isotopeDetector = new IsotopeDetectorRec(CHARGE, massTolerance);
+        return new FeatureSetMapper(parallelism) {
+            @Override
+            protected FeatureSet map(FeatureSet featureSet) {
 
-        for (FeatureSet featureSet : featureSetContainer) {
-            isotopeDetector.findIsotopes(featureSet);
-            outFeatureSetContainer.addFeatureSet(featureSet);
-        }
-
-        outFeatureSetContainer.finaliseFile();
-
-        return outFeatureSetContainer;
+                isotopeDetector.findIsotopes(featureSet);
+                return featureSet;
+            }
+        }.run(featureSetContainer, id);
     }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade.interfaces;
+
+import java.util.List;
+
+/**
+ * Streaming contract for tasks that transform the features of a feature container one by one. Tasks that implement
+ * this interface can be chained into a {@link uk.ac.ebi.masscascade.core.feature.FeaturePipeline}, which runs all
+ * chained tasks over a single pass of the input and only materialises the output of the last task.
+ */
+public interface FeatureStreamTask {
+
+    /**
+     * Processes the next feature and adds the resulting features to the result list.
+     *
+     * @param feature           the next feature
+     * @param processedFeatures the result list
+     */
+    void process(Feature feature, List<Feature> processedFeatures);
+}
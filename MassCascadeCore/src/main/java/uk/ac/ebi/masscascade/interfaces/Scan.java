@@ -23,6 +23,7 @@
 package uk.ac.ebi.masscascade.interfaces;
 
 import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
@@ -67,12 +68,19 @@ public interface Scan {
     Constants.ION_MODE getIonMode();
 
     /**
-     * Returns the scan data.
+     * Returns the scan data as point list. The list is a copy of the scan data.
      *
      * @return the scan data
      */
     XYList getData();
 
+    /**
+     * Returns the scan data as primitive m/z and intensity arrays.
+     *
+     * @return the scan data arrays
+     */
+    XYArray getDataArray();
+
     /**
      * Returns the base feature.
      *
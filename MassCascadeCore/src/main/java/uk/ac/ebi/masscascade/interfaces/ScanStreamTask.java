@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade.interfaces;
+
+import java.util.List;
+
+/**
+ * Streaming contract for tasks that transform the MS1 scans of a scan container one by one. Tasks that implement this
+ * interface can be chained into a {@link uk.ac.ebi.masscascade.core.scan.ScanPipeline}, which runs all chained tasks
+ * over a single pass of the input and only materialises the output of the last task.
+ * <p/>
+ * Scans are passed in container order. A task may hold scans back, e.g. to look at a window of subsequent scans, but
+ * must release them in order and at the latest when the stream is flushed.
+ */
+public interface ScanStreamTask {
+
+    /**
+     * Processes the next MS1 scan and adds all scans that are finished to the result list.
+     *
+     * @param scan           the next scan
+     * @param processedScans the result list
+     */
+    void process(Scan scan, List<Scan> processedScans);
+
+    /**
+     * Adds all scans that are still held back to the result list. Called once after the last scan.
+     *
+     * @param processedScans the result list
+     */
+    void flush(List<Scan> processedScans);
+}
@@ -23,8 +23,8 @@
 package uk.ac.ebi.masscascade.interfaces.container;
 
 import com.google.common.collect.TreeMultimap;
-import uk.ac.ebi.masscascade.core.container.file.FileManager;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
 import uk.ac.ebi.masscascade.parameters.Constants;
 
 import java.util.Iterator;
@@ -73,7 +73,7 @@ public interface FeatureContainer extends Container, Iterable<Feature> {
      *
      * @return the file manager
      */
-    FileManager getFileManager();
+    RunManager getFileManager();
 
     /**
      * Returns a feature by its identifier.
@@ -83,6 +83,14 @@ public interface FeatureContainer extends Container, Iterable<Feature> {
      */
     Feature getFeature(int i);
 
+    /**
+     * Returns the features with the given identifiers in the given order. Unknown identifiers yield null.
+     *
+     * @param ids the feature identifiers
+     * @return the features
+     */
+    List<Feature> getFeatures(int[] ids);
+
     /**
      * Returns the complete feature list.
      *
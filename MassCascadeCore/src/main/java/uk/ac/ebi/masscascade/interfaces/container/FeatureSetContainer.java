@@ -42,6 +42,14 @@ public interface FeatureSetContainer extends Container, Iterable<FeatureSet> {
      */
     FeatureSet getFeatureSet(int featureSetId);
 
+    /**
+     * Returns the featuresets with the given identifiers in the given order. Unknown identifiers yield null.
+     *
+     * @param featureSetIds the featureset identifiers
+     * @return the featuresets
+     */
+    List<FeatureSet> getFeatureSets(int[] featureSetIds);
+
     /**
      * Adds a featureset to the collection.
      *
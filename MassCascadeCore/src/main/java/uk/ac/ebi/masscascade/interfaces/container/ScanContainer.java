@@ -22,6 +22,7 @@
 
 package uk.ac.ebi.masscascade.interfaces.container;
 
+import uk.ac.ebi.masscascade.core.scan.ScanIndex;
 import uk.ac.ebi.masscascade.core.scan.ScanInfo;
 import uk.ac.ebi.masscascade.core.scan.ScanLevel;
 import uk.ac.ebi.masscascade.featurebuilder.FeatureMsnHelper;
@@ -102,6 +103,22 @@ public interface ScanContainer extends Container, Iterable<Scan> {
      */
     Scan getScan(int i);
 
+    /**
+     * Returns the scans with the given scan indices in the given order. Unknown indices yield null.
+     *
+     * @param indices the scan indices
+     * @return the scans
+     */
+    List<Scan> getScans(int[] indices);
+
+    /**
+     * Returns the meta information index of all scans. Meta information queries should use the index instead of
+     * deserializing the scans.
+     *
+     * @return the scan index
+     */
+    ScanIndex getScanIndex();
+
     /**
      * Returns the parent scan -> daughter scan -> parent mass association map.
      *
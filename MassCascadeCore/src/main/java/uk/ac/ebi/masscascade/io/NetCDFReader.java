@@ -43,6 +43,7 @@ import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.utilities.ScanUtils;
 import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
@@ -194,7 +195,8 @@ public class NetCDFReader extends CallableTask {
                 ucar.ma2.Index massValuesIndex = massValueArray.getIndex();
                 ucar.ma2.Index intensityValuesIndex = intensityValueArray.getIndex();
                 int arrayLength = massValueArray.getShape()[0];
-                XYList completeDataPoints = new XYList();
+                double[] mzs = new double[arrayLength];
+                double[] intensities = new double[arrayLength];
                 for (int j = 0; j < arrayLength; j++) {
                     ucar.ma2.Index massIndex0 = massValuesIndex.set0(j);
                     ucar.ma2.Index intensityIndex0 = intensityValuesIndex.set0(j);
@@ -202,7 +204,8 @@ public class NetCDFReader extends CallableTask {
                             * massValueScaleFactor;
                     double intensity = intensityValueArray.getDouble(intensityIndex0)
                             * intensityValueScaleFactor;
-                    completeDataPoints.add(new XYPoint(mz, intensity));
+                    mzs[j] = mz;
+                    intensities[j] = intensity;
 
                     if (basePeakIntensity < intensity) {
                         basePeakIntensity = intensity;
@@ -211,11 +214,12 @@ public class NetCDFReader extends CallableTask {
                     totalIonCurrent += intensity;
                 }
 
+                XYArray completeDataPoints = new XYArray(mzs, intensities);
                 Constants.ACQUISITION_MODE acquisitionMode = ScanUtils.isCentroided(
                         completeDataPoints) ? Constants.ACQUISITION_MODE.CENTROID : Constants.ACQUISITION_MODE.PROFILE;
-                XYList optimizedXYList = ScanUtils.removeZeroAndDuplicateDataPoints(completeDataPoints, acquisitionMode);
+                XYArray optimizedData = ScanUtils.removeZeroAndDuplicateDataPoints(completeDataPoints, acquisitionMode);
                 Range mzExtendableRange =
-                        new ExtendableRange(optimizedXYList.get(0).x, optimizedXYList.get(optimizedXYList.size() - 1).x);
+                        new ExtendableRange(optimizedData.getX(0), optimizedData.getX(optimizedData.size() - 1));
 
                 if (msn.getLvl() > Constants.MSN.MS1.getLvl()) parentScan = parentScanIndex;
                 else parentScanIndex = scanNumber;
@@ -223,7 +227,7 @@ public class NetCDFReader extends CallableTask {
                 XYList baseXY = new XYList();
                 baseXY.add(new XYPoint(basePeak, basePeakIntensity));
                 ScanImpl scan =
-                        new ScanImpl(scanNumber, msn, ionMode, optimizedXYList, mzExtendableRange, baseXY, retentionTime,
+                        new ScanImpl(scanNumber, msn, ionMode, optimizedData, mzExtendableRange, baseXY, retentionTime,
                                 totalIonCurrent, parentScan, parentCharge, parentMz);
                 scanContainer.addScan(scan);
 
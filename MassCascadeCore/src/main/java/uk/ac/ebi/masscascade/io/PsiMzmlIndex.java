@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.io;
+
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.TextUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Random access index into an indexed mzML file.
+ * <p/>
+ * The byte offsets of all spectrum elements are read from the <code>indexList</code> at the end of the document.
+ * Single spectra are then decoded on demand by positioning a StAX reader directly on their start tag. Reads are
+ * positional and every thread uses its own spectrum parser, hence the index can be shared between threads.
+ */
+public class PsiMzmlIndex {
+
+    private static final String INDEX_LIST = "indexList";
+    private static final String INDEX = "index";
+    private static final String OFFSET = "offset";
+    private static final String RUN = "run";
+
+    private static final Pattern INDEX_LIST_OFFSET = Pattern.compile("<indexListOffset>\\s*(\\d+)\\s*</indexListOffset>");
+    private static final int TAIL_LENGTH = 1024 * 4;
+    private static final int BUFFER_SIZE = 1024 * 64;
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    private final File mzmlFile;
+    private final long[] spectrumOffsets;
+    private final Map<String, List<String[]>> paramGroups;
+
+    private final ThreadLocal<PsiMzmlSpectrumParser> parsers;
+    private volatile FileChannel channel;
+
+    /**
+     * Constructs an index for an indexed mzML file.
+     *
+     * @param mzmlFile the indexed mzML file
+     * @throws MassCascadeException if the file is not indexed or the index cannot be read
+     */
+    public PsiMzmlIndex(File mzmlFile) throws MassCascadeException {
+
+        this.mzmlFile = mzmlFile;
+
+        long indexListOffset = getIndexListOffset(mzmlFile);
+        if (indexListOffset < 0) throw new MassCascadeException("mzML file is not indexed: " + mzmlFile.getName());
+        spectrumOffsets = readSpectrumOffsets(indexListOffset);
+        paramGroups = readParamGroups();
+
+        parsers = new ThreadLocal<PsiMzmlSpectrumParser>() {
+            @Override
+            protected PsiMzmlSpectrumParser initialValue() {
+                return new PsiMzmlSpectrumParser(PsiMzmlIndex.this.paramGroups);
+            }
+        };
+    }
+
+    /**
+     * Returns the byte offset of the index list or -1 if the mzML file is not indexed.
+     *
+     * @param mzmlFile the mzML file
+     * @return the index list offset
+     */
+    public static long getIndexListOffset(File mzmlFile) {
+
+        try (RandomAccessFile raf = new RandomAccessFile(mzmlFile, "r")) {
+
+            long length = raf.length();
+            int tailLength = (int) Math.min(TAIL_LENGTH, length);
+            byte[] tail = new byte[tailLength];
+            raf.seek(length - tailLength);
+            raf.readFully(tail);
+
+            Matcher matcher = INDEX_LIST_OFFSET.matcher(new String(tail, StandardCharsets.UTF_8));
+            if (!matcher.find()) return -1;
+            long offset = Long.parseLong(matcher.group(1));
+            return (offset < length) ? offset : -1;
+        } catch (IOException | NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the indexed mzML file.
+     *
+     * @return the mzML file
+     */
+    public File getFile() {
+        return mzmlFile;
+    }
+
+    /**
+     * Returns the number of indexed spectra.
+     *
+     * @return the number of spectra
+     */
+    public int size() {
+        return spectrumOffsets.length;
+    }
+
+    /**
+     * Decodes the spectrum with the given index.
+     *
+     * @param index           the spectrum index
+     * @param parentScanIndex the index of the parent scan for tandem scans
+     * @param ionMode         the ion mode if the spectrum does not state its polarity
+     * @return the scan or null if the spectrum has no m/z and intensity data
+     * @throws MassCascadeException if the spectrum cannot be read
+     */
+    public Scan readScan(int index, int parentScanIndex, Constants.ION_MODE ionMode) throws MassCascadeException {
+
+        if (index < 0 || index >= spectrumOffsets.length)
+            throw new MassCascadeException("Spectrum index out of bounds: " + index);
+
+        XMLStreamReader reader = null;
+        try {
+            reader = createReader(spectrumOffsets[index]);
+            if (!nextStartElement(reader) || !reader.getLocalName().equals(PsiMzmlSpectrumParser.SPECTRUM) ||
+                    Integer.parseInt(reader.getAttributeValue(null, PsiMzmlSpectrumParser.INDEX)) != index)
+                throw new MassCascadeException("Invalid offset for spectrum " + index + " in " + mzmlFile.getName());
+
+            PsiMzmlSpectrumParser parser = parsers.get();
+            parser.setParentScanIndex(parentScanIndex);
+            parser.setIonMode(ionMode);
+            return parser.parseSpectrum(reader);
+        } catch (IOException | XMLStreamException | NumberFormatException exception) {
+            throw new MassCascadeException("Spectrum " + index + " could not be read: " + exception.getMessage(),
+                    exception);
+        } finally {
+            TextUtils.close(reader);
+        }
+    }
+
+    /**
+     * Releases the file handle. The index reopens the file if another spectrum is requested.
+     */
+    public synchronized void close() {
+
+        if (channel == null) return;
+        TextUtils.close(channel);
+        channel = null;
+    }
+
+    /**
+     * Reads the referenceable parameter groups preceding the run element.
+     */
+    private Map<String, List<String[]>> readParamGroups() throws MassCascadeException {
+
+        PsiMzmlSpectrumParser parser = new PsiMzmlSpectrumParser();
+
+        XMLStreamReader reader = null;
+        try {
+            reader = createReader(0);
+            while (nextStartElement(reader)) {
+
+                String name = reader.getLocalName();
+                if (name.equals(PsiMzmlSpectrumParser.PARAM_GROUP)) parser.readParamGroup(reader);
+                else if (name.equals(RUN)) break;
+            }
+        } catch (IOException | XMLStreamException exception) {
+            throw new MassCascadeException("mzML header could not be read: " + exception.getMessage(), exception);
+        } finally {
+            TextUtils.close(reader);
+        }
+
+        return parser.getParamGroups();
+    }
+
+    /**
+     * Reads the spectrum offsets from the index list.
+     */
+    private long[] readSpectrumOffsets(long indexListOffset) throws MassCascadeException {
+
+        long[] offsets = new long[1024];
+        int size = 0;
+
+        XMLStreamReader reader = null;
+        try {
+            reader = createReader(indexListOffset);
+
+            boolean isSpectrumIndex = false;
+            while (reader.hasNext()) {
+
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals(INDEX)) {
+                        isSpectrumIndex = PsiMzmlSpectrumParser.SPECTRUM.equals(
+                                reader.getAttributeValue(null, PsiMzmlSpectrumParser.NAME));
+                    } else if (name.equals(OFFSET) && isSpectrumIndex) {
+                        if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+                        offsets[size++] = Long.parseLong(reader.getElementText().trim());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(INDEX_LIST)) {
+                    break;
+                }
+            }
+        } catch (IOException | XMLStreamException | NumberFormatException exception) {
+            throw new MassCascadeException("mzML index could not be read: " + exception.getMessage(), exception);
+        } finally {
+            TextUtils.close(reader);
+        }
+
+        return Arrays.copyOf(offsets, size);
+    }
+
+    /**
+     * Creates a stream reader starting at the given byte offset of the document.
+     */
+    private XMLStreamReader createReader(long offset) throws IOException, XMLStreamException {
+
+        InputStream stream = new BufferedInputStream(new ChannelInputStream(getChannel(), offset), BUFFER_SIZE);
+        return FACTORY.createXMLStreamReader(stream, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Advances the stream reader to the next start tag.
+     */
+    private boolean nextStartElement(XMLStreamReader reader) throws XMLStreamException {
+
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lazily opens the read-only file channel.
+     */
+    private FileChannel getChannel() throws IOException {
+
+        FileChannel current = channel;
+        if (current == null) {
+            synchronized (this) {
+                current = channel;
+                if (current == null) {
+                    current = new RandomAccessFile(mzmlFile, "r").getChannel();
+                    channel = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Input stream reading positionally from a shared file channel without moving the channel's position.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+
+        private ChannelInputStream(FileChannel channel, long position) {
+
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return (count <= 0) ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+
+            if (length == 0) return 0;
+            int count = channel.read(ByteBuffer.wrap(bytes, offset, length), position);
+            if (count > 0) position += count;
+            return count;
+        }
+    }
+}
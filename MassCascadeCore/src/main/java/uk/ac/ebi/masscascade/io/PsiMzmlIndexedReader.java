@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.io;
+
+import org.apache.log4j.Level;
+import uk.ac.ebi.masscascade.core.container.file.FileContainerBuilder;
+import uk.ac.ebi.masscascade.core.container.file.scan.IndexedScanContainer;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.interfaces.CallableTask;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+
+import java.io.File;
+
+/**
+ * Class for opening indexed PSI mzML files for random access. <ul> <li>Parameter <code> DATA FILE </code>- The data
+ * file to be read.</li> <li>Parameter <code> WORKING_DIRECTORY </code>- The working directory for derived
+ * containers.</li> <li>Parameter <code> SCAN_CONTAINER </code>- Optional target scan container if the file is not
+ * indexed.</li> </ul>
+ * <p/>
+ * The spectrum offsets are taken from the <code>indexList</code> of the document and the returned {@link
+ * IndexedScanContainer} decodes single scans on demand, so the raw data is never copied into a temporary file. Files
+ * without an index are streamed into the target scan container instead, or into a new file-based container in the
+ * working directory if no target is given.
+ */
+public class PsiMzmlIndexedReader extends CallableTask {
+
+    private File mzmlFile;
+    private String workingDirectory;
+    private ScanContainer scanContainer;
+
+    /**
+     * Constructs an indexed mzML reader task.
+     *
+     * @param params the parameter map
+     * @throws uk.ac.ebi.masscascade.exception.MassCascadeException
+     *
+     */
+    public PsiMzmlIndexedReader(ParameterMap params) throws MassCascadeException {
+
+        super(PsiMzmlIndexedReader.class);
+        setParameters(params);
+    }
+
+    /**
+     * Sets the parameters for the file reader task.
+     *
+     * @param params the new parameter values
+     * @throws uk.ac.ebi.masscascade.exception.MassCascadeException
+     *
+     */
+    public void setParameters(ParameterMap params) throws MassCascadeException {
+
+        mzmlFile = params.get(Parameter.DATA_FILE, File.class);
+        workingDirectory = params.containsKey(Parameter.WORKING_DIRECTORY) ?
+                params.get(Parameter.WORKING_DIRECTORY, String.class) : System.getProperty(Constants.JAVA_TMP);
+        scanContainer = params.containsKey(Parameter.SCAN_CONTAINER) ?
+                params.get(Parameter.SCAN_CONTAINER, ScanContainer.class) : null;
+
+        if (mzmlFile == null || !mzmlFile.isFile()) throw new MassCascadeException("File not found.");
+    }
+
+    /**
+     * Indexes a Psi '.mzML' file.
+     *
+     * @return the compiled mass spec sample
+     */
+    public ScanContainer call() {
+
+        String name = mzmlFile.getName();
+        int extension = name.lastIndexOf(".");
+        String id = ((extension > 0) ? name.substring(0, extension) : name) + Constants.DELIMITER;
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.DATA_FILE, mzmlFile);
+
+        if (PsiMzmlIndex.getIndexListOffset(mzmlFile) >= 0) {
+            // a single pass collects the scan meta information, the indexed container re-reads the data on demand
+            final IndexedScanContainer indexedContainer =
+                    new IndexedScanContainer(id, new PsiMzmlIndex(mzmlFile), workingDirectory);
+            params.put(Parameter.SCAN_CONTAINER, indexedContainer);
+
+            return new PsiMzmlStreamReader(params) {
+                @Override
+                protected void addScan(Scan scan) {
+                    indexedContainer.registerScan(scan);
+                }
+            }.call();
+        }
+
+        ScanContainer targetContainer;
+        if (scanContainer != null) {
+            LOGGER.log(Level.INFO, "No index found, streaming " + name + " into the target container.");
+            targetContainer = scanContainer;
+        } else {
+            LOGGER.log(Level.INFO, "No index found, streaming " + name + " into a file container.");
+            targetContainer =
+                    FileContainerBuilder.getInstance().newInstance(ScanContainer.class, id, workingDirectory);
+        }
+        params.put(Parameter.SCAN_CONTAINER, targetContainer);
+
+        return new PsiMzmlStreamReader(params).call();
+    }
+}
@@ -39,6 +39,7 @@ import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.utilities.ScanUtils;
 import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
@@ -173,23 +174,19 @@ public class PsiMzmlReader extends CallableTask {
 
             List<double[]> dataContainer = new ArrayList<>();
             for (BinaryDataArray bda : bdaList) {
-                double[] numberArray = new double[bda.getBinaryDataAsNumberArray().length];
-                int i = 0;
-                for (Number number : bda.getBinaryDataAsNumberArray()) {
-                    numberArray[i] = number.doubleValue();
-                    i++;
+                Number[] numbers = bda.getBinaryDataAsNumberArray();
+                double[] numberArray = new double[numbers.length];
+                for (int i = 0; i < numbers.length; i++) {
+                    numberArray[i] = numbers[i].doubleValue();
                 }
                 dataContainer.add(numberArray);
             }
-            XYList xydata = new XYList();
-            for (int i = 0; i < dataContainer.get(0).length; i++) {
-                xydata.add(new XYPoint(dataContainer.get(0)[i], dataContainer.get(1)[i]));
-            }
+            XYArray xydata = new XYArray(dataContainer.get(0), dataContainer.get(1));
             Constants.ACQUISITION_MODE acquisitionMode = ScanUtils.isCentroided(
                     xydata) ? Constants.ACQUISITION_MODE.CENTROID : Constants.ACQUISITION_MODE.PROFILE;
-            XYList optimizedXYList = ScanUtils.removeZeroAndDuplicateDataPoints(xydata, acquisitionMode);
+            XYArray optimizedData = ScanUtils.removeZeroAndDuplicateDataPoints(xydata, acquisitionMode);
             Range mzExtendableRange =
-                    new ExtendableRange(optimizedXYList.get(0).x, optimizedXYList.get(optimizedXYList.size() - 1).x);
+                    new ExtendableRange(optimizedData.getX(0), optimizedData.getX(optimizedData.size() - 1));
 
             if (msn.getLvl() > Constants.MSN.MS1.getLvl()) parentScan = parentScanIndex;
             else parentScanIndex = scanNumber;
@@ -197,7 +194,7 @@ public class PsiMzmlReader extends CallableTask {
             XYList baseXY = new XYList();
             baseXY.add(new XYPoint(basePeak, basePeakIntensity));
             ScanImpl scan =
-                    new ScanImpl(scanNumber, msn, ionMode, optimizedXYList, mzExtendableRange, baseXY, retentionTime,
+                    new ScanImpl(scanNumber, msn, ionMode, optimizedData, mzExtendableRange, baseXY, retentionTime,
                             totalIonCurrent, parentScan, parentCharge, parentMz);
             scanContainer.addScan(scan);
 
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.io;
+
+import uk.ac.ebi.masscascade.core.scan.ScanImpl;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.interfaces.Range;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.ScanUtils;
+import uk.ac.ebi.masscascade.utilities.buffer.Base64;
+import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Class for parsing single mzML spectrum elements from a StAX stream.
+ * <p/>
+ * The parser decodes the base64 and optionally zlib compressed binary data arrays straight into primitive arrays and
+ * never builds an object model of the document. Inflation and decoding buffers are reused between spectra. Instances
+ * are not thread-safe.
+ */
+public class PsiMzmlSpectrumParser {
+
+    // mzML element definitions
+    static final String SPECTRUM = "spectrum";
+    static final String CV_PARAM = "cvParam";
+    static final String PARAM_GROUP = "referenceableParamGroup";
+    static final String PARAM_GROUP_REF = "referenceableParamGroupRef";
+    static final String SCAN = "scan";
+    static final String SELECTED_ION = "selectedIon";
+    static final String BINARY_DATA_ARRAY = "binaryDataArray";
+    static final String BINARY = "binary";
+
+    // attribute names
+    static final String ID = "id";
+    static final String INDEX = "index";
+    static final String REF = "ref";
+    static final String NAME = "name";
+    static final String VALUE = "value";
+    static final String UNIT_NAME = "unitName";
+    static final String DEFAULT_ARRAY_LENGTH = "defaultArrayLength";
+    static final String ARRAY_LENGTH = "arrayLength";
+
+    // referenceable parameter group id -> name, value and unit name triplets
+    private final Map<String, List<String[]>> paramGroups;
+
+    private final Inflater inflater;
+    private byte[] inflateBuffer;
+
+    private int parentScanIndex = -1;
+
+    // scan information
+    private int scanNumber;
+    private Constants.MSN msn;
+    private double retentionTime;
+    private double basePeak;
+    private double basePeakIntensity;
+    private double totalIonCurrent;
+    private Constants.ION_MODE ionMode;
+
+    // tandem information
+    private int parentCharge;
+    private double parentMz;
+
+    // binary data array information
+    private int arrayLength;
+    private int precision;
+    private boolean zlib;
+    private boolean isMzArray;
+    private boolean isIntensityArray;
+    private double[] mzs;
+    private double[] intensities;
+
+    /**
+     * Constructs a spectrum parser.
+     */
+    public PsiMzmlSpectrumParser() {
+        this(new HashMap<String, List<String[]>>());
+    }
+
+    /**
+     * Constructs a spectrum parser sharing already read referenceable parameter groups.
+     *
+     * @param paramGroups the referenceable parameter groups
+     */
+    PsiMzmlSpectrumParser(Map<String, List<String[]>> paramGroups) {
+
+        this.paramGroups = paramGroups;
+        inflater = new Inflater();
+        inflateBuffer = new byte[1024 * 64];
+        ionMode = Constants.ION_MODE.UNKNOWN;
+    }
+
+    /**
+     * Reads a referenceable parameter group. The stream must be positioned on the start tag of the group.
+     *
+     * @param reader the stream reader
+     * @throws XMLStreamException unexpected behaviour
+     */
+    public void readParamGroup(XMLStreamReader reader) throws XMLStreamException {
+
+        String id = reader.getAttributeValue(null, ID);
+        List<String[]> params = new ArrayList<>();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals(CV_PARAM)) {
+                params.add(new String[]{reader.getAttributeValue(null, NAME), reader.getAttributeValue(null, VALUE),
+                        reader.getAttributeValue(null, UNIT_NAME)});
+            } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(PARAM_GROUP)) {
+                break;
+            }
+        }
+
+        paramGroups.put(id, params);
+    }
+
+    /**
+     * Returns the referenceable parameter groups read so far.
+     *
+     * @return the parameter groups
+     */
+    Map<String, List<String[]>> getParamGroups() {
+        return paramGroups;
+    }
+
+    /**
+     * Sets the index of the last MS1 scan, which is used as parent for subsequent tandem scans.
+     *
+     * @param parentScanIndex the parent scan index
+     */
+    public void setParentScanIndex(int parentScanIndex) {
+        this.parentScanIndex = parentScanIndex;
+    }
+
+    /**
+     * Sets the ion mode of the next spectrum if the spectrum itself does not state its polarity. Without this call,
+     * the ion mode is carried over from the previous spectrum.
+     *
+     * @param ionMode the ion mode
+     */
+    public void setIonMode(Constants.ION_MODE ionMode) {
+        this.ionMode = ionMode;
+    }
+
+    /**
+     * Parses a single spectrum. The stream must be positioned on the start tag of the spectrum and is left on its end
+     * tag.
+     *
+     * @param reader the stream reader
+     * @return the scan or null if the spectrum has no m/z and intensity data
+     * @throws XMLStreamException unexpected behaviour
+     */
+    public Scan parseSpectrum(XMLStreamReader reader) throws XMLStreamException {
+
+        reset();
+
+        scanNumber = Integer.parseInt(reader.getAttributeValue(null, INDEX));
+        String defaultLength = reader.getAttributeValue(null, DEFAULT_ARRAY_LENGTH);
+        int defaultArrayLength = (defaultLength == null) ? -1 : Integer.parseInt(defaultLength);
+
+        boolean isScan = false;
+        boolean isSelectedIon = false;
+        boolean isBinaryDataArray = false;
+
+        while (reader.hasNext()) {
+
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+
+                String name = reader.getLocalName();
+                if (name.equals(CV_PARAM)) {
+                    setParam(reader.getAttributeValue(null, NAME), reader.getAttributeValue(null, VALUE),
+                            reader.getAttributeValue(null, UNIT_NAME), isScan, isSelectedIon, isBinaryDataArray);
+                } else if (name.equals(PARAM_GROUP_REF)) {
+                    List<String[]> params = paramGroups.get(reader.getAttributeValue(null, REF));
+                    if (params == null) continue;
+                    for (String[] param : params)
+                        setParam(param[0], param[1], param[2], isScan, isSelectedIon, isBinaryDataArray);
+                } else if (name.equals(SCAN)) {
+                    isScan = true;
+                } else if (name.equals(SELECTED_ION)) {
+                    isSelectedIon = true;
+                } else if (name.equals(BINARY_DATA_ARRAY)) {
+                    isBinaryDataArray = true;
+                    String length = reader.getAttributeValue(null, ARRAY_LENGTH);
+                    arrayLength = (length == null) ? defaultArrayLength : Integer.parseInt(length);
+                    precision = ScanUtils.BYTES_64_PRECISION;
+                    zlib = false;
+                    isMzArray = false;
+                    isIntensityArray = false;
+                } else if (name.equals(BINARY)) {
+                    String text = reader.getElementText();
+                    if (isMzArray) mzs = decode(text);
+                    else if (isIntensityArray) intensities = decode(text);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+
+                String name = reader.getLocalName();
+                if (name.equals(SCAN)) isScan = false;
+                else if (name.equals(SELECTED_ION)) isSelectedIon = false;
+                else if (name.equals(BINARY_DATA_ARRAY)) isBinaryDataArray = false;
+                else if (name.equals(SPECTRUM)) break;
+            }
+        }
+
+        return buildScan();
+    }
+
+    /**
+     * Assigns a controlled vocabulary parameter to the current spectrum state.
+     */
+    private void setParam(String name, String value, String unitName, boolean isScan, boolean isSelectedIon,
+            boolean isBinaryDataArray) {
+
+        if (name == null) return;
+
+        if (isBinaryDataArray) {
+            switch (name) {
+                case "m/z array":
+                    isMzArray = true;
+                    break;
+                case "intensity array":
+                    isIntensityArray = true;
+                    break;
+                case "32-bit float":
+                    precision = ScanUtils.BYTES_32_PRECISION;
+                    break;
+                case "64-bit float":
+                    precision = ScanUtils.BYTES_64_PRECISION;
+                    break;
+                case "zlib compression":
+                    zlib = true;
+                    break;
+            }
+        } else if (isSelectedIon) {
+            if (name.equals("selected ion m/z")) parentMz = Double.parseDouble(value);
+            else if (name.equals("charge state")) parentCharge = Integer.parseInt(value);
+        } else if (isScan) {
+            if (name.equals("scan start time")) {
+                retentionTime = Double.parseDouble(value);
+                if ("minute".equals(unitName)) retentionTime *= 60;
+            }
+        } else {
+            switch (name) {
+                case "ms level":
+                    msn = Constants.MSN.get(value);
+                    break;
+                case "base peak m/z":
+                    basePeak = Double.parseDouble(value);
+                    break;
+                case "base peak intensity":
+                    basePeakIntensity = Double.parseDouble(value);
+                    break;
+                case "total ion current":
+                    totalIonCurrent = Double.parseDouble(value);
+                    break;
+                case "positive scan":
+                    ionMode = Constants.ION_MODE.POSITIVE;
+                    break;
+                case "negative scan":
+                    ionMode = Constants.ION_MODE.NEGATIVE;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Decodes a base64 encoded, optionally zlib compressed, little endian binary array.
+     *
+     * @param text the base64 text
+     * @return the decoded values
+     */
+    private double[] decode(String text) {
+
+        byte[] data = Base64.decode(text);
+        int length = data.length;
+
+        if (zlib) {
+            int expected = (arrayLength >= 0) ? arrayLength * precision : data.length * 4;
+            if (inflateBuffer.length < expected) inflateBuffer = new byte[expected];
+
+            inflater.reset();
+            inflater.setInput(data);
+            length = 0;
+            try {
+                while (!inflater.finished()) {
+                    if (length == inflateBuffer.length)
+                        inflateBuffer = Arrays.copyOf(inflateBuffer, inflateBuffer.length * 2);
+                    int count = inflater.inflate(inflateBuffer, length, inflateBuffer.length - length);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    length += count;
+                }
+            } catch (DataFormatException exception) {
+                throw new MassCascadeException("Binary data array could not be decompressed.", exception);
+            }
+            data = inflateBuffer;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+        double[] values = new double[length / precision];
+        if (precision == ScanUtils.BYTES_32_PRECISION) {
+            for (int i = 0; i < values.length; i++) values[i] = buffer.getFloat(i * precision);
+        } else {
+            for (int i = 0; i < values.length; i++) values[i] = buffer.getDouble(i * precision);
+        }
+
+        return values;
+    }
+
+    /**
+     * Builds the scan from the parsed spectrum state.
+     *
+     * @return the scan or null if there is no data
+     */
+    private Scan buildScan() {
+
+        if (mzs == null || intensities == null || mzs.length != intensities.length) return null;
+
+        XYArray xyData = new XYArray(mzs, intensities);
+        Constants.ACQUISITION_MODE acquisitionMode = ScanUtils.isCentroided(
+                xyData) ? Constants.ACQUISITION_MODE.CENTROID : Constants.ACQUISITION_MODE.PROFILE;
+        XYArray optimizedData = ScanUtils.removeZeroAndDuplicateDataPoints(xyData, acquisitionMode);
+        if (optimizedData.isEmpty()) return null;
+
+        Range mzExtendableRange =
+                new ExtendableRange(optimizedData.getX(0), optimizedData.getX(optimizedData.size() - 1));
+
+        int parentScan = -1;
+        if (msn.getLvl() > Constants.MSN.MS1.getLvl()) parentScan = parentScanIndex;
+        else parentScanIndex = scanNumber;
+
+        XYList baseXY = new XYList();
+        baseXY.add(new XYPoint(basePeak, basePeakIntensity));
+
+        return new ScanImpl(scanNumber, msn, ionMode, optimizedData, mzExtendableRange, baseXY, retentionTime,
+                totalIonCurrent, parentScan, parentCharge, parentMz);
+    }
+
+    /**
+     * Cleans the variables for the next spectrum.
+     */
+    private void reset() {
+
+        scanNumber = 0;
+        msn = Constants.MSN.MS1;
+        retentionTime = 0;
+        parentMz = 0;
+        parentCharge = 0;
+        basePeak = 0;
+        basePeakIntensity = 0;
+        totalIonCurrent = 0;
+        mzs = null;
+        intensities = null;
+    }
+}
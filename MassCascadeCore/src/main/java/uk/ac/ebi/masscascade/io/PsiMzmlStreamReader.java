@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.io;
+
+import org.apache.log4j.Level;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.interfaces.CallableTask;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.utilities.TextUtils;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+/**
+ * Class for reading PSI mzML files in a single streaming pass. <ul> <li>Parameter <code> DATA FILE </code>- The data
+ * file to be read.</li> <li>Parameter <code> SCAN_CONTAINER </code>- The target scan container.</li> </ul>
+ * <p/>
+ * In contrast to the {@link PsiMzmlReader}, the document is never unmarshalled into an object model: binary arrays are
+ * decoded straight into primitive arrays and every scan is handed to the scan container as soon as its spectrum
+ * element closes. Peak memory is therefore bounded by a single spectrum.
+ */
+public class PsiMzmlStreamReader extends CallableTask {
+
+    private static final String RUN = "run";
+    private static final String START_TIME_STAMP = "startTimeStamp";
+
+    private File mzmlFile;
+    private ScanContainer scanContainer;
+
+    /**
+     * Constructs a streaming mzML reader task.
+     *
+     * @param params the parameter map
+     * @throws uk.ac.ebi.masscascade.exception.MassCascadeException
+     *
+     */
+    public PsiMzmlStreamReader(ParameterMap params) throws MassCascadeException {
+
+        super(PsiMzmlStreamReader.class);
+        setParameters(params);
+    }
+
+    /**
+     * Sets the parameters for the file reader task.
+     *
+     * @param params the new parameter values
+     * @throws uk.ac.ebi.masscascade.exception.MassCascadeException
+     *
+     */
+    public void setParameters(ParameterMap params) throws MassCascadeException {
+
+        mzmlFile = params.get(Parameter.DATA_FILE, File.class);
+        scanContainer = params.get(Parameter.SCAN_CONTAINER, ScanContainer.class);
+
+        if (mzmlFile == null || !mzmlFile.isFile()) throw new MassCascadeException("File not found.");
+    }
+
+    /**
+     * Hands a parsed scan to the target scan container.
+     *
+     * @param scan the parsed scan
+     */
+    protected void addScan(Scan scan) {
+        scanContainer.addScan(scan);
+    }
+
+    /**
+     * Parses a Psi '.mzML' file.
+     *
+     * @return the compiled mass spec sample
+     */
+    public ScanContainer call() {
+
+        String creationTime = (new Date()).toString();
+        PsiMzmlSpectrumParser spectrumParser = new PsiMzmlSpectrumParser();
+
+        InputStream stream = null;
+        XMLStreamReader reader = null;
+        try {
+            stream = new BufferedInputStream(new FileInputStream(mzmlFile), 1024 * 64);
+            reader = XMLInputFactory.newInstance().createXMLStreamReader(stream);
+
+            while (reader.hasNext()) {
+
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) continue;
+
+                String name = reader.getLocalName();
+                if (name.equals(PsiMzmlSpectrumParser.SPECTRUM)) {
+                    Scan scan = spectrumParser.parseSpectrum(reader);
+                    if (scan != null) addScan(scan);
+                } else if (name.equals(PsiMzmlSpectrumParser.PARAM_GROUP)) {
+                    spectrumParser.readParamGroup(reader);
+                } else if (name.equals(RUN)) {
+                    String timeStamp = reader.getAttributeValue(null, START_TIME_STAMP);
+                    if (timeStamp != null) creationTime = parseTimeStamp(timeStamp, creationTime);
+                }
+            }
+        } catch (IOException | XMLStreamException exception) {
+            throw new MassCascadeException("mzML file could not be read: " + exception.getMessage(), exception);
+        } finally {
+            TextUtils.close(reader);
+            TextUtils.close(stream);
+        }
+
+        // wrap up loose ends
+        scanContainer.finaliseFile(creationTime);
+        return scanContainer;
+    }
+
+    private String parseTimeStamp(String timeStamp, String defaultTime) {
+
+        try {
+            return DatatypeFactory.newInstance().newXMLGregorianCalendar(timeStamp).toGregorianCalendar().getTime()
+                    .toString();
+        } catch (DatatypeConfigurationException | IllegalArgumentException exception) {
+            LOGGER.log(Level.WARN, "Invalid start time stamp: " + timeStamp);
+            return defaultTime;
+        }
+    }
+}
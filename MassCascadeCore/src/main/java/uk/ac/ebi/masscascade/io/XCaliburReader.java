@@ -35,6 +35,7 @@ import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
 import uk.ac.ebi.masscascade.utilities.OleDate;
 import uk.ac.ebi.masscascade.utilities.ScanUtils;
 import uk.ac.ebi.masscascade.utilities.TextUtils;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
@@ -206,21 +207,24 @@ public class XCaliburReader extends CallableTask {
             } else if (line.startsWith("DATA POINTS: ")) {
                 int numOfDataPoints = Integer.parseInt(line.substring("DATA POINTS: ".length()));
 
-                XYList xyList = new XYList();
+                double[] mzs = new double[numOfDataPoints];
+                double[] intensities = new double[numOfDataPoints];
                 // Because Intel CPU is using little endian natively, we
                 // need to use LEDataInputStream instead of normal Java
                 // DataInputStream, which is big-endian.
                 LEDataInputStream dis = new LEDataInputStream(bufStream);
                 for (int i = 0; i < numOfDataPoints; i++) {
-                    xyList.add(new XYPoint(dis.readDouble(), dis.readDouble()));
+                    mzs[i] = dis.readDouble();
+                    intensities[i] = dis.readDouble();
                 }
+                XYArray xyArray = new XYArray(mzs, intensities);
                 Constants.ACQUISITION_MODE acquisitionMode = Constants.ACQUISITION_MODE.PROFILE;
-                if (ScanUtils.isCentroided(xyList)) {
+                if (ScanUtils.isCentroided(xyArray)) {
                     acquisitionMode = Constants.ACQUISITION_MODE.CENTROID;
                 }
-                XYList optimizedXYList = ScanUtils.removeZeroAndDuplicateDataPoints(xyList, acquisitionMode);
-                ExtendableRange mzExtendableRange = new ExtendableRange(optimizedXYList.get(0).x,
-                        optimizedXYList.get(optimizedXYList.size() - 1).x);
+                XYArray optimizedData = ScanUtils.removeZeroAndDuplicateDataPoints(xyArray, acquisitionMode);
+                ExtendableRange mzExtendableRange = new ExtendableRange(optimizedData.getX(0),
+                        optimizedData.getX(optimizedData.size() - 1));
 
                 if (msn.getLvl() > 1) {
                     parentScan = parentScanIndex;
@@ -230,7 +234,7 @@ public class XCaliburReader extends CallableTask {
 
                 XYList baseXY = new XYList();
                 baseXY.add(new XYPoint(basePeak, basePeakIntensity));
-                ScanImpl scan = new ScanImpl(scanNumber, msn, ionMode, optimizedXYList, mzExtendableRange, baseXY,
+                ScanImpl scan = new ScanImpl(scanNumber, msn, ionMode, optimizedData, mzExtendableRange, baseXY,
                         retentionTime, totalIonCurrent, parentScan, parentCharge, parentMz);
                 scanContainer.addScan(scan);
 
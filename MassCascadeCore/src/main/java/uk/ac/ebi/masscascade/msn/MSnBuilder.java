@@ -37,6 +37,7 @@ import uk.ac.ebi.masscascade.utilities.DataUtils;
 import uk.ac.ebi.masscascade.utilities.comparator.PointIntensityComparator;
 import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
 import uk.ac.ebi.masscascade.utilities.range.ToleranceRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
@@ -44,7 +45,6 @@ import uk.ac.ebi.masscascade.utilities.xyz.XYZTrace;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -159,8 +159,9 @@ public class MSnBuilder extends CallableTask {
                 if (lastRt == 0) lastRt = FastMath.max(0, currRt - 1);
 
                 if (traces.isEmpty()) {
-                    for (XYPoint dataPoint : scan.getData()) {
-                        XYZTrace trace = new XYZTrace(dataPoint, currRt);
+                    XYArray data = scan.getDataArray();
+                    for (int i = 0; i < data.size(); i++) {
+                        XYZTrace trace = new XYZTrace(data.getPoint(i), currRt);
                         trace.push(new XYZPoint(lastRt, trace.get(0).y, Constants.MIN_ABUNDANCE));
                         traces.add(trace);
                     }
@@ -184,29 +185,15 @@ public class MSnBuilder extends CallableTask {
 
     private void searchExistingTraces(Scan scan) {
 
-        XYList dataPoints = scan.getData();
-        Collections.sort(dataPoints, new Comparator<XYPoint>() {
-            @Override
-            public int compare(XYPoint o1, XYPoint o2) {
-                double x1 = o1.x;
-                double x2 = o2.x;
-
-                if (x1 == x2) {
-                    return 0;
-                } else if (x1 < x2) {
-                    return -1;
-                } else {
-                    return 1;
-                }
-            }
-        });
+        // scan data is held in ascending m/z order
+        XYArray dataPoints = scan.getDataArray();
 
         for (int signalPos = 0; signalPos < dataPoints.size(); signalPos++) {
 
-            XYPoint signal = dataPoints.get(signalPos);
+            XYPoint signal = dataPoints.getPoint(signalPos);
 
             double nextSignal =
-                    (signalPos == dataPoints.size() - 1) ? Double.MAX_VALUE : dataPoints.get(signalPos + 1).x;
+                    (signalPos == dataPoints.size() - 1) ? Double.MAX_VALUE : dataPoints.getX(signalPos + 1);
 
             XYZTrace signalTrace = new XYZTrace(signal, currRt);
             XYZTrace closestTrace = (XYZTrace) DataUtils.getClosestValue(signalTrace, traces);
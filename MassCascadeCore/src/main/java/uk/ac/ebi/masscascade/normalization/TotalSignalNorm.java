@@ -27,7 +27,7 @@ import uk.ac.ebi.masscascade.interfaces.NormMethod;
 import uk.ac.ebi.masscascade.interfaces.Scan;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.parameters.Constants;
-import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
 /**
@@ -57,12 +57,14 @@ public class TotalSignalNorm implements NormMethod {
      */
     public Scan normalize(Scan scan) {
 
-        XYList normList = new XYList();
-        for (XYPoint dp : scan.getData()) {
-            normList.add(new XYPoint(dp.x, dp.y / totalIntensity * NORM_MAX));
+        double[] ys = scan.getDataArray().getYs();
+        double[] normYs = new double[ys.length];
+        for (int i = 0; i < ys.length; i++) {
+            normYs[i] = ys[i] / totalIntensity * NORM_MAX;
         }
+        XYArray normData = new XYArray(scan.getDataArray().getXs(), normYs);
 
-        return new ScanImpl(scan.getIndex(), scan.getMsn(), scan.getIonMode(), normList,
+        return new ScanImpl(scan.getIndex(), scan.getMsn(), scan.getIonMode(), normData,
                 scan.getRetentionTime(), scan.getParentScan(), scan.getParentCharge(), scan.getParentMz());
     }
 }
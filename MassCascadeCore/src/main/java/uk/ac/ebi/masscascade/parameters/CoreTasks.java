@@ -22,6 +22,7 @@
 
 package uk.ac.ebi.masscascade.parameters;
 
+import uk.ac.ebi.masscascade.alignment.DtwAlignment;
 import uk.ac.ebi.masscascade.alignment.FastDtwAlignment;
 import uk.ac.ebi.masscascade.alignment.Obiwarp;
 import uk.ac.ebi.masscascade.alignment.ratiosets.RatioFeatureSets;
@@ -49,7 +50,9 @@ import uk.ac.ebi.masscascade.interfaces.Index;
 import uk.ac.ebi.masscascade.interfaces.Task;
 import uk.ac.ebi.masscascade.io.MzTabWriter;
 import uk.ac.ebi.masscascade.io.NetCDFReader;
+import uk.ac.ebi.masscascade.io.PsiMzmlIndexedReader;
 import uk.ac.ebi.masscascade.io.PsiMzmlReader;
+import uk.ac.ebi.masscascade.io.PsiMzmlStreamReader;
 import uk.ac.ebi.masscascade.io.XCaliburReader;
 import uk.ac.ebi.masscascade.msn.MSnBuilder;
 import uk.ac.ebi.masscascade.normalization.Normalizer;
@@ -69,6 +72,8 @@ public enum CoreTasks implements Index {
     // reader and writer
     MZTAB_WRITER(MzTabWriter.class, PLACEHOLDER()),
     PSI_READER(PsiMzmlReader.class, PLACEHOLDER()),
+    PSI_STREAM_READER(PsiMzmlStreamReader.class, PLACEHOLDER()),
+    PSI_INDEXED_READER(PsiMzmlIndexedReader.class, PLACEHOLDER()),
     CDF_READER(NetCDFReader.class, PLACEHOLDER()),
     RAW_READER(XCaliburReader.class, PLACEHOLDER()),
 
@@ -85,6 +90,7 @@ public enum CoreTasks implements Index {
     // utilities
     NORM(Normalizer.class, "NO"),
     FAST_DTW(FastDtwAlignment.class, "DTW"),
+    BANDED_DTW(DtwAlignment.class, "BDTW"),
     OBIWARP(Obiwarp.class, "OB"),
     RETENTION_TIME(RtBinning.class, "RT"),
     MASS_DOMAIN(MzFileBinning.class, "MZ"),
@@ -49,6 +49,7 @@ public enum Parameter implements Option {
     WORKING_DIRECTORY("Working directory", System.getProperty(Constants.JAVA_TMP)),
     SECURITY_TOKEN("Security token", ""),
     COLLISION_ENERGY("Collision energy", 20),
+    PARALLELISM("Parallel workers (0 = all)", 0),
 
     /*
      * File parameters for the scan, feature, and featureset entities.
@@ -77,6 +78,7 @@ public enum Parameter implements Option {
     MZ_RANGE("m/z range (from - to)", new ExtendableRange(50, 500)),
     MZ_WINDOW_PPM("m/z tolerance [ppm]", 10d),
     MZ_WINDOW_AMU("m/z tolerance [amu]", 0.1),
+    MZ_BANDS("Parallel m/z bands", 1),
 
     /*
      * Wavelet parameters.
@@ -22,21 +22,23 @@
 
 package uk.ac.ebi.masscascade.smoothing;
 
-import uk.ac.ebi.masscascade.core.scan.ScanLevel;
+import uk.ac.ebi.masscascade.core.scan.ScanPipeline;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.ScanStreamTask;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.utilities.ScanUtils;
-import uk.ac.ebi.masscascade.utilities.xyz.XYList;
-import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 
 /**
@@ -48,7 +50,7 @@ import java.util.Queue;
  * </ul>
  */
 @Deprecated
-public class RunningMedianSmoothing extends CallableTask {
+public class RunningMedianSmoothing extends CallableTask implements ScanStreamTask {
 
     private Queue<Double> window = new LinkedList<Double>();
     private int mzWindow;
@@ -126,31 +128,42 @@ public class RunningMedianSmoothing extends CallableTask {
     public ScanContainer call() {
 
         String id = scanContainer.getId() + IDENTIFIER;
-        ScanContainer smoothedScanContainer = scanContainer.getBuilder().newInstance(ScanContainer.class, id, scanContainer);
-
-        XYList smoothedData;
-
-        for (ScanLevel level : scanContainer.getScanLevels()) {
-
-            if (level.getMsn() == Constants.MSN.MS1) {
-                for (Scan scan : scanContainer) {
-                    smoothedData = new XYList();
-                    for (XYPoint xyPoint : scan.getData()) {
-                        double y = xyPoint.y;
-                        newNum(y);
-                        if ((y - getMedian()) < 0) continue;
-                        double newY = y - getMedian();
-                        smoothedData.add(new XYPoint(xyPoint.x, newY));
-                    }
-                    smoothedScanContainer.addScan(ScanUtils.getModifiedScan(scan, smoothedData));
-                    smoothedData = null;
-                }
-            } else {
-                for (Scan msnScan : scanContainer.iterator(level.getMsn())) smoothedScanContainer.addScan(msnScan);
-            }
+        return new ScanPipeline(Collections.singletonList(this)).run(scanContainer, id);
+    }
+
+    /**
+     * Smoothes a single scan.
+     *
+     * @param scan           the next scan
+     * @param processedScans the result list
+     */
+    @Override
+    public void process(Scan scan, List<Scan> processedScans) {
+
+        XYArray data = scan.getDataArray();
+        double[] xs = data.getXs();
+        double[] ys = data.getYs();
+
+        double[] smoothedXs = new double[xs.length];
+        double[] smoothedYs = new double[ys.length];
+        int n = 0;
+        for (int i = 0; i < xs.length; i++) {
+            double y = ys[i];
+            newNum(y);
+            if ((y - getMedian()) < 0) continue;
+            smoothedXs[n] = xs[i];
+            smoothedYs[n++] = y - getMedian();
         }
+        processedScans.add(ScanUtils.getModifiedScan(scan, new XYArray(smoothedXs, smoothedYs, n)));
+    }
 
-        smoothedScanContainer.finaliseFile(scanContainer.getScanInfo().getDate());
-        return smoothedScanContainer;
+    /**
+     * The smoother does not hold back any scans.
+     *
+     * @param processedScans the result list
+     */
+    @Override
+    public void flush(List<Scan> processedScans) {
+        // nothing to flush
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.smoothing;
+
+import uk.ac.ebi.masscascade.deconvolution.SavitzkyGolayCoefficients;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared Savitzky-Golay convolution engine working on primitive buffers.
+ * <p/>
+ * Smoothing kernels are computed once per (past points, future points, polynomial order) combination and cached for
+ * all tasks, the derivative kernels are expanded once from the {@link SavitzkyGolayCoefficients} tables. The
+ * convolutions write into caller-supplied buffers and run as one multiply-add sweep per kernel coefficient over the
+ * whole trace, so the inner loops are free of allocations and bounds logic. The engine is stateless and thread-safe.
+ */
+public final class SavitzkyGolayEngine {
+
+    private static final int MAX_KERNEL_PARAMETER = (1 << 20) - 1;
+
+    private static final ConcurrentMap<Long, double[]> SMOOTHING_KERNELS = new ConcurrentHashMap<>();
+
+    // full derivative kernels of length 2M + 1 indexed by the half width M
+    private static final double[][] FIRST_DERIVATIVE_KERNELS =
+            expand(SavitzkyGolayCoefficients.SGCoefficientsFirstDerivativeQuartic, true);
+    private static final double[][] SECOND_DERIVATIVE_KERNELS =
+            expand(SavitzkyGolayCoefficients.SGCoefficientsSecondDerivative, false);
+
+    private SavitzkyGolayEngine() {
+        // static engine
+    }
+
+    /**
+     * Returns the cached smoothing kernel for the given parameters. The kernel is computed on first use.
+     *
+     * @param nl    number of past data points
+     * @param nr    number of future data points
+     * @param order order of the smoothing polynomial
+     * @return the kernel of length <code>nl + nr + 1</code>, which must not be modified
+     * @throws IllegalArgumentException if {@code nl < 0} or {@code nr < 0} or {@code nl + nr < order}
+     */
+    public static double[] getSmoothingKernel(int nl, int nr, int order) {
+
+        if (nl < 0 || nr < 0 || order < 0 || nl > MAX_KERNEL_PARAMETER || nr > MAX_KERNEL_PARAMETER ||
+                order > MAX_KERNEL_PARAMETER) throw new IllegalArgumentException("Bad arguments");
+
+        Long key = ((long) nl << 40) | ((long) nr << 20) | order;
+        double[] kernel = SMOOTHING_KERNELS.get(key);
+        if (kernel == null) {
+            kernel = SavitzkyGolayFilter.computeSGCoefficients(nl, nr, order);
+            double[] previous = SMOOTHING_KERNELS.putIfAbsent(key, kernel);
+            if (previous != null) kernel = previous;
+        }
+        return kernel;
+    }
+
+    /**
+     * Returns the largest supported half width of the derivative kernels.
+     *
+     * @return the maximum filter level
+     */
+    public static int getMaxDerivativeLevel() {
+        return SECOND_DERIVATIVE_KERNELS.length - 1;
+    }
+
+    /**
+     * Smooths a trace with a smoothing kernel. Values beyond the trace are taken as zero and negative results are
+     * set to zero.
+     *
+     * @param data   the trace buffer
+     * @param length the number of values of the trace
+     * @param kernel the smoothing kernel
+     * @param nl     the number of past data points of the kernel
+     * @param out    the output buffer of at least the given length
+     */
+    public static void smooth(double[] data, int length, double[] kernel, int nl, double[] out) {
+
+        for (int x = 0; x < length; x++) out[x] = 0;
+
+        for (int j = 0; j < kernel.length; j++) {
+            double coefficient = kernel[j];
+            int offset = j - nl;
+            int lo = Math.max(0, -offset);
+            int hi = Math.min(length, length - offset);
+            for (int x = lo; x < hi; x++) out[x] += coefficient * data[x + offset];
+        }
+
+        for (int x = 0; x < length; x++) if (out[x] < 0) out[x] = 0;
+    }
+
+    /**
+     * Calculates the smoothed first or second derivative of a trace. The half width of the kernel shrinks towards
+     * both ends of the trace so that no values beyond the trace are used.
+     *
+     * @param data            the trace buffer
+     * @param length          the number of values of the trace
+     * @param firstDerivative if the first instead of the second derivative is calculated
+     * @param level           the half width of the kernel (1 - 12)
+     * @param out             the output buffer of at least the given length
+     * @throws IllegalArgumentException if the level is not supported
+     */
+    public static void derivative(double[] data, int length, boolean firstDerivative, int level, double[] out) {
+
+        if (level < 0 || level > getMaxDerivativeLevel()) throw new IllegalArgumentException("Bad level: " + level);
+
+        double[][] kernels = firstDerivative ? FIRST_DERIVATIVE_KERNELS : SECOND_DERIVATIVE_KERNELS;
+
+        // boundary values with a truncated half width
+        int coreStart = Math.min(level, length);
+        int coreEnd = Math.max(coreStart, length - level);
+        for (int k = 0; k < coreStart; k++) out[k] = convolve(data, k, kernels[Math.min(k, length - 1 - k)]);
+        for (int k = coreEnd; k < length; k++) out[k] = convolve(data, k, kernels[Math.min(k, length - 1 - k)]);
+
+        // full width values
+        double[] kernel = kernels[level];
+        for (int k = coreStart; k < coreEnd; k++) out[k] = 0;
+        for (int j = 0; j < kernel.length; j++) {
+            double coefficient = kernel[j];
+            int offset = j - level;
+            for (int k = coreStart; k < coreEnd; k++) out[k] += coefficient * data[k + offset];
+        }
+    }
+
+    private static double convolve(double[] data, int k, double[] kernel) {
+
+        int half = kernel.length / 2;
+        double sum = 0;
+        for (int j = 0; j < kernel.length; j++) sum += data[k - half + j] * kernel[j];
+        return sum;
+    }
+
+    private static double[][] expand(double[][] table, boolean antisymmetric) {
+
+        double[][] kernels = new double[table.length][];
+        for (int m = 0; m < table.length; m++) {
+            double[] kernel = new double[2 * m + 1];
+            for (int i = -m; i <= m; i++) {
+                double coefficient = table[m][Math.abs(i)];
+                kernel[i + m] = (antisymmetric && i < 0) ? -coefficient : coefficient;
+            }
+            kernels[m] = kernel;
+        }
+        return kernels;
+    }
+}
@@ -22,15 +22,20 @@
 
 package uk.ac.ebi.masscascade.smoothing;
 
+import uk.ac.ebi.masscascade.core.feature.FeaturePipeline;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureStreamTask;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Class implementing a Savitzky Golay smoothing method.
  * <ul>
@@ -39,12 +44,15 @@ import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
  * <li>Parameter <code> FEATURE_CONTAINER </code>- The input feature container.</li>
  * </ul>
  */
-public class SavitzkyGolaySmoothing extends CallableTask {
+public class SavitzkyGolaySmoothing extends CallableTask implements FeatureStreamTask {
 
     private FeatureContainer featureContainer;
     private int order;
     private int mzWindow;
 
+    private int nLDp;
+    private double[] coeffs;
+
     /**
      * Constructs a Savitzky Golay smoothing task.
      *
@@ -71,6 +79,11 @@ public class SavitzkyGolaySmoothing extends CallableTask {
         order = params.get(Parameter.POLYNOMIAL_ORDER, Integer.class);
         mzWindow = params.get(Parameter.SCAN_WINDOW, Integer.class);
         featureContainer = params.get(Parameter.FEATURE_CONTAINER, FeatureContainer.class);
+
+        nLDp = (int) Math.floor(mzWindow / 2d);
+        int nRDp = (int) Math.ceil(mzWindow / 2d);
+
+        coeffs = SavitzkyGolayEngine.getSmoothingKernel(nLDp, nRDp, order);
     }
 
     /**
@@ -82,47 +95,37 @@ public class SavitzkyGolaySmoothing extends CallableTask {
     @Override
     public FeatureContainer call() {
 
-        int nLDp = (int) Math.floor(mzWindow / 2d);
-        int nRDp = (int) Math.ceil(mzWindow / 2d);
-
-        double[] coeffs = SavitzkyGolayFilter.computeSGCoefficients(nLDp, nRDp, order);
-        SavitzkyGolayFilter sgFilter = new SavitzkyGolayFilter(nLDp, nRDp);
-
         String id = featureContainer.getId() + IDENTIFIER;
-        FeatureContainer outFeatureContainer = featureContainer.getBuilder().newInstance(FeatureContainer.class, id,
-                featureContainer.getIonMode(), featureContainer.getWorkingDirectory());
-
-        double[] y;
-        double[] smoothedY;
-
-        Feature smoothedFeature;
-        for (Feature feature : featureContainer) {
-
-            y = feature.getTrace(mzWindow).getData().getYs();
-            smoothedY = sgFilter.smooth(y, coeffs);
-            double syMax = 0;
-            for (double sy : smoothedY) {
-                if (sy > syMax) {
-                    syMax = sy;
-                }
-            }
-            double coeff = feature.getIntensity() / syMax;
-
-            smoothedFeature = feature.copy();
+        return new FeaturePipeline(Collections.singletonList(this)).run(featureContainer, id);
+    }
 
-            for (int i = mzWindow; i < smoothedY.length - mzWindow; i++) {
-                XYZPoint xyz = feature.getData().get(i - mzWindow + 1);
-                smoothedFeature.addFeaturePoint(new XYPoint(xyz.y, smoothedY[i] * coeff), xyz.x);
+    /**
+     * Smoothes a single feature.
+     *
+     * @param feature           the next feature
+     * @param processedFeatures the result list
+     */
+    @Override
+    public void process(Feature feature, List<Feature> processedFeatures) {
+
+        double[] y = feature.getTrace(mzWindow).getData().getYs();
+        double[] smoothedY = new double[y.length];
+        SavitzkyGolayEngine.smooth(y, y.length, coeffs, nLDp, smoothedY);
+        double syMax = 0;
+        for (double sy : smoothedY) {
+            if (sy > syMax) {
+                syMax = sy;
             }
-            smoothedFeature.closeFeature(feature.getData().get(smoothedY.length - 2 * mzWindow).x);
-            outFeatureContainer.addFeature(smoothedFeature);
-
-            y = null;
-            smoothedY = null;
-            smoothedFeature = null;
         }
+        double coeff = feature.getIntensity() / syMax;
 
-        outFeatureContainer.finaliseFile();
-        return outFeatureContainer;
+        Feature smoothedFeature = feature.copy();
+
+        for (int i = mzWindow; i < smoothedY.length - mzWindow; i++) {
+            XYZPoint xyz = feature.getData().get(i - mzWindow + 1);
+            smoothedFeature.addFeaturePoint(new XYPoint(xyz.y, smoothedY[i] * coeff), xyz.x);
+        }
+        smoothedFeature.closeFeature(feature.getData().get(smoothedY.length - 2 * mzWindow).x);
+        processedFeatures.add(smoothedFeature);
     }
 }
@@ -31,6 +31,7 @@ import uk.ac.ebi.masscascade.interfaces.Scan;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.utilities.buffer.Base64;
 import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
@@ -99,6 +100,92 @@ public class ScanUtils {
         return centroid;
     }
 
+    /**
+     * Checks if the featureset is centroided.
+     *
+     * @param xyArray a featureset m/z-intensity array
+     * @return boolean whether the featureset is centroided
+     */
+    public static boolean isCentroided(XYArray xyArray) {
+
+        int dps = xyArray.size();
+        if (dps <= MIN_PROFILE) return true;
+
+        double[] xs = xyArray.getXs();
+        double[] ys = xyArray.getYs();
+
+        double minMz = xs[0];
+        double maxMz = xs[0];
+        boolean hasZeroDP = false;
+
+        for (int i = 0; i < dps; i++) {
+            if (xs[i] < minMz) minMz = xs[i];
+            else if (xs[i] > maxMz) maxMz = xs[i];
+            if (ys[i] == 0) hasZeroDP = true;
+        }
+
+        if (!hasZeroDP) return true;
+
+        double massStep = (maxMz - minMz) / dps;
+        double previousMass = xs[0];
+        double diff;
+
+        for (int j = 0; j < dps; j++) {
+            diff = Math.abs(xs[j] - previousMass);
+            previousMass = xs[j];
+            if (ys[j] == 0) continue;
+            else if (diff > (massStep * 1.5d)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes data points with zero intensity and duplicate m/z values from the data set.
+     *
+     * @param xyArray         a featureset m/z-intensity array
+     * @param acquisitionMode an acquisition mode
+     * @return the cleaned featureset data set
+     */
+    public static XYArray removeZeroAndDuplicateDataPoints(XYArray xyArray,
+            Constants.ACQUISITION_MODE acquisitionMode) {
+
+        double[] xs = xyArray.getXs();
+        double[] ys = xyArray.getYs();
+
+        double prevX = -1;
+        boolean isValid = true;
+        for (int i = 0; i < xs.length; i++) {
+            if (ys[i] == 0 || xs[i] == prevX) {
+                isValid = false;
+                break;
+            }
+            prevX = xs[i];
+        }
+
+        if (isValid) return xyArray;
+
+        double[] newXs = new double[xs.length];
+        double[] newYs = new double[ys.length];
+
+        int n = 0;
+        prevX = -1;
+        for (int i = 0; i < xs.length; i++) {
+
+            if (xs[i] == prevX) continue;
+            prevX = xs[i];
+
+            if (ys[i] > 0) {
+                newXs[n] = xs[i];
+                newYs[n++] = ys[i];
+            }
+        }
+
+        if (n == xs.length) return xyArray;
+
+        return new XYArray(newXs, newYs, n);
+    }
+
     /**
      * Removes data points with zero intensity from the data set.
      *
@@ -350,4 +437,17 @@ public class ScanUtils {
         return new ScanImpl(scan.getIndex(), scan.getMsn(), scan.getIonMode(), dataPoints, scan.getRetentionTime(),
                 scan.getParentScan(), scan.getParentCharge(), scan.getParentMz());
     }
+
+    /**
+     * Method returning a deep clone of a scan with new scan data.
+     *
+     * @param scan a scan template
+     * @param data new scan data arrays
+     * @return the new scan
+     */
+    public static Scan getModifiedScan(Scan scan, XYArray data) {
+
+        return new ScanImpl(scan.getIndex(), scan.getMsn(), scan.getIonMode(), data, scan.getRetentionTime(),
+                scan.getParentScan(), scan.getParentCharge(), scan.getParentMz());
+    }
 }
@@ -29,6 +29,7 @@ import uk.ac.ebi.masscascade.parameters.Constants;
 
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -117,6 +118,21 @@ public class TextUtils {
         }
     }
 
+    /**
+     * Closes a closeable xml stream reader.
+     *
+     * @param c a closeable xml stream reader
+     */
+    public static void close(XMLStreamReader c) {
+
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (XMLStreamException e) {
+            LOGGER.log(Level.WARN, "Could not close xml stream\n" + e.getMessage());
+        }
+    }
+
     /**
      * Returns a cleaned container id. The id is split on the delimiter '~'.
      *
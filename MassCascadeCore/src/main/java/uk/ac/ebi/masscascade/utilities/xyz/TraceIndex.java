@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.utilities.xyz;
+
+import uk.ac.ebi.masscascade.interfaces.Trace;
+
+import java.util.Arrays;
+
+/**
+ * Sorted index of open m/z traces for the sequential trace building of a scan series.
+ * <p/>
+ * The open traces are held in anchor order in primitive arrays. Since the signals of a scan are sorted as well, the
+ * closest trace of every signal is found by a single forward sweep over the index. Traces are extended or added while
+ * sweeping; {@link #commit()} closes all traces that were not extended and merges the added traces into the index for
+ * the next scan. Every trace carries an integer tag, e.g. the index of its first scan.
+ * <p/>
+ * The closest trace follows {@link uk.ac.ebi.masscascade.utilities.DataUtils#getClosestValue(Trace,
+ * java.util.TreeSet)}: the floor and higher trace by anchor are compared by their m/z average. Instances are not
+ * thread-safe.
+ *
+ * @param <T> the trace type
+ */
+public class TraceIndex<T extends Trace> {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // open traces in anchor order
+    private Object[] traces;
+    private double[] anchors;
+    private double[] avgs;
+    private int[] tags;
+    private boolean[] extended;
+    private int size;
+
+    // merge target of the next commit
+    private Object[] spareTraces;
+    private double[] spareAnchors;
+    private double[] spareAvgs;
+    private int[] spareTags;
+
+    // traces added during the current sweep in anchor order
+    private Object[] added;
+    private int[] addedTags;
+    private int addedSize;
+
+    // traces closed by the last commit in anchor order
+    private Object[] closed;
+    private int[] closedTags;
+    private int closedSize;
+
+    // number of traces with an anchor smaller or equal to the last query
+    private int cursor;
+
+    /**
+     * Constructs an empty trace index.
+     */
+    public TraceIndex() {
+
+        traces = new Object[INITIAL_CAPACITY];
+        anchors = new double[INITIAL_CAPACITY];
+        avgs = new double[INITIAL_CAPACITY];
+        tags = new int[INITIAL_CAPACITY];
+        extended = new boolean[INITIAL_CAPACITY];
+
+        spareTraces = new Object[INITIAL_CAPACITY];
+        spareAnchors = new double[INITIAL_CAPACITY];
+        spareAvgs = new double[INITIAL_CAPACITY];
+        spareTags = new int[INITIAL_CAPACITY];
+
+        added = new Object[INITIAL_CAPACITY];
+        addedTags = new int[INITIAL_CAPACITY];
+
+        closed = new Object[INITIAL_CAPACITY];
+        closedTags = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns if the index holds no open traces.
+     *
+     * @return if the index is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of open traces.
+     *
+     * @return the number of open traces
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the position of the trace closest to the given m/z. Subsequent queries within one sweep must not
+     * decrease in m/z.
+     *
+     * @param mz the query m/z
+     * @return the position of the closest trace or -1 if the index is empty
+     */
+    public int closest(double mz) {
+
+        while (cursor < size && anchors[cursor] <= mz) cursor++;
+
+        int floor = cursor - 1;
+        if (floor < 0) return (size == 0) ? -1 : 0;
+        if (cursor == size) return floor;
+
+        return (mz - avgs[floor] <= avgs[cursor] - mz) ? floor : cursor;
+    }
+
+    /**
+     * Returns if an open trace is anchored at the m/z of the last query.
+     *
+     * @param mz the m/z of the last query
+     * @return if the anchor exists
+     */
+    public boolean containsAnchor(double mz) {
+        return cursor > 0 && anchors[cursor - 1] == mz;
+    }
+
+    /**
+     * Returns the position of the trace anchored at the m/z of the last query.
+     *
+     * @return the position of the floor trace
+     */
+    public int floor() {
+        return cursor - 1;
+    }
+
+    /**
+     * Returns the open trace at the given position.
+     *
+     * @param pos the position
+     * @return the trace
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int pos) {
+        return (T) traces[pos];
+    }
+
+    /**
+     * Returns the m/z average of the open trace at the given position.
+     *
+     * @param pos the position
+     * @return the m/z average
+     */
+    public double getAvg(int pos) {
+        return avgs[pos];
+    }
+
+    /**
+     * Returns the tag of the open trace at the given position.
+     *
+     * @param pos the position
+     * @return the tag
+     */
+    public int getTag(int pos) {
+        return tags[pos];
+    }
+
+    /**
+     * Returns if the open trace at the given position has been extended during the current sweep.
+     *
+     * @param pos the position
+     * @return if the trace has been extended
+     */
+    public boolean isExtended(int pos) {
+        return extended[pos];
+    }
+
+    /**
+     * Marks the open trace at the given position as extended and refreshes its m/z average. Must be called after a
+     * data point has been appended to the trace.
+     *
+     * @param pos the position
+     */
+    public void extend(int pos) {
+
+        extended[pos] = true;
+        avgs[pos] = ((Trace) traces[pos]).getAvg();
+    }
+
+    /**
+     * Adds a new trace. The trace becomes visible after the next commit. Traces added within one sweep must be
+     * added in ascending anchor order.
+     *
+     * @param trace the new trace
+     * @param tag   the tag of the trace
+     */
+    public void add(T trace, int tag) {
+
+        if (addedSize == added.length) {
+            added = Arrays.copyOf(added, addedSize * 2);
+            addedTags = Arrays.copyOf(addedTags, addedSize * 2);
+        }
+        added[addedSize] = trace;
+        addedTags[addedSize] = tag;
+        addedSize++;
+    }
+
+    /**
+     * Ends the current sweep: open traces that were not extended are closed, the added traces are merged into the
+     * index and the sweep is reset.
+     */
+    public void commit() {
+
+        Arrays.fill(closed, 0, closedSize, null);
+        closedSize = 0;
+        if (closed.length < size) {
+            closed = new Object[traces.length];
+            closedTags = new int[traces.length];
+        }
+
+        int required = size + addedSize;
+        if (spareTraces.length < required) {
+            int capacity = Math.max(required, spareTraces.length * 2);
+            spareTraces = new Object[capacity];
+            spareAnchors = new double[capacity];
+            spareAvgs = new double[capacity];
+            spareTags = new int[capacity];
+        }
+
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+
+            if (!extended[i]) {
+                closed[closedSize] = traces[i];
+                closedTags[closedSize] = tags[i];
+                closedSize++;
+                continue;
+            }
+
+            while (j < addedSize && ((Trace) added[j]).getAnchor() < anchors[i]) n = putAdded(j++, n);
+            spareTraces[n] = traces[i];
+            spareAnchors[n] = anchors[i];
+            spareAvgs[n] = avgs[i];
+            spareTags[n] = tags[i];
+            n++;
+        }
+        while (j < addedSize) n = putAdded(j++, n);
+
+        Arrays.fill(traces, 0, size, null);
+        Arrays.fill(added, 0, addedSize, null);
+
+        Object[] tmpTraces = traces;
+        double[] tmpAnchors = anchors;
+        double[] tmpAvgs = avgs;
+        int[] tmpTags = tags;
+        traces = spareTraces;
+        anchors = spareAnchors;
+        avgs = spareAvgs;
+        tags = spareTags;
+        spareTraces = tmpTraces;
+        spareAnchors = tmpAnchors;
+        spareAvgs = tmpAvgs;
+        spareTags = tmpTags;
+
+        if (extended.length < traces.length) extended = new boolean[traces.length];
+        else Arrays.fill(extended, 0, Math.max(size, n), false);
+
+        size = n;
+        addedSize = 0;
+        cursor = 0;
+    }
+
+    /**
+     * Closes all open traces, including the traces added since the last commit.
+     */
+    public void closeAll() {
+
+        Arrays.fill(extended, 0, size, true);
+        commit();
+        commit();
+    }
+
+    /**
+     * Returns the number of traces closed by the last commit.
+     *
+     * @return the number of closed traces
+     */
+    public int closedSize() {
+        return closedSize;
+    }
+
+    /**
+     * Returns the closed trace at the given position. Closed traces are in anchor order.
+     *
+     * @param pos the position
+     * @return the closed trace
+     */
+    @SuppressWarnings("unchecked")
+    public T getClosed(int pos) {
+        return (T) closed[pos];
+    }
+
+    /**
+     * Returns the tag of the closed trace at the given position.
+     *
+     * @param pos the position
+     * @return the tag
+     */
+    public int getClosedTag(int pos) {
+        return closedTags[pos];
+    }
+
+    private int putAdded(int j, int n) {
+
+        Trace trace = (Trace) added[j];
+        spareTraces[n] = trace;
+        spareAnchors[n] = trace.getAnchor();
+        spareAvgs[n] = trace.getAvg();
+        spareTags[n] = addedTags[j];
+        return n + 1;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.utilities.xyz;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Class implementing a primitive x y array. The x and y values are held in two parallel double arrays instead of a
+ * list of {@link XYPoint} objects. The x values are expected in ascending order.
+ * <p/>
+ * The arrays are not copied on construction or access and must not be modified once the array has been created.
+ */
+public class XYArray implements Serializable {
+
+    private static final long serialVersionUID = -1520986381386287365L;
+
+    private static final double[] EMPTY = new double[0];
+
+    private final double[] xs;
+    private final double[] ys;
+
+    /**
+     * Constructs an empty array.
+     */
+    public XYArray() {
+
+        xs = EMPTY;
+        ys = EMPTY;
+    }
+
+    /**
+     * Constructs a populated array from two parallel value arrays.
+     *
+     * @param xs the x values
+     * @param ys the y values
+     */
+    public XYArray(double[] xs, double[] ys) {
+
+        if (xs.length != ys.length) throw new IllegalArgumentException("Arrays differ in length.");
+
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * Constructs a populated array from the first n values of two parallel value arrays.
+     *
+     * @param xs the x values
+     * @param ys the y values
+     * @param n  the number of values
+     */
+    public XYArray(double[] xs, double[] ys, int n) {
+
+        if (n < 0 || n > xs.length || n > ys.length)
+            throw new IllegalArgumentException("Number of values exceeds the array lengths: " + n);
+
+        this.xs = (xs.length == n) ? xs : Arrays.copyOf(xs, n);
+        this.ys = (ys.length == n) ? ys : Arrays.copyOf(ys, n);
+    }
+
+    /**
+     * Constructs a populated array from a point list.
+     *
+     * @param xyList the point list
+     */
+    public XYArray(XYList xyList) {
+
+        int size = xyList.size();
+        xs = new double[size];
+        ys = new double[size];
+
+        int i = 0;
+        for (XYPoint xyPoint : xyList) {
+            xs[i] = xyPoint.x;
+            ys[i++] = xyPoint.y;
+        }
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the number of points
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * Returns true if the array holds no points.
+     *
+     * @return if empty
+     */
+    public boolean isEmpty() {
+        return xs.length == 0;
+    }
+
+    /**
+     * Returns the ith x value.
+     *
+     * @param i the point index
+     * @return the x value
+     */
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    /**
+     * Returns the ith y value.
+     *
+     * @param i the point index
+     * @return the y value
+     */
+    public double getY(int i) {
+        return ys[i];
+    }
+
+    /**
+     * Returns the backing x value array. The array must not be modified.
+     *
+     * @return the x values
+     */
+    public double[] getXs() {
+        return xs;
+    }
+
+    /**
+     * Returns the backing y value array. The array must not be modified.
+     *
+     * @return the y values
+     */
+    public double[] getYs() {
+        return ys;
+    }
+
+    /**
+     * Returns the ith point as new point object.
+     *
+     * @param i the point index
+     * @return the point
+     */
+    public XYPoint getPoint(int i) {
+        return new XYPoint(xs[i], ys[i]);
+    }
+
+    /**
+     * Returns the index of the point with the x value closest to the given value or -1 if the array is empty.
+     *
+     * @param x the x value
+     * @return the index of the closest point
+     */
+    public int getClosestIndex(double x) {
+
+        if (xs.length == 0) return -1;
+
+        int index = Arrays.binarySearch(xs, x);
+        if (index >= 0) return index;
+
+        int insert = -index - 1;
+        if (insert == 0) return 0;
+        if (insert == xs.length) return xs.length - 1;
+
+        return (xs[insert] - x < x - xs[insert - 1]) ? insert : insert - 1;
+    }
+
+    /**
+     * Merges two arrays into a new array in ascending x order. Points with equal x values from the first array precede
+     * those from the second array.
+     *
+     * @param first  the first array
+     * @param second the second array
+     * @return the merged array
+     */
+    public static XYArray merge(XYArray first, XYArray second) {
+
+        if (second.isEmpty()) return first;
+        if (first.isEmpty()) return second;
+
+        int n = first.size() + second.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < n; k++) {
+            if (j == second.xs.length || (i < first.xs.length && first.xs[i] <= second.xs[j])) {
+                xs[k] = first.xs[i];
+                ys[k] = first.ys[i++];
+            } else {
+                xs[k] = second.xs[j];
+                ys[k] = second.ys[j++];
+            }
+        }
+
+        return new XYArray(xs, ys);
+    }
+
+    /**
+     * Returns the points as new point list.
+     *
+     * @return the point list
+     */
+    public XYList toXYList() {
+
+        XYList xyList = new XYList(xs.length);
+        for (int i = 0; i < xs.length; i++)
+            xyList.add(new XYPoint(xs[i], ys[i]));
+
+        return xyList;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+
+        XYArray other = (XYArray) obj;
+        return Arrays.equals(xs, other.xs) && Arrays.equals(ys, other.ys);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(xs) + Arrays.hashCode(ys);
+    }
+}
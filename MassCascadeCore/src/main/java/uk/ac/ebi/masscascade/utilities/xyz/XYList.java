@@ -42,6 +42,15 @@ public class XYList extends ArrayList<XYPoint> implements Serializable {
         super();
     }
 
+    /**
+     * Constructs an empty list with the given initial capacity.
+     *
+     * @param initialCapacity the initial capacity
+     */
+    public XYList(int initialCapacity) {
+        super(initialCapacity);
+    }
+
     /**
      * Constructs a populated list.
      *
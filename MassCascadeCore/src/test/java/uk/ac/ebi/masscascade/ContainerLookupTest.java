@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.commons.FeatureAssert;
+import uk.ac.ebi.masscascade.commons.FileLoader;
+import uk.ac.ebi.masscascade.commons.ScanAssert;
+import uk.ac.ebi.masscascade.core.container.file.FileContainerBuilder;
+import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
+import uk.ac.ebi.masscascade.core.feature.FeatureImpl;
+import uk.ac.ebi.masscascade.core.featureset.FeatureSetImpl;
+import uk.ac.ebi.masscascade.core.scan.ScanIndex;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureSet;
+import uk.ac.ebi.masscascade.interfaces.Range;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.io.PsiMzmlIndexedReader;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.utilities.ScanUtils;
+import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class ContainerLookupTest {
+
+    // larger than the block of a batch read
+    private static final int LARGE_RECORD = 512 * 1024;
+
+    @Test
+    public void testScans() throws IOException {
+
+        ScanContainer memoryContainer = FileLoader.getRawContainer(FileLoader.TESTFILE.SAMPLE);
+        ScanContainer fileContainer = FileContainerBuilder.getInstance().newInstance(ScanContainer.class, "lookup",
+                System.getProperty(Constants.JAVA_TMP));
+
+        File indexedFile = FileLoader.getIndexedFile(FileLoader.TESTFILE.SAMPLE);
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.DATA_FILE, indexedFile);
+        params.put(Parameter.WORKING_DIRECTORY, indexedFile.getParent());
+        ScanContainer indexedContainer = new PsiMzmlIndexedReader(params).call();
+
+        try {
+            // the second scan is replaced by a scan exceeding the batch block
+            ScanIndex scanIndex = memoryContainer.getScanIndex();
+            List<Integer> ids = new ArrayList<>();
+            for (int pos = 0; pos < scanIndex.size(); pos++) {
+                Scan scan = memoryContainer.getScan(scanIndex.getIndex(pos));
+                if (pos == 1) scan = ScanUtils.getModifiedScan(scan, buildLargeData(scan.getDataArray()));
+                fileContainer.addScan(scan);
+                ids.add(scan.getIndex());
+            }
+            fileContainer.finaliseFile(null);
+            Assert.assertTrue(fileContainer.getDataFile().length() > LARGE_RECORD);
+
+            int[] lookupIds = getLookupIds(ids, new Random(42));
+            assertScans(memoryContainer, lookupIds);
+            assertScans(fileContainer, lookupIds);
+            assertScans(indexedContainer, lookupIds);
+        } finally {
+            fileContainer.removeAll();
+            indexedContainer.removeAll();
+        }
+    }
+
+    @Test
+    public void testFeatures() {
+
+        FeatureContainer profiles = FileLoader.getProfileContainer(FileLoader.TESTFILE.SAMPLE);
+        FeatureContainer memoryContainer = MemoryContainerBuilder.getInstance().newInstance(FeatureContainer.class,
+                "lookup", Constants.ION_MODE.POSITIVE);
+        FeatureContainer fileContainer = FileContainerBuilder.getInstance().newInstance(FeatureContainer.class,
+                "lookup", Constants.ION_MODE.POSITIVE, System.getProperty(Constants.JAVA_TMP));
+
+        try {
+            List<Feature> features = new ArrayList<>(profiles.getFeatureList());
+            features.add(1, buildLargeFeature(features.size() + 1));
+
+            List<Integer> ids = new ArrayList<>();
+            for (Feature feature : features) {
+                memoryContainer.addFeature(feature);
+                fileContainer.addFeature(feature);
+                ids.add(feature.getId());
+            }
+            memoryContainer.finaliseFile();
+            fileContainer.finaliseFile();
+            Assert.assertTrue(fileContainer.getDataFile().length() > LARGE_RECORD);
+
+            int[] lookupIds = getLookupIds(ids, new Random(42));
+            assertFeatures(memoryContainer, lookupIds);
+            assertFeatures(fileContainer, lookupIds);
+        } finally {
+            fileContainer.removeAll();
+        }
+    }
+
+    @Test
+    public void testFeatureSets() {
+
+        FeatureContainer profiles = FileLoader.getProfileContainer(FileLoader.TESTFILE.SAMPLE);
+        FeatureSetContainer memoryContainer =
+                MemoryContainerBuilder.getInstance().newInstance(FeatureSetContainer.class, "lookup",
+                        Constants.ION_MODE.POSITIVE);
+        FeatureSetContainer fileContainer = FileContainerBuilder.getInstance().newInstance(FeatureSetContainer.class,
+                "lookup", Constants.ION_MODE.POSITIVE, System.getProperty(Constants.JAVA_TMP));
+
+        try {
+            List<Feature> features = new ArrayList<>(profiles.getFeatureList());
+            features.add(1, buildLargeFeature(features.size() + 1));
+
+            // groups of consecutive features, the first group holds the large feature
+            List<Integer> ids = new ArrayList<>();
+            int index = 1;
+            for (int i = 0; i < features.size(); i += 5) {
+                FeatureSet featureSet = buildFeatureSet(index++, features.subList(i, Math.min(i + 5, features.size())));
+                memoryContainer.addFeatureSet(featureSet);
+                fileContainer.addFeatureSet(featureSet);
+                ids.add(featureSet.getIndex());
+            }
+            memoryContainer.finaliseFile();
+            fileContainer.finaliseFile();
+            Assert.assertTrue(fileContainer.getDataFile().length() > LARGE_RECORD);
+
+            int[] lookupIds = getLookupIds(ids, new Random(42));
+            assertFeatureSets(memoryContainer, lookupIds);
+            assertFeatureSets(fileContainer, lookupIds);
+        } finally {
+            fileContainer.removeAll();
+        }
+    }
+
+    private void assertScans(ScanContainer container, int[] ids) {
+
+        List<Scan> scans = container.getScans(ids);
+        Assert.assertEquals(ids.length, scans.size());
+
+        for (int k = 0; k < ids.length; k++) {
+            Scan expected = container.getScan(ids[k]);
+            if (expected == null) Assert.assertNull(scans.get(k));
+            else ScanAssert.assertEquals(expected, scans.get(k));
+        }
+        assertSameDuplicates(ids, scans);
+    }
+
+    private void assertFeatures(FeatureContainer container, int[] ids) {
+
+        List<Feature> features = container.getFeatures(ids);
+        Assert.assertEquals(ids.length, features.size());
+
+        for (int k = 0; k < ids.length; k++) {
+            Feature expected = container.getFeature(ids[k]);
+            if (expected == null) Assert.assertNull(features.get(k));
+            else FeatureAssert.assertEquals(expected, features.get(k));
+        }
+        assertSameDuplicates(ids, features);
+    }
+
+    private void assertFeatureSets(FeatureSetContainer container, int[] ids) {
+
+        List<FeatureSet> featureSets = container.getFeatureSets(ids);
+        Assert.assertEquals(ids.length, featureSets.size());
+
+        for (int k = 0; k < ids.length; k++) {
+            FeatureSet expected = container.getFeatureSet(ids[k]);
+            if (expected == null) {
+                Assert.assertNull(featureSets.get(k));
+                continue;
+            }
+
+            FeatureSet actual = featureSets.get(k);
+            Assert.assertEquals(expected.getIndex(), actual.getIndex());
+            Assert.assertEquals(expected.getRetentionTime(), actual.getRetentionTime());
+            Assert.assertEquals(expected.getData(), actual.getData());
+            Assert.assertEquals(expected.size(), actual.size());
+
+            Iterator<Feature> actualIter = actual.iterator();
+            for (Feature feature : expected) FeatureAssert.assertEquals(feature, actualIter.next());
+        }
+        assertSameDuplicates(ids, featureSets);
+    }
+
+    private void assertSameDuplicates(int[] ids, List<?> objects) {
+
+        for (int k = 0; k < ids.length; k++) {
+            for (int j = 0; j < k; j++) {
+                if (ids[j] == ids[k]) Assert.assertSame(objects.get(j), objects.get(k));
+            }
+        }
+    }
+
+    private int[] getLookupIds(List<Integer> ids, Random random) {
+
+        // all identifiers in random order with repeated and unknown identifiers mixed in
+        List<Integer> lookupIds = new ArrayList<>(ids);
+        for (int i = 0; i < 10; i++) lookupIds.add(ids.get(random.nextInt(ids.size())));
+        lookupIds.add(ids.get(1));
+        lookupIds.add(-1);
+        lookupIds.add(-7);
+        lookupIds.add(Integer.MAX_VALUE);
+        Collections.shuffle(lookupIds, random);
+
+        int[] lookupArray = new int[lookupIds.size()];
+        for (int i = 0; i < lookupArray.length; i++) lookupArray[i] = lookupIds.get(i);
+        return lookupArray;
+    }
+
+    private XYArray buildLargeData(XYArray data) {
+
+        int n = LARGE_RECORD / 8;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = data.getX(0) + i * 1e-3;
+            ys[i] = data.getY(i % data.size());
+        }
+        return new XYArray(xs, ys);
+    }
+
+    private Feature buildLargeFeature(int id) {
+
+        Range mzRange = new ExtendableRange(500, 500);
+        Feature feature = new FeatureImpl(id, new XYZPoint(100, 500, 1000), mzRange);
+        for (int i = 1; i < LARGE_RECORD / 16; i++) feature.addFeaturePoint(new XYZPoint(100 + i, 500, 1000 + i % 7));
+        return feature;
+    }
+
+    private FeatureSet buildFeatureSet(int index, List<Feature> features) {
+
+        XYList mzIntList = new XYList();
+        Range rtRange = new ExtendableRange(features.get(0).getRetentionTime());
+        for (Feature feature : features) {
+            mzIntList.add(feature.getMzIntDp());
+            rtRange.extendRange(feature.getRetentionTime());
+        }
+        Set<Feature> featureSet = new HashSet<>(features);
+        return new FeatureSetImpl(index, mzIntList, rtRange, features.get(0).getRetentionTime(), featureSet);
+    }
+}
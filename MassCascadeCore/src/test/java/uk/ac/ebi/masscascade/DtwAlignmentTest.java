@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.alignment.DtwAlignment;
+import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
+import uk.ac.ebi.masscascade.core.scan.ScanImpl;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class DtwAlignmentTest {
+
+    // every sample scan carries a marker peak at MARKER + its position, so the matches can be read off the result
+    private static final double MARKER = 1000;
+
+    @Test
+    public void testIdentity() {
+
+        double[] profile = buildProfile(new Random(42), 60);
+        Map<Integer, List<Integer>> matches = align(profile, profile, 3);
+
+        Assert.assertEquals(profile.length, matches.size());
+        for (int j = 0; j < profile.length; j++) assertMatch(matches, j, j);
+    }
+
+    @Test
+    public void testShiftWithinBand() {
+
+        int shift = 2;
+        double[] ref = buildProfile(new Random(7), 60);
+        double[] sample = new double[ref.length - shift];
+        for (int i = 0; i < sample.length; i++) sample[i] = ref[i + shift];
+
+        Map<Integer, List<Integer>> matches = align(sample, ref, 4);
+        assertPath(matches, sample.length, ref.length, 4);
+
+        // the path start is pinned to the first scans of both runs
+        for (int j = shift; j < ref.length; j++) assertMatch(matches, j, j - shift);
+    }
+
+    @Test
+    public void testShiftBeyondBand() {
+
+        int shift = 10;
+        double[] ref = buildProfile(new Random(11), 80);
+        double[] tail = buildProfile(new Random(13), shift);
+        double[] sample = new double[ref.length];
+        for (int i = 0; i < sample.length; i++) sample[i] = (i + shift < ref.length) ? ref[i + shift] : tail[i - 70];
+
+        // a narrow band cannot follow the shift, the path stays within the radius of the diagonal
+        assertPath(align(sample, ref, 3), sample.length, ref.length, 3);
+
+        // a band wider than the shift recovers it
+        Map<Integer, List<Integer>> matches = align(sample, ref, 15);
+        assertPath(matches, sample.length, ref.length, 15);
+        for (int j = 2 * shift; j < ref.length - shift; j++) assertMatch(matches, j, j - shift);
+    }
+
+    @Test
+    public void testDifferentLengths() {
+
+        // the band is widened to the slope of the diagonal plus one
+        assertPath(align(buildProfile(new Random(3), 30), buildProfile(new Random(5), 90), 1), 30, 90, 5);
+        assertPath(align(buildProfile(new Random(3), 90), buildProfile(new Random(5), 30), 1), 90, 30, 2);
+        assertPath(align(buildProfile(new Random(3), 1), buildProfile(new Random(5), 5), 1), 1, 5, 5);
+    }
+
+    private void assertMatch(Map<Integer, List<Integer>> matches, int refPos, int samplePos) {
+
+        Assert.assertTrue(matches.containsKey(refPos));
+        Assert.assertEquals(1, matches.get(refPos).size());
+        Assert.assertEquals(samplePos, (int) matches.get(refPos).get(0));
+    }
+
+    /**
+     * Asserts that the matches form a monotone warping path over all sample scans to the last reference scan that
+     * never leaves the band of the given radius around the diagonal. Aligned scans keep the index of their last
+     * sample scan, so a sample scan matched to several reference scans is only kept for the last of them.
+     */
+    private void assertPath(Map<Integer, List<Integer>> matches, int n, int m, int radius) {
+
+        double slope = (n > 1) ? (m - 1) / (double) (n - 1) : m - 1;
+
+        Assert.assertTrue(matches.containsKey(m - 1));
+
+        int previous = -1;
+        for (Map.Entry<Integer, List<Integer>> entry : matches.entrySet()) {
+
+            int j = entry.getKey();
+            Assert.assertFalse(entry.getValue().isEmpty());
+            for (int i : entry.getValue()) {
+                Assert.assertTrue(i == previous || i == previous + 1);
+                Assert.assertTrue(Math.abs(j - Math.round(i * slope)) <= radius);
+                previous = i;
+            }
+        }
+        Assert.assertEquals(n - 1, previous);
+    }
+
+    /**
+     * Aligns a sample to a reference with the given base peak profiles and returns the sample positions merged into
+     * the aligned scan of every reference position.
+     */
+    private Map<Integer, List<Integer>> align(double[] sampleProfile, double[] refProfile, int radius) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.SCAN_WINDOW, radius);
+        params.put(Parameter.REFERENCE_SCAN_CONTAINER, buildContainer("reference", refProfile));
+        params.put(Parameter.SCAN_CONTAINER, buildContainer("sample", sampleProfile));
+
+        ScanContainer alignedContainer = new DtwAlignment(params).call();
+
+        Map<Integer, List<Integer>> matches = new TreeMap<>();
+        for (Scan scan : alignedContainer) {
+
+            List<Integer> positions = new ArrayList<>();
+            XYArray data = scan.getDataArray();
+            for (int k = 0; k < data.size(); k++) {
+                if (data.getX(k) >= MARKER) positions.add((int) (data.getX(k) - MARKER));
+            }
+            matches.put((int) (scan.getRetentionTime() / 2), positions);
+        }
+
+        return matches;
+    }
+
+    private ScanContainer buildContainer(String id, double[] profile) {
+
+        ScanContainer scanContainer = MemoryContainerBuilder.getInstance().newInstance(ScanContainer.class, id);
+        for (int i = 0; i < profile.length; i++) {
+
+            double[] xs = {100, MARKER + i};
+            double[] ys = {1, profile[i]};
+            scanContainer.addScan(new ScanImpl(i + 1, Constants.MSN.MS1, Constants.ION_MODE.POSITIVE,
+                    new XYArray(xs, ys), i * 2d, -1, -1, -1));
+        }
+        scanContainer.finaliseFile(null);
+
+        return scanContainer;
+    }
+
+    private double[] buildProfile(Random random, int size) {
+
+        double[] profile = new double[size];
+        for (int i = 0; i < size; i++) profile[i] = 1000 + random.nextInt(100000);
+        return profile;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.core.container.file.FileContainerBuilder;
+import uk.ac.ebi.masscascade.core.container.file.FileManager;
+import uk.ac.ebi.masscascade.core.container.file.MappedFileManager;
+import uk.ac.ebi.masscascade.core.container.file.ObjectCache;
+import uk.ac.ebi.masscascade.interfaces.RunManager;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class FileManagerTest {
+
+    @Test
+    public void testConcurrentRead() throws Exception {
+
+        final FileManager fileManager = new FileManager(System.getProperty(Constants.JAVA_TMP));
+        fileManager.openFile();
+
+        final int nObjects = 200;
+        final List<Long> pointers = new ArrayList<>();
+        for (int i = 0; i < nObjects; i++) {
+            XYList xyList = new XYList();
+            for (int j = 0; j <= i; j++) xyList.add(new XYPoint(i, j));
+            pointers.add(fileManager.write(xyList));
+        }
+        fileManager.closeFile();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() {
+                    for (int i = nObjects - 1; i >= 0; i--) {
+                        XYList xyList = fileManager.read(pointers.get(i), XYList.class);
+                        if (xyList.size() != i + 1 || xyList.get(i).y != i) return false;
+                    }
+                    return true;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        for (Future<Boolean> future : futures) Assert.assertTrue(future.get());
+
+        Assert.assertTrue(fileManager.removeFile());
+    }
+
+    @Test
+    public void testInterruptedRead() {
+
+        FileManager fileManager = new FileManager(System.getProperty(Constants.JAVA_TMP));
+        fileManager.openFile();
+
+        List<Long> pointers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            XYList xyList = new XYList();
+            for (int j = 0; j <= i; j++) xyList.add(new XYPoint(i, j));
+            pointers.add(fileManager.write(xyList));
+        }
+        fileManager.closeFile();
+
+        // the interrupted read closes the shared channel, the retry must succeed and keep the interrupt
+        Thread.currentThread().interrupt();
+        try {
+            Assert.assertEquals(5, fileManager.read(pointers.get(4), XYList.class).size());
+            Assert.assertEquals(3, ((XYList) fileManager.read(pointers.subList(0, 3), XYList.class).get(2)).size());
+        } finally {
+            Assert.assertTrue(Thread.interrupted());
+        }
+
+        for (int i = 0; i < 10; i++) Assert.assertEquals(i + 1, fileManager.read(pointers.get(i), XYList.class).size());
+        Assert.assertTrue(fileManager.removeFile());
+    }
+
+    @Test
+    public void testCachedBatchRead() {
+
+        FileManager fileManager = new FileManager(System.getProperty(Constants.JAVA_TMP));
+        fileManager.openFile();
+
+        List<Long> pointers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            XYList xyList = new XYList();
+            for (int j = 0; j <= i; j++) xyList.add(new XYPoint(i, j));
+            pointers.add(fileManager.write(xyList));
+        }
+        fileManager.closeFile();
+
+        List<Long> request = new ArrayList<>();
+        for (int i = pointers.size() - 1; i >= 0; i -= 3) request.add(pointers.get(i));
+        request.add(pointers.get(99));
+        request.add(-1L);
+
+        ObjectCache cache = new ObjectCache(1024 * 1024);
+        FileManager.setCache(cache);
+        try {
+            List<Object> objects = fileManager.read(request, XYList.class);
+            Assert.assertEquals(request.size(), objects.size());
+            for (int k = 0; k < request.size() - 2; k++)
+                Assert.assertEquals(99 - 3 * k + 1, ((XYList) objects.get(k)).size());
+            Assert.assertSame(objects.get(0), objects.get(request.size() - 2));
+            Assert.assertNull(objects.get(request.size() - 1));
+
+            long misses = cache.getMisses();
+            XYList cached = fileManager.read(request.get(1), XYList.class);
+            Assert.assertNotSame(objects.get(1), cached);
+            Assert.assertEquals(((XYList) objects.get(1)).size(), cached.size());
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(misses, cache.getMisses());
+
+            Assert.assertTrue(fileManager.removeFile());
+            Assert.assertEquals(0, cache.size());
+        } finally {
+            FileManager.setCache(null);
+        }
+    }
+
+    @Test
+    public void testCachedReadIsolation() {
+
+        FileManager fileManager = new FileManager(System.getProperty(Constants.JAVA_TMP));
+        fileManager.openFile();
+
+        List<Long> pointers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            XYList xyList = new XYList();
+            for (int j = 0; j <= i; j++) xyList.add(new XYPoint(i, j));
+            pointers.add(fileManager.write(xyList));
+        }
+        fileManager.closeFile();
+
+        MappedFileManager mappedManager = new MappedFileManager(fileManager.getDataFile(), 1024);
+        mappedManager.openFile();
+
+        ObjectCache cache = new ObjectCache(1024 * 1024);
+        FileManager.setCache(cache);
+        try {
+            for (int i = 0; i < 10; i++) {
+
+                // the first read populates the cache, every later read must see the record as written
+                XYList xyList = fileManager.read(pointers.get(i), XYList.class);
+                mutate(xyList);
+                xyList = fileManager.read(pointers.get(i), XYList.class);
+                assertRecord(i, xyList);
+                mutate(xyList);
+                xyList = (XYList) fileManager.read(pointers.subList(i, i + 1), XYList.class).get(0);
+                assertRecord(i, xyList);
+
+                xyList = mappedManager.read(pointers.get(i), XYList.class);
+                mutate(xyList);
+                assertRecord(i, mappedManager.read(pointers.get(i), XYList.class));
+            }
+            Assert.assertEquals(30, cache.getHits());
+            Assert.assertEquals(20, cache.size());
+        } finally {
+            FileManager.setCache(null);
+        }
+
+        mappedManager.closeFile();
+        Assert.assertTrue(mappedManager.removeFile());
+    }
+
+    @Test
+    public void testConcurrentCachedRead() throws Exception {
+
+        final FileManager fileManager = new FileManager(System.getProperty(Constants.JAVA_TMP));
+        fileManager.openFile();
+
+        final int nObjects = 200;
+        final List<Long> pointers = new ArrayList<>();
+        for (int i = 0; i < nObjects; i++) {
+            XYList xyList = new XYList();
+            for (int j = 0; j <= i; j++) xyList.add(new XYPoint(i, j));
+            pointers.add(fileManager.write(xyList));
+        }
+        fileManager.closeFile();
+
+        // a budget below the total record size forces evictions while the readers mutate what they read
+        final ObjectCache cache = new ObjectCache(64 * 1024);
+        FileManager.setCache(cache);
+        try {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(new Callable<Boolean>() {
+
+                    @Override
+                    public Boolean call() {
+                        for (int k = 0; k < 4; k++) {
+                            for (int i = nObjects - 1; i >= 0; i--) {
+                                XYList xyList = fileManager.read(pointers.get(i), XYList.class);
+                                if (xyList.size() != i + 1 || xyList.get(i).y != i) return false;
+                                mutate(xyList);
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            for (Future<Boolean> future : futures) Assert.assertTrue(future.get());
+            Assert.assertTrue(cache.getHits() > 0);
+            Assert.assertTrue(cache.getWeight() <= cache.getCapacity());
+        } finally {
+            FileManager.setCache(null);
+        }
+
+        Assert.assertTrue(fileManager.removeFile());
+    }
+
+    private static void mutate(XYList xyList) {
+
+        xyList.get(0).y = -1;
+        xyList.add(new XYPoint(-1, -1));
+    }
+
+    private static void assertRecord(int i, XYList xyList) {
+
+        Assert.assertEquals(i + 1, xyList.size());
+        for (int j = 0; j <= i; j++) Assert.assertEquals((double) j, xyList.get(j).y);
+    }
+
+    @Test
+    public void testMappedSegments() {
+
+        MappedFileManager mappedManager = new MappedFileManager(System.getProperty(Constants.JAVA_TMP), 1024);
+        mappedManager.openFile();
+
+        List<Long> pointers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            XYList xyList = new XYList();
+            for (int j = 0; j <= i; j++) xyList.add(new XYPoint(i, j));
+            pointers.add(mappedManager.write(xyList));
+        }
+        mappedManager.closeFile();
+
+        // records are laid out as in the random access file, hence both managers resolve the same pointers
+        FileManager fileManager = new FileManager(mappedManager.getDataFile());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i + 1, mappedManager.read(pointers.get(i), XYList.class).size());
+            Assert.assertEquals((double) i, fileManager.read(pointers.get(i), XYList.class).get(i).y);
+        }
+
+        Assert.assertTrue(mappedManager.removeFile());
+    }
+
+    @Test
+    public void testMappedStraddlingPrefix() {
+
+        FileManager fileManager = new FileManager(System.getProperty(Constants.JAVA_TMP));
+        fileManager.openFile();
+
+        List<Long> pointers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            XYList xyList = new XYList();
+            for (int j = 0; j <= i; j++) xyList.add(new XYPoint(i, j));
+            pointers.add(fileManager.write(xyList));
+        }
+        fileManager.closeFile();
+
+        // the segment boundary falls into the length prefix of the third record
+        int segmentSize = (int) (pointers.get(2) + 2);
+        MappedFileManager mappedManager = new MappedFileManager(fileManager.getDataFile(), segmentSize);
+        mappedManager.openFile();
+        for (int i = 0; i < 10; i++) {
+            XYList xyList = mappedManager.read(pointers.get(i), XYList.class);
+            Assert.assertEquals(i + 1, xyList.size());
+            Assert.assertEquals((double) i, xyList.get(i).y);
+        }
+        mappedManager.closeFile();
+
+        Assert.assertTrue(mappedManager.removeFile());
+    }
+
+    @Test
+    public void testMappedSegmentGrowth() {
+
+        MappedFileManager mappedManager = new MappedFileManager(System.getProperty(Constants.JAVA_TMP));
+        mappedManager.openFile();
+
+        XYList xyList = new XYList();
+        xyList.add(new XYPoint(1, 1));
+        long first = mappedManager.write(xyList);
+        Assert.assertEquals(MappedFileManager.INITIAL_SEGMENT_SIZE, mappedManager.getDataFile().length());
+
+        // fill the first segment, the second segment doubles in size
+        xyList = new XYList();
+        for (int j = 0; j < 1000; j++) xyList.add(new XYPoint(j, j));
+        List<Long> pointers = new ArrayList<>();
+        while (mappedManager.getDataFile().length() == MappedFileManager.INITIAL_SEGMENT_SIZE) {
+            pointers.add(mappedManager.write(xyList));
+        }
+        Assert.assertEquals(3L * MappedFileManager.INITIAL_SEGMENT_SIZE, mappedManager.getDataFile().length());
+        mappedManager.closeFile();
+
+        Assert.assertEquals(1.0, mappedManager.read(first, XYList.class).get(0).y);
+        for (long pointer : pointers) Assert.assertEquals(999.0, mappedManager.read(pointer, XYList.class).get(999).y);
+
+        Assert.assertTrue(mappedManager.removeFile());
+    }
+
+    @Test
+    public void testMappedSwitch() {
+
+        String tmpDirectory = System.getProperty(Constants.JAVA_TMP);
+
+        RunManager runManager = FileContainerBuilder.newRunManager(tmpDirectory);
+        Assert.assertTrue(runManager instanceof FileManager);
+        Assert.assertTrue(runManager.removeFile());
+
+        FileContainerBuilder.setMapped(true);
+        try {
+            runManager = FileContainerBuilder.newRunManager(tmpDirectory);
+            Assert.assertTrue(runManager instanceof MappedFileManager);
+
+            runManager.openFile();
+            long pointer = runManager.write(new XYPoint(2, 3));
+            runManager.closeFile();
+
+            RunManager readManager = FileContainerBuilder.newRunManager(new File(runManager.getAbsoluteFileName()));
+            Assert.assertTrue(readManager instanceof MappedFileManager);
+            Assert.assertEquals(3.0, readManager.read(pointer, XYPoint.class).y);
+            Assert.assertTrue(runManager.removeFile());
+        } finally {
+            FileContainerBuilder.setMapped(false);
+        }
+    }
+}
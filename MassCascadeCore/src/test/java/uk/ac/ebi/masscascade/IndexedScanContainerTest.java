@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.commons.FileLoader;
+import uk.ac.ebi.masscascade.commons.ScanAssert;
+import uk.ac.ebi.masscascade.core.container.file.scan.IndexedScanContainer;
+import uk.ac.ebi.masscascade.core.scan.ScanLevel;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.io.PsiMzmlIndexedReader;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.utilities.ScanUtils;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IndexedScanContainerTest {
+
+    @Test
+    public void testParity() throws IOException {
+
+        ScanContainer indexed = getIndexedContainer();
+        try {
+            Assert.assertTrue(indexed instanceof IndexedScanContainer);
+            ScanAssert.assertEquals(FileLoader.getRawContainer(FileLoader.TESTFILE.SAMPLE), indexed);
+        } finally {
+            indexed.removeAll();
+        }
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+
+        ScanContainer raw = FileLoader.getRawContainer(FileLoader.TESTFILE.SAMPLE);
+        ScanContainer indexed = getIndexedContainer();
+        try {
+            List<Integer> scanIndices = new ArrayList<>();
+            for (ScanLevel level : raw.getScanLevels()) {
+                for (Scan scan : raw.iterator(level.getMsn())) scanIndices.add(scan.getIndex());
+            }
+
+            // reverse order reads jump back and forth between the levels
+            for (int i = scanIndices.size() - 1; i >= 0; i--) {
+                int scanIndex = scanIndices.get(i);
+                ScanAssert.assertEquals(raw.getScan(scanIndex), indexed.getScan(scanIndex));
+            }
+
+            int last = scanIndices.get(scanIndices.size() - 1);
+            int[] indices = {last, scanIndices.get(0), last, scanIndices.get(1)};
+            List<Scan> scans = indexed.getScans(indices);
+            Assert.assertEquals(indices.length, scans.size());
+            for (int i = 0; i < indices.length; i++) ScanAssert.assertEquals(raw.getScan(indices[i]), scans.get(i));
+
+            Assert.assertNull(indexed.getScan(-1));
+        } finally {
+            indexed.removeAll();
+        }
+    }
+
+    @Test
+    public void testAddScan() throws IOException {
+
+        ScanContainer indexed = getIndexedContainer();
+        try {
+            Scan scan = indexed.getScanByIndex(0);
+            XYArray data = scan.getDataArray();
+            double[] ys = new double[data.size()];
+            for (int i = 0; i < ys.length; i++) ys[i] = data.getY(i) / 2;
+            Scan processedScan = ScanUtils.getModifiedScan(scan, new XYArray(data.getXs(), ys));
+
+            int size = indexed.size(Constants.MSN.MS1);
+            try {
+                indexed.addScan(processedScan);
+                Assert.fail("Indexed scan container accepted a scan.");
+            } catch (MassCascadeException exception) {
+                // expected, the container is read-only
+            }
+
+            Assert.assertEquals(size, indexed.size(Constants.MSN.MS1));
+            Assert.assertEquals(data, indexed.getScan(scan.getIndex()).getDataArray());
+            Assert.assertFalse(indexed.featureIterator().iterator().hasNext());
+        } finally {
+            indexed.removeAll();
+        }
+    }
+
+    @Test
+    public void testIonMode() throws Exception {
+
+        // only the first spectrum states its polarity, the following spectra inherit it
+        String polarity = "name=\"negative scan\"";
+        String text = FileLoader.getText(FileLoader.TESTFILE.SAMPLE);
+        int first = text.indexOf(polarity) + polarity.length();
+        text = text.substring(0, first) + text.substring(first).replace(polarity, "name=\"scan\"");
+
+        final ScanContainer indexed = getIndexedContainer(FileLoader.getIndexedFile(text));
+        try {
+            final int lastIndex = indexed.getScanIndex().getIndex(indexed.getScanIndex().size() - 1);
+            Assert.assertEquals(Constants.ION_MODE.NEGATIVE, indexed.getScan(lastIndex).getIonMode());
+
+            // a fresh thread decodes with a fresh spectrum parser
+            final Constants.ION_MODE[] ionMode = new Constants.ION_MODE[1];
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ionMode[0] = indexed.getScan(lastIndex).getIonMode();
+                }
+            });
+            thread.start();
+            thread.join();
+            Assert.assertEquals(Constants.ION_MODE.NEGATIVE, ionMode[0]);
+        } finally {
+            indexed.removeAll();
+        }
+    }
+
+    private ScanContainer getIndexedContainer() throws IOException {
+        return getIndexedContainer(FileLoader.getIndexedFile(FileLoader.TESTFILE.SAMPLE));
+    }
+
+    private ScanContainer getIndexedContainer(File file) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.DATA_FILE, file);
+        params.put(Parameter.WORKING_DIRECTORY, file.getParent());
+
+        return new PsiMzmlIndexedReader(params).call();
+    }
+}
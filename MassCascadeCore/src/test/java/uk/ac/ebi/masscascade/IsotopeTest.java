@@ -26,11 +26,31 @@ import junit.framework.Assert;
 import org.junit.Test;
 import uk.ac.ebi.masscascade.commons.FileLoader;
 import uk.ac.ebi.masscascade.core.PropertyType;
+import uk.ac.ebi.masscascade.core.feature.FeatureImpl;
+import uk.ac.ebi.masscascade.core.featureset.FeatureSetImpl;
+import uk.ac.ebi.masscascade.identification.IsotopeCandidates;
+import uk.ac.ebi.masscascade.identification.IsotopeDetectorRec;
 import uk.ac.ebi.masscascade.identification.IsotopeFinder;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureSet;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.properties.Isotope;
+import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 public class IsotopeTest {
 
@@ -47,4 +67,140 @@ public class IsotopeTest {
         Assert.assertTrue(container.getFeatureSet(3).getFeature(245).hasProperty(PropertyType.Isotope));
         Assert.assertTrue(container.getFeatureSet(3).getFeature(246).hasProperty(PropertyType.Isotope));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCandidates() {
+
+        Random random = new Random(42);
+        for (int c = 1; c <= 3; c++) {
+            double spacing = 1.0033 / c;
+            for (double ppm : new double[]{5, 10, 50}) {
+
+                // isotope-like runs, exact duplicates and unrelated masses
+                int n = 2000;
+                double[] mzs = new double[n + 10];
+                int i = 0;
+                while (i < n) {
+                    double mz = 100 + random.nextDouble() * 900;
+                    mzs[i++] = mz;
+                    int run = random.nextInt(4);
+                    for (int k = 1; k <= run && i < n; k++) {
+                        mzs[i++] = mz + k * spacing + (random.nextDouble() * 2 - 1) * 1.5 * ppm * mz / Constants.PPM;
+                    }
+                    if (random.nextInt(10) == 0 && i < n) mzs[i++] = mz;
+                }
+                Arrays.sort(mzs, 0, n);
+                // values beyond the given length are ignored
+                for (int k = n; k < mzs.length; k++) mzs[k] = mzs[n - 1] + spacing;
+
+                IsotopeCandidates candidates = new IsotopeCandidates(mzs, n, spacing, ppm);
+
+                int size = 0;
+                for (int p = 0; p < n; p++) {
+                    List<Integer> expected = getCandidates(mzs, n, p, spacing, ppm);
+                    List<Integer> actual = new ArrayList<>();
+                    for (int k = candidates.getStart(p); k < candidates.getEnd(p); k++) {
+                        actual.add(candidates.getTarget(k));
+                    }
+                    Assert.assertEquals(expected, actual);
+                    size += expected.size();
+                }
+                Assert.assertEquals(size, candidates.size());
+                Assert.assertTrue(size > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testDetector() {
+
+        Map<Integer, Feature> features = new HashMap<>();
+
+        // z=1: the longer envelope over 3 and 4 wins over the closer dead end 2
+        addFeature(features, 1, 500.0, 100000);
+        addFeature(features, 2, 501.0013, 30000);
+        addFeature(features, 3, 501.0073, 30000);
+        addFeature(features, 4, 502.0106, 9000);
+
+        // z=1: features 6 and 7 deviate equally, the first one in m/z order is kept
+        addFeature(features, 5, 600.0, 100000);
+        addFeature(features, 6, 601.0033, 38000);
+        addFeature(features, 7, 601.0033, 38000);
+
+        // z=2: the intensity ratios do not match a singly charged envelope
+        addFeature(features, 8, 700.0, 100000);
+        addFeature(features, 9, 700.50165, 6000);
+        addFeature(features, 10, 701.0033, 360);
+
+        // z=2: the deviation is measured against the doubly charged spacing, feature 12 is closer than 13
+        addFeature(features, 11, 800.0, 100000);
+        addFeature(features, 12, 800.49965, 7000);
+        addFeature(features, 13, 800.50465, 7000);
+
+        new IsotopeDetectorRec(2, 10).findIsotopes(buildFeatureSet(features));
+
+        assertIsotopes(features.get(1), "M:0:1:1", "M+1:1:1:3", "M+2:2:1:4");
+        assertIsotopes(features.get(2));
+        assertIsotopes(features.get(3), "M+1:1:1:3");
+        assertIsotopes(features.get(4), "M+2:2:1:4");
+
+        assertIsotopes(features.get(5), "M:0:5:5", "M+1:1:5:6");
+        assertIsotopes(features.get(6), "M+1:1:5:6");
+        assertIsotopes(features.get(7));
+
+        assertIsotopes(features.get(8), "M:0:8:8", "M+1:1:8:9", "M+2:2:8:10");
+        assertIsotopes(features.get(9), "M+1:1:8:9");
+        assertIsotopes(features.get(10), "M+2:2:8:10");
+
+        assertIsotopes(features.get(11), "M:0:11:11", "M+1:1:11:12");
+        assertIsotopes(features.get(12), "M+1:1:11:12");
+        assertIsotopes(features.get(13));
+
+        // singly charged search only
+        features = new HashMap<>();
+        addFeature(features, 8, 700.0, 100000);
+        addFeature(features, 9, 700.50165, 6000);
+        addFeature(features, 10, 701.0033, 360);
+        new IsotopeDetectorRec(1, 10).findIsotopes(buildFeatureSet(features));
+        for (Feature feature : features.values()) assertIsotopes(feature);
+    }
+
+    private List<Integer> getCandidates(double[] mzs, int n, int p, double spacing, double ppm) {
+
+        double target = mzs[p] + spacing;
+        List<Integer> candidates = new ArrayList<>();
+        for (int j = p + 1; j < n; j++) {
+            double tolerance = mzs[j] * ppm / Constants.PPM;
+            if (mzs[j] >= target - tolerance && mzs[j] < target + tolerance) candidates.add(j);
+        }
+        return candidates;
+    }
+
+    private void addFeature(Map<Integer, Feature> features, int id, double mz, double intensity) {
+
+        // distinct times keep features of equal m/z and intensity apart
+        features.put(id, new FeatureImpl(id, new XYPoint(mz, intensity), 100 + id, new ExtendableRange(mz, mz)));
+    }
+
+    private FeatureSet buildFeatureSet(Map<Integer, Feature> features) {
+
+        XYList mzIntList = new XYList();
+        for (Feature feature : features.values()) mzIntList.add(feature.getMzIntDp());
+        FeatureSet featureSet = new FeatureSetImpl(1, mzIntList, new ExtendableRange(100, 100 + features.size()), 100,
+                new HashSet<>(features.values()));
+        Assert.assertEquals(features.size(), featureSet.getFeaturesMap().size());
+        return featureSet;
+    }
+
+    private void assertIsotopes(Feature feature, String... expected) {
+
+        Set<String> actual = new HashSet<>();
+        if (feature.hasProperty(PropertyType.Isotope)) {
+            for (Isotope isotope : feature.getProperty(PropertyType.Isotope, Isotope.class)) {
+                actual.add(isotope.getName() + ":" + isotope.getValue(Integer.class) + ":" + isotope.getParentId() +
+                        ":" + isotope.getChildId());
+            }
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList(expected)), actual);
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.commons.FeatureAssert;
+import uk.ac.ebi.masscascade.commons.FeatureLoader;
+import uk.ac.ebi.masscascade.commons.FileLoader;
+import uk.ac.ebi.masscascade.core.OrderedMapper;
+import uk.ac.ebi.masscascade.core.PropertyType;
+import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
+import uk.ac.ebi.masscascade.core.feature.FeatureImpl;
+import uk.ac.ebi.masscascade.core.featureset.FeatureSetImpl;
+import uk.ac.ebi.masscascade.deconvolution.BiehmanDeconvolution;
+import uk.ac.ebi.masscascade.filter.FeatureSetFilter;
+import uk.ac.ebi.masscascade.identification.AdductFinder;
+import uk.ac.ebi.masscascade.identification.AdductSingle;
+import uk.ac.ebi.masscascade.identification.IsotopeFinder;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureSet;
+import uk.ac.ebi.masscascade.interfaces.Range;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.properties.Adduct;
+import uk.ac.ebi.masscascade.properties.Isotope;
+import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class MapperTest {
+
+    private static final List<AdductSingle> ADDUCTS = Arrays.asList(new AdductSingle("Na", 1, 21.981943),
+            new AdductSingle("K", 1, 37.955882), new AdductSingle("-H2O", 1, -18.010565),
+            new AdductSingle("2M+H", 1, 1.007276));
+
+    @Test
+    public void testOrderedMapper() {
+
+        List<Integer> inputs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) inputs.add(i);
+
+        // uneven task durations finish out of order on several workers
+        for (int parallelism : new int[]{1, 4, 0}) {
+
+            final List<Integer> outputs = new ArrayList<>();
+            new OrderedMapper<Integer, Integer>(parallelism) {
+
+                @Override
+                protected Integer map(Integer input) {
+                    busyWait(input * 7919 % 100);
+                    return input * 2;
+                }
+
+                @Override
+                protected void collect(Integer output) {
+                    outputs.add(output);
+                }
+            }.run(inputs);
+
+            Assert.assertEquals(inputs.size(), outputs.size());
+            for (int i = 0; i < inputs.size(); i++) Assert.assertEquals(inputs.get(i) * 2, (int) outputs.get(i));
+        }
+    }
+
+    @Test
+    public void testFeatureMapper() {
+
+        ScanContainer scanContainer = FileLoader.getRawContainer(FileLoader.TESTFILE.SAMPLE);
+        FeatureContainer profiles = FeatureLoader.buildFeatures(scanContainer);
+
+        FeatureContainer serial = new BiehmanDeconvolution(getDeconvolutionParams(scanContainer, profiles, 1)).call();
+        FeatureContainer parallel = new BiehmanDeconvolution(getDeconvolutionParams(scanContainer, profiles, 4)).call();
+        FeatureContainer pooled = new BiehmanDeconvolution(getDeconvolutionParams(scanContainer, profiles, 0)).call();
+
+        Assert.assertTrue(serial.size() > 0);
+        int featureId = 1;
+        for (Feature feature : serial) Assert.assertEquals(featureId++, feature.getId());
+
+        FeatureAssert.assertEquals(serial, parallel);
+        FeatureAssert.assertEquals(serial, pooled);
+    }
+
+    @Test
+    public void testFeatureSetMapper() {
+
+        FeatureSetContainer spectra = buildFeatureSets(FileLoader.getProfileContainer(FileLoader.TESTFILE.SAMPLE));
+
+        FeatureSetContainer serial = new FeatureSetFilter(getFilterParams(spectra, 1)).call();
+        FeatureSetContainer parallel = new FeatureSetFilter(getFilterParams(spectra, 4)).call();
+        FeatureSetContainer pooled = new FeatureSetFilter(getFilterParams(spectra, 0)).call();
+
+        Assert.assertTrue(serial.size() > 0);
+        Assert.assertTrue(serial.size() < spectra.size());
+        assertEquals(serial, parallel);
+        assertEquals(serial, pooled);
+    }
+
+    @Test
+    public void testIsotopeFinder() {
+
+        FeatureSetContainer serial = new IsotopeFinder(getFinderParams(buildSpectra(new Random(42)), 1)).call();
+        FeatureSetContainer parallel = new IsotopeFinder(getFinderParams(buildSpectra(new Random(42)), 4)).call();
+        FeatureSetContainer pooled = new IsotopeFinder(getFinderParams(buildSpectra(new Random(42)), 0)).call();
+
+        Assert.assertTrue(countAnnotated(serial, PropertyType.Isotope) > 0);
+        assertPropertiesEquals(serial, parallel);
+        assertPropertiesEquals(serial, pooled);
+    }
+
+    @Test
+    public void testAdductFinder() {
+
+        FeatureSetContainer serial = new AdductFinder(getFinderParams(buildSpectra(new Random(42)), 1)).call();
+        FeatureSetContainer parallel = new AdductFinder(getFinderParams(buildSpectra(new Random(42)), 4)).call();
+        FeatureSetContainer pooled = new AdductFinder(getFinderParams(buildSpectra(new Random(42)), 0)).call();
+
+        Assert.assertTrue(countAnnotated(serial, PropertyType.Adduct) > 0);
+        assertPropertiesEquals(serial, parallel);
+        assertPropertiesEquals(serial, pooled);
+    }
+
+    private void assertPropertiesEquals(FeatureSetContainer expected, FeatureSetContainer actual) {
+
+        Assert.assertEquals(expected.size(), actual.size());
+
+        Iterator<FeatureSet> actualIter = actual.iterator();
+        for (FeatureSet featureSet : expected) {
+
+            FeatureSet actualFeatureSet = actualIter.next();
+            Assert.assertEquals(featureSet.getIndex(), actualFeatureSet.getIndex());
+            Assert.assertEquals(featureSet.size(), actualFeatureSet.size());
+
+            for (Feature feature : featureSet) {
+                Feature actualFeature = actualFeatureSet.getFeature(feature.getId());
+                Assert.assertEquals(getProperties(feature), getProperties(actualFeature));
+            }
+        }
+        Assert.assertFalse(actualIter.hasNext());
+    }
+
+    private List<String> getProperties(Feature feature) {
+
+        List<String> properties = new ArrayList<>();
+        if (feature.hasProperty(PropertyType.Isotope)) {
+            for (Isotope isotope : feature.getProperty(PropertyType.Isotope, Isotope.class)) {
+                properties.add(isotope.getName() + ":" + isotope.getValue(Integer.class) + ":" +
+                        isotope.getParentId() + ":" + isotope.getChildId());
+            }
+        }
+        if (feature.hasProperty(PropertyType.Adduct)) {
+            for (Adduct adduct : feature.getProperty(PropertyType.Adduct, Adduct.class)) {
+                properties.add(adduct.getName() + ":" + adduct.getValue(Double.class) + ":" + adduct.getParentId() +
+                        ":" + adduct.getChildId());
+            }
+        }
+        Collections.sort(properties);
+        return properties;
+    }
+
+    private int countAnnotated(FeatureSetContainer featureSetContainer, PropertyType type) {
+
+        int count = 0;
+        for (FeatureSet featureSet : featureSetContainer) {
+            for (Feature feature : featureSet) {
+                if (feature.hasProperty(type)) count++;
+            }
+        }
+        return count;
+    }
+
+    private void assertEquals(FeatureSetContainer expected, FeatureSetContainer actual) {
+
+        Assert.assertEquals(expected.size(), actual.size());
+
+        Iterator<FeatureSet> actualIter = actual.iterator();
+        for (FeatureSet featureSet : expected) {
+
+            Assert.assertTrue(actualIter.hasNext());
+            FeatureSet actualFeatureSet = actualIter.next();
+
+            Assert.assertEquals(featureSet.getIndex(), actualFeatureSet.getIndex());
+            Assert.assertEquals(featureSet.getRetentionTime(), actualFeatureSet.getRetentionTime());
+            Assert.assertEquals(featureSet.getData(), actualFeatureSet.getData());
+            Assert.assertEquals(featureSet.size(), actualFeatureSet.size());
+
+            Iterator<Feature> actualFeatureIter = actualFeatureSet.iterator();
+            for (Feature feature : featureSet) FeatureAssert.assertEquals(feature, actualFeatureIter.next());
+        }
+        Assert.assertFalse(actualIter.hasNext());
+    }
+
+    private FeatureSetContainer buildFeatureSets(FeatureContainer featureContainer) {
+
+        FeatureSetContainer featureSetContainer =
+                MemoryContainerBuilder.getInstance().newInstance(FeatureSetContainer.class, "sets",
+                        Constants.ION_MODE.POSITIVE);
+
+        // groups of consecutive features as pseudo spectra
+        int index = 1;
+        Iterator<Feature> featureIter = featureContainer.iterator();
+        while (featureIter.hasNext()) {
+
+            Set<Feature> features = new HashSet<>();
+            XYList mzIntList = new XYList();
+            Range rtRange = null;
+            double rt = 0;
+            for (int i = 0; i < 5 && featureIter.hasNext(); i++) {
+                Feature feature = featureIter.next();
+                features.add(feature);
+                mzIntList.add(feature.getMzIntDp());
+                if (rtRange == null) rtRange = new ExtendableRange(feature.getRetentionTime());
+                else rtRange.extendRange(feature.getRetentionTime());
+                rt += feature.getRetentionTime() / 5;
+            }
+            featureSetContainer.addFeatureSet(new FeatureSetImpl(index++, mzIntList, rtRange, rt, features));
+        }
+        featureSetContainer.finaliseFile();
+
+        return featureSetContainer;
+    }
+
+    private FeatureSetContainer buildSpectra(Random random) {
+
+        FeatureSetContainer featureSetContainer =
+                MemoryContainerBuilder.getInstance().newInstance(FeatureSetContainer.class, "spectra",
+                        Constants.ION_MODE.POSITIVE);
+
+        // envelopes of charge 1-3 with adducts and unrelated features, the intensity ratios are partly off
+        int id = 1;
+        for (int index = 1; index <= 100; index++) {
+
+            Set<Feature> features = new HashSet<>();
+            for (int k = 0; k < 40; k++) {
+                double mz = 200 + random.nextDouble() * 600;
+                double intensity = 10000 + random.nextDouble() * 100000;
+                double spacing = 1.0033 / (1 + random.nextInt(3));
+                for (int n = 0; n < 3; n++) {
+                    double nmz = mz + n * spacing + (random.nextDouble() - 0.5) * 2 * mz / Constants.PPM;
+                    features.add(buildFeature(id++, nmz, intensity * Math.pow(0.05 + random.nextDouble() * 0.5, n)));
+                }
+                for (AdductSingle adduct : ADDUCTS) {
+                    if (random.nextBoolean()) {
+                        features.add(buildFeature(id++, mz + adduct.getMass(), intensity * random.nextDouble()));
+                    }
+                }
+            }
+            for (int k = 0; k < 40; k++) {
+                features.add(buildFeature(id++, 200 + random.nextDouble() * 600, random.nextDouble() * 100000));
+            }
+
+            XYList mzIntList = new XYList();
+            for (Feature feature : features) mzIntList.add(feature.getMzIntDp());
+            featureSetContainer.addFeatureSet(new FeatureSetImpl(index, mzIntList, new ExtendableRange(index, index),
+                    index, features));
+        }
+        featureSetContainer.finaliseFile();
+
+        return featureSetContainer;
+    }
+
+    private Feature buildFeature(int id, double mz, double intensity) {
+
+        // distinct times keep features of equal m/z and intensity apart
+        return new FeatureImpl(id, new XYPoint(mz, intensity), id, new ExtendableRange(mz, mz));
+    }
+
+    private ParameterMap getFinderParams(FeatureSetContainer featureSetContainer, int parallelism) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.MZ_WINDOW_PPM, 10d);
+        params.put(Parameter.ADDUCT_LIST, new ArrayList<>(ADDUCTS));
+        params.put(Parameter.FEATURE_SET_CONTAINER, featureSetContainer);
+        params.put(Parameter.PARALLELISM, parallelism);
+        return params;
+    }
+
+    private ParameterMap getDeconvolutionParams(ScanContainer scanContainer, FeatureContainer featureContainer,
+            int parallelism) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.CENTER, true);
+        params.put(Parameter.NOISE_FACTOR, 3);
+        params.put(Parameter.SCAN_CONTAINER, scanContainer);
+        params.put(Parameter.FEATURE_CONTAINER, featureContainer);
+        params.put(Parameter.PARALLELISM, parallelism);
+        return params;
+    }
+
+    private ParameterMap getFilterParams(FeatureSetContainer featureSetContainer, int parallelism) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.MZ_RANGE, new ExtendableRange(100, 800));
+        params.put(Parameter.TIME_RANGE, new ExtendableRange(0, 10000));
+        params.put(Parameter.MIN_FEATURE_INTENSITY, 5000d);
+        params.put(Parameter.KEEP_ISOTOPES, false);
+        params.put(Parameter.MS_LEVEL, Constants.MSN.MS1);
+        params.put(Parameter.FEATURE_SET_CONTAINER, featureSetContainer);
+        params.put(Parameter.PARALLELISM, parallelism);
+        return params;
+    }
+
+    private static void busyWait(int iterations) {
+
+        double sum = 0;
+        for (int i = 0; i < iterations * 1000; i++) sum += Math.sqrt(i);
+        if (sum < 0) throw new IllegalStateException();
+    }
+}
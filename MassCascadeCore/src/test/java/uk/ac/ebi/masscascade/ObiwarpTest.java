@@ -22,13 +22,18 @@
 
 package uk.ac.ebi.masscascade;
 
+import junit.framework.Assert;
 import org.junit.Test;
 import uk.ac.ebi.masscascade.alignment.Obiwarp;
+import uk.ac.ebi.masscascade.alignment.ObiwarpAligner;
 import uk.ac.ebi.masscascade.alignment.ObiwarpHelper;
 import uk.ac.ebi.masscascade.background.NoiseReduction;
+import uk.ac.ebi.masscascade.commons.FileLoader;
 import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.featurebuilder.SequentialFeatureBuilder;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
+import uk.ac.ebi.masscascade.interfaces.Feature;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.io.PsiMzmlReader;
@@ -38,6 +43,13 @@ import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
 
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ObiwarpTest {
 
@@ -72,7 +84,7 @@ public class ObiwarpTest {
 
         // build the parameter map for the noise reduction task
         params = new ParameterMap();
-        params.put(Parameter.SCAN_WINDOW, 10);
+        params.put(Parameter.MIN_FEATURE_WIDTH, 10);
         params.put(Parameter.MZ_WINDOW_PPM, 10d);
         params.put(Parameter.SCAN_CONTAINER, outContainer11);
 
@@ -81,7 +93,7 @@ public class ObiwarpTest {
         ScanContainer outContainer21 = (ScanContainer) noiseTask.call();
 
         params = new ParameterMap();
-        params.put(Parameter.SCAN_WINDOW, 10);
+        params.put(Parameter.MIN_FEATURE_WIDTH, 10);
         params.put(Parameter.MZ_WINDOW_PPM, 10d);
         params.put(Parameter.SCAN_CONTAINER, outContainer12);
 
@@ -108,15 +120,10 @@ public class ObiwarpTest {
         chromatogramTask = new SequentialFeatureBuilder(params);
         FeatureContainer outContainer32 = (FeatureContainer) chromatogramTask.call();
 
-        ObiwarpHelper obiHelper =
-                new ObiwarpHelper(0.25, new ExtendableRange(0, 1000), 1.5, new ExtendableRange(0, 1000));
-        File refFile = obiHelper.buildLmataFile(outContainer31);
-
         params = new ParameterMap();
-        params.put(Parameter.REFERENCE_FILE, refFile);
+        params.put(Parameter.REFERENCE_FEATURE_CONTAINER, outContainer31);
         params.put(Parameter.TIME_WINDOW, 1d);
         params.put(Parameter.FEATURE_CONTAINER, outContainer32);
-        params.put(Parameter.EXECUTABLE, "C:/Users/stephan/Mass Spectrometry/Obiwarp/obiwarp.exe");
         params.put(Parameter.GAP_INIT, 0.1);
         params.put(Parameter.GAP_EXTEND, 0.5);
         params.put(Parameter.RESPONSE, 100d);
@@ -128,6 +135,159 @@ public class ObiwarpTest {
         CallableTask obiwarpTask = new Obiwarp(params);
         FeatureContainer outContainer42 = (FeatureContainer) obiwarpTask.call();
 
-        refFile.delete();
+        Assert.assertEquals(outContainer32.size(), outContainer42.size());
+        Iterator<Feature> alignedIterator = outContainer42.iterator();
+        for (Feature feature : outContainer32) {
+            Feature alignedFeature = alignedIterator.next();
+            Assert.assertEquals(feature.getMz(), alignedFeature.getMz());
+            Assert.assertTrue(Math.abs(feature.getRetentionTime() - alignedFeature.getRetentionTime()) < 60);
+        }
+    }
+
+    @Test
+    public void testSelfAlignment() {
+
+        float[][] matrix = buildMatrix(new Random(42), 80, 40);
+        double[] times = new double[matrix.length];
+        for (int i = 0; i < times.length; i++) times[i] = 60 + i * 1.5;
+
+        ObiwarpAligner aligner = new ObiwarpAligner(matrix, times);
+        double[] alignedTimes = aligner.align(matrix, 100, 0.1, 0.5);
+
+        Assert.assertEquals(times.length, alignedTimes.length);
+        for (int i = 0; i < times.length; i++) Assert.assertEquals(times[i], alignedTimes[i], 1e-9);
+    }
+
+    @Test
+    public void testShift() {
+
+        int shift = 5;
+        float[][] matrix = buildMatrix(new Random(7), 80, 40);
+        double[] times = new double[matrix.length];
+        for (int i = 0; i < times.length; i++) times[i] = 60 + i * 1.5;
+
+        // sample time bin j holds the signal of reference time bin j + shift
+        float[][] sample = new float[matrix.length - shift][];
+        for (int j = 0; j < sample.length; j++) sample[j] = matrix[j + shift].clone();
+
+        ObiwarpAligner aligner = new ObiwarpAligner(matrix, times);
+        double[] alignedTimes = aligner.align(sample, 100, 0.1, 0.5);
+
+        Assert.assertEquals(sample.length, alignedTimes.length);
+        // the first sample bin is pinned to the first reference bin by the path start
+        for (int j = 1; j < sample.length; j++) Assert.assertEquals(times[j + shift], alignedTimes[j], 1e-9);
+    }
+
+    @Test
+    public void testSelfAlignmentTask() {
+
+        FeatureContainer featureContainer = FileLoader.getProfileContainer(FileLoader.TESTFILE.SAMPLE);
+
+        ExtendableRange timeRange = getTimeRange(featureContainer);
+
+        // the second run hits the cached reference, the third uses a different binning of the same reference
+        assertSelfAlignment(featureContainer, featureContainer, 1.5, timeRange);
+        assertSelfAlignment(featureContainer, featureContainer, 1.5, timeRange);
+        assertSelfAlignment(featureContainer, featureContainer, 3, timeRange);
+
+        ObiwarpHelper helper = new ObiwarpHelper(0.25, new ExtendableRange(0, 1000), 1.5, timeRange);
+        File lmataFile = helper.buildLmataFile(featureContainer);
+        try {
+            assertSelfAlignment(lmataFile, featureContainer, 1.5, timeRange);
+        } finally {
+            lmataFile.delete();
+        }
+    }
+
+    @Test
+    public void testReferenceCache() throws Exception {
+
+        final FeatureContainer featureContainer = FileLoader.getProfileContainer(FileLoader.TESTFILE.SAMPLE);
+        final ExtendableRange timeRange = getTimeRange(featureContainer);
+
+        ObiwarpHelper helper = new ObiwarpHelper(0.25, new ExtendableRange(0, 1000), 1.5, timeRange);
+        File lmataFile = helper.buildLmataFile(featureContainer);
+        try {
+            Obiwarp.clearAligners();
+            assertSelfAlignment(lmataFile, featureContainer, 1.5, timeRange);
+        } finally {
+            lmataFile.delete();
+        }
+
+        // an equal but distinct file instance resolves to the reference prepared before the file was deleted
+        File sameFile = new File(lmataFile.getAbsolutePath());
+        assertSelfAlignment(sameFile, featureContainer, 1.5, timeRange);
+
+        Obiwarp.clearAligners();
+        try {
+            assertSelfAlignment(sameFile, featureContainer, 1.5, timeRange);
+            Assert.fail("Cleared reference was not read again.");
+        } catch (MassCascadeException exception) {
+            // expected, the lmata file is gone
+        }
+
+        // concurrent tasks with the same reference container share a single reference matrix
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    assertSelfAlignment(featureContainer, featureContainer, 1.5, timeRange);
+                }
+            }));
+        }
+        executor.shutdown();
+        for (Future<?> future : futures) future.get();
+
+        Obiwarp.clearAligners();
+    }
+
+    private void assertSelfAlignment(Object reference, FeatureContainer featureContainer, double timeBinSize,
+            ExtendableRange timeRange) {
+
+        ParameterMap params = new ParameterMap();
+        if (reference instanceof File) params.put(Parameter.REFERENCE_FILE, reference);
+        else params.put(Parameter.REFERENCE_FEATURE_CONTAINER, reference);
+        params.put(Parameter.FEATURE_CONTAINER, featureContainer);
+        params.put(Parameter.GAP_INIT, 0.1);
+        params.put(Parameter.GAP_EXTEND, 0.5);
+        params.put(Parameter.RESPONSE, 100d);
+        params.put(Parameter.BIN_WIDTH_MZ, 0.25);
+        params.put(Parameter.MZ_RANGE, new ExtendableRange(0, 1000));
+        params.put(Parameter.BIN_WIDTH_RT, timeBinSize);
+        params.put(Parameter.TIME_RANGE, timeRange);
+
+        FeatureContainer alignedContainer = (FeatureContainer) new Obiwarp(params).call();
+
+        Assert.assertEquals(featureContainer.size(), alignedContainer.size());
+        Iterator<Feature> alignedIterator = alignedContainer.iterator();
+        for (Feature feature : featureContainer) {
+            Feature alignedFeature = alignedIterator.next();
+            Assert.assertEquals(feature.getRetentionTime(), alignedFeature.getRetentionTime(), 1e-6);
+            Assert.assertEquals(feature.getMz(), alignedFeature.getMz());
+        }
+    }
+
+    private ExtendableRange getTimeRange(FeatureContainer featureContainer) {
+
+        double minRt = Double.MAX_VALUE;
+        double maxRt = -Double.MAX_VALUE;
+        for (Feature feature : featureContainer) {
+            minRt = Math.min(minRt, feature.getData().get(0).x);
+            maxRt = Math.max(maxRt, feature.getData().get(feature.getData().size() - 1).x);
+        }
+        return new ExtendableRange(Math.floor(minRt), Math.ceil(maxRt) + 1);
+    }
+
+    private float[][] buildMatrix(Random random, int nTimeBins, int nMzBins) {
+
+        // a few peaks per time bin, so every time bin has a distinct pattern
+        float[][] matrix = new float[nTimeBins][nMzBins];
+        for (float[] row : matrix) {
+            for (int k = 0; k < 4; k++) row[random.nextInt(nMzBins)] += 100 + random.nextInt(10000);
+        }
+        return matrix;
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.background.BaselineSubtraction;
+import uk.ac.ebi.masscascade.background.CodaFilter;
+import uk.ac.ebi.masscascade.background.DurbinWatsonFilter;
+import uk.ac.ebi.masscascade.background.NoiseReduction;
+import uk.ac.ebi.masscascade.commons.FeatureAssert;
+import uk.ac.ebi.masscascade.commons.FeatureLoader;
+import uk.ac.ebi.masscascade.commons.FileLoader;
+import uk.ac.ebi.masscascade.commons.ScanAssert;
+import uk.ac.ebi.masscascade.core.feature.FeaturePipeline;
+import uk.ac.ebi.masscascade.core.scan.ScanPipeline;
+import uk.ac.ebi.masscascade.filter.ScanFilter;
+import uk.ac.ebi.masscascade.interfaces.FeatureStreamTask;
+import uk.ac.ebi.masscascade.interfaces.ScanStreamTask;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.smoothing.RunningMedianSmoothing;
+import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PipelineTest {
+
+    @Test
+    public void testScanPipeline() {
+
+        ScanContainer raw = FileLoader.getRawContainer(FileLoader.TESTFILE.SAMPLE);
+
+        ScanContainer filtered = (ScanContainer) new ScanFilter(getScanParams(raw)).call();
+        ScanContainer smoothed = new RunningMedianSmoothing(getScanParams(filtered)).call();
+        ScanContainer expected = new NoiseReduction(getScanParams(smoothed)).call();
+
+        ParameterMap params = getScanParams(raw);
+        List<ScanStreamTask> stages = new ArrayList<>();
+        stages.add(new ScanFilter(params));
+        stages.add(new RunningMedianSmoothing(params));
+        stages.add(new NoiseReduction(params));
+        ScanContainer streamed = new ScanPipeline(stages).run(raw, "streamed");
+
+        Assert.assertTrue(expected.size() > 0);
+        ScanAssert.assertEquals(expected, streamed);
+    }
+
+    @Test
+    public void testFeaturePipeline() {
+
+        FeatureContainer profiles = FileLoader.getProfileContainer(FileLoader.TESTFILE.SAMPLE);
+        Assert.assertTrue(profiles.size() > 0);
+
+        FeatureContainer subtracted = new BaselineSubtraction(getFeatureParams(profiles)).call();
+        FeatureContainer durbinFiltered = new DurbinWatsonFilter(getFeatureParams(subtracted)).call();
+        FeatureContainer expected = new CodaFilter(getFeatureParams(durbinFiltered)).call();
+        Assert.assertTrue(expected.size() > 0);
+        Assert.assertTrue(expected.size() < profiles.size());
+
+        ParameterMap params = getFeatureParams(profiles);
+        List<FeatureStreamTask> stages = new ArrayList<>();
+        stages.add(new BaselineSubtraction(params));
+        stages.add(new DurbinWatsonFilter(params));
+        stages.add(new CodaFilter(params));
+        FeatureContainer streamed = new FeaturePipeline(stages).run(profiles, "streamed");
+
+        FeatureAssert.assertEquals(expected, streamed);
+    }
+
+    @Test
+    public void testScanToFeaturePipeline() {
+
+        ScanContainer raw = FileLoader.getRawContainer(FileLoader.TESTFILE.SAMPLE);
+
+        List<ScanStreamTask> stages = new ArrayList<>();
+        stages.add(new ScanFilter(getScanParams(raw)));
+        stages.add(new RunningMedianSmoothing(getScanParams(raw)));
+        ScanContainer streamed = new ScanPipeline(stages).run(raw, "streamed");
+
+        ScanContainer filtered = (ScanContainer) new ScanFilter(getScanParams(raw)).call();
+        ScanContainer expected = new RunningMedianSmoothing(getScanParams(filtered)).call();
+
+        FeatureAssert.assertEquals(FeatureLoader.buildFeatures(expected), FeatureLoader.buildFeatures(streamed));
+    }
+
+    private ParameterMap getScanParams(ScanContainer scanContainer) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.MZ_RANGE, new ExtendableRange(100, 800));
+        params.put(Parameter.TIME_RANGE, new ExtendableRange(0, 10000));
+        params.put(Parameter.SCAN_WINDOW, 10);
+        params.put(Parameter.MS_LEVEL, Constants.MSN.MS1);
+        params.put(Parameter.MIN_FEATURE_WIDTH, 4);
+        params.put(Parameter.MZ_WINDOW_PPM, 10d);
+        params.put(Parameter.SCAN_CONTAINER, scanContainer);
+        return params;
+    }
+
+    private ParameterMap getFeatureParams(FeatureContainer featureContainer) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.SCAN_WINDOW, 10);
+        params.put(Parameter.DURBIN, 3.5);
+        params.put(Parameter.CODA, 0.5);
+        params.put(Parameter.FEATURE_CONTAINER, featureContainer);
+        return params;
+    }
+}
@@ -24,8 +24,15 @@ package uk.ac.ebi.masscascade;
 
 import junit.framework.Assert;
 import org.junit.Test;
+import uk.ac.ebi.masscascade.commons.FeatureAssert;
+import uk.ac.ebi.masscascade.commons.FeatureLoader;
 import uk.ac.ebi.masscascade.commons.FileLoader;
+import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
+import uk.ac.ebi.masscascade.core.scan.ScanImpl;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
 
 public class ProfileBuilderTest {
 
@@ -36,4 +43,44 @@ public class ProfileBuilderTest {
 
         Assert.assertEquals(133, container.size());
     }
+
+    @Test
+    public void testBands() {
+
+        ScanContainer scanContainer = FileLoader.getRawContainer(FileLoader.TESTFILE.SAMPLE);
+        FeatureContainer expected = FeatureLoader.buildFeatures(scanContainer, 1);
+
+        for (int bands : new int[]{2, 3, 8, 32})
+            FeatureAssert.assertEquals(expected, FeatureLoader.buildFeatures(scanContainer, bands));
+    }
+
+    @Test
+    public void testBandEdges() {
+
+        // four bands over 100 - 200 m/z, the traces jitter across the band edges at 125, 150 and 175 m/z
+        double[] mzs = {100, 125, 150, 175, 200};
+        ScanContainer scanContainer = MemoryContainerBuilder.getInstance().newInstance(ScanContainer.class, "edges");
+        for (int i = 0; i < 20; i++) {
+
+            double jitter = (i % 2 == 0) ? 2e-6 : -2e-6;
+            double intensity = 5000 * Math.exp(-(i - 10) * (i - 10) / 8d);
+
+            double[] xs = new double[mzs.length];
+            double[] ys = new double[mzs.length];
+            for (int j = 0; j < mzs.length; j++) {
+                xs[j] = (j == 0 || j == mzs.length - 1) ? mzs[j] : mzs[j] * (1 + jitter);
+                ys[j] = intensity + j;
+            }
+            scanContainer.addScan(
+                    new ScanImpl(i + 1, Constants.MSN.MS1, Constants.ION_MODE.POSITIVE, new XYArray(xs, ys), i, -1,
+                            -1, -1));
+        }
+        scanContainer.finaliseFile(null);
+
+        FeatureContainer expected = FeatureLoader.buildFeatures(scanContainer, 1);
+        Assert.assertEquals(mzs.length, expected.size());
+        for (int bands : new int[]{2, 4, 8}) {
+            FeatureAssert.assertEquals(expected, FeatureLoader.buildFeatures(scanContainer, bands));
+        }
+    }
 }
@@ -25,8 +25,15 @@ package uk.ac.ebi.masscascade;
 import junit.framework.Assert;
 import org.junit.Test;
 import uk.ac.ebi.masscascade.commons.FileLoader;
+import uk.ac.ebi.masscascade.commons.ScanAssert;
+import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.io.PsiMzmlStreamReader;
 import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+
+import java.io.File;
 
 public class PsiMzmlReaderTest {
 
@@ -40,4 +47,18 @@ public class PsiMzmlReaderTest {
         Assert.assertEquals(102, (int) container.getScan(1).getBasePeak().get(0).x);
         Assert.assertEquals(Constants.ION_MODE.NEGATIVE, container.getScan(5).getIonMode());
     }
+
+    @Test
+    public void testStreamReader() {
+
+        File file = FileLoader.getFile(FileLoader.TESTFILE.SAMPLE);
+        ScanContainer container = MemoryContainerBuilder.getInstance().newInstance(ScanContainer.class, file.getName());
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.DATA_FILE, file);
+        params.put(Parameter.SCAN_CONTAINER, container);
+
+        ScanContainer streamed = new PsiMzmlStreamReader(params).call();
+        ScanAssert.assertEquals(FileLoader.getRawContainer(FileLoader.TESTFILE.SAMPLE), streamed);
+    }
 }
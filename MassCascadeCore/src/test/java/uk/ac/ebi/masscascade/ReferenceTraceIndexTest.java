@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.background.ReferenceTraceIndex;
+import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
+import uk.ac.ebi.masscascade.utilities.xyz.XYZTrace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class ReferenceTraceIndexTest {
+
+    private static final double TIME_WINDOW = 5;
+
+    @Test
+    public void testSelectAndClosest() {
+
+        Random random = new Random(42);
+        List<XYZTrace> traces = buildTraces(random, 500);
+        ReferenceTraceIndex index = new ReferenceTraceIndex(traces, TIME_WINDOW);
+        Assert.assertEquals(traces.size(), index.size());
+
+        for (int i = 0; i < 2000; i++) {
+
+            // scan times on the same grid as the trace points, so window edges coincide with trace starts and ends
+            double rt = random.nextInt(1100) - 50;
+            double lower = rt - TIME_WINDOW;
+            double upper = rt + TIME_WINDOW;
+
+            TreeSet<Double> selected = new TreeSet<>();
+            for (XYZTrace trace : traces) {
+                if (lower <= trace.get(trace.size() - 1).x && upper >= trace.get(0).x) selected.add(trace.getAvg());
+            }
+            Assert.assertEquals(selected.size(), index.select(rt));
+
+            for (int j = 0; j < 20; j++) {
+
+                // queries on a grid of half the average spacing, so exact matches and midpoints occur
+                double mz = 99 + random.nextInt(16 * 220) / 16d;
+                int id = index.closest(mz);
+
+                if (selected.isEmpty()) {
+                    Assert.assertEquals(-1, id);
+                    continue;
+                }
+
+                Double floor = selected.floor(mz);
+                Double higher = selected.higher(mz);
+                double deltaFloor = (floor == null) ? Double.MAX_VALUE : mz - floor;
+                double deltaHigher = (higher == null) ? Double.MAX_VALUE : higher - mz;
+                double expected = (deltaFloor <= deltaHigher) ? floor : higher;
+
+                Assert.assertEquals(expected, index.getAvg(id));
+            }
+        }
+    }
+
+    @Test
+    public void testTieBreak() {
+
+        List<XYZTrace> traces = new ArrayList<>();
+        traces.add(buildTrace(101, 10, 20, 1000));
+        traces.add(buildTrace(100, 10, 20, 1000));
+        ReferenceTraceIndex index = new ReferenceTraceIndex(traces, TIME_WINDOW);
+
+        Assert.assertEquals(2, index.select(15));
+        Assert.assertEquals(100d, index.getAvg(index.closest(100.5)));
+        Assert.assertEquals(101d, index.getAvg(index.closest(101)));
+        Assert.assertEquals(100d, index.getAvg(index.closest(100)));
+        Assert.assertEquals(101d, index.getAvg(index.closest(100.5 + 1d / 1024)));
+        Assert.assertEquals(100d, index.getAvg(index.closest(50)));
+        Assert.assertEquals(101d, index.getAvg(index.closest(150)));
+
+        // inclusive window edges
+        Assert.assertEquals(2, index.select(5));
+        Assert.assertEquals(2, index.select(25));
+        Assert.assertEquals(0, index.select(4.5));
+        Assert.assertEquals(0, index.select(25.5));
+        Assert.assertEquals(-1, index.closest(100));
+    }
+
+    @Test
+    public void testMaxIntensity() {
+
+        Random random = new Random(7);
+        List<XYZTrace> traces = buildTraces(random, 200);
+        ReferenceTraceIndex index = new ReferenceTraceIndex(traces, TIME_WINDOW);
+
+        for (int i = 0; i < 5000; i++) {
+
+            double rt = random.nextInt(2200) / 2d - 50;
+            double lower = rt - TIME_WINDOW;
+            double upper = rt + TIME_WINDOW;
+
+            index.select(rt);
+            double mz = 99 + random.nextInt(8 * 220) / 8d;
+            int id = index.closest(mz);
+            if (id == -1) continue;
+
+            XYZTrace trace = null;
+            for (XYZTrace candidate : traces) {
+                if (candidate.getAvg() == index.getAvg(id)) trace = candidate;
+            }
+
+            // the range is half-open: points at the lower bound count, points at the upper bound do not
+            double expected = 0;
+            for (XYZPoint dp : trace) {
+                if (dp.x >= lower && dp.x < upper) expected = Math.max(expected, dp.z);
+            }
+
+            Assert.assertEquals(expected, index.getMaxIntensity(id, lower, upper));
+        }
+    }
+
+    @Test
+    public void testMaxIntensityBounds() {
+
+        List<XYZTrace> traces = new ArrayList<>();
+        XYZTrace trace = buildTrace(100, 10, 20, 1);
+        trace.get(0).z = 500;
+        trace.get(10).z = 900;
+        traces.add(trace);
+        ReferenceTraceIndex index = new ReferenceTraceIndex(traces, TIME_WINDOW);
+
+        Assert.assertEquals(500d, index.getMaxIntensity(0, 10, 11));
+        Assert.assertEquals(500d, index.getMaxIntensity(0, 5, 20));
+        Assert.assertEquals(900d, index.getMaxIntensity(0, 5, 21));
+        Assert.assertEquals(900d, index.getMaxIntensity(0, 20, 30));
+        Assert.assertEquals(1d, index.getMaxIntensity(0, 11, 20));
+        Assert.assertEquals(0d, index.getMaxIntensity(0, 0, 10));
+        Assert.assertEquals(0d, index.getMaxIntensity(0, 21, 30));
+        Assert.assertEquals(0d, index.getMaxIntensity(0, 15, 15));
+    }
+
+    @Test
+    public void testEmpty() {
+
+        ReferenceTraceIndex index = new ReferenceTraceIndex(new ArrayList<XYZTrace>(), TIME_WINDOW);
+
+        Assert.assertEquals(0, index.size());
+        Assert.assertEquals(0, index.select(100));
+        Assert.assertEquals(-1, index.closest(100));
+    }
+
+    private List<XYZTrace> buildTraces(Random random, int nTraces) {
+
+        // distinct averages on a grid of 1/8 m/z units, traces with one point per second
+        TreeSet<Double> avgs = new TreeSet<>();
+        while (avgs.size() < nTraces) avgs.add(100 + random.nextInt(8 * 200) / 8d);
+
+        List<XYZTrace> traces = new ArrayList<>();
+        for (double avg : avgs) {
+            int start = random.nextInt(1000);
+            int length = 1 + random.nextInt(60);
+            XYZTrace trace = buildTrace(avg, start, start + length - 1, 0);
+            for (XYZPoint dp : trace) dp.z = random.nextInt(10000);
+            traces.add(trace);
+        }
+        Collections.shuffle(traces, random);
+
+        return traces;
+    }
+
+    private XYZTrace buildTrace(double avg, int start, int end, double intensity) {
+
+        List<XYZPoint> dps = new ArrayList<>();
+        for (int rt = start; rt <= end; rt++) dps.add(new XYZPoint(rt, avg, intensity));
+        return new XYZTrace(avg, dps, avg);
+    }
+}
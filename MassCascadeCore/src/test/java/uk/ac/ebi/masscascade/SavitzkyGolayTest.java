@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.commons.FileLoader;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+import uk.ac.ebi.masscascade.smoothing.SavitzkyGolayEngine;
+import uk.ac.ebi.masscascade.smoothing.SavitzkyGolayFilter;
+
+import java.util.Random;
+
+public class SavitzkyGolayTest {
+
+    @Test
+    public void testRandomTraces() {
+
+        Random random = new Random(17);
+        for (int n = 0; n < 500; n++) {
+
+            int length = random.nextInt(200);
+            double[] y = new double[length];
+            for (int i = 0; i < length; i++) y[i] = random.nextDouble() * 1e5 - ((i % 7 == 0) ? 2e4 : 0);
+
+            assertSmooth(y, 1 + random.nextInt(15), 1 + random.nextInt(4));
+        }
+    }
+
+    @Test
+    public void testFeatureTraces() {
+
+        FeatureContainer profiles = FileLoader.getProfileContainer(FileLoader.TESTFILE.SAMPLE);
+        Assert.assertTrue(profiles.size() > 0);
+
+        // the smoothing task parameters: padded traces and windows as set by SCAN_WINDOW
+        for (int window : new int[]{3, 5, 10}) {
+            for (Feature feature : profiles) assertSmooth(feature.getTrace(window).getData().getYs(), window, 2);
+        }
+    }
+
+    private void assertSmooth(double[] y, int window, int order) {
+
+        int nl = (int) Math.floor(window / 2d);
+        int nr = (int) Math.ceil(window / 2d);
+        if (nl + nr < order) order = nl + nr;
+
+        double[] kernel = SavitzkyGolayEngine.getSmoothingKernel(nl, nr, order);
+        double[] expected = new SavitzkyGolayFilter(nl, nr).smooth(y, SavitzkyGolayFilter.computeSGCoefficients(nl,
+                nr, order));
+
+        double[] actual = new double[y.length];
+        SavitzkyGolayEngine.smooth(y, y.length, kernel, nl, actual);
+
+        // the previous smoother accumulates in single precision
+        double scale = 0;
+        for (double value : y) scale = Math.max(scale, Math.abs(value));
+        double kernelSum = 0;
+        for (double coefficient : kernel) kernelSum += Math.abs(coefficient);
+        double delta = 1e-5 * scale * kernelSum;
+
+        Assert.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < y.length; i++) Assert.assertEquals(expected[i], actual[i], delta);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import com.google.common.collect.HashMultimap;
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
+import uk.ac.ebi.masscascade.core.scan.ScanImpl;
+import uk.ac.ebi.masscascade.core.scan.ScanIndex;
+import uk.ac.ebi.masscascade.featurebuilder.FeatureMsnHelper;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ScanIndexTest {
+
+    @Test
+    public void testFindAscending() {
+
+        // more scans than the initial capacity, scan indices with gaps
+        List<Scan> scans = buildScans(new Random(42), 3000);
+        ScanIndex scanIndex = new ScanIndex();
+        for (Scan scan : scans) scanIndex.add(scan, -1);
+
+        Assert.assertEquals(scans.size(), scanIndex.size());
+        assertFind(scans, scanIndex);
+    }
+
+    @Test
+    public void testFindUnordered() throws Exception {
+
+        List<Scan> scans = buildScans(new Random(7), 3000);
+        Collections.shuffle(scans, new Random(7));
+
+        final ScanIndex scanIndex = new ScanIndex();
+        for (Scan scan : scans) scanIndex.add(scan, -1);
+        assertFind(scans, scanIndex);
+
+        // a scan added after a lookup invalidates the sorted order
+        Scan scan = new ScanImpl(-5, Constants.MSN.MS1, Constants.ION_MODE.POSITIVE, new XYArray(), 0, -1, -1, -1);
+        scans.add(scan);
+        scanIndex.add(scan, -1);
+        assertFind(scans, scanIndex);
+
+        // the sorted order is built lazily by the first of several concurrent readers
+        final List<Scan> shuffledScans = new ArrayList<>(scans);
+        Collections.shuffle(shuffledScans, new Random(11));
+        final ScanIndex concurrentIndex = new ScanIndex();
+        for (Scan shuffledScan : shuffledScans) concurrentIndex.add(shuffledScan, -1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() {
+                    for (int pos = 0; pos < shuffledScans.size(); pos++) {
+                        if (concurrentIndex.find(shuffledScans.get(pos).getIndex()) != pos) return false;
+                    }
+                    return true;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        for (Future<Boolean> future : futures) Assert.assertTrue(future.get());
+    }
+
+    @Test
+    public void testColumns() {
+
+        List<Scan> scans = buildScans(new Random(3), 100);
+        ScanIndex scanIndex = new ScanIndex();
+        for (int pos = 0; pos < scans.size(); pos++) scanIndex.add(scans.get(pos), (pos % 3 == 0) ? -1 : pos * 100L);
+
+        for (int pos = 0; pos < scans.size(); pos++) {
+
+            Scan scan = scans.get(pos);
+            Assert.assertEquals(scan.getIndex(), scanIndex.getIndex(pos));
+            Assert.assertEquals(scan.getMsn(), scanIndex.getMsn(pos));
+            Assert.assertEquals(scan.getIonMode(), scanIndex.getIonMode(pos));
+            Assert.assertEquals(scan.getRetentionTime(), scanIndex.getRetentionTime(pos));
+            Assert.assertEquals(scan.getParentMz(), scanIndex.getParentMz(pos));
+            Assert.assertEquals(scan.getParentCharge(), scanIndex.getParentCharge(pos));
+            Assert.assertEquals(scan.getParentScan(), scanIndex.getParentScan(pos));
+            Assert.assertEquals(scan.getTotalIonCurrent(), scanIndex.getTotalIonCurrent(pos));
+            Assert.assertEquals((pos % 3 == 0) ? -1 : pos * 100L, scanIndex.getPointer(pos));
+        }
+    }
+
+    @Test
+    public void testParentLookup() {
+
+        // MS1 scans each followed by two MS2 scans on different precursors, the first with an MS3 scan
+        List<Scan> scans = new ArrayList<>();
+        int index = 1;
+        for (int i = 0; i < 20; i++) {
+
+            int ms1 = index++;
+            scans.add(new ScanImpl(ms1, Constants.MSN.MS1, Constants.ION_MODE.POSITIVE, new XYArray(), i, -1, -1, -1));
+
+            int ms2 = index++;
+            double mz = 100 + i;
+            scans.add(new ScanImpl(ms2, Constants.MSN.MS2, Constants.ION_MODE.POSITIVE, new XYArray(), i + 0.1, ms1, 1,
+                    mz));
+            scans.add(new ScanImpl(index++, Constants.MSN.MS2, Constants.ION_MODE.POSITIVE, new XYArray(), i + 0.2,
+                    ms1, 1, mz + 50));
+            scans.add(new ScanImpl(index++, Constants.MSN.MS3, Constants.ION_MODE.POSITIVE, new XYArray(), i + 0.3,
+                    ms2, 1, mz + 0.01));
+        }
+
+        // the memory container expects the first scan of each level in order, so shuffle whole MS1 blocks
+        List<List<Scan>> blocks = new ArrayList<>();
+        for (int i = 0; i < scans.size(); i += 4) blocks.add(scans.subList(i, i + 4));
+        Collections.shuffle(blocks, new Random(5));
+        List<Scan> shuffledScans = new ArrayList<>();
+        for (List<Scan> block : blocks) shuffledScans.addAll(block);
+
+        for (List<Scan> order : new List[]{scans, shuffledScans}) {
+
+            ScanContainer scanContainer =
+                    MemoryContainerBuilder.getInstance().newInstance(ScanContainer.class, "parents");
+            for (Scan scan : order) scanContainer.addScan(scan);
+            scanContainer.finaliseFile(null);
+
+            ScanIndex scanIndex = scanContainer.getScanIndex();
+            for (Scan scan : scans) {
+                int pos = scanIndex.find(scan.getIndex());
+                Assert.assertEquals(scan.getParentScan(), scanIndex.getParentScan(pos));
+                if (scan.getParentScan() != -1) Assert.assertTrue(scanIndex.find(scan.getParentScan()) != -1);
+            }
+
+            FeatureMsnHelper msnHelper = new FeatureMsnHelper(scanContainer);
+            for (int i = 0; i < 20; i++) {
+
+                int ms1 = 1 + 4 * i;
+                Assert.assertTrue(msnHelper.hasChildIds(ms1));
+                Assert.assertFalse(msnHelper.hasChildIds(ms1 + 1));
+
+                HashMultimap<Integer, Integer> childIds = msnHelper.getChildIds(ms1, 100 + i + 0.02);
+                Assert.assertEquals(2, childIds.size());
+                Assert.assertTrue(childIds.get(0).contains(ms1 + 1));
+                Assert.assertTrue(childIds.get(1).contains(ms1 + 3));
+
+                childIds = msnHelper.getChildIds(ms1, 150 + i);
+                Assert.assertEquals(1, childIds.size());
+                Assert.assertTrue(childIds.get(0).contains(ms1 + 2));
+
+                Assert.assertTrue(msnHelper.getChildIds(ms1, 125 + i).isEmpty());
+            }
+        }
+    }
+
+    private void assertFind(List<Scan> scans, ScanIndex scanIndex) {
+
+        int maxIndex = 0;
+        boolean[] present = new boolean[scans.size() * 4];
+        for (int pos = 0; pos < scans.size(); pos++) {
+            int index = scans.get(pos).getIndex();
+            Assert.assertEquals(pos, scanIndex.find(index));
+            if (index >= 0) present[index] = true;
+            maxIndex = Math.max(maxIndex, index);
+        }
+
+        for (int index = 0; index <= maxIndex + 1; index++) {
+            if (!present[index]) Assert.assertEquals(-1, scanIndex.find(index));
+        }
+        Assert.assertEquals(-1, scanIndex.find(-1));
+        Assert.assertEquals(-1, scanIndex.find(Integer.MAX_VALUE));
+    }
+
+    private List<Scan> buildScans(Random random, int nScans) {
+
+        Constants.MSN[] levels = {Constants.MSN.MS1, Constants.MSN.MS2, Constants.MSN.MS3};
+        Constants.ION_MODE[] ionModes = {Constants.ION_MODE.POSITIVE, Constants.ION_MODE.NEGATIVE, null};
+
+        List<Scan> scans = new ArrayList<>();
+        int index = 0;
+        for (int i = 0; i < nScans; i++) {
+
+            index += 1 + random.nextInt(3);
+            Constants.MSN msn = levels[random.nextInt(levels.length)];
+            int parentScan = (msn == Constants.MSN.MS1) ? -1 : index - 1;
+            double parentMz = (msn == Constants.MSN.MS1) ? -1 : 100 + random.nextInt(1000);
+            double[] xs = {100, 200};
+            double[] ys = {random.nextInt(1000), random.nextInt(1000)};
+
+            scans.add(new ScanImpl(index, msn, ionModes[random.nextInt(ionModes.length)], new XYArray(xs, ys), i * 0.5,
+                    parentScan, (msn == Constants.MSN.MS1) ? -1 : 1, parentMz));
+        }
+
+        return scans;
+    }
+}
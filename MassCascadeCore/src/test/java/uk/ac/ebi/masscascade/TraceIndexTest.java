@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.interfaces.Trace;
+import uk.ac.ebi.masscascade.utilities.DataUtils;
+import uk.ac.ebi.masscascade.utilities.xyz.TraceIndex;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+import uk.ac.ebi.masscascade.utilities.xyz.XYZPoint;
+import uk.ac.ebi.masscascade.utilities.xyz.XYZTrace;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TraceIndexTest {
+
+    @Test
+    public void testClosest() {
+
+        Random random = new Random(42);
+
+        // more traces than the initial capacity, anchors on a coarse grid to provoke exact matches and ties
+        double[] anchors = new double[3000];
+        for (int i = 0; i < anchors.length; i++) anchors[i] = 100 + random.nextInt(100000) / 100d;
+        Arrays.sort(anchors);
+
+        TraceIndex<XYZTrace> index = new TraceIndex<>();
+        TreeSet<Trace> traceSet = new TreeSet<>();
+        double lastAnchor = -1;
+        for (double anchor : anchors) {
+
+            if (anchor == lastAnchor) continue;
+            lastAnchor = anchor;
+
+            XYZTrace trace = new XYZTrace(new XYPoint(anchor, 1000), 1);
+            if (random.nextBoolean()) trace.add(new XYZPoint(2, anchor + (random.nextInt(5) - 2) / 100d, 1000));
+            index.add(trace, traceSet.size());
+            traceSet.add(trace);
+        }
+        index.commit();
+        Assert.assertEquals(traceSet.size(), index.size());
+
+        double[] queries = new double[5000];
+        for (int i = 0; i < queries.length; i++) queries[i] = 99 + random.nextInt(102000) / 100d;
+        Arrays.sort(queries);
+
+        for (double mz : queries) {
+
+            XYZTrace query = new XYZTrace(new XYPoint(mz, 1000), 1);
+            Trace expected = DataUtils.getClosestValue(query, traceSet);
+
+            int pos = index.closest(mz);
+            Assert.assertSame(expected, index.get(pos));
+            Assert.assertEquals(traceSet.contains(query), index.containsAnchor(mz));
+            if (index.containsAnchor(mz)) Assert.assertSame(traceSet.floor(query), index.get(index.floor()));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+
+        TraceIndex<XYZTrace> index = new TraceIndex<>();
+        Assert.assertTrue(index.isEmpty());
+        Assert.assertEquals(-1, index.closest(100));
+        Assert.assertFalse(index.containsAnchor(100));
+    }
+
+    @Test
+    public void testCommit() {
+
+        TraceIndex<XYZTrace> index = new TraceIndex<>();
+        XYZTrace t200 = trace(200);
+        XYZTrace t300 = trace(300);
+        XYZTrace t400 = trace(400);
+        index.add(t200, 1);
+        index.add(t300, 1);
+        index.add(t400, 1);
+        index.commit();
+        Assert.assertEquals(0, index.closedSize());
+
+        // extend 300, add 100 and 350, leave 200 and 400 open
+        XYZTrace t100 = trace(100);
+        XYZTrace t350 = trace(350);
+        index.add(t100, 2);
+        int pos = index.closest(300);
+        Assert.assertTrue(index.containsAnchor(300));
+        t300.add(new XYZPoint(2, 300, 1000));
+        index.extend(pos);
+        Assert.assertTrue(index.isExtended(pos));
+        index.closest(350);
+        index.add(t350, 2);
+        index.commit();
+
+        Assert.assertEquals(2, index.closedSize());
+        Assert.assertSame(t200, index.getClosed(0));
+        Assert.assertSame(t400, index.getClosed(1));
+        Assert.assertEquals(1, index.getClosedTag(1));
+
+        Assert.assertEquals(3, index.size());
+        Assert.assertSame(t100, index.get(0));
+        Assert.assertSame(t300, index.get(1));
+        Assert.assertSame(t350, index.get(2));
+        Assert.assertEquals(2, index.getTag(0));
+        Assert.assertEquals(1, index.getTag(1));
+        Assert.assertFalse(index.isExtended(1));
+
+        // traces added after the last commit are closed as well
+        XYZTrace t500 = trace(500);
+        index.add(t500, 3);
+        index.closeAll();
+        Assert.assertTrue(index.isEmpty());
+        Assert.assertEquals(4, index.closedSize());
+        Assert.assertSame(t100, index.getClosed(0));
+        Assert.assertSame(t500, index.getClosed(3));
+    }
+
+    private XYZTrace trace(double mz) {
+        return new XYZTrace(new XYPoint(mz, 1000), 1);
+    }
+}
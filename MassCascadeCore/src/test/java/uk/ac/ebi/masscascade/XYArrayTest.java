@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.core.scan.ScanImpl;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.xyz.XYArray;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.util.Collections;
+
+public class XYArrayTest {
+
+    @Test
+    public void testMerge() {
+
+        XYArray first = new XYArray(new double[]{1, 3, 5, 5}, new double[]{10, 30, 50, 51});
+        XYArray second = new XYArray(new double[]{2, 5, 6}, new double[]{20, 52, 60});
+
+        XYList expected = first.toXYList();
+        expected.addAll(second.toXYList());
+        Collections.sort(expected);
+
+        XYArray merged = XYArray.merge(first, second);
+        Assert.assertEquals(new XYArray(expected), merged);
+        Assert.assertEquals(50.0, merged.getY(3));
+        Assert.assertEquals(52.0, merged.getY(5));
+
+        Assert.assertSame(first, XYArray.merge(first, new XYArray()));
+        Assert.assertSame(second, XYArray.merge(new XYArray(), second));
+    }
+
+    @Test
+    public void testLengthCheck() {
+
+        double[] xs = {1, 2, 3};
+        double[] ys = {10, 20};
+
+        Assert.assertEquals(2, new XYArray(xs, ys, 2).size());
+
+        try {
+            new XYArray(xs, ys, 3);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            new XYArray(xs, ys, -1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testScanData() {
+
+        XYList xyList = new XYList();
+        xyList.add(new XYPoint(100.1, 5));
+        xyList.add(new XYPoint(200.2, 15));
+        Scan scan = new ScanImpl(1, Constants.MSN.MS1, Constants.ION_MODE.POSITIVE, xyList, 1.5, -1, -1, -1);
+
+        XYArray data = scan.getDataArray();
+        Assert.assertEquals(xyList, data.toXYList());
+        Assert.assertEquals(xyList, scan.getData());
+        Assert.assertEquals(15.0, scan.getBasePeak().get(0).y);
+    }
+}
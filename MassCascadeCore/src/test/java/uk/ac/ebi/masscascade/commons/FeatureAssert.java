@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade.commons;
+
+import junit.framework.Assert;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+
+import java.util.Iterator;
+
+public class FeatureAssert {
+
+    public static void assertEquals(FeatureContainer expected, FeatureContainer actual) {
+
+        Assert.assertEquals(expected.size(), actual.size());
+
+        Iterator<Feature> actualIter = actual.iterator();
+        for (Feature feature : expected) {
+            Assert.assertTrue(actualIter.hasNext());
+            assertEquals(feature, actualIter.next());
+        }
+        Assert.assertFalse(actualIter.hasNext());
+    }
+
+    public static void assertEquals(Feature expected, Feature actual) {
+
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(expected.getMz(), actual.getMz());
+        Assert.assertEquals(expected.getRetentionTime(), actual.getRetentionTime());
+        Assert.assertEquals(expected.getIntensity(), actual.getIntensity());
+        Assert.assertEquals(expected.getData(), actual.getData());
+        Assert.assertEquals(expected.getMsnScans(), actual.getMsnScans());
+    }
+}
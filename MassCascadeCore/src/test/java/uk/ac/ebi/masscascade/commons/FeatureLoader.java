@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade.commons;
+
+import uk.ac.ebi.masscascade.featurebuilder.SequentialFeatureBuilder;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+
+public class FeatureLoader {
+
+    public static FeatureContainer buildFeatures(ScanContainer scanContainer) {
+        return buildFeatures(scanContainer, 1);
+    }
+
+    public static FeatureContainer buildFeatures(ScanContainer scanContainer, int bands) {
+
+        ParameterMap params = new ParameterMap();
+        params.put(Parameter.MZ_WINDOW_PPM, 10d);
+        params.put(Parameter.MIN_FEATURE_INTENSITY, 1000d);
+        params.put(Parameter.MIN_FEATURE_WIDTH, 4);
+        params.put(Parameter.MZ_BANDS, bands);
+        params.put(Parameter.SCAN_CONTAINER, scanContainer);
+
+        return new SequentialFeatureBuilder(params).call();
+    }
+}
@@ -34,7 +34,10 @@ import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 public class FileLoader {
 
@@ -54,10 +57,45 @@ public class FileLoader {
         }
     }
 
-    public static ScanContainer getRawContainer(TESTFILE testFile) {
+    public static File getFile(TESTFILE testFile) {
 
         URL url = FileLoader.class.getResource(testFile.getPath());
-        File file = new File(url.getFile());
+        return new File(url.getFile());
+    }
+
+    public static String getText(TESTFILE testFile) throws IOException {
+        return new String(Files.readAllBytes(getFile(testFile).toPath()), StandardCharsets.ISO_8859_1);
+    }
+
+    public static File getIndexedFile(TESTFILE testFile) throws IOException {
+        return getIndexedFile(getText(testFile));
+    }
+
+    public static File getIndexedFile(String text) throws IOException {
+
+        int root = text.indexOf("<mzML");
+        StringBuilder builder = new StringBuilder(text.length() + 1024);
+        builder.append(text, 0, root).append("<indexedmzML xmlns=\"http://psi.hupo.org/ms/mzml\">\n");
+        int shift = builder.length() - root;
+        builder.append(text, root, text.length());
+
+        builder.append("\n<indexList count=\"1\">\n<index name=\"spectrum\">\n");
+        for (int i = text.indexOf("<spectrum ", root); i >= 0; i = text.indexOf("<spectrum ", i + 1)) {
+            builder.append("<offset>").append(i + shift).append("</offset>\n");
+        }
+        builder.append("</index>\n</indexList>\n");
+        int indexListOffset = builder.lastIndexOf("<indexList ");
+        builder.append("<indexListOffset>").append(indexListOffset).append("</indexListOffset>\n</indexedmzML>\n");
+
+        File file = File.createTempFile("indexed", ".mzML");
+        file.deleteOnExit();
+        Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+
+    public static ScanContainer getRawContainer(TESTFILE testFile) {
+
+        File file = getFile(testFile);
 
         ScanContainer container = MemoryContainerBuilder.getInstance().newInstance(ScanContainer.class, file.getName());
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade.commons;
+
+import junit.framework.Assert;
+import uk.ac.ebi.masscascade.core.scan.ScanLevel;
+import uk.ac.ebi.masscascade.interfaces.Scan;
+import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
+
+import java.util.Iterator;
+
+public class ScanAssert {
+
+    public static void assertEquals(ScanContainer expected, ScanContainer actual) {
+
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected.getScanLevels(), actual.getScanLevels());
+
+        for (ScanLevel level : expected.getScanLevels()) {
+
+            Assert.assertEquals(expected.size(level.getMsn()), actual.size(level.getMsn()));
+
+            Iterator<Scan> actualIter = actual.iterator(level.getMsn()).iterator();
+            for (Scan scan : expected.iterator(level.getMsn())) {
+                Assert.assertTrue(actualIter.hasNext());
+                assertEquals(scan, actualIter.next());
+            }
+            Assert.assertFalse(actualIter.hasNext());
+        }
+    }
+
+    public static void assertEquals(Scan expected, Scan actual) {
+
+        Assert.assertEquals(expected.getIndex(), actual.getIndex());
+        Assert.assertEquals(expected.getMsn(), actual.getMsn());
+        Assert.assertEquals(expected.getIonMode(), actual.getIonMode());
+        Assert.assertEquals(expected.getRetentionTime(), actual.getRetentionTime());
+        Assert.assertEquals(expected.getTotalIonCurrent(), actual.getTotalIonCurrent(),
+                expected.getTotalIonCurrent() * 1e-12);
+        Assert.assertEquals(expected.getParentScan(), actual.getParentScan());
+        Assert.assertEquals(expected.getParentCharge(), actual.getParentCharge());
+        Assert.assertEquals(expected.getParentMz(), actual.getParentMz());
+        Assert.assertEquals(expected.getBasePeak(), actual.getBasePeak());
+        Assert.assertEquals(expected.getDataArray(), actual.getDataArray());
+    }
+}
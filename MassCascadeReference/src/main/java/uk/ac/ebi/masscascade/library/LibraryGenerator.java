@@ -26,9 +26,14 @@ import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableSearch;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.reference.ReferenceContainer;
+import uk.ac.ebi.masscascade.reference.ReferenceLibraryFile;
+
+import java.io.File;
 
 /**
- * Convenience task class to push generated reference container into the execution loop.
+ * Convenience task class to push generated reference container into the execution loop. <ul> <li>Parameter <code>
+ * REFERENCE LIBRARY </code>- The reference container.</li> <li>Parameter <code> REFERENCE LIBRARY FILE </code>- An
+ * optional library file, opened as memory-mapped reference container instead.</li> </ul>
  */
 public class LibraryGenerator extends CallableSearch {
 
@@ -56,7 +61,14 @@ public class LibraryGenerator extends CallableSearch {
      */
     @Override
     public void setParameters(ParameterMap params) throws MassCascadeException {
-        referenceContainer = params.get(LibraryParameter.REFERENCE_LIBRARY, ReferenceContainer.class);
+
+        if (params.containsKey(LibraryParameter.REFERENCE_LIBRARY_FILE)) {
+            File libraryFile = params.get(LibraryParameter.REFERENCE_LIBRARY_FILE, File.class);
+            if (libraryFile == null || !libraryFile.isFile()) throw new MassCascadeException("File not found.");
+            referenceContainer = ReferenceLibraryFile.open(libraryFile);
+        } else {
+            referenceContainer = params.get(LibraryParameter.REFERENCE_LIBRARY, ReferenceContainer.class);
+        }
     }
 
     /**
@@ -25,6 +25,7 @@ package uk.ac.ebi.masscascade.library;
 import uk.ac.ebi.masscascade.interfaces.Option;
 import uk.ac.ebi.masscascade.reference.ReferenceContainer;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,8 +35,10 @@ import java.util.List;
 public enum LibraryParameter implements Option {
 
     DEPTH("Fragment depth", 2, Integer.class),
+    MIN_SHARED_PEAKS("Minimum shared peaks", 1, Integer.class),
     REFERENCE_LIBRARY_LIST("Reference library", null, new ArrayList<ReferenceContainer>().getClass()),
-    REFERENCE_LIBRARY("Reference library", null, ReferenceContainer.class);
+    REFERENCE_LIBRARY("Reference library", null, ReferenceContainer.class),
+    REFERENCE_LIBRARY_FILE("Reference library file", null, File.class);
 
     private String description;
     private Object defaultValue;
@@ -22,6 +22,7 @@
 
 package uk.ac.ebi.masscascade.library;
 
+import uk.ac.ebi.masscascade.core.featureset.FeatureSetMapper;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableSearch;
 import uk.ac.ebi.masscascade.interfaces.Feature;
@@ -33,6 +34,7 @@ import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.properties.Identity;
 import uk.ac.ebi.masscascade.reference.ReferenceContainer;
 import uk.ac.ebi.masscascade.reference.ReferenceSpectrum;
+import uk.ac.ebi.masscascade.score.WeightedPeaks;
 import uk.ac.ebi.masscascade.score.WeightedScorer;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
@@ -44,18 +46,26 @@ import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
  * <li>Parameter <code> ION MODE </code>- The ion mode.</li>
  * <li>Parameter <code> MS LEVEL </code>- The MSn level to be queried.</li>
  * <li>Parameter <code> SCORE </code>- The minimum query score (0-1000).</li>
+ * <li>Parameter <code> MIN SHARED PEAKS </code>- Optional minimum number of peaks a reference must share with an MS1
+ * featureset to be scored (default 1).</li>
  * <li>Parameter <code> COLLISION ENERGY </code>- The collision energy.</li>
  * <li>Parameter <code> SPECTRUM CONTAINER </code>- The input featureset container.</li>
  * </ul>
+ * <p/>
+ * Featuresets are searched in parallel. The scorers are immutable and the reference library is only read, so they
+ * are shared between all workers. All identities of a featureset are set by a single worker in reference order, and
+ * the featuresets are written to the output container in input order.
  */
 public class LibrarySearch extends CallableSearch {
 
     private double ppmMS1;
     private double amuMSn;
     private double minScore;
+    private int minSharedPeaks;
     private Constants.MSN msn;
     private Constants.ION_MODE ionMode;
     private FeatureSetContainer featureSetContainer;
+    private int parallelism;
     private ReferenceContainer referenceContainer;
 
     private WeightedScorer weightedScorer;
@@ -86,9 +96,12 @@ public class LibrarySearch extends CallableSearch {
         ppmMS1 = params.get(Parameter.MZ_WINDOW_PPM, Double.class);
         amuMSn = params.get(Parameter.MZ_WINDOW_AMU, Double.class);
         minScore = params.get(Parameter.SCORE, Double.class);
+        minSharedPeaks = params.containsKey(LibraryParameter.MIN_SHARED_PEAKS) ?
+                params.get(LibraryParameter.MIN_SHARED_PEAKS, Integer.class) : 1;
         msn = params.get(Parameter.MS_LEVEL, Constants.MSN.class);
         ionMode = params.get(Parameter.ION_MODE, Constants.ION_MODE.class);
         featureSetContainer = params.get(Parameter.FEATURE_SET_CONTAINER, FeatureSetContainer.class);
+        parallelism = params.containsKey(Parameter.PARALLELISM) ? params.get(Parameter.PARALLELISM, Integer.class) : 0;
         referenceContainer = params.get(LibraryParameter.REFERENCE_LIBRARY, ReferenceContainer.class);
     }
 
@@ -101,35 +114,33 @@ public class LibrarySearch extends CallableSearch {
     public FeatureSetContainer call() {
 
         String id = featureSetContainer.getId() + IDENTIFIER;
-        FeatureSetContainer outContainer = featureSetContainer.getBuilder().newInstance(FeatureSetContainer.class, id,
-                featureSetContainer.getIonMode(), featureSetContainer.getWorkingDirectory());
 
         weightedScorer = new WeightedScorer(amuMSn);
 
-        if (msn == Constants.MSN.MS1) {
-            for (FeatureSet featureSet : featureSetContainer) {
-                score(featureSet);
-                outContainer.addFeatureSet(featureSet);
-            }
-        } else {
-            for (FeatureSet featureSet : featureSetContainer) {
-                for (Feature feature : featureSet) {
-                    if (feature.hasMsnSpectra(msn)) score(feature);
+        return new FeatureSetMapper(parallelism) {
+            @Override
+            protected FeatureSet map(FeatureSet featureSet) {
+
+                if (msn == Constants.MSN.MS1) {
+                    score(featureSet);
+                } else {
+                    for (Feature feature : featureSet) {
+                        if (feature.hasMsnSpectra(msn)) score(feature);
+                    }
                 }
-                outContainer.addFeatureSet(featureSet);
+                return featureSet;
             }
-        }
-
-        outContainer.finaliseFile();
-        return outContainer;
+        }.run(featureSetContainer, id);
     }
 
     private void score(FeatureSet featureSet) {
 
-        for (ReferenceSpectrum reference : referenceContainer) {
+        WeightedPeaks unknownPeaks = null;
+        for (ReferenceSpectrum reference : getCandidates(featureSet, referenceContainer)) {
             if (reference.getIonMode() != ionMode) continue;
 
-            double score = weightedScorer.getScore(featureSet, reference);
+            if (unknownPeaks == null) unknownPeaks = WeightedPeaks.of(featureSet);
+            double score = weightedScorer.getScore(unknownPeaks, reference.getWeightedPeaks());
             if (score < minScore) continue;
 
             Identity identity = new Identity(reference.getId(), reference.getName(), reference.getNotation(), score,
@@ -156,14 +167,36 @@ public class LibrarySearch extends CallableSearch {
         }
     }
 
+    /**
+     * Returns the reference spectra to be scored against the featureset. References sharing fewer peaks than required
+     * with the featureset are pruned through the peak index of the container. If neither a minimum score nor more than
+     * one shared peak is required, all spectra without precursor are returned, since even references without shared
+     * peaks pass.
+     *
+     * @param featureSet         the query featureset
+     * @param referenceContainer the reference container
+     * @return the candidate spectra
+     */
+    private Iterable<ReferenceSpectrum> getCandidates(FeatureSet featureSet, ReferenceContainer referenceContainer) {
+
+        if (minScore <= 0 && minSharedPeaks <= 1) return referenceContainer.getSpectraWithoutPrecursor();
+
+        int i = 0;
+        double[] mzs = new double[featureSet.size()];
+        for (Feature feature : featureSet) mzs[i++] = feature.getMzIntDp().x;
+
+        return referenceContainer.getSpectra(mzs, amuMSn, Math.max(1, minSharedPeaks), false);
+    }
+
     private void score(Feature feature) {
 
         for (FeatureSet unknown : feature.getMsnSpectra(msn)) {
-            for (ReferenceSpectrum reference : referenceContainer.getSpectra(unknown.getParentMz(), ppmMS1)) {
-
-                if (reference.getIonMode() != ionMode) continue;
+            WeightedPeaks unknownPeaks = null;
+            for (ReferenceSpectrum reference : referenceContainer.getSpectra(unknown.getParentMz(), ppmMS1,
+                    ionMode)) {
 
-                double score = weightedScorer.getScore(unknown, reference);
+                if (unknownPeaks == null) unknownPeaks = WeightedPeaks.of(unknown);
+                double score = weightedScorer.getScore(unknownPeaks, reference.getWeightedPeaks());
                 if (score < minScore) continue;
 
                 if (msn == Constants.MSN.MS2) {
@@ -22,6 +22,8 @@
 
 package uk.ac.ebi.masscascade.reference;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.Feature;
 import uk.ac.ebi.masscascade.interfaces.container.Container;
@@ -31,15 +33,21 @@ import uk.ac.ebi.masscascade.parameters.Constants;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
  * Reference container for library spectra.
+ * <p/>
+ * Spectra without precursor are additionally held in an inverted peak index, and all spectra are held in a precursor
+ * index partitioned by ion mode and collision energy. Both indices are built on first use after the container has been
+ * filled or loaded and discarded if spectra are added.
+ * <p/>
+ * Containers opened from a {@link ReferenceLibraryFile} are backed by the memory-mapped file and are read-only.
  */
 public class ReferenceContainer implements Container, Iterable<ReferenceSpectrum>, Serializable {
 
@@ -53,6 +61,11 @@ public class ReferenceContainer implements Container, Iterable<ReferenceSpectrum
     private Set<String> spectraIds;
     private TreeMap<Double, List<ReferenceSpectrum>> spectra;
 
+    private ReferenceLibraryFile libraryFile;
+
+    private transient volatile ReferencePeakIndex peakIndex;
+    private transient volatile ReferencePrecursorIndex precursorIndex;
+
     /**
      * Constructs a reference container.
      *
@@ -70,6 +83,36 @@ public class ReferenceContainer implements Container, Iterable<ReferenceSpectrum
         spectra = new TreeMap<>();
     }
 
+    /**
+     * Constructs a read-only reference container backed by a library file. The spectra with equal precursor mass are
+     * views of consecutive positions of the file.
+     *
+     * @param libraryFile the mapped library file
+     */
+    ReferenceContainer(ReferenceLibraryFile libraryFile) {
+
+        this.libraryFile = libraryFile;
+
+        id = libraryFile.getId();
+        source = libraryFile.getSource();
+        msn = libraryFile.getMsn();
+
+        spectraIds = new HashSet<>();
+        spectra = new TreeMap<>();
+
+        int from = 0;
+        for (int i = 1; i <= libraryFile.size(); i++) {
+            if (i < libraryFile.size()) {
+                double precursorMass = libraryFile.getPrecursorMass(i);
+                if (precursorMass == libraryFile.getPrecursorMass(from)) continue;
+                if (precursorMass < libraryFile.getPrecursorMass(from))
+                    throw new MassCascadeException("Reference library not sorted by precursor mass: " + id);
+            }
+            spectra.put(libraryFile.getPrecursorMass(from), libraryFile.getSpectra(from, i));
+            from = i;
+        }
+    }
+
     @Override
     public String getId() {
         return id;
@@ -101,9 +144,12 @@ public class ReferenceContainer implements Container, Iterable<ReferenceSpectrum
      */
     public void addSpectrum(ReferenceSpectrum spectrum) {
 
+        if (libraryFile != null) throw new MassCascadeException("Reference library is read-only: " + id);
         if (spectraIds.contains(spectrum.getId())) return;
 
         spectraIds.add(spectrum.getId());
+        peakIndex = null;
+        precursorIndex = null;
         double precursorMass = spectrum.getPrecursorMass();
         if (spectra.containsKey(precursorMass)) {
             spectra.get(precursorMass).add(spectrum);
@@ -114,26 +160,146 @@ public class ReferenceContainer implements Container, Iterable<ReferenceSpectrum
         }
     }
 
+    /**
+     * Returns the spectra with a precursor mass within the ppm tolerance of the given precursor mass, in ascending
+     * precursor order. The list is a read-only view of the precursor index.
+     *
+     * @param precursorMass the precursor mass
+     * @param ppm           the mass tolerance in ppm
+     * @return the matching spectra
+     */
     public List<ReferenceSpectrum> getSpectra(double precursorMass, double ppm) {
 
         double delta = precursorMass * ppm / Constants.PPM;
-        SortedMap<Double, List<ReferenceSpectrum>> subSpectra =
-                spectra.subMap(delta - precursorMass, true, precursorMass + delta, true);
+        return getPrecursorIndex().getSpectra(precursorMass - delta, precursorMass + delta);
+    }
 
-        List<ReferenceSpectrum> matchingSpectra = new ArrayList<>();
-        for (List<ReferenceSpectrum> referenceSpectra : subSpectra.values()) matchingSpectra.addAll(referenceSpectra);
+    /**
+     * Returns the spectra of the given ion mode with a precursor mass within the ppm tolerance of the given precursor
+     * mass, in ascending precursor order. The list is a read-only view of the precursor index.
+     *
+     * @param precursorMass the precursor mass
+     * @param ppm           the mass tolerance in ppm
+     * @param ionMode       the ion mode
+     * @return the matching spectra
+     */
+    public List<ReferenceSpectrum> getSpectra(double precursorMass, double ppm, Constants.ION_MODE ionMode) {
 
-        return matchingSpectra;
+        double delta = precursorMass * ppm / Constants.PPM;
+        return getPrecursorIndex().getSpectra(precursorMass - delta, precursorMass + delta, ionMode);
     }
 
     /**
-     * Returns an iterator over a set of elements of type ReferenceSpectrum.
+     * Returns the spectra of the given ion mode and collision energy with a precursor mass within the ppm tolerance of
+     * the given precursor mass, in ascending precursor order. The list is a read-only view of the precursor index.
+     *
+     * @param precursorMass   the precursor mass
+     * @param ppm             the mass tolerance in ppm
+     * @param ionMode         the ion mode
+     * @param collisionEnergy the collision energy
+     * @return the matching spectra
+     */
+    public List<ReferenceSpectrum> getSpectra(double precursorMass, double ppm, Constants.ION_MODE ionMode,
+            int collisionEnergy) {
+
+        double delta = precursorMass * ppm / Constants.PPM;
+        return getPrecursorIndex().getSpectra(precursorMass - delta, precursorMass + delta, ionMode,
+                collisionEnergy);
+    }
+
+    /**
+     * Returns the spectra without precursor in iteration order. The list is a read-only view.
+     *
+     * @return the spectra without precursor
+     */
+    public List<ReferenceSpectrum> getSpectraWithoutPrecursor() {
+
+        List<ReferenceSpectrum> spectrumList = spectra.get(NO_PRECURSOR);
+        return (spectrumList == null) ? Collections.<ReferenceSpectrum>emptyList() :
+               Collections.unmodifiableList(spectrumList);
+    }
+
+    /**
+     * Returns the spectra without precursor that share at least the given number of peaks with the query peaks. A
+     * peak is shared if a spectrum peak lies within the m/z tolerance of the query peak. The spectra are returned in
+     * iteration order.
+     *
+     * @param mzs                   the m/z values of the query peaks
+     * @param amu                   the m/z tolerance in dalton
+     * @param minSharedPeaks        the minimum number of shared peaks
+     * @param withSinglePeakSpectra if spectra with a single peak are always returned
+     * @return the candidate spectra
+     */
+    public List<ReferenceSpectrum> getSpectra(double[] mzs, double amu, int minSharedPeaks,
+                                              boolean withSinglePeakSpectra) {
+        return getPeakIndex().getSpectra(mzs, amu, minSharedPeaks, withSinglePeakSpectra);
+    }
+
+    /**
+     * Returns the inverted peak index of the spectra without precursor, building it if required.
+     */
+    private ReferencePeakIndex getPeakIndex() {
+
+        ReferencePeakIndex index = peakIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = peakIndex;
+                if (index == null) {
+                    List<ReferenceSpectrum> spectrumList = spectra.get(NO_PRECURSOR);
+                    if (spectrumList == null)
+                        index = new ReferencePeakIndex(Collections.<ReferenceSpectrum>emptyList());
+                    else if (spectrumList instanceof ReferenceLibraryFile.SpectrumList)
+                        index = ((ReferenceLibraryFile.SpectrumList) spectrumList).buildPeakIndex();
+                    else index = new ReferencePeakIndex(spectrumList);
+                    peakIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the precursor index of all spectra, building it if required.
+     */
+    private ReferencePrecursorIndex getPrecursorIndex() {
+
+        ReferencePrecursorIndex index = precursorIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = precursorIndex;
+                if (index == null) {
+                    index = (libraryFile == null) ? new ReferencePrecursorIndex(getSpectrumList()) :
+                            libraryFile.buildPrecursorIndex();
+                    precursorIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns all spectra in ascending order of precursor mass.
+     *
+     * @return the spectra
+     */
+    List<ReferenceSpectrum> getSpectrumList() {
+
+        if (libraryFile != null) return libraryFile.getSpectra(0, libraryFile.size());
+
+        List<ReferenceSpectrum> spectrumList = new ArrayList<>();
+        for (List<ReferenceSpectrum> referenceSpectra : spectra.values()) spectrumList.addAll(referenceSpectra);
+        return spectrumList;
+    }
+
+    /**
+     * Returns a read-only iterator over all spectra in ascending order of precursor mass. The iterator walks the
+     * spectrum lists of the container in turn without copying them.
      *
      * @return an Iterator.
      */
     @Override
     public Iterator<ReferenceSpectrum> iterator() {
-        return spectra.get(0d).iterator();
+        return Iterators.unmodifiableIterator(Iterables.concat(spectra.values()).iterator());
     }
 
     /**
@@ -146,6 +312,9 @@ public class ReferenceContainer implements Container, Iterable<ReferenceSpectrum
 
         spectra.clear();
         spectraIds.clear();
+        peakIndex = null;
+        precursorIndex = null;
+        libraryFile = null;
 
         return true;
     }
@@ -157,17 +326,19 @@ public class ReferenceContainer implements Container, Iterable<ReferenceSpectrum
      */
     @Override
     public int size() {
-        return spectraIds.size();
+        return (libraryFile == null) ? spectraIds.size() : libraryFile.size();
     }
 
     /**
-     * Returns the actual data file.
+     * Returns the library file backing the container.
      *
-     * @return the dta file
+     * @return the library file
      */
     @Override
     public File getDataFile() {
-        throw new MassCascadeException("Method not implemented");
+
+        if (libraryFile == null) throw new MassCascadeException("Container not backed by a library file.");
+        return libraryFile.getFile();
     }
 
     /**
@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.reference;
+
+import uk.ac.ebi.masscascade.exception.MassCascadeException;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Columnar binary file format for reference libraries.
+ * <p/>
+ * A library file holds the spectra of a {@link ReferenceContainer} sorted by precursor mass in primitive columns: the
+ * precursor index, the compound masses, the base peaks, the peak offset table, the packed peak m/z values (double) and
+ * intensities (float), the collision energies and ion modes, and a blob of length-prefixed UTF-8 strings for the meta
+ * information. The file is memory-mapped read-only when opened, so opening is independent of the library size and
+ * several processes share the same pages. Spectra are decoded on first access and kept for the lifetime of the
+ * container; the inverted peak index is built straight from the m/z column.
+ * <p/>
+ * All values are big-endian. The layout is:
+ * <pre>
+ * int      magic, version, MSn level, spectrum count n, peak count p, meta blob length
+ * double[] precursor masses (n, ascending), compound masses (n), base peak m/z (n), peak m/z (p)
+ * int[]    peak offsets (n + 1), collision energies (n), meta offsets (n)
+ * float[]  base peak intensities (n), peak intensities (p)
+ * byte[]   ion modes (n), meta blob
+ * </pre>
+ * The meta blob starts with the container id and source, followed by the id, title, source, name, notation, formula,
+ * instrument and precursor type of every spectrum.
+ */
+public class ReferenceLibraryFile implements Serializable {
+
+    private static final long serialVersionUID = -2419837001583446127L;
+
+    private static final int MAGIC = 0x4D43524C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 6 * 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Constants.MSN[] LEVELS = Constants.MSN.values();
+    private static final Constants.ION_MODE[] ION_MODES = Constants.ION_MODE.values();
+
+    private final File file;
+
+    private transient int size;
+    private transient int peakCount;
+    private transient Constants.MSN msn;
+
+    private transient DoubleBuffer precursorMasses;
+    private transient DoubleBuffer masses;
+    private transient DoubleBuffer basePeakMzs;
+    private transient DoubleBuffer mzs;
+    private transient IntBuffer peakOffsets;
+    private transient IntBuffer collisionEnergies;
+    private transient IntBuffer metaOffsets;
+    private transient FloatBuffer basePeakIntensities;
+    private transient FloatBuffer intensities;
+    private transient ByteBuffer ionModes;
+    private transient ByteBuffer meta;
+
+    private transient AtomicReferenceArray<ReferenceSpectrum> spectra;
+
+    private ReferenceLibraryFile(File file) {
+
+        this.file = file;
+        map();
+    }
+
+    /**
+     * Writes the spectra of a reference container to a library file.
+     *
+     * @param referenceContainer the reference container
+     * @param file               the target file
+     * @throws MassCascadeException if the file cannot be written
+     */
+    public static void write(ReferenceContainer referenceContainer, File file) {
+
+        List<ReferenceSpectrum> spectrumList = referenceContainer.getSpectrumList();
+        int n = spectrumList.size();
+
+        int p = 0;
+        int[] metaOffsetValues = new int[n];
+        ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream metaStream = new DataOutputStream(metaBytes);
+            writeString(metaStream, referenceContainer.getId());
+            writeString(metaStream, referenceContainer.getSource());
+            for (int i = 0; i < n; i++) {
+                ReferenceSpectrum spectrum = spectrumList.get(i);
+                p += spectrum.getMzIntList().size();
+                metaOffsetValues[i] = metaStream.size();
+                writeString(metaStream, spectrum.getId());
+                writeString(metaStream, spectrum.getTitle());
+                writeString(metaStream, spectrum.getSource());
+                writeString(metaStream, spectrum.getName());
+                writeString(metaStream, spectrum.getNotation());
+                writeString(metaStream, spectrum.getFormula());
+                writeString(metaStream, spectrum.getInstrument());
+                writeString(metaStream, spectrum.getPrecursorType());
+            }
+            metaStream.flush();
+        } catch (IOException exception) {
+            throw new MassCascadeException("Reference library could not be encoded: " + exception.getMessage());
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                1024 * 64))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(referenceContainer.getMsn().ordinal());
+            out.writeInt(n);
+            out.writeInt(p);
+            out.writeInt(metaBytes.size());
+
+            for (ReferenceSpectrum spectrum : spectrumList) out.writeDouble(spectrum.getPrecursorMass());
+            for (ReferenceSpectrum spectrum : spectrumList) out.writeDouble(spectrum.getMass());
+            for (ReferenceSpectrum spectrum : spectrumList)
+                out.writeDouble((spectrum.getBasePeak() == null) ? Double.NaN : spectrum.getBasePeak().x);
+            for (ReferenceSpectrum spectrum : spectrumList) {
+                for (XYPoint peak : spectrum.getMzIntList()) out.writeDouble(peak.x);
+            }
+
+            int offset = 0;
+            for (ReferenceSpectrum spectrum : spectrumList) {
+                out.writeInt(offset);
+                offset += spectrum.getMzIntList().size();
+            }
+            out.writeInt(offset);
+            for (ReferenceSpectrum spectrum : spectrumList) out.writeInt(spectrum.getCollisionEnergy());
+            for (int metaOffset : metaOffsetValues) out.writeInt(metaOffset);
+
+            for (ReferenceSpectrum spectrum : spectrumList)
+                out.writeFloat((spectrum.getBasePeak() == null) ? Float.NaN : (float) spectrum.getBasePeak().y);
+            for (ReferenceSpectrum spectrum : spectrumList) {
+                for (XYPoint peak : spectrum.getMzIntList()) out.writeFloat((float) peak.y);
+            }
+
+            for (ReferenceSpectrum spectrum : spectrumList)
+                out.writeByte((spectrum.getIonMode() == null) ? -1 : spectrum.getIonMode().ordinal());
+            metaBytes.writeTo(out);
+        } catch (IOException exception) {
+            throw new MassCascadeException("Reference library could not be written: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Opens a library file as read-only reference container. The file is memory-mapped and must not be modified while
+     * the container is in use.
+     *
+     * @param file the library file
+     * @return the reference container
+     * @throws MassCascadeException if the file cannot be mapped or is not a valid library file
+     */
+    public static ReferenceContainer open(File file) {
+        return new ReferenceContainer(new ReferenceLibraryFile(file));
+    }
+
+    private void map() {
+
+        ByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new MassCascadeException("Reference library too large: " + file.getName());
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException exception) {
+            throw new MassCascadeException("Reference library could not be mapped: " + exception.getMessage());
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new MassCascadeException("Not a reference library file: " + file.getName());
+        if (buffer.getInt(4) != VERSION)
+            throw new MassCascadeException("Unsupported reference library version: " + buffer.getInt(4));
+
+        msn = LEVELS[buffer.getInt(8)];
+        size = buffer.getInt(12);
+        peakCount = buffer.getInt(16);
+        int metaLength = buffer.getInt(20);
+
+        long expected = HEADER_SIZE + 8L * (3 * size + peakCount) + 4L * (3 * size + 1) + 4L * (size + peakCount) + size
+                + metaLength;
+        if (buffer.capacity() != expected)
+            throw new MassCascadeException("Truncated reference library file: " + file.getName());
+
+        int offset = HEADER_SIZE;
+        precursorMasses = slice(buffer, offset, 8 * size).asDoubleBuffer();
+        masses = slice(buffer, offset += 8 * size, 8 * size).asDoubleBuffer();
+        basePeakMzs = slice(buffer, offset += 8 * size, 8 * size).asDoubleBuffer();
+        mzs = slice(buffer, offset += 8 * size, 8 * peakCount).asDoubleBuffer();
+        peakOffsets = slice(buffer, offset += 8 * peakCount, 4 * (size + 1)).asIntBuffer();
+        collisionEnergies = slice(buffer, offset += 4 * (size + 1), 4 * size).asIntBuffer();
+        metaOffsets = slice(buffer, offset += 4 * size, 4 * size).asIntBuffer();
+        basePeakIntensities = slice(buffer, offset += 4 * size, 4 * size).asFloatBuffer();
+        intensities = slice(buffer, offset += 4 * size, 4 * peakCount).asFloatBuffer();
+        ionModes = slice(buffer, offset += 4 * peakCount, size);
+        meta = slice(buffer, offset + size, metaLength);
+
+        spectra = new AtomicReferenceArray<>(size);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    /**
+     * Returns the library file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of spectra in the library.
+     *
+     * @return the number of spectra
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the MSn level of the library.
+     *
+     * @return the MSn level
+     */
+    Constants.MSN getMsn() {
+        return msn;
+    }
+
+    /**
+     * Returns the container id of the library.
+     *
+     * @return the container id
+     */
+    String getId() {
+        return readString(meta.duplicate());
+    }
+
+    /**
+     * Returns the source of the library.
+     *
+     * @return the source
+     */
+    String getSource() {
+
+        ByteBuffer metaView = meta.duplicate();
+        readString(metaView);
+        return readString(metaView);
+    }
+
+    /**
+     * Returns the precursor mass of the spectrum at the given position.
+     *
+     * @param i the position
+     * @return the precursor mass
+     */
+    double getPrecursorMass(int i) {
+        return precursorMasses.get(i);
+    }
+
+    /**
+     * Returns the spectrum at the given position. The spectrum is decoded on first access.
+     *
+     * @param i the position
+     * @return the spectrum
+     */
+    ReferenceSpectrum getSpectrum(int i) {
+
+        ReferenceSpectrum spectrum = spectra.get(i);
+        if (spectrum == null) {
+            spectra.compareAndSet(i, null, decode(i));
+            spectrum = spectra.get(i);
+        }
+        return spectrum;
+    }
+
+    /**
+     * Returns a read-only view of the spectra in the given position range.
+     *
+     * @param from the first position, inclusive
+     * @param to   the last position, exclusive
+     * @return the spectrum list
+     */
+    List<ReferenceSpectrum> getSpectra(int from, int to) {
+        return new SpectrumList(this, from, to);
+    }
+
+    private ReferenceSpectrum decode(int i) {
+
+        TreeSet<XYPoint> mzIntList = new TreeSet<>();
+        for (int j = peakOffsets.get(i), end = peakOffsets.get(i + 1); j < end; j++)
+            mzIntList.add(new XYPoint(mzs.get(j), intensities.get(j)));
+        double basePeakMz = basePeakMzs.get(i);
+        XYPoint basePeak = Double.isNaN(basePeakMz) ? null : new XYPoint(basePeakMz, basePeakIntensities.get(i));
+
+        ByteBuffer metaView = meta.duplicate();
+        metaView.position(metaOffsets.get(i));
+        String id = readString(metaView);
+        String title = readString(metaView);
+        String source = readString(metaView);
+        String name = readString(metaView);
+        String notation = readString(metaView);
+        String formula = readString(metaView);
+        String instrument = readString(metaView);
+        String precursorType = readString(metaView);
+
+        byte ionMode = ionModes.get(i);
+        return new ReferenceSpectrum(id, title, source, name, notation, masses.get(i), formula, instrument,
+                (ionMode < 0) ? null : ION_MODES[ionMode], precursorType, precursorMasses.get(i),
+                collisionEnergies.get(i), mzIntList, basePeak);
+    }
+
+    /**
+     * Builds the inverted peak index of the spectra in the given position range from the m/z column.
+     *
+     * @param from the first position, inclusive
+     * @param to   the last position, exclusive
+     * @return the peak index
+     */
+    private ReferencePeakIndex buildPeakIndex(int from, int to) {
+
+        int first = peakOffsets.get(from);
+        int[] peakStarts = new int[to - from + 1];
+        for (int i = from; i <= to; i++) peakStarts[i - from] = peakOffsets.get(i) - first;
+
+        double[] peakMzs = new double[peakStarts[to - from]];
+        for (int j = 0; j < peakMzs.length; j++) peakMzs[j] = mzs.get(first + j);
+
+        return new ReferencePeakIndex(getSpectra(from, to), peakStarts, peakMzs);
+    }
+
+    /**
+     * Builds the precursor index of all spectra from the precursor, ion mode and collision energy columns.
+     *
+     * @return the precursor index
+     */
+    ReferencePrecursorIndex buildPrecursorIndex() {
+
+        double[] precursorMassValues = new double[size];
+        Constants.ION_MODE[] ionModeValues = new Constants.ION_MODE[size];
+        int[] collisionEnergyValues = new int[size];
+        for (int i = 0; i < size; i++) {
+            precursorMassValues[i] = precursorMasses.get(i);
+            byte ionMode = ionModes.get(i);
+            ionModeValues[i] = (ionMode < 0) ? null : ION_MODES[ionMode];
+            collisionEnergyValues[i] = collisionEnergies.get(i);
+        }
+
+        return new ReferencePrecursorIndex(getSpectra(0, size), precursorMassValues, ionModeValues,
+                collisionEnergyValues);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+
+        int length = buffer.getInt();
+        if (length < 0) return null;
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Re-maps the library file after deserialization.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+        in.defaultReadObject();
+        map();
+    }
+
+    /**
+     * Read-only view of a position range of a library file.
+     */
+    static class SpectrumList extends AbstractList<ReferenceSpectrum> implements RandomAccess, Serializable {
+
+        private static final long serialVersionUID = 5316472895134950386L;
+
+        private final ReferenceLibraryFile libraryFile;
+        private final int from;
+        private final int to;
+
+        private SpectrumList(ReferenceLibraryFile libraryFile, int from, int to) {
+
+            this.libraryFile = libraryFile;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public ReferenceSpectrum get(int index) {
+
+            if (index < 0 || index >= to - from) throw new IndexOutOfBoundsException("Index: " + index);
+            return libraryFile.getSpectrum(from + index);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        /**
+         * Builds the inverted peak index of the spectra in this view without decoding them.
+         *
+         * @return the peak index
+         */
+        ReferencePeakIndex buildPeakIndex() {
+            return libraryFile.buildPeakIndex(from, to);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.reference;
+
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Inverted peak index of the reference spectra of a reference container.
+ * <p/>
+ * The peaks of all spectra are binned by m/z into postings of spectrum position and peak m/z, stored in primitive
+ * arrays. A query counts for every spectrum the query peaks with at least one spectrum peak within the tolerance. This
+ * count is an upper bound of the number of peaks matched by the {@link uk.ac.ebi.masscascade.score.WeightedScorer}, so
+ * pruning spectra below a shared peak threshold never drops a spectrum with enough matched peaks. Queries can run in
+ * parallel.
+ */
+class ReferencePeakIndex {
+
+    private static final double BIN_WIDTH = 1.0;
+
+    // relative slack on the tolerance to cover the rounding of the ppm conversion in the scorer
+    private static final double TOLERANCE_SLACK = 1e-9;
+
+    private final List<ReferenceSpectrum> spectra;
+    private final int[] peakStarts;
+    private final int[] singlePeakPositions;
+
+    private final int minBin;
+    private final int[] binStarts;
+    private final int[] postingSpectra;
+    private final double[] postingMzs;
+
+    private final ThreadLocal<int[][]> scratch;
+
+    /**
+     * Builds the index for the given spectra.
+     *
+     * @param spectrumList the reference spectra in iteration order
+     */
+    ReferencePeakIndex(List<ReferenceSpectrum> spectrumList) {
+        this(new ArrayList<ReferenceSpectrum>(spectrumList), getPeakStarts(spectrumList), getPeakMzs(spectrumList));
+    }
+
+    /**
+     * Builds the index for the given spectra from their packed peak m/z values. The peaks of the spectrum at position
+     * <code>i</code> are found from <code>peakStarts[i]</code> to <code>peakStarts[i + 1]</code>.
+     *
+     * @param spectrumList the reference spectra in iteration order
+     * @param peakStarts   the start of the peaks of each spectrum followed by the total number of peaks
+     * @param peakMzs      the packed peak m/z values
+     */
+    ReferencePeakIndex(List<ReferenceSpectrum> spectrumList, int[] peakStarts, double[] peakMzs) {
+
+        this.spectra = spectrumList;
+        this.peakStarts = peakStarts;
+        final int nSpectra = peakStarts.length - 1;
+
+        int nSinglePeak = 0;
+        int lowBin = Integer.MAX_VALUE;
+        int highBin = Integer.MIN_VALUE;
+        for (int i = 0; i < nSpectra; i++) {
+            if (isSinglePeak(i)) nSinglePeak++;
+        }
+        for (double mz : peakMzs) {
+            int bin = getBin(mz);
+            lowBin = Math.min(lowBin, bin);
+            highBin = Math.max(highBin, bin);
+        }
+        int nPostings = peakMzs.length;
+        if (nPostings == 0) lowBin = highBin = 0;
+
+        minBin = lowBin;
+        binStarts = new int[highBin - lowBin + 2];
+        postingSpectra = new int[nPostings];
+        postingMzs = new double[nPostings];
+        singlePeakPositions = new int[nSinglePeak];
+
+        for (double mz : peakMzs) binStarts[getBin(mz) - minBin + 1]++;
+        for (int i = 1; i < binStarts.length; i++) binStarts[i] += binStarts[i - 1];
+
+        int[] fill = Arrays.copyOf(binStarts, binStarts.length - 1);
+        nSinglePeak = 0;
+        for (int i = 0; i < nSpectra; i++) {
+            if (isSinglePeak(i)) singlePeakPositions[nSinglePeak++] = i;
+            for (int j = peakStarts[i]; j < peakStarts[i + 1]; j++) {
+                int posting = fill[getBin(peakMzs[j]) - minBin]++;
+                postingSpectra[posting] = i;
+                postingMzs[posting] = peakMzs[j];
+            }
+        }
+
+        scratch = new ThreadLocal<int[][]>() {
+            @Override
+            protected int[][] initialValue() {
+                return new int[3][nSpectra];
+            }
+        };
+    }
+
+    /**
+     * Returns the spectra sharing at least the given number of peaks with the query peaks, in iteration order.
+     *
+     * @param mzs                   the m/z values of the query peaks
+     * @param amu                   the m/z tolerance in dalton
+     * @param minSharedPeaks        the minimum number of shared peaks
+     * @param withSinglePeakSpectra if spectra with a single peak are always included
+     * @return the candidate spectra
+     */
+    List<ReferenceSpectrum> getSpectra(double[] mzs, double amu, int minSharedPeaks, boolean withSinglePeakSpectra) {
+
+        int[][] buffers = scratch.get();
+        int[] counts = buffers[0];
+        int[] stamps = buffers[1];
+        int[] touched = buffers[2];
+        int nTouched = 0;
+
+        double tolerance = amu * (1 + TOLERANCE_SLACK);
+        int maxBin = minBin + binStarts.length - 2;
+        for (int q = 0; q < mzs.length; q++) {
+
+            double lower = mzs[q] - tolerance;
+            double upper = mzs[q] + tolerance;
+            int lowBin = Math.max(getBin(lower), minBin);
+            int highBin = Math.min(getBin(upper), maxBin);
+            if (lowBin > highBin) continue;
+
+            int end = binStarts[highBin - minBin + 1];
+            for (int posting = binStarts[lowBin - minBin]; posting < end; posting++) {
+
+                double mz = postingMzs[posting];
+                if (mz < lower || mz > upper) continue;
+
+                int spectrum = postingSpectra[posting];
+                if (stamps[spectrum] == q + 1) continue;
+                stamps[spectrum] = q + 1;
+                if (counts[spectrum]++ == 0) touched[nTouched++] = spectrum;
+            }
+        }
+
+        int nCandidates = 0;
+        int[] candidates = new int[nTouched + (withSinglePeakSpectra ? singlePeakPositions.length : 0)];
+        for (int i = 0; i < nTouched; i++) {
+            int spectrum = touched[i];
+            if (counts[spectrum] >= minSharedPeaks && !(withSinglePeakSpectra && isSinglePeak(spectrum)))
+                candidates[nCandidates++] = spectrum;
+            counts[spectrum] = 0;
+            stamps[spectrum] = 0;
+        }
+        if (withSinglePeakSpectra) {
+            System.arraycopy(singlePeakPositions, 0, candidates, nCandidates, singlePeakPositions.length);
+            nCandidates += singlePeakPositions.length;
+        }
+        Arrays.sort(candidates, 0, nCandidates);
+
+        List<ReferenceSpectrum> spectrumList = new ArrayList<>(nCandidates);
+        for (int i = 0; i < nCandidates; i++) spectrumList.add(spectra.get(candidates[i]));
+        return spectrumList;
+    }
+
+    private boolean isSinglePeak(int spectrum) {
+        return peakStarts[spectrum + 1] - peakStarts[spectrum] == 1;
+    }
+
+    private static int[] getPeakStarts(List<ReferenceSpectrum> spectrumList) {
+
+        int[] peakStarts = new int[spectrumList.size() + 1];
+        int i = 0;
+        for (ReferenceSpectrum spectrum : spectrumList) {
+            peakStarts[i + 1] = peakStarts[i] + spectrum.getMzIntList().size();
+            i++;
+        }
+        return peakStarts;
+    }
+
+    private static double[] getPeakMzs(List<ReferenceSpectrum> spectrumList) {
+
+        int nPeaks = 0;
+        for (ReferenceSpectrum spectrum : spectrumList) nPeaks += spectrum.getMzIntList().size();
+
+        int j = 0;
+        double[] peakMzs = new double[nPeaks];
+        for (ReferenceSpectrum spectrum : spectrumList) {
+            for (XYPoint peak : spectrum.getMzIntList()) peakMzs[j++] = peak.x;
+        }
+        return peakMzs;
+    }
+
+    private static int getBin(double mz) {
+        return (int) Math.floor(mz / BIN_WIDTH);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.reference;
+
+import uk.ac.ebi.masscascade.parameters.Constants;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Precursor mass index of the reference spectra of a reference container.
+ * <p/>
+ * The spectra are partitioned by ion mode and by ion mode and collision energy, in addition to one partition holding
+ * all spectra. Every partition holds the positions of its spectra in ascending precursor order together with their
+ * precursor masses in primitive arrays, so a precursor range is found by two binary searches and returned as a view
+ * of the partition without copying. Queries can run in parallel.
+ */
+class ReferencePrecursorIndex {
+
+    private final List<ReferenceSpectrum> spectra;
+
+    private final Partition all;
+    private final Map<Constants.ION_MODE, Partition> byIonMode;
+    private final Map<Constants.ION_MODE, Map<Integer, Partition>> byCollisionEnergy;
+
+    /**
+     * Builds the index for the given spectra.
+     *
+     * @param spectrumList the reference spectra in ascending precursor order
+     */
+    ReferencePrecursorIndex(List<ReferenceSpectrum> spectrumList) {
+        this(spectrumList, getPrecursorMasses(spectrumList), getIonModes(spectrumList),
+                getCollisionEnergies(spectrumList));
+    }
+
+    /**
+     * Builds the index for the given spectra from their precursor masses, ion modes and collision energies.
+     *
+     * @param spectrumList      the reference spectra in ascending precursor order
+     * @param precursorMasses   the precursor masses of the spectra
+     * @param ionModes          the ion modes of the spectra
+     * @param collisionEnergies the collision energies of the spectra
+     */
+    ReferencePrecursorIndex(List<ReferenceSpectrum> spectrumList, double[] precursorMasses,
+            Constants.ION_MODE[] ionModes, int[] collisionEnergies) {
+
+        this.spectra = spectrumList;
+
+        all = new Partition(precursorMasses.length);
+        byIonMode = new EnumMap<>(Constants.ION_MODE.class);
+        byCollisionEnergy = new EnumMap<>(Constants.ION_MODE.class);
+
+        for (int i = 0; i < precursorMasses.length; i++) {
+
+            all.add(i, precursorMasses[i]);
+            if (ionModes[i] == null) continue;
+
+            Partition ionModePartition = byIonMode.get(ionModes[i]);
+            if (ionModePartition == null) {
+                ionModePartition = new Partition(16);
+                byIonMode.put(ionModes[i], ionModePartition);
+                byCollisionEnergy.put(ionModes[i], new HashMap<Integer, Partition>());
+            }
+            ionModePartition.add(i, precursorMasses[i]);
+
+            Map<Integer, Partition> energyPartitions = byCollisionEnergy.get(ionModes[i]);
+            Partition energyPartition = energyPartitions.get(collisionEnergies[i]);
+            if (energyPartition == null) {
+                energyPartition = new Partition(16);
+                energyPartitions.put(collisionEnergies[i], energyPartition);
+            }
+            energyPartition.add(i, precursorMasses[i]);
+        }
+
+        all.trim();
+        for (Partition partition : byIonMode.values()) partition.trim();
+        for (Map<Integer, Partition> energyPartitions : byCollisionEnergy.values()) {
+            for (Partition partition : energyPartitions.values()) partition.trim();
+        }
+    }
+
+    /**
+     * Returns the spectra with a precursor mass within the given range.
+     *
+     * @param minMass the lower bound, inclusive
+     * @param maxMass the upper bound, inclusive
+     * @return the spectra in ascending precursor order
+     */
+    List<ReferenceSpectrum> getSpectra(double minMass, double maxMass) {
+        return all.getSpectra(spectra, minMass, maxMass);
+    }
+
+    /**
+     * Returns the spectra of the given ion mode with a precursor mass within the given range.
+     *
+     * @param minMass the lower bound, inclusive
+     * @param maxMass the upper bound, inclusive
+     * @param ionMode the ion mode
+     * @return the spectra in ascending precursor order
+     */
+    List<ReferenceSpectrum> getSpectra(double minMass, double maxMass, Constants.ION_MODE ionMode) {
+
+        Partition partition = byIonMode.get(ionMode);
+        return (partition == null) ? Collections.<ReferenceSpectrum>emptyList() :
+               partition.getSpectra(spectra, minMass, maxMass);
+    }
+
+    /**
+     * Returns the spectra of the given ion mode and collision energy with a precursor mass within the given range.
+     *
+     * @param minMass         the lower bound, inclusive
+     * @param maxMass         the upper bound, inclusive
+     * @param ionMode         the ion mode
+     * @param collisionEnergy the collision energy
+     * @return the spectra in ascending precursor order
+     */
+    List<ReferenceSpectrum> getSpectra(double minMass, double maxMass, Constants.ION_MODE ionMode,
+            int collisionEnergy) {
+
+        Map<Integer, Partition> energyPartitions = byCollisionEnergy.get(ionMode);
+        Partition partition = (energyPartitions == null) ? null : energyPartitions.get(collisionEnergy);
+        return (partition == null) ? Collections.<ReferenceSpectrum>emptyList() :
+               partition.getSpectra(spectra, minMass, maxMass);
+    }
+
+    private static double[] getPrecursorMasses(List<ReferenceSpectrum> spectrumList) {
+
+        int i = 0;
+        double[] precursorMasses = new double[spectrumList.size()];
+        for (ReferenceSpectrum spectrum : spectrumList) precursorMasses[i++] = spectrum.getPrecursorMass();
+        return precursorMasses;
+    }
+
+    private static Constants.ION_MODE[] getIonModes(List<ReferenceSpectrum> spectrumList) {
+
+        int i = 0;
+        Constants.ION_MODE[] ionModes = new Constants.ION_MODE[spectrumList.size()];
+        for (ReferenceSpectrum spectrum : spectrumList) ionModes[i++] = spectrum.getIonMode();
+        return ionModes;
+    }
+
+    private static int[] getCollisionEnergies(List<ReferenceSpectrum> spectrumList) {
+
+        int i = 0;
+        int[] collisionEnergies = new int[spectrumList.size()];
+        for (ReferenceSpectrum spectrum : spectrumList) collisionEnergies[i++] = spectrum.getCollisionEnergy();
+        return collisionEnergies;
+    }
+
+    /**
+     * Spectrum positions and precursor masses of a partition in ascending precursor order.
+     */
+    private static class Partition {
+
+        private int[] positions;
+        private double[] precursorMasses;
+        private int size;
+
+        private Partition(int capacity) {
+
+            positions = new int[Math.max(capacity, 1)];
+            precursorMasses = new double[Math.max(capacity, 1)];
+        }
+
+        private void add(int position, double precursorMass) {
+
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                precursorMasses = Arrays.copyOf(precursorMasses, size * 2);
+            }
+            positions[size] = position;
+            precursorMasses[size] = precursorMass;
+            size++;
+        }
+
+        private void trim() {
+
+            positions = Arrays.copyOf(positions, size);
+            precursorMasses = Arrays.copyOf(precursorMasses, size);
+        }
+
+        private List<ReferenceSpectrum> getSpectra(List<ReferenceSpectrum> spectra, double minMass, double maxMass) {
+
+            int from = lowerBound(minMass);
+            int to = upperBound(maxMass);
+            return (from >= to) ? Collections.<ReferenceSpectrum>emptyList() :
+                   new PartitionList(spectra, positions, from, to);
+        }
+
+        /**
+         * Returns the first position with a precursor mass greater or equal to the given mass.
+         */
+        private int lowerBound(double mass) {
+
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (precursorMasses[mid] < mass) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        /**
+         * Returns the first position with a precursor mass greater than the given mass.
+         */
+        private int upperBound(double mass) {
+
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (precursorMasses[mid] <= mass) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Read-only view of a position range of a partition.
+     */
+    private static class PartitionList extends AbstractList<ReferenceSpectrum> implements RandomAccess {
+
+        private final List<ReferenceSpectrum> spectra;
+        private final int[] positions;
+        private final int from;
+        private final int to;
+
+        private PartitionList(List<ReferenceSpectrum> spectra, int[] positions, int from, int to) {
+
+            this.spectra = spectra;
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public ReferenceSpectrum get(int index) {
+
+            if (index < 0 || index >= to - from) throw new IndexOutOfBoundsException("Index: " + index);
+            return spectra.get(positions[from + index]);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -23,6 +23,7 @@
 package uk.ac.ebi.masscascade.reference;
 
 import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.score.WeightedPeaks;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
 import java.io.Serializable;
@@ -59,6 +60,9 @@ public class ReferenceSpectrum implements Serializable {
     // meta experimental
     private XYPoint basePeak;
 
+    // scoring
+    private transient volatile WeightedPeaks weightedPeaks;
+
     /**
      * Constructs a fully parameterized reference featureset.
      *
@@ -153,6 +157,21 @@ public class ReferenceSpectrum implements Serializable {
         return basePeak;
     }
 
+    /**
+     * Returns the peaks prepared for the weighted scorer. The peaks are prepared on first use.
+     *
+     * @return the weighted peaks
+     */
+    public WeightedPeaks getWeightedPeaks() {
+
+        WeightedPeaks peaks = weightedPeaks;
+        if (peaks == null) {
+            peaks = WeightedPeaks.of(mzIntList, basePeak);
+            weightedPeaks = peaks;
+        }
+        return peaks;
+    }
+
     public XYPoint getMatchingPeak(XYPoint signal, double ppm) {
 
         if (mzIntList.contains(signal)) return mzIntList.floor(signal);
@@ -34,7 +34,7 @@ public class MzScorer {
 
     private final Logger LOGGER = Logger.getLogger(MzScorer.class);
 
-    private double ppm;
+    private final double ppm;
 
     public MzScorer(double ppm) {
         this.ppm = ppm;
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.score;
+
+import org.apache.commons.math3.util.FastMath;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureSet;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Peak list prepared for the {@link WeightedScorer}: the m/z values in ascending order and the weights
+ * <code>mz^1.5 * (intensity / base peak intensity)^0.6</code> of the peaks in primitive arrays. Instances are immutable
+ * and can be shared between threads.
+ */
+public final class WeightedPeaks {
+
+    static final double W_MASS = 1.5;
+    static final double W_INTENSITY = 0.6;
+
+    private final double[] mzs;
+    private final double[] weights;
+    private final int count;
+
+    private WeightedPeaks(double[] mzs, double[] intensities, int size, int count, double baseIntensity) {
+
+        sort(mzs, intensities, size);
+
+        this.mzs = new double[size];
+        this.weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            this.mzs[i] = mzs[i];
+            this.weights[i] = FastMath.pow(mzs[i], W_MASS) * FastMath.pow(intensities[i] / baseIntensity, W_INTENSITY);
+        }
+        this.count = count;
+    }
+
+    /**
+     * Prepares the features of a featureset, normalised by the base peak of the featureset.
+     *
+     * @param featureSet the featureset
+     * @return the weighted peaks
+     */
+    public static WeightedPeaks of(FeatureSet featureSet) {
+
+        int size = featureSet.size();
+        double[] mzs = new double[size];
+        double[] intensities = new double[size];
+
+        int i = 0;
+        for (Feature feature : featureSet) {
+            XYPoint dp = feature.getMzIntDp();
+            mzs[i] = dp.x;
+            intensities[i++] = dp.y;
+        }
+
+        return new WeightedPeaks(mzs, intensities, i, size, featureSet.getBasePeak().get(0).y);
+    }
+
+    /**
+     * Prepares the peaks of a sorted, duplicate-free peak collection, normalised by the given base peak.
+     *
+     * @param peaks    the peaks in ascending m/z order
+     * @param basePeak the base peak
+     * @return the weighted peaks
+     */
+    public static WeightedPeaks of(Collection<XYPoint> peaks, XYPoint basePeak) {
+
+        int size = peaks.size();
+        double[] mzs = new double[size];
+        double[] intensities = new double[size];
+
+        int i = 0;
+        for (XYPoint dp : peaks) {
+            mzs[i] = dp.x;
+            intensities[i++] = dp.y;
+        }
+
+        return new WeightedPeaks(mzs, intensities, i, size, basePeak.y);
+    }
+
+    /**
+     * Prepares the peaks of a peak list, normalised by its most intense peak. If several peaks share an m/z, only the
+     * first one is kept if the duplicates are to be removed.
+     *
+     * @param peaks            the peak list
+     * @param removeDuplicates if peaks with an already present m/z are removed
+     * @return the weighted peaks
+     */
+    public static WeightedPeaks of(List<XYPoint> peaks, boolean removeDuplicates) {
+
+        int size = peaks.size();
+        double[] mzs = new double[size];
+        double[] intensities = new double[size];
+
+        XYPoint basePeak = peaks.get(0);
+        int i = 0;
+        for (XYPoint dp : peaks) {
+            if (dp.y > basePeak.y) basePeak = dp;
+            mzs[i] = dp.x;
+            intensities[i++] = dp.y;
+        }
+
+        int n = size;
+        if (removeDuplicates) {
+            sort(mzs, intensities, size);
+            n = 0;
+            for (int j = 0; j < size; j++) {
+                if (n > 0 && mzs[n - 1] == mzs[j]) continue;
+                mzs[n] = mzs[j];
+                intensities[n++] = intensities[j];
+            }
+        }
+
+        return new WeightedPeaks(mzs, intensities, n, size, basePeak.y);
+    }
+
+    /**
+     * Returns the number of distinct peaks.
+     *
+     * @return the number of peaks
+     */
+    public int size() {
+        return mzs.length;
+    }
+
+    /**
+     * Returns the number of peaks of the source peak list, including removed duplicates.
+     *
+     * @return the number of source peaks
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the m/z value of the peak at the given position.
+     *
+     * @param i the position
+     * @return the m/z value
+     */
+    public double getMz(int i) {
+        return mzs[i];
+    }
+
+    /**
+     * Returns the weight of the peak at the given position.
+     *
+     * @param i the position
+     * @return the weight
+     */
+    public double getWeight(int i) {
+        return weights[i];
+    }
+
+    /**
+     * Stable insertion sort of the first values by m/z. Peak lists are short and mostly sorted.
+     */
+    private static void sort(double[] mzs, double[] intensities, int size) {
+
+        for (int i = 1; i < size; i++) {
+
+            double mz = mzs[i];
+            double intensity = intensities[i];
+            int j = i - 1;
+            while (j >= 0 && mzs[j] > mz) {
+                mzs[j + 1] = mzs[j];
+                intensities[j + 1] = intensities[j];
+                j--;
+            }
+            mzs[j + 1] = mz;
+            intensities[j + 1] = intensity;
+        }
+    }
+}
@@ -24,37 +24,29 @@ package uk.ac.ebi.masscascade.score;
 
 import org.apache.commons.math3.util.FastMath;
 import org.apache.log4j.Logger;
-import uk.ac.ebi.masscascade.interfaces.Feature;
 import uk.ac.ebi.masscascade.interfaces.FeatureSet;
 import uk.ac.ebi.masscascade.parameters.Constants;
 import uk.ac.ebi.masscascade.reference.ReferenceSpectrum;
-import uk.ac.ebi.masscascade.utilities.xyz.XYList;
 import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * Class implementing a matching factor according to Stein (1994), consisting of two terms: the dot product between the
  * two spectral vectors and a term that describes the similarity between the shapes of two spectra.
+ * <p/>
+ * Both spectra are scored as {@link WeightedPeaks}, i.e., with precomputed weights in ascending m/z order. Every
+ * unknown peak is matched to its nearest reference peak within the tolerance in a single merge pass, which also
+ * accumulates both terms. The intensity ratios are taken between peaks adjacent in m/z.
  */
 public class WeightedScorer {
 
     private final Logger LOGGER = Logger.getLogger(WeightedScorer.class);
 
-    private double amu;
-
-    private double wIntensity;
-    private double wMass;
+    private final double amu;
 
     public WeightedScorer(double amu) {
-
         this.amu = amu;
-
-        this.wIntensity = 0.6;
-        this.wMass = 1.5;
     }
 
     /**
@@ -65,76 +57,7 @@ public class WeightedScorer {
      * @return the score (0-1000)
      */
     public double getScore(FeatureSet unknownFeatureSet, ReferenceSpectrum referenceSpectrum) {
-
-        XYPoint unknownBasePeak = unknownFeatureSet.getBasePeak().get(0);
-        XYPoint referenceBasePeak = referenceSpectrum.getBasePeak();
-
-        XYList unknownCommons = new XYList();
-        XYList referenceCommons = new XYList();
-
-        Set<Double> addedMz = new HashSet<>();
-        for (Feature feature : unknownFeatureSet) {
-
-            XYPoint referenceXY = referenceSpectrum.getMatchingPeak(feature.getMzIntDp(),
-                    amu * Constants.PPM / feature.getMzIntDp().x);
-            if (referenceXY == null || addedMz.contains(referenceXY.x)) continue;
-
-            addedMz.add(referenceXY.x);
-            unknownCommons.add(new XYPoint(feature.getMz(), feature.getIntensity() / unknownBasePeak.y));
-            referenceCommons.add(new XYPoint(referenceXY.x, referenceXY.y / referenceBasePeak.y));
-        }
-
-        int nCommons = unknownCommons.size();
-        if (nCommons == 0) return 0d;
-
-        // TODO: merge dot product and ratio loops
-
-        // dot product
-        double numerator = 0;
-        double denominatorUnknown = 0;
-        double denominatorReference = 0;
-        for (int i = 0; i < nCommons; i++) {
-            XYPoint unknownXY = unknownCommons.get(i);
-            XYPoint referenceXY = referenceCommons.get(i);
-            double unknownW = FastMath.pow(unknownXY.x, wMass) * FastMath.pow(unknownXY.y, wIntensity);
-            double referenceW = FastMath.pow(referenceXY.x, wMass) * FastMath.pow(referenceXY.y, wIntensity);
-
-            numerator += (unknownW * referenceW);
-            denominatorUnknown += (unknownW * unknownW);
-            denominatorReference += (referenceW * referenceW);
-        }
-
-        double dotProduct = (numerator * numerator) / (denominatorUnknown * denominatorReference);
-
-        // ratio
-        double sumRatio = 0;
-        XYPoint unknownXY = unknownCommons.get(0);
-        XYPoint referenceXY = referenceCommons.get(0);
-        double pUnknownW = FastMath.pow(unknownXY.x, wMass) * FastMath.pow(unknownXY.y, wIntensity);
-        double pReferenceW = FastMath.pow(referenceXY.x, wMass) * FastMath.pow(referenceXY.y, wIntensity);
-        for (int i = 1; i < nCommons; i++) {
-            unknownXY = unknownCommons.get(i);
-            referenceXY = referenceCommons.get(i);
-            double unknownW = FastMath.pow(unknownXY.x, wMass) * FastMath.pow(unknownXY.y, wIntensity);
-            double referenceW = FastMath.pow(referenceXY.x, wMass) * FastMath.pow(referenceXY.y, wIntensity);
-
-            double ratio = (pUnknownW / unknownW) * (referenceW / pReferenceW);
-            if (ratio > 1) ratio = 1 / ratio;
-            sumRatio += ratio;
-
-            pUnknownW = unknownW;
-            pReferenceW = referenceW;
-        }
-
-        double ratio = sumRatio / nCommons;
-
-        // matching factor
-        int nUnknown = unknownFeatureSet.size();
-        double mf = ((nUnknown * dotProduct) + (nCommons * ratio)) / (nUnknown + nCommons);
-
-//        LOGGER.log(Level.INFO, "Score: " + mf + "; Fd: " + dotProduct + "; Fr: " + ratio);
-
-        return FastMath.round(mf * 1000);
+        return getScore(WeightedPeaks.of(unknownFeatureSet), referenceSpectrum.getWeightedPeaks());
     }
 
     /**
@@ -145,104 +68,88 @@ public class WeightedScorer {
      * @return the score (0-1000)
      */
     public double getScore(List<XYPoint> unknown, List<XYPoint> reference) {
+        return getScore(WeightedPeaks.of(unknown, false), WeightedPeaks.of(reference, true));
+    }
 
-        XYPoint unknownBasePeak = unknown.get(0);
-        for (XYPoint dp : unknown) {
-            if (dp.y > unknownBasePeak.y) {
-                unknownBasePeak = dp;
-            }
-        }
+    /**
+     * Calculates the score between the prepared unknown and reference peaks.
+     *
+     * @param unknown   the unknown peaks
+     * @param reference the reference peaks
+     * @return the score (0-1000)
+     */
+    public double getScore(WeightedPeaks unknown, WeightedPeaks reference) {
 
-        XYPoint referenceBasePeak = reference.get(0);
-        for (XYPoint dp : reference) {
-            if (dp.y > referenceBasePeak.y) {
-                referenceBasePeak = dp;
-            }
-        }
-        TreeSet<XYPoint> treeReference = new TreeSet<>(reference);
+        int nReference = reference.size();
+        if (nReference == 0) return 0d;
 
-        XYList unknownCommons = new XYList();
-        XYList referenceCommons = new XYList();
+        int nCommons = 0;
+        int lastMatch = -1;
 
-        Set<Double> addedMz = new HashSet<>();
-        for (XYPoint dp : unknown) {
+        double numerator = 0;
+        double denominatorUnknown = 0;
+        double denominatorReference = 0;
 
-            XYPoint referenceXY = null;
-            if (treeReference.contains(dp)) {
-                referenceXY = treeReference.floor(dp);
-            } else {
-                double ppm = amu * Constants.PPM / dp.x;
-                XYPoint floor = treeReference.floor(dp);
-                XYPoint higher = treeReference.higher(dp);
+        double sumRatio = 0;
+        double pUnknownW = 0;
+        double pReferenceW = 0;
 
-                double deltaFloor = (floor != null) ? (dp.x - floor.x) : Double.MAX_VALUE;
-                double deltaCeiling = (higher != null) ? (higher.x - dp.x) : Double.MAX_VALUE;
+        // number of reference peaks with an m/z smaller or equal to the current unknown peak
+        int j = 0;
+        for (int i = 0; i < unknown.size(); i++) {
 
+            double mz = unknown.getMz(i);
+            while (j < nReference && reference.getMz(j) <= mz) j++;
 
-                if (floor != null || higher != null) {
-                    XYPoint match = (deltaFloor <= deltaCeiling) ? floor : higher;
-                    double delta = dp.x * ppm / Constants.PPM;
-                    referenceXY = (match.x >= dp.x - delta && match.x < dp.x + delta) ? match : null;
-                }
+            int match;
+            if (j > 0 && reference.getMz(j - 1) == mz) {
+                match = j - 1;
+            } else {
+                double deltaFloor = (j > 0) ? (mz - reference.getMz(j - 1)) : Double.MAX_VALUE;
+                double deltaCeiling = (j < nReference) ? (reference.getMz(j) - mz) : Double.MAX_VALUE;
+                match = (deltaFloor <= deltaCeiling) ? j - 1 : j;
+
+                double ppm = amu * Constants.PPM / mz;
+                double delta = mz * ppm / Constants.PPM;
+                double matchMz = reference.getMz(match);
+                if (matchMz < mz - delta || matchMz >= mz + delta) continue;
             }
 
-            if (referenceXY == null || addedMz.contains(referenceXY.x)) continue;
-
-            addedMz.add(referenceXY.x);
-            unknownCommons.add(new XYPoint(dp.x, dp.y / unknownBasePeak.y));
-            referenceCommons.add(new XYPoint(referenceXY.x, referenceXY.y / referenceBasePeak.y));
-        }
-
-        int nCommons = unknownCommons.size();
-        if (nCommons == 0) return 0d;
+            // the nearest reference peak does not decrease, so repeated matches are adjacent
+            if (match == lastMatch) continue;
+            lastMatch = match;
 
-        // TODO: merge dot product and ratio loops
-
-        // dot product
-        double numerator = 0;
-        double denominatorUnknown = 0;
-        double denominatorReference = 0;
-        for (int i = 0; i < nCommons; i++) {
-            XYPoint unknownXY = unknownCommons.get(i);
-            XYPoint referenceXY = referenceCommons.get(i);
-            double unknownW = FastMath.pow(unknownXY.x, wMass) * FastMath.pow(unknownXY.y, wIntensity);
-            double referenceW = FastMath.pow(referenceXY.x, wMass) * FastMath.pow(referenceXY.y, wIntensity);
+            double unknownW = unknown.getWeight(i);
+            double referenceW = reference.getWeight(match);
 
+            // dot product
             numerator += (unknownW * referenceW);
             denominatorUnknown += (unknownW * unknownW);
             denominatorReference += (referenceW * referenceW);
-        }
-
-        double dotProduct = (numerator * numerator) / (denominatorUnknown * denominatorReference);
 
-        // ratio
-        double sumRatio = 0;
-        XYPoint unknownXY = unknownCommons.get(0);
-        XYPoint referenceXY = referenceCommons.get(0);
-        double pUnknownW = FastMath.pow(unknownXY.x, wMass) * FastMath.pow(unknownXY.y, wIntensity);
-        double pReferenceW = FastMath.pow(referenceXY.x, wMass) * FastMath.pow(referenceXY.y, wIntensity);
-        for (int i = 1; i < nCommons; i++) {
-            unknownXY = unknownCommons.get(i);
-            referenceXY = referenceCommons.get(i);
-            double unknownW = FastMath.pow(unknownXY.x, wMass) * FastMath.pow(unknownXY.y, wIntensity);
-            double referenceW = FastMath.pow(referenceXY.x, wMass) * FastMath.pow(referenceXY.y, wIntensity);
-
-            double ratio = (pUnknownW / unknownW) * (referenceW / pReferenceW);
-            if (ratio > 1) ratio = 1 / ratio;
-            sumRatio += ratio;
+            // ratio
+            if (nCommons > 0) {
+                double ratio = (pUnknownW / unknownW) * (referenceW / pReferenceW);
+                if (ratio > 1) ratio = 1 / ratio;
+                sumRatio += ratio;
+            }
 
             pUnknownW = unknownW;
             pReferenceW = referenceW;
+            nCommons++;
         }
 
+        if (nCommons == 0) return 0d;
+
+        double dotProduct = (numerator * numerator) / (denominatorUnknown * denominatorReference);
         double ratio = sumRatio / nCommons;
 
         // matching factor
-        int nUnknown = unknown.size();
+        int nUnknown = unknown.getCount();
         double mf = ((nUnknown * dotProduct) + (nCommons * ratio)) / (nUnknown + nCommons);
 
 //        LOGGER.log(Level.INFO, "Score: " + mf + "; Fd: " + dotProduct + "; Fr: " + ratio);
 
         return FastMath.round(mf * 1000);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.commons.LibraryLoader;
+import uk.ac.ebi.masscascade.core.PropertyType;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureSet;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+import uk.ac.ebi.masscascade.library.LibraryBatchSearch;
+import uk.ac.ebi.masscascade.library.LibraryParameter;
+import uk.ac.ebi.masscascade.library.LibrarySearch;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.properties.Identity;
+import uk.ac.ebi.masscascade.reference.ReferenceContainer;
+import uk.ac.ebi.masscascade.reference.ReferenceSpectrum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class LibrarySearchTest {
+
+    private static final int[] PARALLELISMS = {4, 0};
+    private static final double[] MIN_SCORES = {0, 200};
+    private static final Constants.MSN[] MS_LEVELS = {Constants.MSN.MS1, Constants.MSN.MS2};
+
+    @Test
+    public void testLibrarySearch() {
+
+        ReferenceContainer referenceContainer = LibraryLoader.buildLibrary(new Random(73), 400);
+
+        for (Constants.MSN msn : MS_LEVELS) {
+            for (double minScore : MIN_SCORES) {
+
+                ParameterMap params = getSearchParams(msn, minScore);
+                params.put(LibraryParameter.REFERENCE_LIBRARY, referenceContainer);
+
+                List<String> expected = search(params, referenceContainer, 1, false);
+                Assert.assertFalse(expected.isEmpty());
+                for (int parallelism : PARALLELISMS)
+                    Assert.assertEquals(expected, search(params, referenceContainer, parallelism, false));
+            }
+        }
+    }
+
+    @Test
+    public void testLibraryBatchSearch() {
+
+        Random random = new Random(79);
+        ReferenceContainer ms2Container = LibraryLoader.buildLibrary(random, 300);
+        ReferenceContainer ms1Container = copy(LibraryLoader.buildLibrary(random, 300), Constants.MSN.MS1);
+
+        ArrayList<ReferenceContainer> referenceContainers = new ArrayList<>();
+        referenceContainers.add(ms1Container);
+        referenceContainers.add(ms2Container);
+        referenceContainers.add(copy(ms1Container, Constants.MSN.MS1));
+
+        for (Constants.MSN msn : MS_LEVELS) {
+            for (double minScore : MIN_SCORES) {
+
+                ParameterMap params = getSearchParams(msn, minScore);
+                params.put(Parameter.COLLISION_ENERGY, 0);
+                params.put(LibraryParameter.REFERENCE_LIBRARY_LIST, referenceContainers);
+
+                ReferenceContainer featureSource = (msn == Constants.MSN.MS1) ? ms1Container : ms2Container;
+                List<String> expected = search(params, featureSource, 1, true);
+                Assert.assertFalse(expected.isEmpty());
+                for (int parallelism : PARALLELISMS)
+                    Assert.assertEquals(expected, search(params, featureSource, parallelism, true));
+            }
+        }
+    }
+
+    private ParameterMap getSearchParams(Constants.MSN msn, double minScore) {
+
+        ParameterMap params = new ParameterMap();
+        // the MS1 search assigns identities to the nearest feature, which must exist for every scored reference
+        params.put(Parameter.MZ_WINDOW_PPM, (msn == Constants.MSN.MS1) ? 1e7 : 10d);
+        params.put(Parameter.MZ_WINDOW_AMU, 0.5);
+        params.put(Parameter.SCORE, minScore);
+        params.put(Parameter.MS_LEVEL, msn);
+        params.put(Parameter.ION_MODE, Constants.ION_MODE.POSITIVE);
+        return params;
+    }
+
+    /**
+     * Searches freshly built featuresets, since the search sets the identities on its input, and returns the
+     * identities of all features in featureset order, by feature id and in the order they were set.
+     */
+    private List<String> search(ParameterMap params, ReferenceContainer featureSource, int parallelism,
+            boolean batch) {
+
+        params.put(Parameter.PARALLELISM, parallelism);
+        params.put(Parameter.FEATURE_SET_CONTAINER, LibraryLoader.buildFeatureSets(new Random(83), featureSource));
+        FeatureSetContainer featureSetContainer = batch ? new LibraryBatchSearch(params).call() :
+                new LibrarySearch(params).call();
+
+        List<String> identities = new ArrayList<>();
+        int index = 0;
+        for (FeatureSet featureSet : featureSetContainer) {
+
+            Map<Integer, Feature> features = new TreeMap<>();
+            for (Feature feature : featureSet) features.put(feature.getId(), feature);
+
+            for (Feature feature : features.values()) {
+                if (!feature.hasProperty(PropertyType.Identity)) continue;
+                for (Identity identity : feature.getProperty(PropertyType.Identity, Identity.class)) {
+                    identities.add(index + " " + feature.getId() + " " + identity.getId() + " " +
+                            identity.getName() + " " + identity.getScore() + " " + identity.getSource() + " " +
+                            identity.getEvidence() + " " + identity.getComments());
+                }
+            }
+            index++;
+        }
+        return identities;
+    }
+
+    private ReferenceContainer copy(ReferenceContainer referenceContainer, Constants.MSN msn) {
+
+        ReferenceContainer copy = new ReferenceContainer(referenceContainer.getId(), referenceContainer.getSource(),
+                msn);
+        for (ReferenceSpectrum spectrum : referenceContainer) copy.addSpectrum(spectrum);
+        return copy;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.commons.LibraryLoader;
+import uk.ac.ebi.masscascade.core.PropertyType;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureSet;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+import uk.ac.ebi.masscascade.library.LibraryParameter;
+import uk.ac.ebi.masscascade.library.LibrarySearch;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.properties.Identity;
+import uk.ac.ebi.masscascade.reference.ReferenceContainer;
+import uk.ac.ebi.masscascade.reference.ReferenceLibraryFile;
+import uk.ac.ebi.masscascade.reference.ReferenceSpectrum;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+public class ReferenceLibraryFileTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+
+        ReferenceContainer referenceContainer = LibraryLoader.buildLibrary(new Random(41), 300, true);
+        ReferenceContainer mappedContainer = ReferenceLibraryFile.open(writeLibrary(referenceContainer));
+
+        assertEquals(referenceContainer, mappedContainer);
+    }
+
+    @Test
+    public void testEmptyLibrary() throws Exception {
+
+        ReferenceContainer referenceContainer = new ReferenceContainer("empty", "test", Constants.MSN.MS2);
+        ReferenceContainer mappedContainer = ReferenceLibraryFile.open(writeLibrary(referenceContainer));
+
+        assertEquals(referenceContainer, mappedContainer);
+        Assert.assertTrue(mappedContainer.getSpectra(100, 10).isEmpty());
+        Assert.assertTrue(mappedContainer.getSpectra(new double[]{100}, 0.5, 1, true).isEmpty());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+
+        ReferenceContainer referenceContainer = LibraryLoader.buildLibrary(new Random(43), 100, true);
+        ReferenceContainer mappedContainer = ReferenceLibraryFile.open(writeLibrary(referenceContainer));
+
+        // decode some spectra before serialization, the copy maps the file again
+        mappedContainer.getSpectraWithoutPrecursor().get(0);
+        ReferenceContainer mappedCopy = serialize(mappedContainer);
+        assertEquals(referenceContainer, mappedCopy);
+        Assert.assertEquals(mappedContainer.getSpectra(120, 1e5).size(), mappedCopy.getSpectra(120, 1e5).size());
+
+        assertEquals(referenceContainer, serialize(referenceContainer));
+    }
+
+    @Test
+    public void testLibrarySearch() throws Exception {
+
+        // spectra without base peak cannot be scored
+        ReferenceContainer referenceContainer = LibraryLoader.buildLibrary(new Random(47), 300, false);
+        ReferenceContainer mappedContainer = ReferenceLibraryFile.open(writeLibrary(referenceContainer));
+
+        for (Constants.MSN msn : new Constants.MSN[]{Constants.MSN.MS1, Constants.MSN.MS2}) {
+            for (double minScore : new double[]{0, 200}) {
+
+                FeatureSetContainer expected = search(referenceContainer, msn, minScore);
+                FeatureSetContainer actual = search(mappedContainer, msn, minScore);
+
+                Assert.assertEquals(expected.size(), actual.size());
+                Iterator<FeatureSet> actualIter = actual.iterator();
+                int nIdentities = 0;
+                for (FeatureSet featureSet : expected) {
+                    Iterator<Feature> actualFeatureIter = actualIter.next().iterator();
+                    for (Feature feature : featureSet) {
+                        List<String> identities = getIdentities(feature);
+                        Assert.assertEquals(identities, getIdentities(actualFeatureIter.next()));
+                        nIdentities += identities.size();
+                    }
+                }
+                Assert.assertTrue(nIdentities > 0);
+            }
+        }
+    }
+
+    private FeatureSetContainer search(ReferenceContainer referenceContainer, Constants.MSN msn, double minScore) {
+
+        ParameterMap params = new ParameterMap();
+        // the MS1 search assigns identities to the nearest feature, which must exist for every scored reference
+        params.put(Parameter.MZ_WINDOW_PPM, (msn == Constants.MSN.MS1) ? 1e7 : 10d);
+        params.put(Parameter.MZ_WINDOW_AMU, 0.5);
+        params.put(Parameter.SCORE, minScore);
+        params.put(Parameter.MS_LEVEL, msn);
+        params.put(Parameter.ION_MODE, Constants.ION_MODE.POSITIVE);
+        params.put(Parameter.FEATURE_SET_CONTAINER, LibraryLoader.buildFeatureSets(new Random(53), referenceContainer));
+        params.put(LibraryParameter.REFERENCE_LIBRARY, referenceContainer);
+
+        return new LibrarySearch(params).call();
+    }
+
+    private List<String> getIdentities(Feature feature) {
+
+        List<String> identities = new ArrayList<>();
+        if (!feature.hasProperty(PropertyType.Identity)) return identities;
+
+        for (Identity identity : feature.getProperty(PropertyType.Identity, Identity.class))
+            identities.add(identity.getId() + " " + identity.getName() + " " + identity.getScore());
+        Collections.sort(identities);
+        return identities;
+    }
+
+    private void assertEquals(ReferenceContainer expected, ReferenceContainer actual) {
+
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(expected.getSource(), actual.getSource());
+        Assert.assertEquals(expected.getMsn(), actual.getMsn());
+        Assert.assertEquals(expected.size(), actual.size());
+
+        Iterator<ReferenceSpectrum> actualIter = actual.iterator();
+        for (ReferenceSpectrum spectrum : expected) assertEquals(spectrum, actualIter.next());
+        Assert.assertFalse(actualIter.hasNext());
+
+        List<ReferenceSpectrum> actualSpectra = actual.getSpectraWithoutPrecursor();
+        Assert.assertEquals(expected.getSpectraWithoutPrecursor().size(), actualSpectra.size());
+        for (int i = 0; i < actualSpectra.size(); i++)
+            assertEquals(expected.getSpectraWithoutPrecursor().get(i), actualSpectra.get(i));
+    }
+
+    private void assertEquals(ReferenceSpectrum expected, ReferenceSpectrum actual) {
+
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(expected.getTitle(), actual.getTitle());
+        Assert.assertEquals(expected.getSource(), actual.getSource());
+        Assert.assertEquals(expected.getName(), actual.getName());
+        Assert.assertEquals(expected.getNotation(), actual.getNotation());
+        Assert.assertEquals(expected.getMass(), actual.getMass());
+        Assert.assertEquals(expected.getFormula(), actual.getFormula());
+        Assert.assertEquals(expected.getInstrument(), actual.getInstrument());
+        Assert.assertEquals(expected.getIonMode(), actual.getIonMode());
+        Assert.assertEquals(expected.getPrecursorType(), actual.getPrecursorType());
+        Assert.assertEquals(expected.getPrecursorMass(), actual.getPrecursorMass());
+        Assert.assertEquals(expected.getCollisionEnergy(), actual.getCollisionEnergy());
+
+        if (expected.getBasePeak() == null) {
+            Assert.assertNull(actual.getBasePeak());
+        } else {
+            Assert.assertEquals(expected.getBasePeak().x, actual.getBasePeak().x);
+            Assert.assertEquals(expected.getBasePeak().y, actual.getBasePeak().y);
+        }
+
+        Assert.assertEquals(expected.getMzIntList().size(), actual.getMzIntList().size());
+        Iterator<XYPoint> actualPeakIter = actual.getMzIntList().iterator();
+        for (XYPoint peak : expected.getMzIntList()) {
+            XYPoint actualPeak = actualPeakIter.next();
+            Assert.assertEquals(peak.x, actualPeak.x);
+            Assert.assertEquals(peak.y, actualPeak.y);
+        }
+    }
+
+    private File writeLibrary(ReferenceContainer referenceContainer) throws Exception {
+
+        File file = File.createTempFile("library", ".mcl");
+        file.deleteOnExit();
+        ReferenceLibraryFile.write(referenceContainer, file);
+        return file;
+    }
+
+    private ReferenceContainer serialize(ReferenceContainer referenceContainer) throws Exception {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(referenceContainer);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (ReferenceContainer) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.commons.LibraryLoader;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.reference.ReferenceContainer;
+import uk.ac.ebi.masscascade.reference.ReferenceSpectrum;
+import uk.ac.ebi.masscascade.score.WeightedPeaks;
+import uk.ac.ebi.masscascade.score.WeightedScorer;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class ReferencePeakIndexTest {
+
+    private static final double[] AMUS = {0.01, 0.3, 1.7};
+    private static final double[] MIN_SCORES = {1, 300, 600};
+    private static final int[] MIN_SHARED_PEAKS = {1, 2, 3};
+
+    @Test
+    public void testCandidatesCoverFullScan() {
+
+        Random random = new Random(23);
+        ReferenceContainer referenceContainer = LibraryLoader.buildLibrary(random, 400);
+        List<ReferenceSpectrum> spectra = referenceContainer.getSpectraWithoutPrecursor();
+
+        for (int n = 0; n < 200; n++) {
+
+            double amu = AMUS[n % AMUS.length];
+            List<XYPoint> query = buildQuery(random, spectra.get(random.nextInt(spectra.size())), amu);
+            WeightedPeaks unknownPeaks = WeightedPeaks.of(query, false);
+            WeightedScorer scorer = new WeightedScorer(amu);
+
+            double[] mzs = new double[query.size()];
+            for (int i = 0; i < mzs.length; i++) mzs[i] = query.get(i).x;
+
+            for (int minSharedPeaks : MIN_SHARED_PEAKS) {
+
+                List<ReferenceSpectrum> candidates = referenceContainer.getSpectra(mzs, amu, minSharedPeaks, false);
+                assertOrderedSubset(spectra, candidates);
+                Set<ReferenceSpectrum> candidateSet = new HashSet<>(candidates);
+
+                for (double minScore : MIN_SCORES) {
+                    for (ReferenceSpectrum reference : spectra) {
+
+                        WeightedPeaks referencePeaks = reference.getWeightedPeaks();
+                        if (scorer.getScore(unknownPeaks, referencePeaks) < minScore) continue;
+                        if (getCommonPeaks(unknownPeaks, referencePeaks, amu) < minSharedPeaks) continue;
+
+                        Assert.assertTrue(reference.getId() + " pruned", candidateSet.contains(reference));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSinglePeakSpectra() {
+
+        Random random = new Random(29);
+        ReferenceContainer referenceContainer = LibraryLoader.buildLibrary(random, 200);
+        List<ReferenceSpectrum> spectra = referenceContainer.getSpectraWithoutPrecursor();
+
+        List<ReferenceSpectrum> singlePeakSpectra = new ArrayList<>();
+        for (ReferenceSpectrum reference : spectra) {
+            if (reference.getMzIntList().size() == 1) singlePeakSpectra.add(reference);
+        }
+        Assert.assertFalse(singlePeakSpectra.isEmpty());
+
+        double[] mzs = {1000.5};
+        Assert.assertTrue(referenceContainer.getSpectra(mzs, 0.01, 1, false).isEmpty());
+        Assert.assertEquals(singlePeakSpectra, referenceContainer.getSpectra(mzs, 0.01, 1, true));
+
+        for (int n = 0; n < 50; n++) {
+
+            List<XYPoint> query = buildQuery(random, spectra.get(random.nextInt(spectra.size())), 0.3);
+            mzs = new double[query.size()];
+            for (int i = 0; i < mzs.length; i++) mzs[i] = query.get(i).x;
+
+            List<ReferenceSpectrum> candidates = referenceContainer.getSpectra(mzs, 0.3, 2, true);
+            assertOrderedSubset(spectra, candidates);
+            Assert.assertTrue(candidates.containsAll(singlePeakSpectra));
+            Assert.assertTrue(candidates.containsAll(referenceContainer.getSpectra(mzs, 0.3, 2, false)));
+        }
+    }
+
+    @Test
+    public void testEmptyLibrary() {
+
+        ReferenceContainer referenceContainer = new ReferenceContainer("empty", "test", Constants.MSN.MS1);
+        Assert.assertTrue(referenceContainer.getSpectra(new double[]{100, 200}, 0.3, 1, true).isEmpty());
+    }
+
+    /**
+     * Counts the reference peaks matched by the weighted scorer: every unknown peak is matched to its nearest
+     * reference peak within the tolerance, the lower one on ties.
+     */
+    private int getCommonPeaks(WeightedPeaks unknown, WeightedPeaks reference, double amu) {
+
+        Set<Integer> matches = new HashSet<>();
+        for (int i = 0; i < unknown.size(); i++) {
+
+            double mz = unknown.getMz(i);
+            int match = -1;
+            for (int j = 0; j < reference.size(); j++) {
+                if (match == -1 || Math.abs(reference.getMz(j) - mz) < Math.abs(reference.getMz(match) - mz))
+                    match = j;
+            }
+            if (match == -1) continue;
+
+            double delta = mz * (amu * Constants.PPM / mz) / Constants.PPM;
+            double matchMz = reference.getMz(match);
+            if (matchMz == mz || (matchMz >= mz - delta && matchMz < mz + delta)) matches.add(match);
+        }
+        return matches.size();
+    }
+
+    private void assertOrderedSubset(List<ReferenceSpectrum> spectra, List<ReferenceSpectrum> candidates) {
+
+        int last = -1;
+        for (ReferenceSpectrum candidate : candidates) {
+            int position = spectra.indexOf(candidate);
+            Assert.assertTrue(position > last);
+            last = position;
+        }
+    }
+
+    /**
+     * Builds a query from some peaks of a reference, shifted up to a little beyond the tolerance or onto its edges,
+     * and some unrelated peaks.
+     */
+    private List<XYPoint> buildQuery(Random random, ReferenceSpectrum reference, double amu) {
+
+        List<XYPoint> query = new ArrayList<>();
+        for (XYPoint peak : reference.getMzIntList()) {
+
+            if (random.nextInt(4) == 0) continue;
+
+            double shift;
+            switch (random.nextInt(4)) {
+                case 0:
+                    shift = 0;
+                    break;
+                case 1:
+                    shift = (random.nextBoolean() ? 1 : -1) * amu * (1 - 1e-12);
+                    break;
+                default:
+                    shift = (random.nextDouble() * 2.4 - 1.2) * amu;
+            }
+            query.add(new XYPoint(peak.x + shift, 1 + random.nextInt(10000)));
+        }
+
+        int nNoise = random.nextInt(5);
+        for (int i = 0; i < nNoise || query.isEmpty(); i++)
+            query.add(new XYPoint(50 + random.nextDouble() * 450, 1 + random.nextInt(10000)));
+
+        return query;
+    }
+}
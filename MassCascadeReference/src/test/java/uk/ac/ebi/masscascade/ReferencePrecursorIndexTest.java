@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.commons.LibraryLoader;
+import uk.ac.ebi.masscascade.core.PropertyType;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureSet;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+import uk.ac.ebi.masscascade.library.LibraryParameter;
+import uk.ac.ebi.masscascade.library.LibrarySearch;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.Parameter;
+import uk.ac.ebi.masscascade.parameters.ParameterMap;
+import uk.ac.ebi.masscascade.properties.Identity;
+import uk.ac.ebi.masscascade.reference.ReferenceContainer;
+import uk.ac.ebi.masscascade.reference.ReferenceLibraryFile;
+import uk.ac.ebi.masscascade.reference.ReferenceSpectrum;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class ReferencePrecursorIndexTest {
+
+    @Test
+    public void testWindowEdges() throws Exception {
+
+        double precursorMass = 250.1234;
+        double ppm = 10;
+        double delta = precursorMass * ppm / Constants.PPM;
+        double lower = precursorMass - delta;
+        double upper = precursorMass + delta;
+
+        ReferenceContainer referenceContainer = new ReferenceContainer("edges", "test", Constants.MSN.MS2);
+        referenceContainer.addSpectrum(buildSpectrum("below", Math.nextAfter(lower, 0), Constants.ION_MODE.POSITIVE,
+                10));
+        referenceContainer.addSpectrum(buildSpectrum("lower", lower, Constants.ION_MODE.POSITIVE, 10));
+        referenceContainer.addSpectrum(buildSpectrum("center", precursorMass, Constants.ION_MODE.POSITIVE, 10));
+        referenceContainer.addSpectrum(buildSpectrum("upper", upper, Constants.ION_MODE.POSITIVE, 10));
+        referenceContainer.addSpectrum(buildSpectrum("above", Math.nextUp(upper), Constants.ION_MODE.POSITIVE, 10));
+        referenceContainer.addSpectrum(buildSpectrum("low", 100, Constants.ION_MODE.POSITIVE, 10));
+
+        for (ReferenceContainer container : new ReferenceContainer[]{referenceContainer, map(referenceContainer)}) {
+            Assert.assertEquals(getIds("lower", "center", "upper"), getIds(container.getSpectra(precursorMass, ppm)));
+            Assert.assertEquals(getIds("lower", "center", "upper"),
+                    getIds(container.getSpectra(precursorMass, ppm, Constants.ION_MODE.POSITIVE)));
+            Assert.assertEquals(getIds("lower", "center", "upper"),
+                    getIds(container.getSpectra(precursorMass, ppm, Constants.ION_MODE.POSITIVE, 10)));
+            Assert.assertEquals(getIds("center"), getIds(container.getSpectra(precursorMass, 0)));
+        }
+    }
+
+    @Test
+    public void testPartitions() throws Exception {
+
+        Random random = new Random(59);
+        ReferenceContainer referenceContainer = LibraryLoader.buildLibrary(random, 500);
+
+        for (ReferenceContainer container : new ReferenceContainer[]{referenceContainer, map(referenceContainer)}) {
+
+            List<ReferenceSpectrum> spectra = new ArrayList<>();
+            for (ReferenceSpectrum spectrum : container) spectra.add(spectrum);
+
+            for (int n = 0; n < 500; n++) {
+
+                double precursorMass = (n % 5 == 0) ? ReferenceContainer.NO_PRECURSOR : 100 + random.nextInt(100);
+                double ppm = random.nextInt(4) * 5000;
+                double delta = precursorMass * ppm / Constants.PPM;
+                Constants.ION_MODE ionMode = LibraryLoader.ION_MODES[random.nextInt(LibraryLoader.ION_MODES.length)];
+                int collisionEnergy =
+                        LibraryLoader.COLLISION_ENERGIES[random.nextInt(LibraryLoader.COLLISION_ENERGIES.length)];
+
+                List<String> expected = new ArrayList<>();
+                List<String> expectedIonMode = new ArrayList<>();
+                List<String> expectedEnergy = new ArrayList<>();
+                for (ReferenceSpectrum spectrum : spectra) {
+                    double mass = spectrum.getPrecursorMass();
+                    if (mass < precursorMass - delta || mass > precursorMass + delta) continue;
+
+                    expected.add(spectrum.getId());
+                    if (ionMode == null || spectrum.getIonMode() != ionMode) continue;
+                    expectedIonMode.add(spectrum.getId());
+                    if (spectrum.getCollisionEnergy() == collisionEnergy) expectedEnergy.add(spectrum.getId());
+                }
+
+                // spectra without ion mode are only part of the partition of all spectra
+                Assert.assertEquals(expected, getIds(container.getSpectra(precursorMass, ppm)));
+                Assert.assertEquals(expectedIonMode, getIds(container.getSpectra(precursorMass, ppm, ionMode)));
+                Assert.assertEquals(expectedEnergy,
+                        getIds(container.getSpectra(precursorMass, ppm, ionMode, collisionEnergy)));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyPartitions() throws Exception {
+
+        ReferenceContainer emptyContainer = new ReferenceContainer("empty", "test", Constants.MSN.MS2);
+        for (ReferenceContainer container : new ReferenceContainer[]{emptyContainer, map(emptyContainer)}) {
+            Assert.assertTrue(container.getSpectra(200, 10).isEmpty());
+            Assert.assertTrue(container.getSpectra(200, 10, Constants.ION_MODE.POSITIVE).isEmpty());
+            Assert.assertTrue(container.getSpectra(200, 10, Constants.ION_MODE.POSITIVE, 10).isEmpty());
+            Assert.assertTrue(container.getSpectraWithoutPrecursor().isEmpty());
+        }
+
+        ReferenceContainer referenceContainer = new ReferenceContainer("positive", "test", Constants.MSN.MS2);
+        referenceContainer.addSpectrum(buildSpectrum("A", 200, Constants.ION_MODE.POSITIVE, 10));
+        referenceContainer.addSpectrum(buildSpectrum("B", 200, null, 10));
+
+        for (ReferenceContainer container : new ReferenceContainer[]{referenceContainer, map(referenceContainer)}) {
+            Assert.assertEquals(getIds("A", "B"), getIds(container.getSpectra(200, 10)));
+            Assert.assertTrue(container.getSpectra(200, 10, Constants.ION_MODE.NEGATIVE).isEmpty());
+            Assert.assertTrue(container.getSpectra(200, 10, null).isEmpty());
+            Assert.assertTrue(container.getSpectra(200, 10, Constants.ION_MODE.POSITIVE, 20).isEmpty());
+            Assert.assertTrue(container.getSpectra(200, 10, Constants.ION_MODE.NEGATIVE, 10).isEmpty());
+            Assert.assertTrue(container.getSpectra(300, 10, Constants.ION_MODE.POSITIVE, 10).isEmpty());
+            Assert.assertTrue(container.getSpectraWithoutPrecursor().isEmpty());
+        }
+
+        // the index is rebuilt after spectra are added
+        referenceContainer.addSpectrum(buildSpectrum("C", 200, Constants.ION_MODE.NEGATIVE, 10));
+        Assert.assertEquals(getIds("C"), getIds(referenceContainer.getSpectra(200, 10, Constants.ION_MODE.NEGATIVE)));
+        Assert.assertEquals(getIds("A", "B", "C"), getIds(referenceContainer.getSpectra(200, 10)));
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+
+        ReferenceContainer emptyContainer = new ReferenceContainer("empty", "test", Constants.MSN.MS2);
+        Assert.assertFalse(emptyContainer.iterator().hasNext());
+        Assert.assertFalse(map(emptyContainer).iterator().hasNext());
+
+        // spectra with precursor only, which the previous iterator did not walk
+        ReferenceContainer referenceContainer = new ReferenceContainer("precursors", "test", Constants.MSN.MS2);
+        referenceContainer.addSpectrum(buildSpectrum("B", 300, Constants.ION_MODE.POSITIVE, 10));
+        referenceContainer.addSpectrum(buildSpectrum("A", 200, Constants.ION_MODE.POSITIVE, 10));
+        referenceContainer.addSpectrum(buildSpectrum("C", 300, Constants.ION_MODE.NEGATIVE, 10));
+        Assert.assertEquals(getIds("A", "B", "C"), getIds(referenceContainer));
+        Assert.assertEquals(getIds("A", "B", "C"), getIds(map(referenceContainer)));
+
+        referenceContainer.addSpectrum(buildSpectrum("D", ReferenceContainer.NO_PRECURSOR, null, 0));
+        Assert.assertEquals(getIds("D", "A", "B", "C"), getIds(referenceContainer));
+        Assert.assertEquals(getIds("D", "A", "B", "C"), getIds(map(referenceContainer)));
+
+        Random random = new Random(61);
+        ReferenceContainer library = LibraryLoader.buildLibrary(random, 300);
+        List<String> ids = getIds(library);
+        Assert.assertEquals(library.size(), ids.size());
+        Assert.assertEquals(ids, getIds(map(library)));
+
+        double lastMass = -1;
+        for (ReferenceSpectrum spectrum : library) {
+            Assert.assertTrue(spectrum.getPrecursorMass() >= lastMass);
+            lastMass = spectrum.getPrecursorMass();
+        }
+
+        Iterator<ReferenceSpectrum> iterator = library.iterator();
+        iterator.next();
+        try {
+            iterator.remove();
+            Assert.fail();
+        } catch (UnsupportedOperationException exception) {
+            // read-only view
+        }
+        Assert.assertEquals(ids, getIds(library));
+    }
+
+    @Test
+    public void testMS1Candidates() throws Exception {
+
+        // every spectrum with a precursor has the same peaks as a spectrum without
+        ReferenceContainer referenceContainer = new ReferenceContainer("library", "test", Constants.MSN.MS1);
+        Random random = new Random(67);
+        Set<String> ms1Ids = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+
+            TreeSet<XYPoint> peaks = buildPeaks(random);
+            XYPoint basePeak = getBasePeak(peaks);
+            referenceContainer.addSpectrum(new ReferenceSpectrum("MS1-" + i, "title", "test", "name", "", 100 + i, "",
+                    "", Constants.ION_MODE.POSITIVE, "", ReferenceContainer.NO_PRECURSOR, 0, peaks, basePeak));
+            referenceContainer.addSpectrum(new ReferenceSpectrum("MS2-" + i, "title", "test", "name", "", 100 + i, "",
+                    "", Constants.ION_MODE.POSITIVE, "", 200 + i, 10, peaks, basePeak));
+            ms1Ids.add("MS1-" + i);
+        }
+
+        for (ReferenceContainer container : new ReferenceContainer[]{referenceContainer, map(referenceContainer)}) {
+            for (double minScore : new double[]{0, 200}) {
+
+                int nIdentities = 0;
+                FeatureSetContainer featureSets = LibraryLoader.buildFeatureSets(new Random(71), referenceContainer);
+                for (FeatureSet featureSet : search(container, minScore, featureSets)) {
+                    for (Feature feature : featureSet) {
+                        if (!feature.hasProperty(PropertyType.Identity)) continue;
+                        for (Identity identity : feature.getProperty(PropertyType.Identity, Identity.class)) {
+                            Assert.assertTrue(identity.getId(), ms1Ids.contains(identity.getId()));
+                            nIdentities++;
+                        }
+                    }
+                }
+                Assert.assertTrue(nIdentities > 0);
+            }
+        }
+    }
+
+    private FeatureSetContainer search(ReferenceContainer referenceContainer, double minScore,
+            FeatureSetContainer featureSetContainer) {
+
+        ParameterMap params = new ParameterMap();
+        // the MS1 search assigns identities to the nearest feature, which must exist for every scored reference
+        params.put(Parameter.MZ_WINDOW_PPM, 1e7);
+        params.put(Parameter.MZ_WINDOW_AMU, 0.5);
+        params.put(Parameter.SCORE, minScore);
+        params.put(Parameter.MS_LEVEL, Constants.MSN.MS1);
+        params.put(Parameter.ION_MODE, Constants.ION_MODE.POSITIVE);
+        params.put(Parameter.FEATURE_SET_CONTAINER, featureSetContainer);
+        params.put(LibraryParameter.REFERENCE_LIBRARY, referenceContainer);
+
+        return new LibrarySearch(params).call();
+    }
+
+    private ReferenceSpectrum buildSpectrum(String id, double precursorMass, Constants.ION_MODE ionMode,
+            int collisionEnergy) {
+
+        TreeSet<XYPoint> peaks = new TreeSet<>();
+        peaks.add(new XYPoint(50, 100));
+        peaks.add(new XYPoint(80, 1000));
+        return new ReferenceSpectrum(id, "title", "test", "name", "", 100, "", "", ionMode, "", precursorMass,
+                collisionEnergy, peaks, peaks.last());
+    }
+
+    private TreeSet<XYPoint> buildPeaks(Random random) {
+
+        TreeSet<XYPoint> peaks = new TreeSet<>();
+        int nPeaks = 2 + random.nextInt(10);
+        while (peaks.size() < nPeaks)
+            peaks.add(new XYPoint(100 + random.nextInt(40000) / 100d, 1 + random.nextInt(10000)));
+        return peaks;
+    }
+
+    private XYPoint getBasePeak(TreeSet<XYPoint> peaks) {
+
+        XYPoint basePeak = peaks.first();
+        for (XYPoint peak : peaks) if (peak.y > basePeak.y) basePeak = peak;
+        return basePeak;
+    }
+
+    private ReferenceContainer map(ReferenceContainer referenceContainer) throws Exception {
+
+        File file = File.createTempFile("library", ".mcl");
+        file.deleteOnExit();
+        ReferenceLibraryFile.write(referenceContainer, file);
+        return ReferenceLibraryFile.open(file);
+    }
+
+    private List<String> getIds(String... ids) {
+
+        List<String> idList = new ArrayList<>();
+        Collections.addAll(idList, ids);
+        return idList;
+    }
+
+    private List<String> getIds(Iterable<ReferenceSpectrum> spectra) {
+
+        List<String> ids = new ArrayList<>();
+        for (ReferenceSpectrum spectrum : spectra) ids.add(spectrum.getId());
+        return ids;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade;
+
+import junit.framework.Assert;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.reference.ReferenceSpectrum;
+import uk.ac.ebi.masscascade.score.WeightedPeaks;
+import uk.ac.ebi.masscascade.score.WeightedScorer;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class WeightedScorerTest {
+
+    private static final double[] AMUS = {0.005, 0.01, 0.1, 0.5};
+
+    @Test
+    public void testPeakListScore() {
+
+        Random random = new Random(31);
+        int nScored = 0;
+        for (int n = 0; n < 20000; n++) {
+
+            double amu = AMUS[n % AMUS.length];
+            List<XYPoint> reference = buildReference(random);
+            List<XYPoint> unknown = buildUnknown(random, reference, amu);
+
+            double expected = getPreviousScore(unknown, reference, amu);
+            Assert.assertEquals(expected, new WeightedScorer(amu).getScore(unknown, reference));
+            if (expected > 0) nScored++;
+        }
+        Assert.assertTrue(nScored > 10000);
+    }
+
+    @Test
+    public void testReferenceSpectrumScore() {
+
+        Random random = new Random(37);
+        for (int n = 0; n < 20000; n++) {
+
+            double amu = AMUS[n % AMUS.length];
+            TreeSet<XYPoint> peaks = new TreeSet<>(buildReference(random));
+            XYPoint basePeak = peaks.first();
+            for (XYPoint peak : peaks) if (peak.y > basePeak.y) basePeak = peak;
+            ReferenceSpectrum spectrum = new ReferenceSpectrum("R" + n, "title", "test", "name", "", 0, "", "",
+                    Constants.ION_MODE.POSITIVE, "", 0, 0, peaks, basePeak);
+
+            List<XYPoint> unknown = buildUnknown(random, new ArrayList<>(peaks), amu);
+
+            double expected = getPreviousScore(unknown, new ArrayList<>(peaks), amu);
+            WeightedPeaks unknownPeaks = WeightedPeaks.of(unknown, false);
+            Assert.assertEquals(expected, new WeightedScorer(amu).getScore(unknownPeaks, spectrum.getWeightedPeaks()));
+        }
+    }
+
+    /**
+     * Builds a reference peak list on a coarse m/z grid, in random order and with repeated m/z values.
+     */
+    private List<XYPoint> buildReference(Random random) {
+
+        List<XYPoint> reference = new ArrayList<>();
+        int nPeaks = 1 + random.nextInt(30);
+        for (int i = 0; i < nPeaks; i++) {
+            double mz = 50 + random.nextInt(50000) / 100d;
+            reference.add(new XYPoint(mz, 1 + random.nextInt(10000)));
+            if (random.nextInt(10) == 0) reference.add(new XYPoint(mz, 1 + random.nextInt(10000)));
+        }
+        Collections.shuffle(reference, random);
+        return reference;
+    }
+
+    /**
+     * Builds an m/z sorted, duplicate-free unknown peak list from shifted reference peaks, peaks on the tolerance
+     * edges, peaks halfway between reference peaks and unrelated peaks.
+     */
+    private List<XYPoint> buildUnknown(Random random, List<XYPoint> reference, double amu) {
+
+        List<XYPoint> sortedReference = new ArrayList<>(new TreeSet<>(reference));
+
+        TreeSet<XYPoint> unknown = new TreeSet<>();
+        for (int i = 0; i < sortedReference.size(); i++) {
+
+            double mz = sortedReference.get(i).x;
+            switch (random.nextInt(6)) {
+                case 0:
+                    continue;
+                case 1:
+                    break;
+                case 2:
+                    mz += random.nextBoolean() ? amu : -amu;
+                    break;
+                case 3:
+                    if (i + 1 < sortedReference.size()) mz = (mz + sortedReference.get(i + 1).x) / 2;
+                    break;
+                default:
+                    mz += (random.nextDouble() * 2 - 1) * amu;
+            }
+            unknown.add(new XYPoint(mz, 1 + random.nextInt(10000)));
+        }
+
+        int nNoise = random.nextInt(4);
+        for (int i = 0; i < nNoise || unknown.isEmpty(); i++)
+            unknown.add(new XYPoint(50 + random.nextInt(50000) / 100d, 1 + random.nextInt(10000)));
+
+        return new ArrayList<>(unknown);
+    }
+
+    /**
+     * The peak list scoring as implemented before the weighted peaks were introduced.
+     */
+    private double getPreviousScore(List<XYPoint> unknown, List<XYPoint> reference, double amu) {
+
+        double wIntensity = 0.6;
+        double wMass = 1.5;
+
+        XYPoint unknownBasePeak = unknown.get(0);
+        for (XYPoint dp : unknown) {
+            if (dp.y > unknownBasePeak.y) unknownBasePeak = dp;
+        }
+        XYPoint referenceBasePeak = reference.get(0);
+        for (XYPoint dp : reference) {
+            if (dp.y > referenceBasePeak.y) referenceBasePeak = dp;
+        }
+        TreeSet<XYPoint> treeReference = new TreeSet<>(reference);
+
+        XYList unknownCommons = new XYList();
+        XYList referenceCommons = new XYList();
+
+        Set<Double> addedMz = new HashSet<>();
+        for (XYPoint dp : unknown) {
+
+            XYPoint referenceXY = null;
+            if (treeReference.contains(dp)) {
+                referenceXY = treeReference.floor(dp);
+            } else {
+                double ppm = amu * Constants.PPM / dp.x;
+                XYPoint floor = treeReference.floor(dp);
+                XYPoint higher = treeReference.higher(dp);
+
+                double deltaFloor = (floor != null) ? (dp.x - floor.x) : Double.MAX_VALUE;
+                double deltaCeiling = (higher != null) ? (higher.x - dp.x) : Double.MAX_VALUE;
+
+                if (floor != null || higher != null) {
+                    XYPoint match = (deltaFloor <= deltaCeiling) ? floor : higher;
+                    double delta = dp.x * ppm / Constants.PPM;
+                    referenceXY = (match.x >= dp.x - delta && match.x < dp.x + delta) ? match : null;
+                }
+            }
+
+            if (referenceXY == null || addedMz.contains(referenceXY.x)) continue;
+
+            addedMz.add(referenceXY.x);
+            unknownCommons.add(new XYPoint(dp.x, dp.y / unknownBasePeak.y));
+            referenceCommons.add(new XYPoint(referenceXY.x, referenceXY.y / referenceBasePeak.y));
+        }
+
+        int nCommons = unknownCommons.size();
+        if (nCommons == 0) return 0d;
+
+        double numerator = 0;
+        double denominatorUnknown = 0;
+        double denominatorReference = 0;
+        for (int i = 0; i < nCommons; i++) {
+            XYPoint unknownXY = unknownCommons.get(i);
+            XYPoint referenceXY = referenceCommons.get(i);
+            double unknownW = FastMath.pow(unknownXY.x, wMass) * FastMath.pow(unknownXY.y, wIntensity);
+            double referenceW = FastMath.pow(referenceXY.x, wMass) * FastMath.pow(referenceXY.y, wIntensity);
+
+            numerator += (unknownW * referenceW);
+            denominatorUnknown += (unknownW * unknownW);
+            denominatorReference += (referenceW * referenceW);
+        }
+
+        double dotProduct = (numerator * numerator) / (denominatorUnknown * denominatorReference);
+
+        double sumRatio = 0;
+        XYPoint unknownXY = unknownCommons.get(0);
+        XYPoint referenceXY = referenceCommons.get(0);
+        double pUnknownW = FastMath.pow(unknownXY.x, wMass) * FastMath.pow(unknownXY.y, wIntensity);
+        double pReferenceW = FastMath.pow(referenceXY.x, wMass) * FastMath.pow(referenceXY.y, wIntensity);
+        for (int i = 1; i < nCommons; i++) {
+            unknownXY = unknownCommons.get(i);
+            referenceXY = referenceCommons.get(i);
+            double unknownW = FastMath.pow(unknownXY.x, wMass) * FastMath.pow(unknownXY.y, wIntensity);
+            double referenceW = FastMath.pow(referenceXY.x, wMass) * FastMath.pow(referenceXY.y, wIntensity);
+
+            double ratio = (pUnknownW / unknownW) * (referenceW / pReferenceW);
+            if (ratio > 1) ratio = 1 / ratio;
+            sumRatio += ratio;
+
+            pUnknownW = unknownW;
+            pReferenceW = referenceW;
+        }
+
+        double ratio = sumRatio / nCommons;
+
+        int nUnknown = unknown.size();
+        double mf = ((nUnknown * dotProduct) + (nCommons * ratio)) / (nUnknown + nCommons);
+
+        return FastMath.round(mf * 1000);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+package uk.ac.ebi.masscascade.commons;
+
+import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
+import uk.ac.ebi.masscascade.core.feature.FeatureImpl;
+import uk.ac.ebi.masscascade.core.featureset.FeatureSetImpl;
+import uk.ac.ebi.masscascade.interfaces.Feature;
+import uk.ac.ebi.masscascade.interfaces.FeatureSet;
+import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.reference.ReferenceContainer;
+import uk.ac.ebi.masscascade.reference.ReferenceSpectrum;
+import uk.ac.ebi.masscascade.utilities.range.ExtendableRange;
+import uk.ac.ebi.masscascade.utilities.xyz.XYList;
+import uk.ac.ebi.masscascade.utilities.xyz.XYPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class LibraryLoader {
+
+    public static final Constants.ION_MODE[] ION_MODES =
+            {Constants.ION_MODE.POSITIVE, Constants.ION_MODE.NEGATIVE, null};
+    public static final int[] COLLISION_ENERGIES = {10, 20, 40};
+
+    public static ReferenceContainer buildLibrary(Random random, int nSpectra) {
+        return buildLibrary(random, nSpectra, false);
+    }
+
+    /**
+     * Builds a library of MS1 spectra without precursor and MS2 spectra with few distinct precursor masses, so that
+     * precursor windows hold several spectra of each ion mode and collision energy. Some spectra have a single peak,
+     * no ion mode or missing meta information, and optionally no base peak. Intensities are exact in single
+     * precision.
+     */
+    public static ReferenceContainer buildLibrary(Random random, int nSpectra, boolean withoutBasePeaks) {
+
+        ReferenceContainer referenceContainer = new ReferenceContainer("library", "test", Constants.MSN.MS2);
+        for (int i = 0; i < nSpectra; i++) {
+
+            int nPeaks = (i % 10 == 0) ? 1 : 2 + random.nextInt(20);
+            TreeSet<XYPoint> peaks = new TreeSet<>();
+            XYPoint basePeak = null;
+            while (peaks.size() < nPeaks) {
+                XYPoint peak = new XYPoint(100 + random.nextInt(40000) / 100d, 1 + random.nextInt(10000));
+                if (!peaks.add(peak)) continue;
+                if (basePeak == null || peak.y > basePeak.y) basePeak = peak;
+            }
+            if (withoutBasePeaks && i % 11 == 0) basePeak = null;
+
+            double precursorMass = (i % 3 == 0) ? ReferenceContainer.NO_PRECURSOR : 100 + random.nextInt(200) / 2d;
+            Constants.ION_MODE ionMode = ION_MODES[random.nextInt(ION_MODES.length)];
+            int collisionEnergy = COLLISION_ENERGIES[random.nextInt(COLLISION_ENERGIES.length)];
+            String title = (i % 5 == 0) ? null : "title " + i;
+            String formula = (i % 7 == 0) ? null : "C" + i + "H" + (2 * i);
+
+            referenceContainer.addSpectrum(new ReferenceSpectrum("R" + i, title, "source", "name é" + i,
+                    "notation", 100 + i / 10d, formula, "instrument", ionMode, "[M+H]+", precursorMass,
+                    collisionEnergy, peaks, basePeak));
+        }
+        return referenceContainer;
+    }
+
+    /**
+     * Builds featuresets from shifted peaks of the MS1 references. Every feature carries an MS2 spectrum built from a
+     * reference with precursor, the parent m/z is the precursor mass.
+     */
+    public static FeatureSetContainer buildFeatureSets(Random random, ReferenceContainer referenceContainer) {
+
+        List<ReferenceSpectrum> ms1Spectra = new ArrayList<>(referenceContainer.getSpectraWithoutPrecursor());
+        List<ReferenceSpectrum> ms2Spectra = new ArrayList<>();
+        for (ReferenceSpectrum spectrum : referenceContainer) {
+            if (spectrum.getPrecursorMass() != ReferenceContainer.NO_PRECURSOR) ms2Spectra.add(spectrum);
+        }
+
+        FeatureSetContainer featureSetContainer = MemoryContainerBuilder.getInstance().newInstance(
+                FeatureSetContainer.class, "sets", Constants.ION_MODE.POSITIVE);
+        int featureId = 1;
+        for (int n = 0; n < 40; n++) {
+
+            ReferenceSpectrum ms1Spectrum = ms1Spectra.get(random.nextInt(ms1Spectra.size()));
+            Set<Feature> features = new HashSet<>();
+            XYList mzIntList = new XYList();
+            for (XYPoint peak : ms1Spectrum.getMzIntList()) {
+
+                double rt = 10 * n;
+                XYPoint mzIntDp = new XYPoint(peak.x + random.nextInt(40) / 100d - 0.2, 1 + random.nextInt(10000));
+                Feature feature = new FeatureImpl(featureId++, mzIntDp, rt, new ExtendableRange(mzIntDp.x));
+
+                ReferenceSpectrum ms2Spectrum = ms2Spectra.get(random.nextInt(ms2Spectra.size()));
+                feature.addMsnSpectrum(Constants.MSN.MS2, buildFeatureSet(ms2Spectrum, random));
+
+                features.add(feature);
+                mzIntList.add(mzIntDp);
+            }
+            Collections.sort(mzIntList);
+            featureSetContainer.addFeatureSet(new FeatureSetImpl(n + 1, mzIntList, new ExtendableRange(10 * n), 10 * n,
+                    features));
+        }
+        featureSetContainer.finaliseFile();
+
+        return featureSetContainer;
+    }
+
+    private static FeatureSet buildFeatureSet(ReferenceSpectrum spectrum, Random random) {
+
+        Set<Feature> features = new HashSet<>();
+        XYList mzIntList = new XYList();
+        int featureId = 1;
+        for (XYPoint peak : spectrum.getMzIntList()) {
+            XYPoint mzIntDp = new XYPoint(peak.x, 1 + random.nextInt(10000));
+            Feature feature = new FeatureImpl(featureId++, mzIntDp, 0, new ExtendableRange(mzIntDp.x));
+            features.add(feature);
+            mzIntList.add(mzIntDp);
+        }
+
+        FeatureSet featureSet = new FeatureSetImpl(1, mzIntList, new ExtendableRange(0), 0, features);
+        featureSet.setParent(1, spectrum.getPrecursorMass(), 0);
+        return featureSet;
+    }
+}
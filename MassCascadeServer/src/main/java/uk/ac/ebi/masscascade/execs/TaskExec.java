@@ -35,7 +35,7 @@ import uk.ac.ebi.masscascade.filter.FeatureFilter;
 import uk.ac.ebi.masscascade.filter.FeatureSetFilter;
 import uk.ac.ebi.masscascade.filter.IonFilter;
 import uk.ac.ebi.masscascade.identification.IsotopeFinder;
-import uk.ac.ebi.masscascade.io.PsiMzmlReader;
+import uk.ac.ebi.masscascade.io.PsiMzmlIndexedReader;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 import uk.ac.ebi.masscascade.server.TaskRunner;
@@ -118,7 +118,7 @@ public class TaskExec extends CommandLineMain {
     private void setup(TaskRunner runner) {
 
         ParameterMap params = new ParameterMap();
-        runner.add(PsiMzmlReader.class, params);
+        runner.add(PsiMzmlIndexedReader.class, params);
 
         params = new ParameterMap();
         params.put(Parameter.SCAN_WINDOW, 5);
@@ -163,7 +163,6 @@ public class TaskExec extends CommandLineMain {
         params.put(Parameter.MZ_RANGE, new ExtendableRange(60, 900));
         params.put(Parameter.TIME_RANGE, new ExtendableRange(0, 900));
         params.put(Parameter.REFERENCE_FILE, new File("./20100921_Tomato_Standard_61-0904.lmata"));
-        params.put(Parameter.EXECUTABLE, "./obiwarp-x86_64-linux");
         runner.add(Obiwarp.class, params);
 
         params = new ParameterMap();
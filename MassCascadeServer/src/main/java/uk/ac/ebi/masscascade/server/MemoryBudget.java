@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013 EMBL - European Bioinformatics Institute
+ *
+ * This file is part of MassCascade.
+ *
+ * MassCascade is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MassCascade is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MassCascade. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *   Stephan Beisken - initial API and implementation
+ */
+
+package uk.ac.ebi.masscascade.server;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Byte budget shared by concurrently running stages. A stage acquires its estimated memory before it runs and releases
+ * it afterwards; stages that do not fit into the remaining budget wait. Requests larger than the budget are capped, so
+ * a single stage always runs. Waiting inside a fork join pool is signalled to the pool, which may activate a spare
+ * worker in the meantime.
+ */
+public class MemoryBudget {
+
+    private final long budget;
+    private long available;
+
+    /**
+     * Constructs a memory budget.
+     *
+     * @param budget the budget in bytes
+     */
+    public MemoryBudget(long budget) {
+
+        this.budget = budget;
+        available = budget;
+    }
+
+    /**
+     * Returns the budget in bytes.
+     *
+     * @return the budget
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Blocks until the given number of bytes is available and takes them from the budget.
+     *
+     * @param bytes the number of bytes
+     * @return the number of bytes taken, which must be passed to {@link #release(long)}
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public long acquire(long bytes) throws InterruptedException {
+
+        final long amount = Math.min(Math.max(bytes, 0), budget);
+        if (amount == 0) return 0;
+
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+            private boolean acquired = false;
+
+            @Override
+            public boolean block() throws InterruptedException {
+
+                synchronized (MemoryBudget.this) {
+                    while (!acquired && available < amount) MemoryBudget.this.wait();
+                    if (!acquired) {
+                        available -= amount;
+                        acquired = true;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+
+                synchronized (MemoryBudget.this) {
+                    if (!acquired && available >= amount) {
+                        available -= amount;
+                        acquired = true;
+                    }
+                    return acquired;
+                }
+            }
+        });
+
+        return amount;
+    }
+
+    /**
+     * Returns the given number of bytes to the budget.
+     *
+     * @param bytes the number of bytes returned by {@link #acquire(long)}
+     */
+    public synchronized void release(long bytes) {
+
+        if (bytes == 0) return;
+        available += bytes;
+        notifyAll();
+    }
+}
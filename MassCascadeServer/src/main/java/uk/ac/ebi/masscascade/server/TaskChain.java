@@ -26,97 +26,227 @@ import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import uk.ac.ebi.masscascade.core.container.file.FileContainerBuilder;
 import uk.ac.ebi.masscascade.core.container.memory.MemoryContainerBuilder;
+import uk.ac.ebi.masscascade.core.feature.FeaturePipeline;
+import uk.ac.ebi.masscascade.core.scan.ScanPipeline;
 import uk.ac.ebi.masscascade.deconvolution.BiehmanDeconvolution;
 import uk.ac.ebi.masscascade.deconvolution.SavitzkyGolayDeconvolution;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
+import uk.ac.ebi.masscascade.interfaces.FeatureStreamTask;
+import uk.ac.ebi.masscascade.interfaces.ScanStreamTask;
 import uk.ac.ebi.masscascade.interfaces.container.Container;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureContainer;
 import uk.ac.ebi.masscascade.interfaces.container.ScanContainer;
 import uk.ac.ebi.masscascade.interfaces.container.FeatureSetContainer;
+import uk.ac.ebi.masscascade.io.PsiMzmlIndexedReader;
 import uk.ac.ebi.masscascade.parameters.Constants;
+import uk.ac.ebi.masscascade.parameters.CoreTasks;
 import uk.ac.ebi.masscascade.parameters.Parameter;
 import uk.ac.ebi.masscascade.parameters.ParameterMap;
 
 import java.io.File;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
+/**
+ * Executes a chain of tasks on a single file. The chain can either be called as a whole or be advanced stage by stage
+ * via {@link #runStage(int)}, where a stage is a single task or a run of fused streaming tasks. Parameter maps are
+ * copied per stage, so the same task map can be shared between chains.
+ */
 public class TaskChain implements Callable<Container> {
 
     private static Logger LOGGER = Logger.getLogger(TaskChain.class);
 
-    private final LinkedHashMap<Class<? extends CallableTask>, ParameterMap> tasks;
+    private final List<Map.Entry<Class<? extends CallableTask>, ParameterMap>> tasks;
     private final List<File> tmpFiles;
     private final File tmpDir;
     private final File file;
 
+    private Container container;
+    private Container lastRawContainer;
+    private int taskIndex;
+
     public TaskChain(File file, LinkedHashMap<Class<? extends CallableTask>, ParameterMap> tasks, File tmpDir) {
 
         this.file = file;
-        this.tasks = tasks;
+        this.tasks = new ArrayList<>(tasks.entrySet());
         this.tmpDir = tmpDir;
         this.tmpFiles = new ArrayList<>();
+
+        taskIndex = 0;
     }
 
     public Container call() {
 
         boolean success = false;
-        Container container = null;
-        Container lastRawContainer = null;
 
         try {
-            Iterator<Map.Entry<Class<? extends CallableTask>, ParameterMap>> taskIter = tasks.entrySet().iterator();
+            while (hasNext()) runStage(1);
+            success = true;
+        } catch (Exception exception) {
+            LOGGER.log(Level.ERROR, "Task chain execution error.", exception);
+        } finally {
+            finish(success);
+        }
 
-            container = getIOContainer(taskIter.next().getKey());
+        return container;
+    }
 
-            while (taskIter.hasNext()) {
+    /**
+     * Returns the input file of the chain.
+     *
+     * @return the input file
+     */
+    public File getFile() {
+        return file;
+    }
 
-                if (tmpDir != null) tmpFiles.add(container.getDataFile());
+    /**
+     * Returns the container produced by the last stage.
+     *
+     * @return the current container
+     */
+    public Container getContainer() {
+        return container;
+    }
 
-                Map.Entry<Class<? extends CallableTask>, ParameterMap> taskEntry = taskIter.next();
+    /**
+     * Returns if the chain has stages left.
+     *
+     * @return if stages are left
+     */
+    public boolean hasNext() {
+        return taskIndex < tasks.size();
+    }
 
-                Class<? extends CallableTask> taskClass = taskEntry.getKey();
-                ParameterMap params = taskEntry.getValue();
-                if (container instanceof ScanContainer) {
-                    lastRawContainer = container;
-                    params.put(Parameter.SCAN_CONTAINER, container);
-                } else if (container instanceof FeatureContainer) {
-                    params.put(Parameter.FEATURE_CONTAINER, container);
-                } else if (container instanceof FeatureSetContainer) {
-                    params.put(Parameter.FEATURE_SET_CONTAINER, container);
-                }
+    /**
+     * Returns the estimated number of bytes the next stage holds in memory. Stages that materialise the raw data,
+     * i.e. the reader and all non-streaming tasks on raw scans, are estimated by the size of the input file. Streaming
+     * stages and stages on features are not counted.
+     *
+     * @return the estimated memory of the next stage in bytes
+     */
+    public long getStageMemory() {
 
-                if (taskClass == BiehmanDeconvolution.class || taskClass == SavitzkyGolayDeconvolution.class) {
-                    params.put(Parameter.SCAN_CONTAINER, lastRawContainer);
-                }
+        if (taskIndex == 0) return file.length();
 
-                Constructor<?> cstr = taskEntry.getKey().getConstructor(ParameterMap.class);
-                CallableTask task = (CallableTask) cstr.newInstance(params);
+        Class<? extends CallableTask> taskClass = tasks.get(taskIndex).getKey();
+        if (taskClass == BiehmanDeconvolution.class || taskClass == SavitzkyGolayDeconvolution.class)
+            return file.length();
+        if (container instanceof ScanContainer && !isStreamable(taskClass, container)) return file.length();
 
-                container = task.call();
-            }
+        return 0;
+    }
 
-            success = true;
-        } catch (Exception exception) {
-            LOGGER.log(Level.ERROR, "Task chain execution error.", exception);
-        } finally {
-            if (success) {
-                for (int i = 0; i < tmpFiles.size() - 1; i++) {
-                    tmpFiles.get(i).delete();
-                }
-            } else {
-                for (File tmpFile : tmpFiles) {
-                    tmpFile.delete();
-                }
+    /**
+     * Runs the next stage of the chain.
+     *
+     * @param parallelism the number of threads the stage may use for tasks that support intra-task parallelism, passed
+     *                    as {@link Parameter#PARALLELISM} unless the task map sets it
+     * @throws Exception if the stage fails
+     */
+    public void runStage(int parallelism) throws Exception {
+
+        if (taskIndex == 0) {
+            container = getIOContainer(tasks.get(taskIndex++).getKey());
+            return;
+        }
+
+        if (tmpDir != null && !file.equals(container.getDataFile())) tmpFiles.add(container.getDataFile());
+
+        if (container instanceof ScanContainer) lastRawContainer = container;
+
+        // consecutive streaming tasks are fused into a single pass over the container
+        int end = taskIndex;
+        while (end < tasks.size() && isStreamable(tasks.get(end).getKey(), container)) end++;
+
+        if (end - taskIndex > 1) {
+            container = callPipeline(tasks.subList(taskIndex, end), container);
+            taskIndex = end;
+            return;
+        }
+
+        Map.Entry<Class<? extends CallableTask>, ParameterMap> taskEntry = tasks.get(taskIndex++);
+
+        Class<? extends CallableTask> taskClass = taskEntry.getKey();
+        ParameterMap params = taskEntry.getValue().clone();
+        putContainer(params, container);
+        if (!params.containsKey(Parameter.PARALLELISM)) params.put(Parameter.PARALLELISM, parallelism);
+
+        if (taskClass == BiehmanDeconvolution.class || taskClass == SavitzkyGolayDeconvolution.class) {
+            params.put(Parameter.SCAN_CONTAINER, lastRawContainer);
+        }
+
+        container = newTask(taskClass, params).call();
+    }
+
+    /**
+     * Deletes the temporary files of the chain. Only the file of the final container is kept if the chain succeeded.
+     *
+     * @param success if the chain succeeded
+     */
+    public void finish(boolean success) {
+
+        if (success) {
+            for (int i = 0; i < tmpFiles.size() - 1; i++) {
+                tmpFiles.get(i).delete();
+            }
+        } else {
+            for (File tmpFile : tmpFiles) {
+                tmpFile.delete();
             }
         }
+    }
 
-        return container;
+    private boolean isStreamable(Class<? extends CallableTask> taskClass, Container container) {
+
+        return (container instanceof ScanContainer && ScanStreamTask.class.isAssignableFrom(taskClass)) ||
+                (container instanceof FeatureContainer && FeatureStreamTask.class.isAssignableFrom(taskClass));
+    }
+
+    private Container callPipeline(List<Map.Entry<Class<? extends CallableTask>, ParameterMap>> taskEntries,
+            Container container) throws Exception {
+
+        StringBuilder id = new StringBuilder(container.getId());
+        List<CallableTask> stages = new ArrayList<>();
+        for (Map.Entry<Class<? extends CallableTask>, ParameterMap> taskEntry : taskEntries) {
+
+            ParameterMap params = taskEntry.getValue().clone();
+            putContainer(params, container);
+
+            stages.add(newTask(taskEntry.getKey(), params));
+            id.append(CoreTasks.getEnumFor(taskEntry.getKey()).getIdentifier());
+        }
+
+        if (container instanceof ScanContainer) {
+            List<ScanStreamTask> scanStages = new ArrayList<>();
+            for (CallableTask stage : stages) scanStages.add((ScanStreamTask) stage);
+            return new ScanPipeline(scanStages).run((ScanContainer) container, id.toString());
+        } else {
+            List<FeatureStreamTask> featureStages = new ArrayList<>();
+            for (CallableTask stage : stages) featureStages.add((FeatureStreamTask) stage);
+            return new FeaturePipeline(featureStages).run((FeatureContainer) container, id.toString());
+        }
+    }
+
+    private void putContainer(ParameterMap params, Container container) {
+
+        if (container instanceof ScanContainer) {
+            params.put(Parameter.SCAN_CONTAINER, container);
+        } else if (container instanceof FeatureContainer) {
+            params.put(Parameter.FEATURE_CONTAINER, container);
+        } else if (container instanceof FeatureSetContainer) {
+            params.put(Parameter.FEATURE_SET_CONTAINER, container);
+        }
+    }
+
+    private CallableTask newTask(Class<? extends CallableTask> taskClass, ParameterMap params) throws Exception {
+
+        Constructor<?> cstr = taskClass.getConstructor(ParameterMap.class);
+        return (CallableTask) cstr.newInstance(params);
     }
 
     private Container getIOContainer(Class<? extends CallableTask> ioClass) throws Exception {
@@ -125,7 +255,10 @@ public class TaskChain implements Callable<Container> {
 
         ParameterMap params = new ParameterMap();
         params.put(Parameter.DATA_FILE, file);
-        if (tmpDir != null) {
+        if (ioClass == PsiMzmlIndexedReader.class && tmpDir != null) {
+            // indexed files are read on demand, the reader only creates a container if the file is not indexed
+            params.put(Parameter.WORKING_DIRECTORY, tmpDir.getAbsolutePath());
+        } else if (tmpDir != null) {
             params.put(Parameter.SCAN_CONTAINER,
                     FileContainerBuilder.getInstance().newInstance(ScanContainer.class, name + Constants.DELIMITER,
                             tmpDir.getAbsolutePath()));
@@ -134,9 +267,6 @@ public class TaskChain implements Callable<Container> {
                     MemoryContainerBuilder.getInstance().newInstance(ScanContainer.class, name + Constants.DELIMITER));
         }
 
-        Constructor<?> cstr = ioClass.getConstructor(ParameterMap.class);
-        CallableTask task = (CallableTask) cstr.newInstance(params);
-
-        return task.call();
+        return newTask(ioClass, params).call();
     }
 }
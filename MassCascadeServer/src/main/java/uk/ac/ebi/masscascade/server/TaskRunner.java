@@ -27,7 +27,11 @@ import com.google.common.collect.Multimap;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import uk.ac.ebi.masscascade.alignment.FeatureBinTableModel;
+import uk.ac.ebi.masscascade.alignment.Obiwarp;
 import uk.ac.ebi.masscascade.alignment.featurebins.FeatureBin;
+import uk.ac.ebi.masscascade.core.container.file.FileContainerBuilder;
+import uk.ac.ebi.masscascade.core.container.file.FileManager;
+import uk.ac.ebi.masscascade.core.container.file.ObjectCache;
 import uk.ac.ebi.masscascade.exception.MassCascadeException;
 import uk.ac.ebi.masscascade.interfaces.CallableTask;
 import uk.ac.ebi.masscascade.interfaces.container.Container;
@@ -41,9 +45,10 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The task runner simplifies running MassCascade on command line. It takes a set of task classes and parameter maps
@@ -59,6 +64,9 @@ public class TaskRunner {
     private File outDirectory;
     private File tmpDirectory;
     private int nThreads;
+    private long memoryBudget;
+    private boolean mappedFiles;
+    private long cacheSize;
 
     private Multimap<Integer, Container> results;
 
@@ -117,6 +125,7 @@ public class TaskRunner {
         this.outDirectory = outDirectory;
         this.tmpDirectory = tmpDirectory;
         this.nThreads = nThreads;
+        this.memoryBudget = Runtime.getRuntime().maxMemory() / 2;
 
         results = HashMultimap.create();
         tasks = new LinkedHashMap<>();
@@ -132,34 +141,82 @@ public class TaskRunner {
         tasks.put(taskClass, parameterMap);
     }
 
+    /**
+     * Sets the memory budget for concurrently running stages. Defaults to half of the maximum heap size.
+     *
+     * @param memoryBudget the memory budget in bytes
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Sets whether the temporary files are memory-mapped. Only applies if a temporary directory is set. Defaults to
+     * false.
+     *
+     * @param mappedFiles if the temporary files should be memory-mapped
+     */
+    public void setMappedFiles(boolean mappedFiles) {
+        this.mappedFiles = mappedFiles;
+    }
+
+    /**
+     * Sets the byte budget of the cache of serialized records read from the temporary files. The cache saves repeated
+     * file accesses but not the decoding of the records and is not part of the memory budget. Only applies if a
+     * temporary directory is set. Defaults to 0, which disables the cache.
+     *
+     * @param cacheSize the cache budget in bytes
+     */
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
     /**
      * Executes all tasks in order and writes the results in the output directory.
+     * <p/>
+     * Every file is processed by a {@link TaskChain} whose stages are scheduled individually on a work-stealing pool:
+     * a finished stage forks the next stage of its chain, so idle threads pick up stages of any file. Stages that
+     * support intra-task parallelism share the pool and are granted the threads not occupied by other chains. Stages
+     * holding the raw data acquire their estimated memory from the memory budget before they run. Obiwarp reference
+     * matrices are shared by the chains of a run and released when the run ends, as is the record cache if enabled.
      */
     public Multimap<Integer, Container> run() {
 
-        ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
-        List<Future<Container>> futures = new ArrayList<>();
-
         File[] files = inDirectory.listFiles(new Filter(Constants.FILE_FORMATS.MZML));
         Arrays.sort(files);
 
-        try {
+        FileContainerBuilder.setMapped(mappedFiles);
+        ObjectCache cache = (tmpDirectory != null && cacheSize > 0) ? new ObjectCache(cacheSize) : null;
+        FileManager.setCache(cache);
+
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        MemoryBudget budget = new MemoryBudget(memoryBudget);
+        CountDownLatch latch = new CountDownLatch(files.length);
+        AtomicInteger activeChains = new AtomicInteger(files.length);
+        Container[] containers = new Container[files.length];
 
-            for (File file : files) {
-                TaskChain executionChain = new TaskChain(file, new LinkedHashMap<>(tasks), tmpDirectory);
-                futures.add(threadPool.submit(executionChain));
+        try {
+            for (int i = 0; i < files.length; i++) {
+                TaskChain chain = new TaskChain(files[i], tasks, tmpDirectory);
+                pool.execute(new StageAction(chain, i, containers, budget, activeChains, latch));
             }
 
-            threadPool.shutdown();
+            latch.await();
 
-            for (Future<Container> future : futures) {
-                results.put(1, future.get());
+            // failed chains leave their slot empty
+            for (Container container : containers) {
+                if (container != null) results.put(1, container);
             }
 
         } catch (Exception exception) {
             LOGGER.log(Level.ERROR, "File could not be read: " + exception.getMessage());
         } finally {
-            threadPool.shutdownNow();
+            pool.shutdownNow();
+            Obiwarp.clearAligners();
+            if (cache != null) {
+                LOGGER.log(Level.INFO, "Record cache hits: " + cache.getHits() + ", misses: " + cache.getMisses());
+                FileManager.setCache(null);
+            }
         }
 
         return results;
@@ -207,6 +264,61 @@ public class TaskRunner {
         }
     }
 
+    /**
+     * Runs the next stage of a task chain and forks the subsequent stage.
+     */
+    private class StageAction extends RecursiveAction {
+
+        private final TaskChain chain;
+        private final int fileIndex;
+        private final Container[] containers;
+        private final MemoryBudget budget;
+        private final AtomicInteger activeChains;
+        private final CountDownLatch latch;
+
+        private StageAction(TaskChain chain, int fileIndex, Container[] containers, MemoryBudget budget,
+                AtomicInteger activeChains, CountDownLatch latch) {
+
+            this.chain = chain;
+            this.fileIndex = fileIndex;
+            this.containers = containers;
+            this.budget = budget;
+            this.activeChains = activeChains;
+            this.latch = latch;
+        }
+
+        @Override
+        protected void compute() {
+
+            try {
+                long memory = budget.acquire(chain.getStageMemory());
+                try {
+                    chain.runStage(Math.max(1, nThreads / Math.max(1, activeChains.get())));
+                } finally {
+                    budget.release(memory);
+                }
+            } catch (Throwable exception) {
+                LOGGER.log(Level.ERROR, "Task chain execution error: " + chain.getFile().getName(), exception);
+                finishChain(false);
+                return;
+            }
+
+            if (chain.hasNext()) {
+                new StageAction(chain, fileIndex, containers, budget, activeChains, latch).fork();
+            } else {
+                finishChain(true);
+            }
+        }
+
+        private void finishChain(boolean success) {
+
+            chain.finish(success);
+            if (success) containers[fileIndex] = chain.getContainer();
+            activeChains.decrementAndGet();
+            latch.countDown();
+        }
+    }
+
     class Filter implements FilenameFilter {
 
         private Constants.FILE_FORMATS format;